@@ -0,0 +1,328 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.loader.content.Loader;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link EarthquakeLoader} delivers the cached first page before the network,
+ * and only delivers the revalidated page again when it changed. A page whose body isn't a whole
+ * feed is never cached. Also checks that delivering the loaded pages again on a restart doesn't
+ * stand for the result of a load running meanwhile.
+ */
+@RunWith( AndroidJUnit4.class )
+public class EarthquakeLoaderCacheTest
+{
+    private static final int PAGE_SIZE = 20;
+    
+    private static final long TIMEOUT_SECONDS = 10;
+    
+    private MockWebServer mServer;
+    
+    private File mCacheDirectory;
+    
+    private EarthquakeLoader mLoader;
+    
+    private final BlockingQueue< EarthquakeTable > mDeliveries = new LinkedBlockingQueue<>();
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        mServer = new MockWebServer();
+        mServer.start();
+        
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mCacheDirectory = new File( context.getCacheDir(), "test_feeds" );
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if ( mLoader != null )
+                    mLoader.reset();
+            }
+        } );
+        
+        mServer.shutdown();
+        
+        File[] files = mCacheDirectory.listFiles();
+        if ( files != null )
+            for ( File file : files )
+                file.delete();
+    }
+    
+    @Test
+    public void coldStart_loadsFromNetworkAndCachesFirstPage() throws Exception
+    {
+        FeedCache feedCache = new FeedCache( mCacheDirectory, TimeUnit.HOURS.toMillis( 1 ) );
+        mServer.enqueue( new MockResponse().setBody( feed( 1 ) ) );
+        
+        startLoader( feedCache );
+        
+        EarthquakeTable earthquakes = mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS );
+        assertEquals( parse( feed( 1 ) ), earthquakes );
+        assertEquals( 1, mServer.getRequestCount() );
+        
+        FeedCache.Entry cachedPage = feedCache.get( firstPageUrl() );
+        assertNotNull( cachedPage );
+        assertFalse( cachedPage.isStale() );
+        assertEquals( earthquakes, cachedPage.getEarthquakes() );
+    }
+    
+    @Test
+    public void freshCache_isDeliveredWithoutNetwork() throws Exception
+    {
+        FeedCache feedCache = new FeedCache( mCacheDirectory, TimeUnit.HOURS.toMillis( 1 ) );
+        feedCache.put( firstPageUrl(), parse( feed( 1 ) ), null, null );
+        
+        startLoader( feedCache );
+        
+        assertEquals( parse( feed( 1 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertNull( mDeliveries.poll( 1, TimeUnit.SECONDS ) );
+        assertEquals( 0, mServer.getRequestCount() );
+    }
+    
+    @Test
+    public void staleCache_unchanged_isDeliveredOnce() throws Exception
+    {
+        // A time to live of 0 makes every cached page stale
+        FeedCache feedCache = new FeedCache( mCacheDirectory, 0 );
+        feedCache.put( firstPageUrl(), parse( feed( 1 ) ), null, null );
+        mServer.enqueue( new MockResponse().setBody( feed( 1 ) ) );
+        
+        startLoader( feedCache );
+        
+        assertEquals( parse( feed( 1 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertNotNull( mServer.takeRequest( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertNull( mDeliveries.poll( 2, TimeUnit.SECONDS ) );
+    }
+    
+    @Test
+    public void staleCache_changed_isDeliveredAgain() throws Exception
+    {
+        FeedCache feedCache = new FeedCache( mCacheDirectory, 0 );
+        feedCache.put( firstPageUrl(), parse( feed( 1 ) ), null, null );
+        mServer.enqueue( new MockResponse().setBody( feed( 2 ) ) );
+        
+        startLoader( feedCache );
+        
+        assertEquals( parse( feed( 1 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertEquals( parse( feed( 2 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertEquals( parse( feed( 2 ) ), feedCache.get( firstPageUrl() ).getEarthquakes() );
+    }
+    
+    @Test
+    public void staleCache_notModified_isRevalidatedWithValidatorsAndDeliveredOnce() throws Exception
+    {
+        FeedCache feedCache = new FeedCache( mCacheDirectory, 0 );
+        feedCache.put( firstPageUrl(), parse( feed( 1 ) ), "\"v1\"", "Wed, 14 Oct 2020 13:00:00 GMT" );
+        mServer.enqueue( new MockResponse().setResponseCode( 304 ) );
+        
+        startLoader( feedCache );
+        
+        assertEquals( parse( feed( 1 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        
+        RecordedRequest request = mServer.takeRequest( TIMEOUT_SECONDS, TimeUnit.SECONDS );
+        assertEquals( "\"v1\"", request.getHeader( "If-None-Match" ) );
+        assertEquals( "Wed, 14 Oct 2020 13:00:00 GMT", request.getHeader( "If-Modified-Since" ) );
+        assertNull( mDeliveries.poll( 2, TimeUnit.SECONDS ) );
+    }
+    
+    @Test
+    public void truncatedOrNonJsonPage_isNeitherCachedNorTheLastPage() throws Exception
+    {
+        FeedCache feedCache = new FeedCache( mCacheDirectory, 0 );
+        feedCache.put( firstPageUrl(), parse( feed( 1 ) ), "\"v1\"", null );
+        
+        // The revalidated first page is cut after a few earthquakes
+        String feed = feed( 2 );
+        mServer.enqueue( new MockResponse().setHeader( "ETag", "\"v2\"" )
+                .setBody( feed.substring( 0, feed.length() / 4 ) ) );
+        
+        startLoader( feedCache );
+        
+        assertEquals( parse( feed( 1 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertNotNull( mServer.takeRequest( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertNull( mDeliveries.poll( 2, TimeUnit.SECONDS ) );
+        FeedCache.Entry cachedPage = feedCache.get( firstPageUrl() );
+        assertEquals( "\"v1\"", cachedPage.getETag() );
+        assertEquals( parse( feed( 1 ) ), cachedPage.getEarthquakes() );
+        
+        // The next page is the login page of a captive portal, then the real one
+        mServer.enqueue( new MockResponse().setHeader( "ETag", "\"portal\"" )
+                .setBody( "<html><body>Sign in to the network</body></html>" ) );
+        mServer.enqueue( new MockResponse().setBody( feed( 3 ) ) );
+        
+        loadNextPage();
+        assertEquals( parse( feed( 1 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        
+        // The failed page is loaded again
+        loadNextPage();
+        assertNotNull( mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertEquals( 3, mServer.getRequestCount() );
+    }
+    
+    @Test
+    public void poll_whileThePagesAreDeliveredAgain_notifiesItsChangesOnce() throws Exception
+    {
+        FeedCache feedCache = new FeedCache( mCacheDirectory, TimeUnit.HOURS.toMillis( 1 ) );
+        mServer.enqueue( new MockResponse().setBody( feed( 1 ) ) );
+        
+        // The live feed has an earthquake newer than the first page, a while after it's polled
+        mServer.enqueue( new MockResponse().setHeadersDelay( 1, TimeUnit.SECONDS ).setBody(
+                "{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\"," +
+                        "\"properties\":{\"mag\":7.0,\"place\":\"Tonga\",\"time\":1602690000000," +
+                        "\"updated\":1602690000000},\"geometry\":{\"type\":\"Point\"," +
+                        "\"coordinates\":[-175.2,-21.1,10]},\"id\":\"us1\"}]}" ) );
+        
+        startLoader( feedCache );
+        assertEquals( PAGE_SIZE, mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ).size() );
+        
+        final BlockingQueue< Integer > changeCounts = new LinkedBlockingQueue<>();
+        final LiveFeed liveFeed = new LiveFeed( mServer.url( "/all_hour.geojson" ).toString() );
+        InstrumentationRegistry.getInstrumentation().runOnMainSync( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                assertTrue( mLoader.pollLiveFeed( liveFeed, new EarthquakeLoader.OnLiveFeedPolledListener()
+                {
+                    @Override
+                    public void onLiveFeedPolled( int changeCount )
+                    {
+                        changeCounts.add( changeCount );
+                    }
+                } ) );
+                
+                // Restarted while the poll is loading
+                mLoader.stopLoading();
+                mLoader.startLoading();
+            }
+        } );
+        
+        assertEquals( PAGE_SIZE, mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ).size() );
+        assertEquals( Integer.valueOf( 1 ), changeCounts.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        EarthquakeTable earthquakes = mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS );
+        assertEquals( PAGE_SIZE + 1, earthquakes.size() );
+        assertEquals( "us1", earthquakes.getId( 0 ) );
+        assertNull( changeCounts.poll( 1, TimeUnit.SECONDS ) );
+    }
+    
+    @Test
+    public void gzipResponse_isDecompressedAndValidatorsAreCached() throws Exception
+    {
+        FeedCache feedCache = new FeedCache( mCacheDirectory, TimeUnit.HOURS.toMillis( 1 ) );
+        mServer.enqueue( new MockResponse()
+                .setHeader( "Content-Encoding", "gzip" )
+                .setHeader( "ETag", "\"v2\"" )
+                .setBody( gzip( feed( 1 ) ) ) );
+        
+        startLoader( feedCache );
+        
+        assertEquals( parse( feed( 1 ) ), mDeliveries.poll( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        assertEquals( "gzip", mServer.takeRequest().getHeader( "Accept-Encoding" ) );
+        assertEquals( "\"v2\"", feedCache.get( firstPageUrl() ).getETag() );
+    }
+    
+    private void startLoader( final FeedCache feedCache )
+    {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        
+        // Loaders have to be started on the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mLoader = new EarthquakeLoader( context, queryUrl(), PAGE_SIZE, feedCache );
+                mLoader.registerListener( 0, new Loader.OnLoadCompleteListener< EarthquakeLoader.Result >()
+                {
+                    @Override
+                    public void onLoadComplete( Loader< EarthquakeLoader.Result > loader, EarthquakeLoader.Result data )
+                    {
+                        mDeliveries.add( data.getEarthquakes() );
+                    }
+                } );
+                mLoader.startLoading();
+            }
+        } );
+    }
+    
+    private void loadNextPage()
+    {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mLoader.loadNextPage();
+            }
+        } );
+    }
+    
+    private String queryUrl()
+    {
+        return mServer.url( "/fdsnws/event/1/query?format=geojson&minmag=6&orderby=time" ).toString();
+    }
+    
+    private String firstPageUrl()
+    {
+        return Uri.parse( queryUrl() ).buildUpon()
+                .appendQueryParameter( "offset", "1" )
+                .appendQueryParameter( "limit", String.valueOf( PAGE_SIZE ) )
+                .toString();
+    }
+    
+    private static String feed( long seed ) throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        FeedFixtures.writeFeed( writer, PAGE_SIZE, seed );
+        return writer.toString();
+    }
+    
+    private static Buffer gzip( String feed ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream( bytes );
+        gzipOutputStream.write( feed.getBytes( Charset.forName( "UTF-8" ) ) );
+        gzipOutputStream.close();
+        return new Buffer().write( bytes.toByteArray() );
+    }
+    
+    private static EarthquakeTable parse( String feed ) throws IOException
+    {
+        return QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream( feed.getBytes( Charset.forName( "UTF-8" ) ) ) );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,244 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * A fake FDSN event service for a {@link okhttp3.mockwebserver.MockWebServer}, answering
+ * queries of a fixed set of random earthquakes like USGS does: the earthquakes between the
+ * "starttime" and the "endtime" (both included), sorted by "orderby", and at most "limit".
+ *
+ * It's plain Java, so the benchmark module measures the sharded fetch against it too.
+ *
+ * Several dispatchers can serve the same earthquakes as different catalogs do, under their
+ * own ids and with slightly different times, epicenters and magnitudes (see
+ * {@link #setCatalog(String, long, double, int)}).
+ */
+public class FakeFdsnDispatcher extends Dispatcher
+{
+    private static final String QUERY_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+    
+    /**
+     * Path of the event pages on the server of the dispatcher, followed by the event id,
+     * so every fake provider has event pages of its own like real ones do
+     */
+    private static final String EVENT_PAGE_PATH = "/eventpage/";
+    
+    private static final String[] PLACES = {
+            "88 km N of Yelizovo, Russia", "Tonga", "28 km SSE of Ovalle, Chile", "Southern Alaska"
+    };
+    
+    /**
+     * Earthquakes as { time, magnitude in tenths, number }, sorted by time
+     */
+    private final long[][] mEarthquakes;
+    
+    private final int mResultCap;
+    
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    
+    /**
+     * Time in milliseconds every response waits before its body, like a distant server
+     */
+    private volatile long mLatency;
+    
+    /**
+     * Bytes per second every response body is sent at, or 0 for no limit
+     */
+    private volatile long mBytesPerSecond;
+    
+    /**
+     * Prefix of the event ids, and offsets of the times in milliseconds, of the coordinates in
+     * degrees and of the magnitudes in tenths, like another catalog reporting the same events
+     */
+    private volatile String mIdPrefix = "fk";
+    
+    private volatile long mTimeOffset;
+    
+    private volatile double mCoordinateOffset;
+    
+    private volatile int mMagnitudeOffset;
+    
+    /**
+     * Constructs a new {@link FakeFdsnDispatcher} of earthquakes at random times between
+     * the given ones.
+     *
+     * @param earthquakeCount is the number of earthquakes
+     * @param startTime in milliseconds (from the Epoch) of the oldest earthquake
+     * @param endTime in milliseconds (from the Epoch) of the most recent earthquake
+     * @param resultCap is the largest "limit" accepted, like the USGS result cap
+     */
+    public FakeFdsnDispatcher( int earthquakeCount, long startTime, long endTime, int resultCap )
+    {
+        this( earthquakeCount, startTime, endTime, resultCap, 42 );
+    }
+    
+    /**
+     * Constructs a new {@link FakeFdsnDispatcher} of earthquakes at random times between
+     * the given ones, drawn from the given seed, so dispatchers with different seeds serve
+     * different earthquakes.
+     *
+     * @param earthquakeCount is the number of earthquakes
+     * @param startTime in milliseconds (from the Epoch) of the oldest earthquake
+     * @param endTime in milliseconds (from the Epoch) of the most recent earthquake
+     * @param resultCap is the largest "limit" accepted, like the USGS result cap
+     * @param seed of the random times and magnitudes
+     */
+    public FakeFdsnDispatcher( int earthquakeCount, long startTime, long endTime, int resultCap, long seed )
+    {
+        Random random = new Random( seed );
+        mEarthquakes = new long[ earthquakeCount ][];
+        for ( int i = 0; i < earthquakeCount; i++ )
+            mEarthquakes[ i ] = new long[] {
+                    startTime + ( long ) ( random.nextDouble() * ( endTime - startTime ) ),
+                    25 + random.nextInt( 60 ), i };
+        Arrays.sort( mEarthquakes, new Comparator< long[] >()
+        {
+            @Override
+            public int compare( long[] first, long[] second )
+            {
+                return first[ 0 ] < second[ 0 ] ? -1 : ( first[ 0 ] == second[ 0 ] ? 0 : 1 );
+            }
+        } );
+        mResultCap = resultCap;
+    }
+    
+    /**
+     * Make every response wait for the given time before its body, and send its body at
+     * the given rate, like a slow connection to a distant server.
+     */
+    public void setThrottle( long latencyMillis, long bytesPerSecond )
+    {
+        mLatency = latencyMillis;
+        mBytesPerSecond = bytesPerSecond;
+    }
+    
+    /**
+     * Serve the earthquakes like another catalog reporting them: under ids with the given
+     * prefix, and with the given offsets added to their times, coordinates and magnitudes.
+     *
+     * @param idPrefix of the event ids, "fk" by default
+     * @param timeOffset in milliseconds added to the times
+     * @param coordinateOffset in degrees added to the longitudes and latitudes
+     * @param magnitudeOffset in tenths added to the magnitudes
+     */
+    public void setCatalog( String idPrefix, long timeOffset, double coordinateOffset, int magnitudeOffset )
+    {
+        mIdPrefix = idPrefix;
+        mTimeOffset = timeOffset;
+        mCoordinateOffset = coordinateOffset;
+        mMagnitudeOffset = magnitudeOffset;
+    }
+    
+    /**
+     * Returns the number of earthquakes.
+     */
+    public int getEarthquakeCount()
+    {
+        return mEarthquakes.length;
+    }
+    
+    /**
+     * Returns the number of queries answered so far.
+     */
+    public int getRequestCount()
+    {
+        return mRequestCount.get();
+    }
+    
+    @Override
+    public MockResponse dispatch( RecordedRequest request )
+    {
+        mRequestCount.incrementAndGet();
+        
+        HttpUrl url = request.getRequestUrl();
+        long startTime;
+        long endTime;
+        try
+        {
+            startTime = parseTime( url.queryParameter( "starttime" ), Long.MIN_VALUE );
+            endTime = parseTime( url.queryParameter( "endtime" ), Long.MAX_VALUE );
+        }
+        catch ( ParseException parseException )
+        {
+            return new MockResponse().setResponseCode( 400 );
+        }
+        
+        int limit = url.queryParameter( "limit" ) == null ?
+                mResultCap : Integer.parseInt( url.queryParameter( "limit" ) );
+        if ( limit > mResultCap )
+            return new MockResponse().setResponseCode( 400 );
+        
+        List< long[] > earthquakes = new ArrayList<>();
+        for ( long[] earthquake : mEarthquakes )
+            if ( earthquake[ 0 ] + mTimeOffset >= startTime && earthquake[ 0 ] + mTimeOffset <= endTime )
+                earthquakes.add( earthquake );
+        Collections.sort( earthquakes, orderOf( url.queryParameter( "orderby" ) ) );
+        
+        StringBuilder body = new StringBuilder( "{\"type\":\"FeatureCollection\",\"features\":[" );
+        for ( int i = 0; i < Math.min( limit, earthquakes.size() ); i++ )
+        {
+            long[] earthquake = earthquakes.get( i );
+            if ( i > 0 )
+                body.append( ',' );
+            body.append( String.format( Locale.US,
+                    "{\"type\":\"Feature\",\"properties\":{\"mag\":%.1f,\"place\":\"%s\",\"time\":%d," +
+                            "\"updated\":%d,\"url\":\"%s%s%d\"}," +
+                            "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.3f,%.3f,10]},\"id\":\"%s%d\"}",
+                    ( earthquake[ 1 ] + mMagnitudeOffset ) / 10.0, PLACES[ ( int ) ( earthquake[ 2 ] % PLACES.length ) ],
+                    earthquake[ 0 ] + mTimeOffset, earthquake[ 0 ] + mTimeOffset,
+                    url.resolve( EVENT_PAGE_PATH ), mIdPrefix, earthquake[ 2 ],
+                    earthquake[ 2 ] % 360 - 180 + mCoordinateOffset, earthquake[ 2 ] % 180 - 90 + mCoordinateOffset,
+                    mIdPrefix, earthquake[ 2 ] ) );
+        }
+        body.append( "]}" );
+        
+        MockResponse response = new MockResponse().setBody( body.toString() );
+        if ( mLatency > 0 )
+            response.setHeadersDelay( mLatency, TimeUnit.MILLISECONDS );
+        if ( mBytesPerSecond > 0 )
+            // Send the body 16 KB at a time
+            response.throttleBody( 16 * 1024, 16 * 1024 * 1000 / mBytesPerSecond, TimeUnit.MILLISECONDS );
+        return response;
+    }
+    
+    private static long parseTime( String time, long defaultTime ) throws ParseException
+    {
+        if ( time == null )
+            return defaultTime;
+        
+        SimpleDateFormat timeFormat = new SimpleDateFormat( QUERY_TIME_FORMAT, Locale.US );
+        timeFormat.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        return timeFormat.parse( time ).getTime();
+    }
+    
+    private static Comparator< long[] > orderOf( String orderBy )
+    {
+        final int column = orderBy != null && orderBy.startsWith( "magnitude" ) ? 1 : 0;
+        final int direction = orderBy != null && orderBy.endsWith( "-asc" ) ? 1 : -1;
+        return new Comparator< long[] >()
+        {
+            @Override
+            public int compare( long[] first, long[] second )
+            {
+                int comparison = first[ column ] < second[ column ] ? -1 : ( first[ column ] == second[ column ] ? 0 : 1 );
+                return direction * comparison;
+            }
+        };
+    }
+}
\ No newline at end of file
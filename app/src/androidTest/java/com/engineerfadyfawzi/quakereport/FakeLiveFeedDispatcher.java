@@ -0,0 +1,121 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * A fake USGS summary feed for a {@link okhttp3.mockwebserver.MockWebServer}, playing a script
+ * of earthquake bursts: every request first plays the next step of the script, which inserts
+ * new earthquakes and revises the latest ones, then it's answered with all the earthquakes,
+ * the latest first, or with "304 Not Modified" if they didn't change since its "ETag".
+ */
+public class FakeLiveFeedDispatcher extends Dispatcher
+{
+    private static final long START_TIME = 1602680000000L;
+    
+    private static final String[] PLACES = {
+            "5 km NNE of Pahala, Hawaii", "Tonga", "28 km SSE of Ovalle, Chile", "Southern Alaska"
+    };
+    
+    /**
+     * Steps of the script, as { inserted earthquakes, revised earthquakes }
+     */
+    private final int[][] mScript;
+    
+    /**
+     * Earthquakes as { number, time, updated, magnitude in tenths }, sorted by number
+     */
+    private final List< long[] > mEarthquakes = new ArrayList<>();
+    
+    private final Random mRandom = new Random( 42 );
+    
+    private int mStep;
+    
+    /**
+     * Version of the feed, its "ETag", incremented by every step changing it
+     */
+    private int mVersion;
+    
+    private int mNotModifiedCount;
+    
+    /**
+     * Constructs a new {@link FakeLiveFeedDispatcher}, the feed doesn't change anymore once
+     * the script is played.
+     *
+     * @param script steps, one per request, as { inserted earthquakes, revised earthquakes }
+     */
+    public FakeLiveFeedDispatcher( int[]... script )
+    {
+        mScript = script;
+    }
+    
+    /**
+     * Returns the number of requests answered with "304 Not Modified".
+     */
+    public synchronized int getNotModifiedCount()
+    {
+        return mNotModifiedCount;
+    }
+    
+    @Override
+    public synchronized MockResponse dispatch( RecordedRequest request )
+    {
+        if ( mStep < mScript.length )
+            playStep( mScript[ mStep++ ] );
+        
+        String eTag = "\"" + mVersion + "\"";
+        if ( eTag.equals( request.getHeader( "If-None-Match" ) ) )
+        {
+            mNotModifiedCount++;
+            return new MockResponse().setResponseCode( 304 ).setHeader( "ETag", eTag );
+        }
+        
+        StringBuilder body = new StringBuilder( "{\"type\":\"FeatureCollection\",\"features\":[" );
+        for ( int i = mEarthquakes.size() - 1; i >= 0; i-- )
+        {
+            long[] earthquake = mEarthquakes.get( i );
+            if ( i < mEarthquakes.size() - 1 )
+                body.append( ',' );
+            body.append( String.format( Locale.US,
+                    "{\"type\":\"Feature\",\"properties\":{\"mag\":%.1f,\"place\":\"%s\",\"time\":%d," +
+                            "\"updated\":%d,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/lv%d\"}," +
+                            "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%d,%d,10]},\"id\":\"lv%d\"}",
+                    earthquake[ 3 ] / 10.0, PLACES[ ( int ) ( earthquake[ 0 ] % PLACES.length ) ],
+                    earthquake[ 1 ], earthquake[ 2 ], earthquake[ 0 ],
+                    earthquake[ 0 ] % 360 - 180, earthquake[ 0 ] % 180 - 90, earthquake[ 0 ] ) );
+        }
+        body.append( "]}" );
+        
+        return new MockResponse().setHeader( "ETag", eTag ).setBody( body.toString() );
+    }
+    
+    /**
+     * Insert the new earthquakes of the step, then revise the latest ones: their magnitude
+     * is a tenth higher, and they're updated a minute later.
+     */
+    private void playStep( int[] step )
+    {
+        for ( int i = 0; i < step[ 0 ]; i++ )
+        {
+            long number = mEarthquakes.size();
+            long time = START_TIME + number * 60000L;
+            mEarthquakes.add( new long[] { number, time, time, 25 + mRandom.nextInt( 50 ) } );
+        }
+        
+        for ( int i = 0; i < Math.min( step[ 1 ], mEarthquakes.size() ); i++ )
+        {
+            long[] earthquake = mEarthquakes.get( mEarthquakes.size() - 1 - i );
+            earthquake[ 2 ] += 60000L;
+            earthquake[ 3 ] += 1;
+        }
+        
+        if ( step[ 0 ] > 0 || step[ 1 ] > 0 )
+            mVersion++;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Builds USGS "FDSN event" GeoJSON feeds shaped like the recorded responses of the real service
+ * (same members, same property set, similar value distribution), so tests don't need the network.
+ *
+ * It's plain Java, so the benchmark module generates the feeds it parses with it too.
+ */
+final class FeedFixtures
+{
+    /**
+     * Places taken from real USGS responses, both with and without a location offset.
+     */
+    private static final String[] PLACES = {
+            "88 km N of Yelizovo, Russia",
+            "5 km NNE of Pahala, Hawaii",
+            "South of the Fiji Islands",
+            "74 km NW of Rumoi, Japan",
+            "Pacific-Antarctic Ridge",
+            "10 km SW of Tobelo, Indonesia",
+            "Tonga",
+            "28 km SSE of Ovalle, Chile",
+            "central Mid-Atlantic Ridge",
+            "113 km SSW of Kokopo, Papua New Guinea"
+    };
+    
+    private FeedFixtures()
+    {
+    
+    }
+    
+    /**
+     * Write a feed with the given number of features to a file and return it.
+     */
+    static File writeFeed( File directory, int featureCount ) throws IOException
+    {
+        File feed = new File( directory, "feed_" + featureCount + ".geojson" );
+        Writer writer = new OutputStreamWriter( new FileOutputStream( feed ), Charset.forName( "UTF-8" ) );
+        try
+        {
+            writeFeed( writer, featureCount, 0L );
+        }
+        finally
+        {
+            writer.close();
+        }
+        return feed;
+    }
+    
+    /**
+     * Write a feed with the given number of features, using the seed for the random values.
+     */
+    static void writeFeed( Writer writer, int featureCount, long seed ) throws IOException
+    {
+        Random random = new Random( seed );
+        long time = 1602680000000L;
+        
+        writer.write( "{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":1602680480000,"
+                + "\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query\","
+                + "\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.10.3\",\"count\":"
+                + featureCount + "},\"features\":[" );
+        
+        for ( int i = 0; i < featureCount; i++ )
+        {
+            if ( i > 0 )
+                writer.write( ',' );
+            
+            String id = String.format( Locale.US, "us%08x", i );
+            double magnitude = 2.5 + random.nextInt( 60 ) / 10.0;
+            double longitude = random.nextDouble() * 360 - 180;
+            double latitude = random.nextDouble() * 180 - 90;
+            double depth = random.nextDouble() * 600;
+            time -= random.nextInt( 600000 );
+            
+            writer.write( String.format( Locale.US,
+                    "{\"type\":\"Feature\",\"properties\":{\"mag\":%.1f,\"place\":\"%s\",\"time\":%d,"
+                            + "\"updated\":%d,\"tz\":null,"
+                            + "\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/%s\","
+                            + "\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=%s&format=geojson\","
+                            + "\"felt\":null,\"cdi\":null,\"mmi\":null,\"alert\":null,\"status\":\"reviewed\","
+                            + "\"tsunami\":0,\"sig\":%d,\"net\":\"us\",\"code\":\"%s\",\"ids\":\",%s,\","
+                            + "\"sources\":\",us,\",\"types\":\",origin,phase-data,\",\"nst\":null,"
+                            + "\"dmin\":2.1,\"rms\":0.83,\"gap\":54,\"magType\":\"mb\",\"type\":\"earthquake\","
+                            + "\"title\":\"M %.1f - %s\"},"
+                            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.4f,%.4f,%.2f]},\"id\":\"%s\"}",
+                    magnitude, PLACES[ i % PLACES.length ], time, time + 3600000L, id, id,
+                    ( int ) ( magnitude * 100 ), id.substring( 2 ), id, magnitude, PLACES[ i % PLACES.length ],
+                    longitude, latitude, depth, id ) );
+        }
+        
+        writer.write( "],\"bbox\":[-179.9,-89.9,0.1,179.9,89.9,600]}" );
+    }
+}
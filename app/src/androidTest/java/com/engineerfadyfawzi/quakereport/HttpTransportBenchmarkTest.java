@@ -0,0 +1,152 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the latency of requests executed through {@link OkHttpTransport} against a local
+ * HTTPS server, on a warm (pooled, kept alive) connection and on a cold (new) connection.
+ */
+@RunWith( AndroidJUnit4.class )
+public class HttpTransportBenchmarkTest
+{
+    private static final String LOG_TAG = HttpTransportBenchmarkTest.class.getSimpleName();
+    
+    private static final int REQUESTS = 50;
+    
+    private MockWebServer mServer;
+    
+    private HandshakeCertificates mClientCertificates;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        // Serve over TLS, so a cold connection pays for the handshake like it does with USGS
+        String localhost = InetAddress.getByName( "localhost" ).getCanonicalHostName();
+        HeldCertificate certificate = new HeldCertificate.Builder()
+                .addSubjectAlternativeName( localhost )
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate( certificate )
+                .build();
+        mClientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate( certificate.certificate() )
+                .build();
+        
+        mServer = new MockWebServer();
+        mServer.useHttps( serverCertificates.sslSocketFactory(), false );
+        mServer.start();
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        mServer.shutdown();
+    }
+    
+    @Test
+    public void warmConnections_areReusedAndFasterThanColdConnections() throws Exception
+    {
+        // Warm up the code paths and TLS provider before measuring anything
+        HttpTransport warmTransport = new OkHttpTransport( newClient() );
+        execute( warmTransport );
+        
+        long[] warmLatencies = new long[ REQUESTS ];
+        for ( int i = 0; i < REQUESTS; i++ )
+            warmLatencies[ i ] = execute( warmTransport );
+        
+        // A new transport has its own empty connection pool, so every request opens a connection
+        long[] coldLatencies = new long[ REQUESTS ];
+        for ( int i = 0; i < REQUESTS; i++ )
+            coldLatencies[ i ] = execute( new OkHttpTransport( newClient() ) );
+        
+        long warmMedian = median( warmLatencies );
+        long coldMedian = median( coldLatencies );
+        Log.i( LOG_TAG, "warm connection median latency: " + warmMedian / 1000 + " us" );
+        Log.i( LOG_TAG, "cold connection median latency: " + coldMedian / 1000 + " us" );
+        
+        // Only one connection was opened by the warm transport for all of its requests:
+        // the sequence number counts the requests made on the same connection.
+        for ( int i = 0; i <= REQUESTS; i++ )
+            assertEquals( i, mServer.takeRequest().getSequenceNumber() );
+        
+        assertTrue( "warm " + warmMedian + " ns, cold " + coldMedian + " ns", warmMedian < coldMedian );
+    }
+    
+    @Test
+    public void perCallTimeouts_stillShareTheConnectionPool() throws Exception
+    {
+        HttpTransport transport = new OkHttpTransport( newClient() );
+        
+        mServer.enqueue( new MockResponse().setBody( "{}" ) );
+        mServer.enqueue( new MockResponse().setBody( "{}" ) );
+        
+        HttpRequest request = new HttpRequest( mServer.url( "/query" ).url() );
+        transport.execute( request ).close();
+        transport.execute( request.setConnectTimeout( 1000 ).setReadTimeout( 500 ) ).close();
+        
+        mServer.takeRequest();
+        // The sequence number counts the requests made on the same connection
+        assertEquals( 1, mServer.takeRequest().getSequenceNumber() );
+    }
+    
+    private OkHttpClient newClient()
+    {
+        return new OkHttpClient.Builder()
+                .sslSocketFactory( mClientCertificates.sslSocketFactory(),
+                        mClientCertificates.trustManager() )
+                .build();
+    }
+    
+    /**
+     * Execute a request and read its whole body, returning its latency in nanoseconds.
+     */
+    private long execute( HttpTransport transport ) throws IOException
+    {
+        mServer.enqueue( new MockResponse().setBody( "{\"type\":\"FeatureCollection\",\"features\":[]}" ) );
+        
+        long start = SystemClock.elapsedRealtimeNanos();
+        HttpResponse response = transport.execute( new HttpRequest( mServer.url( "/query" ).url() ) );
+        try
+        {
+            InputStream body = response.getBody();
+            byte[] buffer = new byte[ 1024 ];
+            while ( body.read( buffer ) != -1 )
+            {
+                // Read the whole body, like the parser does
+            }
+        }
+        finally
+        {
+            response.close();
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+    
+    private static long median( long[] latencies )
+    {
+        long[] sorted = latencies.clone();
+        Arrays.sort( sorted );
+        return sorted[ sorted.length / 2 ];
+    }
+}
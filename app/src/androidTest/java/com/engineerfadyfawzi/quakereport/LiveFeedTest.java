@@ -0,0 +1,167 @@
+package com.engineerfadyfawzi.quakereport;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the polls of a {@link LiveFeed} against a local fake summary feed playing scripted
+ * bursts of earthquakes, and how the {@link LiveFeedPoller} interval follows the bursts.
+ */
+@RunWith( AndroidJUnit4.class )
+public class LiveFeedTest
+{
+    private MockWebServer mServer;
+    
+    private FakeLiveFeedDispatcher mDispatcher;
+    
+    private LiveFeed start( int[]... script ) throws IOException
+    {
+        mDispatcher = new FakeLiveFeedDispatcher( script );
+        mServer = new MockWebServer();
+        mServer.setDispatcher( mDispatcher );
+        mServer.start();
+        return new LiveFeed( mServer.url( "/earthquakes/feed/v1.0/summary/all_hour.geojson" ).toString() );
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        mServer.shutdown();
+    }
+    
+    @Test
+    public void poll_insertsTheNewEarthquakes() throws IOException
+    {
+        LiveFeed liveFeed = start( new int[] { 5, 0 }, new int[] { 3, 0 } );
+        
+        EarthquakeDelta first = liveFeed.poll( EarthquakeTable.EMPTY, 0, EarthquakeOrder.TIME, true, null );
+        assertEquals( 5, first.getInsertedCount() );
+        
+        EarthquakeDelta second = liveFeed.poll( first.getEarthquakes(), 0, EarthquakeOrder.TIME, true, null );
+        assertEquals( 3, second.getInsertedCount() );
+        assertEquals( 0, second.getUpdatedCount() );
+        
+        // The new earthquakes are merged in the order of the list, the latest first
+        EarthquakeTable earthquakes = second.getEarthquakes();
+        assertEquals( 8, earthquakes.size() );
+        assertEquals( "lv7", earthquakes.getId( 0 ) );
+        assertEquals( "lv0", earthquakes.getId( 7 ) );
+    }
+    
+    @Test
+    public void poll_replacesTheRevisedEarthquakesById() throws IOException
+    {
+        LiveFeed liveFeed = start( new int[] { 5, 0 }, new int[] { 0, 2 } );
+        
+        EarthquakeTable earthquakes =
+                liveFeed.poll( EarthquakeTable.EMPTY, 0, EarthquakeOrder.TIME, true, null ).getEarthquakes();
+        EarthquakeDelta delta = liveFeed.poll( earthquakes, 0, EarthquakeOrder.TIME, true, null );
+        assertEquals( 0, delta.getInsertedCount() );
+        assertEquals( 2, delta.getUpdatedCount() );
+        
+        EarthquakeTable revised = delta.getEarthquakes();
+        assertEquals( 5, revised.size() );
+        for ( int row = 0; row < revised.size(); row++ )
+        {
+            assertEquals( earthquakes.getId( row ), revised.getId( row ) );
+            double revision = row < 2 ? 0.1 : 0;
+            assertEquals( earthquakes.getMagnitude( row ) + revision, revised.getMagnitude( row ), 1e-9 );
+        }
+    }
+    
+    @Test
+    public void poll_unchangedFeed_isNotDownloadedAgain() throws IOException
+    {
+        LiveFeed liveFeed = start( new int[] { 5, 0 }, new int[] { 0, 0 } );
+        
+        EarthquakeTable earthquakes =
+                liveFeed.poll( EarthquakeTable.EMPTY, 0, EarthquakeOrder.TIME, true, null ).getEarthquakes();
+        EarthquakeDelta delta = liveFeed.poll( earthquakes, 0, EarthquakeOrder.TIME, true, null );
+        assertTrue( delta.isEmpty() );
+        assertEquals( earthquakes, delta.getEarthquakes() );
+        assertEquals( 1, mDispatcher.getNotModifiedCount() );
+    }
+    
+    @Test
+    public void poll_onlyMergesTheMagnitudesOfTheQuery() throws IOException
+    {
+        LiveFeed liveFeed = start( new int[] { 40, 0 } );
+        
+        EarthquakeTable all =
+                liveFeed.poll( EarthquakeTable.EMPTY, 0, EarthquakeOrder.TIME, true, null ).getEarthquakes();
+        int strongCount = 0;
+        for ( int row = 0; row < all.size(); row++ )
+            if ( all.getMagnitude( row ) >= 5 )
+                strongCount++;
+        
+        LiveFeed strongFeed = new LiveFeed( liveFeed.getUrl() );
+        EarthquakeTable strong =
+                strongFeed.poll( EarthquakeTable.EMPTY, 5, EarthquakeOrder.MAGNITUDE, true, null ).getEarthquakes();
+        assertTrue( strongCount > 0 && strongCount < all.size() );
+        assertEquals( strongCount, strong.size() );
+        for ( int row = 1; row < strong.size(); row++ )
+            assertTrue( strong.getMagnitude( row - 1 ) >= strong.getMagnitude( row ) );
+    }
+    
+    @Test
+    public void poll_intoTheFirstPages_dropsTheEarthquakesOfTheNextPages() throws IOException
+    {
+        LiveFeed liveFeed = start( new int[] { 40, 0 }, new int[] { 10, 0 } );
+        
+        // Only the 10 strongest earthquakes are loaded
+        EarthquakeTable all =
+                liveFeed.poll( EarthquakeTable.EMPTY, 0, EarthquakeOrder.MAGNITUDE, true, null ).getEarthquakes();
+        int[] firstRows = new int[ 10 ];
+        for ( int row = 0; row < firstRows.length; row++ )
+            firstRows[ row ] = row;
+        EarthquakeTable firstPage = all.select( firstRows );
+        double lastMagnitude = firstPage.getMagnitude( firstPage.size() - 1 );
+        
+        EarthquakeDelta delta = liveFeed.poll( firstPage, 0, EarthquakeOrder.MAGNITUDE, false, null );
+        EarthquakeTable merged = delta.getEarthquakes();
+        assertTrue( delta.getInsertedCount() < 10 );
+        assertEquals( firstPage.size() + delta.getInsertedCount(), merged.size() );
+        for ( int row = 0; row < merged.size(); row++ )
+            assertTrue( merged.getMagnitude( row ) >= lastMagnitude );
+    }
+    
+    @Test
+    public void pollInterval_shrinksDuringBurstsAndGrowsWhenQuiet() throws IOException
+    {
+        // A burst, a quiet period, a burst of new and revised earthquakes, then quiet again
+        LiveFeed liveFeed = start( new int[] { 3, 0 }, new int[] { 0, 0 }, new int[] { 0, 0 },
+                new int[] { 0, 0 }, new int[] { 0, 0 }, new int[] { 4, 1 }, new int[] { 2, 0 },
+                new int[] { 0, 0 }, new int[] { 0, 0 } );
+        long minInterval = TimeUnit.SECONDS.toMillis( 30 );
+        long maxInterval = TimeUnit.MINUTES.toMillis( 5 );
+        
+        EarthquakeTable earthquakes = EarthquakeTable.EMPTY;
+        long interval = maxInterval;
+        List< Long > intervals = new ArrayList<>();
+        for ( int poll = 0; poll < 9; poll++ )
+        {
+            EarthquakeDelta delta = liveFeed.poll( earthquakes, 0, EarthquakeOrder.TIME, true, null );
+            earthquakes = delta.getEarthquakes();
+            interval = LiveFeedPoller.getNextInterval( interval,
+                    delta.getInsertedCount() + delta.getUpdatedCount(), minInterval, maxInterval );
+            intervals.add( TimeUnit.MILLISECONDS.toSeconds( interval ) );
+        }
+        
+        assertEquals( Arrays.asList( 30L, 60L, 120L, 240L, 300L, 30L, 30L, 60L, 120L ), intervals );
+        assertEquals( 9, earthquakes.size() );
+        assertEquals( 6, mDispatcher.getNotModifiedCount() );
+    }
+}
\ No newline at end of file
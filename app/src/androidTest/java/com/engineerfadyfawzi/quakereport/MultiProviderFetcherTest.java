@@ -0,0 +1,176 @@
+package com.engineerfadyfawzi.quakereport;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the fan-out fetch of {@link MultiProviderFetcher} against local fake FDSN servers,
+ * serving the same earthquakes as different catalogs, and earthquakes only one of them has.
+ */
+@RunWith( AndroidJUnit4.class )
+public class MultiProviderFetcherTest
+{
+    /**
+     * 2020-01-01T00:00:00Z to 2020-02-01T00:00:00Z
+     */
+    private static final long START_TIME = 1577836800000L;
+    
+    private static final long END_TIME = 1580515200000L;
+    
+    private static final int EARTHQUAKE_COUNT = 150;
+    
+    /**
+     * Servers of the first catalog, of the same earthquakes in another catalog, and of
+     * other earthquakes
+     */
+    private MockWebServer mFirstServer;
+    
+    private MockWebServer mSameServer;
+    
+    private MockWebServer mOtherServer;
+    
+    private FakeFdsnDispatcher mOtherDispatcher;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        mFirstServer = start( new FakeFdsnDispatcher( EARTHQUAKE_COUNT, START_TIME, END_TIME, 20000 ) );
+        
+        // A few seconds later, 0.1 degrees away and 0.2 stronger
+        FakeFdsnDispatcher sameDispatcher = new FakeFdsnDispatcher( EARTHQUAKE_COUNT, START_TIME, END_TIME, 20000 );
+        sameDispatcher.setCatalog( "at", 4000, 0.1, 2 );
+        mSameServer = start( sameDispatcher );
+        
+        mOtherDispatcher = new FakeFdsnDispatcher( EARTHQUAKE_COUNT, START_TIME, END_TIME, 20000, 7 );
+        mOtherDispatcher.setCatalog( "pt", 0, 0, 0 );
+        mOtherServer = start( mOtherDispatcher );
+    }
+    
+    private static MockWebServer start( FakeFdsnDispatcher dispatcher ) throws IOException
+    {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher( dispatcher );
+        server.start();
+        return server;
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        mFirstServer.shutdown();
+        mSameServer.shutdown();
+        mOtherServer.shutdown();
+    }
+    
+    private static EarthquakeProvider provider( String name, MockWebServer server )
+    {
+        return new EarthquakeProvider( name, server.url( "/fdsnws/event/1/query" ).toString() );
+    }
+    
+    /**
+     * Returns a query of all the earthquakes, to USGS.
+     */
+    private static String queryUrl()
+    {
+        return EarthquakeProvider.USGS.getQueryUrl() + "?format=geojson&orderby=time";
+    }
+    
+    private static Set< String > idsOf( EarthquakeTable earthquakes )
+    {
+        Set< String > ids = new HashSet<>();
+        for ( int row = 0; row < earthquakes.size(); row++ )
+            ids.add( earthquakes.getId( row ) );
+        return ids;
+    }
+    
+    @Test
+    public void fetch_keepsTheEarthquakesOfTheFirstCatalogReportingThem()
+    {
+        MultiProviderFetcher fetcher = new MultiProviderFetcher( Arrays.asList(
+                provider( "first", mFirstServer ), provider( "same", mSameServer ),
+                provider( "other", mOtherServer ) ), 10000 );
+        
+        EarthquakeTable earthquakes = fetcher.fetch( queryUrl() );
+        
+        assertNotNull( earthquakes );
+        assertEquals( 2 * EARTHQUAKE_COUNT, earthquakes.size() );
+        Set< String > ids = idsOf( earthquakes );
+        for ( int i = 0; i < EARTHQUAKE_COUNT; i++ )
+        {
+            assertTrue( ids.contains( "fk" + i ) );
+            assertTrue( ids.contains( "pt" + i ) );
+        }
+        
+        // Sorted by the "orderby" of the query
+        for ( int row = 1; row < earthquakes.size(); row++ )
+            assertTrue( earthquakes.getTimeInMilliseconds( row - 1 ) >= earthquakes.getTimeInMilliseconds( row ) );
+        
+        // Each earthquake links to the event page of the provider reporting it
+        for ( int row = 0; row < earthquakes.size(); row++ )
+        {
+            String id = earthquakes.getId( row );
+            MockWebServer server = id.startsWith( "fk" ) ? mFirstServer : mOtherServer;
+            assertEquals( server.url( "/eventpage/" + id ).toString(), earthquakes.getUrl( row ) );
+        }
+    }
+    
+    @Test
+    public void fetch_returnsTheProvidersAnsweringBeforeTheDeadline()
+    {
+        // The other catalog answers long after the deadline
+        mOtherDispatcher.setThrottle( 5000, 0 );
+        MultiProviderFetcher fetcher = new MultiProviderFetcher( Arrays.asList(
+                provider( "other", mOtherServer ), provider( "same", mSameServer ) ), 1000 );
+        
+        long start = System.nanoTime();
+        EarthquakeTable earthquakes = fetcher.fetch( queryUrl() );
+        long fetchTime = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        
+        assertNotNull( earthquakes );
+        assertEquals( EARTHQUAKE_COUNT, earthquakes.size() );
+        for ( int row = 0; row < earthquakes.size(); row++ )
+            assertTrue( earthquakes.getId( row ).startsWith( "at" ) );
+        assertTrue( "fetch took " + fetchTime + " ms", fetchTime < 3000 );
+    }
+    
+    @Test
+    public void fetch_keepsTheOtherProvidersWhenOneFails()
+    {
+        // The transport throws on the scheme of the failing provider
+        EarthquakeProvider failingProvider =
+                new EarthquakeProvider( "failing", "ftp://localhost/fdsnws/event/1/query" );
+        MultiProviderFetcher fetcher = new MultiProviderFetcher( Arrays.asList(
+                failingProvider, provider( "other", mOtherServer ) ), 10000 );
+        
+        long failedProviders = Metrics.FAILED_PROVIDERS.get();
+        EarthquakeTable earthquakes = fetcher.fetch( queryUrl() );
+        
+        assertNotNull( earthquakes );
+        assertEquals( EARTHQUAKE_COUNT, earthquakes.size() );
+        assertEquals( 1, Metrics.FAILED_PROVIDERS.get() - failedProviders );
+    }
+    
+    @Test
+    public void fetch_returnsNullWhenNoProviderAnswersBeforeTheDeadline()
+    {
+        mOtherDispatcher.setThrottle( 5000, 0 );
+        MultiProviderFetcher fetcher =
+                new MultiProviderFetcher( Arrays.asList( provider( "other", mOtherServer ) ), 500 );
+        
+        assertNull( fetcher.fetch( queryUrl() ) );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.engineerfadyfawzi.quakereport;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a canceled load of a large feed stops within a bounded time, both while the
+ * response is downloading and while it's parsed, instead of running to the end.
+ */
+@RunWith( AndroidJUnit4.class )
+public class QueryUtilsCancellationTest
+{
+    /**
+     * Same size as a "limit=20000" USGS response.
+     */
+    private static final int FEATURE_COUNT = 20000;
+    
+    /**
+     * Longest time in milliseconds a canceled load may take to stop.
+     */
+    private static final long MAX_STOP_MILLIS = 1000;
+    
+    private static String sFeed;
+    
+    private MockWebServer mServer;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        if ( sFeed == null )
+        {
+            StringWriter writer = new StringWriter();
+            FeedFixtures.writeFeed( writer, FEATURE_COUNT, 0L );
+            sFeed = writer.toString();
+        }
+        
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        mServer.shutdown();
+    }
+    
+    @Test
+    public void fetchEarthquakeData_canceledWhileDownloading_stopsWithinBoundedTime() throws Exception
+    {
+        // Send the feed at 256 KB/s, so the whole download would take several seconds
+        mServer.enqueue( new MockResponse().setBody( sFeed )
+                .throttleBody( 16 * 1024, 64, TimeUnit.MILLISECONDS ) );
+        final String url = mServer.url( "/fdsnws/event/1/query" ).toString();
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future< FeedResponse > feedResponse = executor.submit( new Callable< FeedResponse >()
+        {
+            @Override
+            public FeedResponse call()
+            {
+                return QueryUtils.fetchEarthquakeData( url, null, null, cancellationSignal );
+            }
+        } );
+        
+        // Cancel once the download is well under way
+        Thread.sleep( 500 );
+        assertFalse( feedResponse.isDone() );
+        long canceledAt = System.nanoTime();
+        cancellationSignal.cancel();
+        
+        assertNull( feedResponse.get( 5, TimeUnit.SECONDS ) );
+        long stopMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - canceledAt );
+        assertTrue( "canceled load took " + stopMillis + " ms to stop", stopMillis < MAX_STOP_MILLIS );
+        executor.shutdown();
+    }
+    
+    @Test
+    public void readEarthquakesFromStream_canceledWhileParsing_stopsAtTheNextEarthquake() throws IOException
+    {
+        byte[] feed = sFeed.getBytes( Charset.forName( "UTF-8" ) );
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        final int cancelAt = feed.length / 4;
+        
+        // Cancel the parse once a quarter of the feed is read, and count what's read after that
+        final long[] bytesRead = new long[ 1 ];
+        InputStream inputStream = new FilterInputStream( new ByteArrayInputStream( feed ) )
+        {
+            @Override
+            public int read( byte[] buffer, int offset, int length ) throws IOException
+            {
+                int count = super.read( buffer, offset, Math.min( length, 1024 ) );
+                if ( count > 0 )
+                    bytesRead[ 0 ] += count;
+                if ( bytesRead[ 0 ] >= cancelAt )
+                    cancellationSignal.cancel();
+                return count;
+            }
+        };
+        
+        try
+        {
+            QueryUtils.readEarthquakesFromStream( inputStream, cancellationSignal );
+            fail();
+        }
+        catch ( InterruptedIOException interruptedIOException )
+        {
+            // The parse stopped at the next earthquake, within a buffer of the cancellation
+            assertTrue( "read " + bytesRead[ 0 ] + " bytes after canceling at " + cancelAt,
+                    bytesRead[ 0 ] < cancelAt + 16 * 1024 );
+        }
+    }
+    
+    @Test
+    public void readEarthquakesFromStream_canceledBeforeParsing_readsNoEarthquake()
+    {
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+        
+        try
+        {
+            QueryUtils.readEarthquakesFromStream( new ByteArrayInputStream(
+                    sFeed.getBytes( Charset.forName( "UTF-8" ) ) ), cancellationSignal );
+            fail();
+        }
+        catch ( IOException ioException )
+        {
+            assertTrue( ioException instanceof InterruptedIOException );
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+package com.engineerfadyfawzi.quakereport;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the earthquakes of a response are published in batches while it's parsed,
+ * the first one after only a few KB of it, long before a slow download ends.
+ */
+@RunWith( AndroidJUnit4.class )
+public class QueryUtilsProgressiveParseTest
+{
+    private static final int FEATURE_COUNT = 1000;
+    
+    private static String sFeed;
+    
+    private MockWebServer mServer;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        if ( sFeed == null )
+        {
+            StringWriter writer = new StringWriter();
+            FeedFixtures.writeFeed( writer, FEATURE_COUNT, 0L );
+            sFeed = writer.toString();
+        }
+        
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        mServer.shutdown();
+    }
+    
+    @Test
+    public void readEarthquakesFromStream_publishesDoublingBatchesOfTheEarthquakesParsedSoFar()
+            throws IOException
+    {
+        byte[] feed = sFeed.getBytes( Charset.forName( "UTF-8" ) );
+        
+        // Count the bytes read when every batch is published
+        final long[] bytesRead = new long[ 1 ];
+        InputStream inputStream = new FilterInputStream( new ByteArrayInputStream( feed ) )
+        {
+            @Override
+            public int read( byte[] buffer, int offset, int length ) throws IOException
+            {
+                int count = super.read( buffer, offset, Math.min( length, 1024 ) );
+                if ( count > 0 )
+                    bytesRead[ 0 ] += count;
+                return count;
+            }
+        };
+        
+        final List< EarthquakeTable > batches = new ArrayList<>();
+        final List< Long > batchBytes = new ArrayList<>();
+        EarthquakeTable earthquakes = QueryUtils.readEarthquakesFromStream( inputStream, null,
+                new QueryUtils.OnEarthquakesParsedListener()
+                {
+                    @Override
+                    public void onEarthquakesParsed( EarthquakeTable earthquakes )
+                    {
+                        batches.add( earthquakes );
+                        batchBytes.add( bytesRead[ 0 ] );
+                    }
+                } );
+        
+        assertEquals( FEATURE_COUNT, earthquakes.size() );
+        
+        // 8, 16, 32, ... 512 earthquakes, each batch starting with the earthquakes of the previous one
+        assertEquals( 7, batches.size() );
+        for ( int i = 0; i < batches.size(); i++ )
+        {
+            EarthquakeTable batch = batches.get( i );
+            assertEquals( QueryUtils.FIRST_BATCH_SIZE << i, batch.size() );
+            for ( int row = 0; row < batch.size(); row++ )
+                assertTrue( batch.rowEquals( row, earthquakes, row ) );
+        }
+        
+        // The first batch only waited for a few KB, within a buffer of the reader
+        assertTrue( "first batch after " + batchBytes.get( 0 ) + " bytes", batchBytes.get( 0 ) < 16 * 1024 );
+    }
+    
+    @Test
+    public void fetchEarthquakeData_publishesTheFirstBatchBeforeTheDownloadEnds()
+    {
+        // Send the feed at 256 KB/s, so the whole download takes a few seconds
+        mServer.enqueue( new MockResponse().setBody( sFeed )
+                .throttleBody( 16 * 1024, 64, TimeUnit.MILLISECONDS ) );
+        String url = mServer.url( "/fdsnws/event/1/query" ).toString();
+        
+        final long start = System.nanoTime();
+        final long[] firstBatchTime = new long[ 1 ];
+        FeedResponse feedResponse = QueryUtils.fetchEarthquakeData( url, null, null, null,
+                new QueryUtils.OnEarthquakesParsedListener()
+                {
+                    @Override
+                    public void onEarthquakesParsed( EarthquakeTable earthquakes )
+                    {
+                        if ( firstBatchTime[ 0 ] == 0 )
+                            firstBatchTime[ 0 ] = System.nanoTime() - start;
+                    }
+                } );
+        long responseTime = System.nanoTime() - start;
+        
+        assertEquals( FEATURE_COUNT, feedResponse.getEarthquakes().size() );
+        assertTrue( "first batch after " + firstBatchTime[ 0 ] + " ns, response after " + responseTime + " ns",
+                firstBatchTime[ 0 ] > 0 && firstBatchTime[ 0 ] < responseTime / 10 );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the streaming parser with the old "whole body String + org.json DOM" path
+ * on a large feed, in both bytes allocated and parse time.
+ */
+@RunWith( AndroidJUnit4.class )
+public class QueryUtilsStreamingParseTest
+{
+    private static final String LOG_TAG = QueryUtilsStreamingParseTest.class.getSimpleName();
+    
+    /**
+     * Same size as a "limit=20000" USGS response.
+     */
+    private static final int FEATURE_COUNT = 20000;
+    
+    private static final int ROUNDS = 3;
+    
+    private static File sFeed;
+    
+    @BeforeClass
+    public static void writeFeed() throws IOException
+    {
+        File cacheDir = InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir();
+        sFeed = FeedFixtures.writeFeed( cacheDir, FEATURE_COUNT );
+    }
+    
+    @AfterClass
+    public static void deleteFeed()
+    {
+        sFeed.delete();
+    }
+    
+    @Test
+    public void streamingParse_returnsSameEarthquakes() throws IOException
+    {
+        EarthquakeTable streamed = parseStreaming();
+        List< Earthquake > dom = parseDom();
+        
+        assertEquals( FEATURE_COUNT, streamed.size() );
+        assertEquals( dom.size(), streamed.size() );
+        for ( int i = 0; i < dom.size(); i++ )
+        {
+            assertEquals( dom.get( i ).getMagnitude(), streamed.getMagnitude( i ), 0 );
+            assertEquals( dom.get( i ).getLocation(), streamed.getLocation( i ) );
+            assertEquals( dom.get( i ).getTimeInMilliseconds(), streamed.getTimeInMilliseconds( i ) );
+            assertEquals( dom.get( i ).getUrl(), streamed.getUrl( i ) );
+            assertEquals( dom.get( i ).getLongitude(), streamed.getLongitude( i ), 0 );
+            assertEquals( dom.get( i ).getLatitude(), streamed.getLatitude( i ), 0 );
+            assertEquals( dom.get( i ).getDepth(), streamed.getDepth( i ), 0 );
+        }
+    }
+    
+    @Test
+    public void streamingParse_readsTheOptionalPropertiesAndTheUrls() throws IOException
+    {
+        String feed = "{\"type\":\"FeatureCollection\",\"features\":[" +
+                "{\"type\":\"Feature\",\"properties\":{\"mag\":7.1,\"place\":\"Tonga\",\"time\":100," +
+                "\"updated\":110,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/us1\"," +
+                "\"felt\":1523,\"alert\":\"orange\",\"tsunami\":1,\"sig\":776}," +
+                "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-175.2,-21.1,10]},\"id\":\"us1\"}," +
+                "{\"type\":\"Feature\",\"properties\":{\"mag\":2.5,\"place\":\"Tonga\",\"time\":200," +
+                "\"updated\":210,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/us2#executive\"," +
+                "\"felt\":null,\"alert\":null,\"tsunami\":0,\"sig\":96}," +
+                "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-175.2,-21.1,10]},\"id\":\"us2\"}," +
+                "{\"type\":\"Feature\",\"properties\":{\"mag\":3.0,\"place\":\"Tonga\",\"time\":300," +
+                "\"updated\":310,\"url\":\"https://example.com/events?id=us3\"}," +
+                "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-175.2,-21.1,10]},\"id\":\"us3\"}]}";
+        
+        EarthquakeTable earthquakes = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream( feed.getBytes( Charset.forName( "UTF-8" ) ) ) );
+        
+        assertEquals( 3, earthquakes.size() );
+        assertEquals( "https://earthquake.usgs.gov/earthquakes/eventpage/us1", earthquakes.getUrl( 0 ) );
+        assertEquals( 1523, earthquakes.getFelt( 0 ) );
+        assertEquals( 776, earthquakes.getSignificance( 0 ) );
+        assertTrue( earthquakes.isTsunami( 0 ) );
+        assertEquals( "orange", earthquakes.getAlertLevel( 0 ) );
+        
+        // The URLs that aren't the event page of their id are kept as they are
+        assertEquals( "https://earthquake.usgs.gov/earthquakes/eventpage/us2#executive", earthquakes.getUrl( 1 ) );
+        assertEquals( "https://example.com/events?id=us3", earthquakes.getUrl( 2 ) );
+        assertEquals( -1, earthquakes.getFelt( 1 ) );
+        assertEquals( 96, earthquakes.getSignificance( 1 ) );
+        assertFalse( earthquakes.isTsunami( 1 ) );
+        assertNull( earthquakes.getAlertLevel( 1 ) );
+    }
+    
+    @Test
+    public void streamingParse_allocatesLessAndIsFaster() throws IOException
+    {
+        // The ART allocation counter is only exposed from Marshmallow on.
+        assumeTrue( Build.VERSION.SDK_INT >= Build.VERSION_CODES.M );
+        
+        // Warm up both paths so we don't measure class loading and JIT
+        parseStreaming();
+        parseDom();
+        
+        long streamingBytes = Long.MAX_VALUE, streamingNanos = Long.MAX_VALUE;
+        long domBytes = Long.MAX_VALUE, domNanos = Long.MAX_VALUE;
+        
+        for ( int round = 0; round < ROUNDS; round++ )
+        {
+            Runtime.getRuntime().gc();
+            long bytes = allocatedBytes();
+            long start = SystemClock.elapsedRealtimeNanos();
+            parseStreaming();
+            streamingNanos = Math.min( streamingNanos, SystemClock.elapsedRealtimeNanos() - start );
+            streamingBytes = Math.min( streamingBytes, allocatedBytes() - bytes );
+            
+            Runtime.getRuntime().gc();
+            bytes = allocatedBytes();
+            start = SystemClock.elapsedRealtimeNanos();
+            parseDom();
+            domNanos = Math.min( domNanos, SystemClock.elapsedRealtimeNanos() - start );
+            domBytes = Math.min( domBytes, allocatedBytes() - bytes );
+        }
+        
+        Log.i( LOG_TAG, "streaming: " + streamingBytes + " bytes, " + streamingNanos / 1000000 + " ms" );
+        Log.i( LOG_TAG, "string + DOM: " + domBytes + " bytes, " + domNanos / 1000000 + " ms" );
+        
+        assertTrue( "streaming parse allocated " + streamingBytes + " bytes, DOM parse " + domBytes,
+                streamingBytes < domBytes );
+        assertTrue( "streaming parse took " + streamingNanos + " ns, DOM parse " + domNanos,
+                streamingNanos < domNanos );
+    }
+    
+    private static EarthquakeTable parseStreaming() throws IOException
+    {
+        InputStream inputStream = new BufferedInputStream( new FileInputStream( sFeed ) );
+        try
+        {
+            return QueryUtils.readEarthquakesFromStream( inputStream );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+    
+    private static List< Earthquake > parseDom() throws IOException
+    {
+        InputStream inputStream = new BufferedInputStream( new FileInputStream( sFeed ) );
+        try
+        {
+            return QueryUtils.extractFeatureFromJson( QueryUtils.readFromStream( inputStream ) );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+    
+    private static long allocatedBytes()
+    {
+        return Long.parseLong( Debug.getRuntimeStat( "art.gc.bytes-allocated" ) );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.engineerfadyfawzi.quakereport;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sharded fetch of {@link ShardedFetcher} against a local fake FDSN server,
+ * which returns the same earthquakes as a single query of the whole time range.
+ */
+@RunWith( AndroidJUnit4.class )
+public class ShardedFetcherFdsnTest
+{
+    /**
+     * 2020-01-01T00:00:00Z to 2021-01-01T00:00:00Z
+     */
+    private static final long START_TIME = 1577836800000L;
+    
+    private static final long END_TIME = 1609459200000L;
+    
+    private static final int EARTHQUAKE_COUNT = 5000;
+    
+    private MockWebServer mServer;
+    
+    private FakeFdsnDispatcher mDispatcher;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        mDispatcher = new FakeFdsnDispatcher( EARTHQUAKE_COUNT, START_TIME, END_TIME, 20000 );
+        mServer = new MockWebServer();
+        mServer.setDispatcher( mDispatcher );
+        mServer.start();
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        mServer.shutdown();
+    }
+    
+    private String queryUrl( String orderBy )
+    {
+        return mServer.url( "/fdsnws/event/1/query" ).newBuilder()
+                .addQueryParameter( "format", "geojson" )
+                .addQueryParameter( "orderby", orderBy )
+                .build().toString();
+    }
+    
+    /**
+     * Returns the earthquakes of a single query of the whole time range.
+     */
+    private EarthquakeTable fetchUnsharded( String orderBy )
+    {
+        return QueryUtils.fetchEarthquakeData( queryUrl( orderBy ) + "&limit=" + EARTHQUAKE_COUNT );
+    }
+    
+    @Test
+    public void fetch_splitsTruncatedWindowsAndMergesInTimeOrder()
+    {
+        // A cap of 500 earthquakes truncates the 4 first windows, of about 1250 earthquakes
+        EarthquakeTable earthquakes =
+                new ShardedFetcher( 4, 500 ).fetch( queryUrl( "time" ), START_TIME, END_TIME );
+        
+        assertNotNull( earthquakes );
+        assertEquals( EARTHQUAKE_COUNT, earthquakes.size() );
+        assertEquals( fetchUnsharded( "time" ), earthquakes );
+        assertTrue( mDispatcher.getRequestCount() > 4 + 1 );
+        
+        Set< String > ids = new HashSet<>();
+        for ( int row = 0; row < earthquakes.size(); row++ )
+            assertTrue( ids.add( earthquakes.getId( row ) ) );
+    }
+    
+    @Test
+    public void fetch_mergesInMagnitudeOrder()
+    {
+        for ( String orderBy : new String[] { "magnitude", "magnitude-asc", "time-asc" } )
+        {
+            EarthquakeTable earthquakes =
+                    new ShardedFetcher( 8, 700 ).fetch( queryUrl( orderBy ), START_TIME, END_TIME );
+            
+            assertEquals( orderBy, fetchUnsharded( orderBy ), earthquakes );
+        }
+    }
+    
+    @Test
+    public void fetch_withOneShard_isASingleQuery()
+    {
+        EarthquakeTable earthquakes =
+                new ShardedFetcher( 1 ).fetch( queryUrl( "time" ), START_TIME, END_TIME );
+        
+        assertEquals( fetchUnsharded( "time" ), earthquakes );
+        assertEquals( 2, mDispatcher.getRequestCount() );
+    }
+    
+    @Test
+    public void fetch_returnsNullWhenAShardFails() throws IOException
+    {
+        String queryUrl = queryUrl( "time" );
+        mServer.shutdown();
+        
+        assertNull( new ShardedFetcher( 4 ).fetch( queryUrl, START_TIME, END_TIME ) );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the time from launching {@link EarthquakeActivity} to its first meaningful frame,
+ * the first rows of the list laid out, when it starts from the feed cache alone (like it did
+ * before the last list was kept), and when it starts from the last list displayed.
+ *
+ * The feed cache holds a fresh first page, so no launch asks the network. Every launch is
+ * a new activity with a new loader, but not a new process, so the preferences are already
+ * in memory and the measured times are lower bounds of the cold starts.
+ */
+@RunWith( AndroidJUnit4.class )
+public class StartupBenchmarkTest
+{
+    private static final String LOG_TAG = StartupBenchmarkTest.class.getSimpleName();
+    
+    private static final int LAUNCHES = 10;
+    
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis( 10 );
+    
+    private Context mContext;
+    
+    private LastListCache mLastListCache;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mLastListCache = new LastListCache( new File( mContext.getCacheDir(), "last_list.snapshot" ),
+                EarthquakeActivity.PAGE_SIZE );
+        
+        String pageUrl = EarthquakeLoader.buildPageUrl(
+                EarthquakeActivity.buildQueryUrl( mContext ), 0, EarthquakeActivity.PAGE_SIZE );
+        StringWriter writer = new StringWriter();
+        FeedFixtures.writeFeed( writer, EarthquakeActivity.PAGE_SIZE, 1 );
+        EarthquakeTable firstPage = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream( writer.toString().getBytes( Charset.forName( "UTF-8" ) ) ) );
+        EarthquakeActivity.createFeedCache( mContext ).put( pageUrl, firstPage, null, null );
+    }
+    
+    @After
+    public void tearDown()
+    {
+        mLastListCache.clear();
+    }
+    
+    @Test
+    public void lastList_isDisplayedBeforeTheFeedCache() throws Exception
+    {
+        // Warm up the code paths, this launch also stores the last list when it stops
+        timeToFirstList();
+        
+        long[] lastListTimes = new long[ LAUNCHES ];
+        for ( int i = 0; i < LAUNCHES; i++ )
+            lastListTimes[ i ] = timeToFirstList();
+        
+        long[] feedCacheTimes = new long[ LAUNCHES ];
+        for ( int i = 0; i < LAUNCHES; i++ )
+        {
+            mLastListCache.clear();
+            feedCacheTimes[ i ] = timeToFirstList();
+        }
+        
+        long lastListMedian = median( lastListTimes );
+        long feedCacheMedian = median( feedCacheTimes );
+        Log.i( LOG_TAG, "feed cache median time to first list: " + feedCacheMedian / 1000 + " us" );
+        Log.i( LOG_TAG, "last list median time to first list: " + lastListMedian / 1000 + " us" );
+        
+        assertTrue( "last list " + lastListMedian + " ns, feed cache " + feedCacheMedian + " ns",
+                lastListMedian < feedCacheMedian );
+    }
+    
+    /**
+     * Launch the activity and return the time in nanoseconds until its list has rows laid out,
+     * then finish it and wait until it stored its last list.
+     */
+    private long timeToFirstList() throws InterruptedException
+    {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Intent intent = new Intent( mContext, EarthquakeActivity.class )
+                .addFlags( Intent.FLAG_ACTIVITY_NEW_TASK );
+        
+        long start = SystemClock.elapsedRealtimeNanos();
+        final Activity activity = instrumentation.startActivitySync( intent );
+        final RecyclerView recyclerView = activity.findViewById( R.id.recycler_view );
+        final boolean[] laidOut = new boolean[ 1 ];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while ( !laidOut[ 0 ] )
+        {
+            assertTrue( "no list displayed", SystemClock.elapsedRealtime() < deadline );
+            instrumentation.runOnMainSync( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    laidOut[ 0 ] = recyclerView.getChildCount() > 0 &&
+                            recyclerView.getChildAt( 0 ).getVisibility() == View.VISIBLE;
+                }
+            } );
+            if ( !laidOut[ 0 ] )
+                Thread.sleep( 1 );
+        }
+        long time = SystemClock.elapsedRealtimeNanos() - start;
+        
+        activity.finish();
+        instrumentation.waitForIdleSync();
+        
+        // The last list is written in the background once the activity stops
+        deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while ( mLastListCache.read() == null )
+        {
+            assertTrue( "no last list stored", SystemClock.elapsedRealtime() < deadline );
+            Thread.sleep( 10 );
+        }
+        return time;
+    }
+    
+    private static long median( long[] values )
+    {
+        long[] sorted = values.clone();
+        Arrays.sort( sorted );
+        return sorted[ sorted.length / 2 ];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A {@link CancellationSignal} tells a request and the parse of its response that nobody
+ * waits for them anymore, i.e. their loader was restarted, so they stop right away.
+ *
+ * Same as android.os.CancellationSignal, which isn't available before API level 16,
+ * except that {@link #throwIfCanceled()} throws an {@link InterruptedIOException}, so
+ * a canceled request fails like any request whose connection was lost.
+ */
+public class CancellationSignal
+{
+    /**
+     * Listens for the cancellation of a {@link CancellationSignal}.
+     */
+    public interface OnCancelListener
+    {
+        /**
+         * Called when the signal is canceled, on the thread that canceled it.
+         */
+        void onCancel();
+    }
+    
+    private boolean mCanceled;
+    
+    private OnCancelListener mOnCancelListener;
+    
+    /**
+     * Returns whether the signal was canceled.
+     */
+    public synchronized boolean isCanceled()
+    {
+        return mCanceled;
+    }
+    
+    /**
+     * Throw an {@link InterruptedIOException} if the signal was canceled.
+     */
+    public void throwIfCanceled() throws InterruptedIOException
+    {
+        if ( isCanceled() )
+            throw new InterruptedIOException( "Canceled" );
+    }
+    
+    /**
+     * Cancel the signal and call its listener, if it wasn't canceled already.
+     */
+    public void cancel()
+    {
+        OnCancelListener onCancelListener;
+        synchronized ( this )
+        {
+            if ( mCanceled )
+                return;
+            
+            mCanceled = true;
+            onCancelListener = mOnCancelListener;
+        }
+        
+        // Call the listener outside the lock, it may take a while (i.e. closing a socket)
+        if ( onCancelListener != null )
+            onCancelListener.onCancel();
+    }
+    
+    /**
+     * Set the listener called when the signal is canceled, replacing the previous one.
+     * It's called right away if the signal is already canceled.
+     *
+     * @param onCancelListener is the listener, or null to remove the previous one
+     */
+    public void setOnCancelListener( OnCancelListener onCancelListener )
+    {
+        synchronized ( this )
+        {
+            mOnCancelListener = onCancelListener;
+            if ( !mCanceled || onCancelListener == null )
+                return;
+        }
+        
+        onCancelListener.onCancel();
+    }
+}
\ No newline at end of file
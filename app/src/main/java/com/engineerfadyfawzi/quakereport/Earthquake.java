@@ -5,6 +5,11 @@ package com.engineerfadyfawzi.quakereport;
  */
 public class Earthquake
 {
+    /**
+     * USGS event id of the earthquake (i.e. "us7000c2zk")
+     */
+    private String mId;
+    
     /**
      * Magnitude of the earthquake
      */
@@ -20,26 +25,95 @@ public class Earthquake
      */
     private long mTimeInMilliseconds;
     
+    /**
+     * Time in milliseconds when the information of the earthquake was last updated
+     */
+    private long mUpdated;
+    
     /**
      * Website URL of the earthquake
      */
     private String mUrl;
     
+    /**
+     * Whether USGS deleted the earthquake (i.e. it was a duplicate or a false detection)
+     */
+    private boolean mDeleted;
+    
+    /**
+     * Longitude of the epicenter, in degrees, or NaN if it's unknown
+     */
+    private double mLongitude;
+    
+    /**
+     * Latitude of the epicenter, in degrees, or NaN if it's unknown
+     */
+    private double mLatitude;
+    
+    /**
+     * Depth of the hypocenter, in kilometers, or NaN if it's unknown
+     */
+    private double mDepth;
+    
     /**
      * Constructs a new {@link Earthquake} object.
      *
+     * @param id is the USGS event id of the earthquake
      * @param magnitude is the magnitude (size) of the earthquake
      * @param location is the location where the earthquake happened
      * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when
      * the earthquake happened
+     * @param updated is the time in milliseconds (from the Epoch) when the information of
+     * the earthquake was last updated
      * @param url is the website URL to find more details about the earthquake.
      */
-    public Earthquake( double magnitude, String location, long timeInMilliseconds, String url )
+    public Earthquake( String id, double magnitude, String location, long timeInMilliseconds,
+                       long updated, String url )
     {
+        this( id, magnitude, location, timeInMilliseconds, updated, url, false );
+    }
+    
+    /**
+     * Constructs a new {@link Earthquake} object, which may have been deleted by USGS.
+     *
+     * @param deleted is whether USGS deleted the earthquake
+     */
+    public Earthquake( String id, double magnitude, String location, long timeInMilliseconds,
+                       long updated, String url, boolean deleted )
+    {
+        this( id, magnitude, location, timeInMilliseconds, updated, url, deleted,
+                Double.NaN, Double.NaN, Double.NaN );
+    }
+    
+    /**
+     * Constructs a new {@link Earthquake} object with the coordinates of its "geometry".
+     *
+     * @param longitude is the longitude of the epicenter, in degrees
+     * @param latitude is the latitude of the epicenter, in degrees
+     * @param depth is the depth of the hypocenter, in kilometers
+     */
+    public Earthquake( String id, double magnitude, String location, long timeInMilliseconds,
+                       long updated, String url, boolean deleted,
+                       double longitude, double latitude, double depth )
+    {
+        mId = id;
         mMagnitude = magnitude;
         mLocation = location;
         mTimeInMilliseconds = timeInMilliseconds;
+        mUpdated = updated;
         mUrl = url;
+        mDeleted = deleted;
+        mLongitude = longitude;
+        mLatitude = latitude;
+        mDepth = depth;
+    }
+    
+    /**
+     * Returns the USGS event id of the earthquake.
+     */
+    public String getId()
+    {
+        return mId;
     }
     
     /**
@@ -67,6 +141,14 @@ public class Earthquake
         
     }
     
+    /**
+     * Returns the time the information of the earthquake was last updated.
+     */
+    public long getUpdated()
+    {
+        return mUpdated;
+    }
+    
     /**
      * Returns the website URL to find more information about the earthquake.
      */
@@ -74,4 +156,78 @@ public class Earthquake
     {
         return mUrl;
     }
+    
+    /**
+     * Returns whether USGS deleted the earthquake, so it shouldn't be displayed anymore.
+     */
+    public boolean isDeleted()
+    {
+        return mDeleted;
+    }
+    
+    /**
+     * Returns the longitude of the epicenter, in degrees, or NaN if it's unknown.
+     */
+    public double getLongitude()
+    {
+        return mLongitude;
+    }
+    
+    /**
+     * Returns the latitude of the epicenter, in degrees, or NaN if it's unknown.
+     */
+    public double getLatitude()
+    {
+        return mLatitude;
+    }
+    
+    /**
+     * Returns the depth of the hypocenter, in kilometers, or NaN if it's unknown.
+     */
+    public double getDepth()
+    {
+        return mDepth;
+    }
+    
+    /**
+     * Two earthquakes are equal when all of their information is the same, which is how
+     * a reloaded list of earthquakes is found to be unchanged.
+     */
+    @Override
+    public boolean equals( Object object )
+    {
+        if ( this == object )
+            return true;
+        
+        if ( !( object instanceof Earthquake ) )
+            return false;
+        
+        Earthquake earthquake = ( Earthquake ) object;
+        return Double.compare( mMagnitude, earthquake.mMagnitude ) == 0 &&
+                mTimeInMilliseconds == earthquake.mTimeInMilliseconds &&
+                mUpdated == earthquake.mUpdated &&
+                mDeleted == earthquake.mDeleted &&
+                Double.compare( mLongitude, earthquake.mLongitude ) == 0 &&
+                Double.compare( mLatitude, earthquake.mLatitude ) == 0 &&
+                Double.compare( mDepth, earthquake.mDepth ) == 0 &&
+                ( mId == null ? earthquake.mId == null : mId.equals( earthquake.mId ) ) &&
+                ( mLocation == null ? earthquake.mLocation == null : mLocation.equals( earthquake.mLocation ) ) &&
+                ( mUrl == null ? earthquake.mUrl == null : mUrl.equals( earthquake.mUrl ) );
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        long magnitudeBits = Double.doubleToLongBits( mMagnitude );
+        long coordinatesBits = Double.doubleToLongBits( mLongitude ) ^ Double.doubleToLongBits( mLatitude );
+        int result = mId == null ? 0 : mId.hashCode();
+        result = 31 * result + ( int ) ( magnitudeBits ^ ( magnitudeBits >>> 32 ) );
+        result = 31 * result + ( mLocation == null ? 0 : mLocation.hashCode() );
+        result = 31 * result + ( int ) ( mTimeInMilliseconds ^ ( mTimeInMilliseconds >>> 32 ) );
+        result = 31 * result + ( int ) ( mUpdated ^ ( mUpdated >>> 32 ) );
+        result = 31 * result + ( mUrl == null ? 0 : mUrl.hashCode() );
+        result = 31 * result + ( mDeleted ? 1 : 0 );
+        result = 31 * result + ( int ) ( coordinatesBits ^ ( coordinatesBits >>> 32 ) );
+        return result;
+    }
 }
\ No newline at end of file
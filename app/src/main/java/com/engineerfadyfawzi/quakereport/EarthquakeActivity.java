@@ -1,9 +1,12 @@
 package com.engineerfadyfawzi.quakereport;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.app.LoaderManager.LoaderCallbacks;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.Context;
 import android.content.Intent;
@@ -12,19 +15,23 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class EarthquakeActivity extends AppCompatActivity implements
-        LoaderCallbacks< List< Earthquake > >,
+        LoaderCallbacks< EarthquakeLoader.Result >,
         SharedPreferences.OnSharedPreferenceChangeListener
 {
     /**
@@ -39,7 +46,7 @@ public class EarthquakeActivity extends AppCompatActivity implements
      * the URI (such as JSON response format, 10 earthquakes requested, minimum magnitude value,
      * and sort order).
      */
-    private static final String USGS_REQUEST_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+    private static final String USGS_REQUEST_URL = EarthquakeProvider.USGS.getQueryUrl();
     
     /**
      * Constant value for the earthquake loader ID. We can choose any integer.
@@ -47,11 +54,117 @@ public class EarthquakeActivity extends AppCompatActivity implements
      */
     private static final int EARTHQUAKE_LOADER_ID = 1;
     
+    /**
+     * Number of earthquakes requested per page. It's kept small so the first page is rendered
+     * quickly, no matter how many earthquakes the query matches.
+     */
+    static final int PAGE_SIZE = 20;
+    
+    /**
+     * Number of earthquakes left below the last visible one when the next page starts loading,
+     * so it's usually displayed before the user reaches the end of the list.
+     */
+    private static final int PREFETCH_DISTANCE = 10;
+    
+    /**
+     * Time in milliseconds the loader waits for the query settings to stop changing
+     * before it's restarted
+     */
+    private static final long RESTART_DEBOUNCE_MILLIS = 300;
+    
+    /**
+     * Number of rows of the displayed list kept for the next cold start, about a screen of them
+     */
+    private static final int LAST_LIST_ROW_COUNT = PAGE_SIZE;
+    
+    /**
+     * Executor reading the last list and the preferences on a cold start, and writing the
+     * last list when the activity stops, in order
+     */
+    private static final Executor sStartupExecutor = Executors.newSingleThreadExecutor();
+    
     /**
      * Adapter for the list of earthquakes
      */
     private EarthquakeAdapter mAdapter;
     
+    /**
+     * Persistent cache of the earthquakes loaded for each query
+     */
+    private FeedCache mFeedCache;
+    
+    /**
+     * Cache of the first rows of the list displayed last, displayed on a cold start
+     */
+    private LastListCache mLastListCache;
+    
+    /**
+     * Earthquakes stored in the last list cache, or read from it, so they aren't written again
+     */
+    private EarthquakeTable mLastListEarthquakes;
+    
+    /**
+     * Whether the activity is destroyed, then the startup work finishing in the background
+     * is dropped
+     */
+    private boolean mDestroyed;
+    
+    /**
+     * Poller merging the new earthquakes of the live feed into the loaded ones, while the
+     * live updates are on and the activity is started
+     */
+    private LiveFeedPoller mLiveFeedPoller;
+    
+    /**
+     * Whether the activity is started (visible)
+     */
+    private boolean mStarted;
+    
+    /**
+     * Whether the loader is initialized, then the preferences are loaded
+     */
+    private boolean mLoaderInitialized;
+    
+    /**
+     * Planner of the earthquakes loaded for the previous query settings, handed to the loader
+     * of the new settings so it can answer them locally
+     */
+    private QueryPlanner mPreviousQuery;
+    
+    /**
+     * Earthquakes delivered by the loader, before they're filtered by the search query
+     */
+    private EarthquakeTable mEarthquakes = EarthquakeTable.EMPTY;
+    
+    /**
+     * What the user typed in the search view, the displayed earthquakes have a primary
+     * location matching it
+     */
+    private String mSearchQuery = "";
+    
+    /**
+     * Index of the delivered earthquakes, taken from the loader, which may index the next ones
+     * before they're delivered
+     */
+    private LocationSearchIndex mSearchIndex;
+    
+    /**
+     * Handler of the main thread, restarting the loader once the query settings stop changing
+     */
+    private Handler mHandler = new Handler( Looper.getMainLooper() );
+    
+    /**
+     * Restart of the loader waiting for the query settings to stop changing
+     */
+    private Runnable mRestartLoader = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            restartLoader();
+        }
+    };
+    
     /**
      * TextView that is displayed when the list is empty.
      */
@@ -65,14 +178,62 @@ public class EarthquakeActivity extends AppCompatActivity implements
     @Override
     protected void onCreate( Bundle savedInstanceState )
     {
-        Log.i( LOG_TAG, "TEST: Earthquake Activity onCreate() called ..." );
-        
         super.onCreate( savedInstanceState );
         setContentView( R.layout.earthquake_activity );
         
         getEarthquakeData();
     }
     
+    @Override
+    protected void onStart()
+    {
+        super.onStart();
+        
+        mStarted = true;
+        updateLiveFeedPoller();
+    }
+    
+    @Override
+    protected void onStop()
+    {
+        super.onStop();
+        
+        // Don't poll the live feed in the background
+        mStarted = false;
+        updateLiveFeedPoller();
+        
+        // Keep the first rows of the displayed list for the next cold start, the activity
+        // may not be started again before the process is killed.
+        final EarthquakeTable earthquakes = mEarthquakes;
+        if ( earthquakes.isEmpty() || earthquakes == mLastListEarthquakes )
+            return;
+        
+        mLastListEarthquakes = earthquakes;
+        final LastListCache lastListCache = mLastListCache;
+        sStartupExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                lastListCache.write( earthquakes );
+            }
+        } );
+    }
+    
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        
+        mDestroyed = true;
+        mLiveFeedPoller.stop();
+        
+        // A pending restart is lost, the next activity restarts the loader if its query is outdated
+        mHandler.removeCallbacks( mRestartLoader );
+        PreferenceManager.getDefaultSharedPreferences( this )
+                .unregisterOnSharedPreferenceChangeListener( this );
+    }
+    
     /**
      * We need onCreateLoader(), for when the LoaderManager has determined that the loader with our
      * specified ID isn't running, so we should create a new one.
@@ -82,41 +243,62 @@ public class EarthquakeActivity extends AppCompatActivity implements
      * @return
      */
     @Override
-    public Loader< List< Earthquake > > onCreateLoader( int id, Bundle args )
+    public Loader< EarthquakeLoader.Result > onCreateLoader( int id, Bundle args )
+    {
+        // Create a new loader for the URI of the user's latest preferences for the minimum
+        // magnitude and the order, it adds the "offset" and "limit" of every page it requests.
+        QueryPlanner previousQuery = mPreviousQuery;
+        mPreviousQuery = null;
+        return new EarthquakeLoader( this, buildQueryUrl( this ), PAGE_SIZE, mFeedCache, previousQuery,
+                EarthquakeArchive.getInstance( this ) );
+    }
+    
+    /**
+     * Returns the USGS query URL of the user's latest preferences for the minimum magnitude
+     * and the order, without the "offset" and "limit" of a page.
+     *
+     * @param context of the app
+     */
+    static String buildQueryUrl( Context context )
     {
-        Log.i( LOG_TAG, "TEST: onCreateLoader() called ..." );
-        
-        // Read the user's latest preferences for the minimum magnitude,
-        // construct a proper URI with their preference, and then
-        // create a new Loader for that URI.
-        
         // Read from SharedPreferences and check the value associated with the key.
         SharedPreferences sharedPreferences =
-                PreferenceManager.getDefaultSharedPreferences( this );
+                PreferenceManager.getDefaultSharedPreferences( context );
         
         // SharedPreferences class's getString method: returns the preference value if it exists,
         // or default value which is the second argument of this method
         // (Value to return if this preference does not exist).
         
         String minMagnitude = sharedPreferences.getString(
-                getString( R.string.settings_min_magnitude_key ),
-                getString( R.string.settings_min_magnitude_default ) );
+                context.getString( R.string.settings_min_magnitude_key ),
+                context.getString( R.string.settings_min_magnitude_default ) );
         
         String orderBy = sharedPreferences.getString(
-                getString( R.string.settings_order_by_key ),
-                getString( R.string.settings_order_by_default ) );
-        
+                context.getString( R.string.settings_order_by_key ),
+                context.getString( R.string.settings_order_by_default ) );
         
         Uri baseUri = Uri.parse( USGS_REQUEST_URL );
         Uri.Builder uriBuilder = baseUri.buildUpon();
         
         uriBuilder.appendQueryParameter( "format", "geojson" );
-        uriBuilder.appendQueryParameter( "limit", "10" );
         uriBuilder.appendQueryParameter( "minmag", minMagnitude );
         uriBuilder.appendQueryParameter( "orderby", orderBy );
         
-        // Create a new loader for the previous URL builder
-        return new EarthquakeLoader( this, uriBuilder.toString() );
+        return uriBuilder.toString();
+    }
+    
+    /**
+     * Returns the cache of the earthquakes loaded for each query, which is shared by the loader
+     * and the background sync. Cached earthquakes older than the configured time to live
+     * are revalidated.
+     *
+     * @param context of the app
+     */
+    static FeedCache createFeedCache( Context context )
+    {
+        long feedCacheTimeToLive = TimeUnit.MINUTES.toMillis(
+                context.getResources().getInteger( R.integer.feed_cache_ttl_minutes ) );
+        return new FeedCache( new File( context.getCacheDir(), "feeds" ), feedCacheTimeToLive );
     }
     
     /**
@@ -124,32 +306,35 @@ public class EarthquakeActivity extends AppCompatActivity implements
      * and use the earthquake data to update our UI - by updating the data set in the adapter.
      *
      * @param loader
-     * @param earthquakes
+     * @param result
      */
     @Override
-    public void onLoadFinished( Loader< List< Earthquake > > loader, List< Earthquake > earthquakes )
+    public void onLoadFinished( Loader< EarthquakeLoader.Result > loader, EarthquakeLoader.Result result )
     {
-        Log.i( LOG_TAG, "TEST: onLoadFinished() called ..." );
+        EarthquakeTable earthquakes = result.getEarthquakes();
         
         // Hide loading indicator because the data has been loaded
         loadingSpinner.setVisibility( View.GONE );
         
         // Check the internet connection before setText to EmptyStateTextView
-        // to avoid show there no earthquakes instead of no internet while it's really not connected
-        if ( isConnected() )
-            mEmptyStateTextView.setText( R.string.no_earthquakes );
-        else
-            // Set empty state text to display "No earthquakes found."
-            mEmptyStateTextView.setText( R.string.no_internet_connection );
+        // to avoid show there no earthquakes instead of no internet while it's really not connected.
+        // The empty state is only displayed without earthquakes, and only then is it worth
+        // asking the ConnectivityManager.
+        if ( earthquakes == null || earthquakes.isEmpty() )
+        {
+            if ( isConnected() )
+                mEmptyStateTextView.setText( R.string.no_earthquakes );
+            else
+                // Set empty state text to display "No earthquakes found."
+                mEmptyStateTextView.setText( R.string.no_internet_connection );
+        }
         
         // Update the UI with the result
-        // Clear the adapter of previous earthquake data
-        mAdapter.clear();
-        
-        // If there is a valid list of {@link Earthquake}s, then add them to the adapters's
-        // data set. This will trigger the ListView to update.
-        if ( earthquakes != null && !earthquakes.isEmpty() )
-            mAdapter.addAll( earthquakes );
+        // The adapter computes the difference with the displayed earthquakes in the background,
+        // and only updates the changed rows, whether a page was appended or a sync merged.
+        // If there is no valid table of earthquakes, clear the adapter of previous earthquake data.
+        mEarthquakes = earthquakes != null ? earthquakes : EarthquakeTable.EMPTY;
+        mAdapter.submitEarthquakes( search( mEarthquakes ) );
     }
     
     /**
@@ -161,13 +346,12 @@ public class EarthquakeActivity extends AppCompatActivity implements
      * @param loader
      */
     @Override
-    public void onLoaderReset( Loader< List< Earthquake > > loader )
+    public void onLoaderReset( Loader< EarthquakeLoader.Result > loader )
     {
-        Log.i( LOG_TAG, "TEST: onLoaderReset() called ..." );
-        
         // Loader reset, so we can clear out our existing data.
         // Clear the adapter of previous earthquake data
-        mAdapter.clear();
+        mEarthquakes = EarthquakeTable.EMPTY;
+        mAdapter.setEarthquakes( EarthquakeTable.EMPTY );
     }
     
     @Override
@@ -176,6 +360,29 @@ public class EarthquakeActivity extends AppCompatActivity implements
         // Inflate the menu options from the res/menu/main.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate( R.menu.main, menu );
+        
+        // The metrics screen is a debugging tool, hidden from the users of release builds
+        menu.findItem( R.id.action_metrics ).setVisible( BuildConfig.DEBUG );
+        
+        // Filter the displayed earthquakes by their primary location as the user types
+        SearchView searchView = ( SearchView ) menu.findItem( R.id.action_search ).getActionView();
+        searchView.setQueryHint( getString( R.string.search_hint ) );
+        searchView.setOnQueryTextListener( new SearchView.OnQueryTextListener()
+        {
+            @Override
+            public boolean onQueryTextSubmit( String query )
+            {
+                return false;
+            }
+            
+            @Override
+            public boolean onQueryTextChange( String newText )
+            {
+                mSearchQuery = newText;
+                mAdapter.submitEarthquakes( search( mEarthquakes ) );
+                return true;
+            }
+        } );
         return true;
     }
     
@@ -191,9 +398,38 @@ public class EarthquakeActivity extends AppCompatActivity implements
             return true;
         }
         
+        if ( id == R.id.action_refresh )
+        {
+            // Only load the earthquakes that changed since the displayed ones
+            Loader< EarthquakeLoader.Result > loader =
+                    getSupportLoaderManager().getLoader( EARTHQUAKE_LOADER_ID );
+            if ( loader != null )
+                ( ( EarthquakeLoader ) loader ).syncUpdates();
+            return true;
+        }
+        
+        if ( id == R.id.action_metrics )
+        {
+            Intent metricsIntent = new Intent( this, MetricsActivity.class );
+            startActivity( metricsIntent );
+            return true;
+        }
+        
         return super.onOptionsItemSelected( item );
     }
     
+    /**
+     * Print the state of the activity and the recorded {@link Metrics}, which makes them
+     * available with "adb shell dumpsys activity com.engineerfadyfawzi.quakereport/.EarthquakeActivity"
+     * without the metrics screen, in any build.
+     */
+    @Override
+    public void dump( String prefix, FileDescriptor fileDescriptor, PrintWriter writer, String[] args )
+    {
+        super.dump( prefix, fileDescriptor, writer, args );
+        Metrics.dump( writer );
+    }
+    
     /**
      * Called when a shared preference is changed, added or removed.
      * This may be called even if a preference is set to its existing value.
@@ -207,19 +443,74 @@ public class EarthquakeActivity extends AppCompatActivity implements
     {
         if ( preferenceKey.equals( getString( R.string.settings_min_magnitude_key ) ) ||
                 preferenceKey.equals( getString( R.string.settings_order_by_key ) ) )
+        {
+            // Restart the loader once the settings stop changing, so a burst of changes
+            // (every changed key is a call) only starts a single query.
+            mHandler.removeCallbacks( mRestartLoader );
+            mHandler.postDelayed( mRestartLoader, RESTART_DEBOUNCE_MILLIS );
+        }
+        else if ( preferenceKey.equals( getString( R.string.settings_live_updates_key ) ) )
+            updateLiveFeedPoller();
+    }
+    
+    /**
+     * Start polling the live feed if the live updates are on and the activity is started,
+     * stop polling it otherwise. Nothing is polled before the loader is initialized.
+     */
+    private void updateLiveFeedPoller()
+    {
+        // The preferences may still be loading on a cold start, this is called again once
+        // they're loaded
+        if ( !mLoaderInitialized )
+            return;
+        
+        boolean liveUpdates = PreferenceManager.getDefaultSharedPreferences( this ).getBoolean(
+                getString( R.string.settings_live_updates_key ),
+                getResources().getBoolean( R.bool.settings_live_updates_default ) );
+        if ( liveUpdates && mStarted )
+            mLiveFeedPoller.start();
+        else
+            mLiveFeedPoller.stop();
+    }
+    
+    /**
+     * Restart the loader with the latest query settings.
+     */
+    private void restartLoader()
+    {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences( this );
+        
+        String minMagnitude = sharedPreferences.getString(
+                getString( R.string.settings_min_magnitude_key ),
+                getString( R.string.settings_min_magnitude_default ) );
+        
+        String orderBy = sharedPreferences.getString(
+                getString( R.string.settings_order_by_key ),
+                getString( R.string.settings_order_by_default ) );
+        
+        // The new loader answers the new settings from the loaded earthquakes when it can,
+        // i.e. a higher minimum magnitude filters them and another order sorts them.
+        Loader< EarthquakeLoader.Result > loader =
+                getSupportLoaderManager().getLoader( EARTHQUAKE_LOADER_ID );
+        mPreviousQuery = loader == null ? null : ( ( EarthquakeLoader ) loader ).getQueryPlanner();
+        
+        // Otherwise, the new query is pushed down to USGS
+        if ( mPreviousQuery == null ||
+                !mPreviousQuery.canAnswer( EarthquakeLoader.parseMagnitude( minMagnitude ), orderBy ) )
         {
             // Clear the listView as a new query will be kicked off
-            mAdapter.clear();
+            mEarthquakes = EarthquakeTable.EMPTY;
+            mAdapter.setEarthquakes( EarthquakeTable.EMPTY );
             
             // Hide the empty state text view as the loading indicator will be displayed
             mEmptyStateTextView.setVisibility( View.GONE );
             
             // Show the loading indicator while new data is being fetched
             loadingSpinner.setVisibility( View.VISIBLE );
-            
-            // Restart the loader to re query the USGS as the query settings have been updated
-            getSupportLoaderManager().restartLoader( EARTHQUAKE_LOADER_ID, null, this );
         }
+        
+        // Restart the loader to re query as the query settings have been updated
+        getSupportLoaderManager().restartLoader( EARTHQUAKE_LOADER_ID, null, this );
     }
     
     /**
@@ -227,8 +518,11 @@ public class EarthquakeActivity extends AppCompatActivity implements
      */
     private void getEarthquakeData()
     {
-        // Find a reference to the {@link ListView} in the layout
-        ListView earthquakeListView = findViewById( R.id.list_view );
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView earthquakeRecyclerView = findViewById( R.id.recycler_view );
+        final LinearLayoutManager layoutManager = new LinearLayoutManager( this );
+        earthquakeRecyclerView.setLayoutManager( layoutManager );
+        earthquakeRecyclerView.setHasFixedSize( true );
         
         // initialize and set the value of this global loading spinner
         loadingSpinner = findViewById( R.id.loading_spinner );
@@ -240,42 +534,221 @@ public class EarthquakeActivity extends AppCompatActivity implements
         // because it’s not too expensive of an operation. There’s always trade offs, and this user
         // experience is better.
         mEmptyStateTextView = findViewById( R.id.empty_view );
-        earthquakeListView.setEmptyView( mEmptyStateTextView );
         
-        // Create a new adapter that takes an empty list of earthquakes as input
-        mAdapter = new EarthquakeAdapter( this, new ArrayList< Earthquake >() );
+        // Create the poller of the live feed, which merges the new earthquakes into the loaded ones
+        // while the live updates are on.
+        mLiveFeedPoller = new LiveFeedPoller( getSupportLoaderManager(), EARTHQUAKE_LOADER_ID,
+                new LiveFeed( LiveFeed.ALL_HOUR_URL ),
+                TimeUnit.SECONDS.toMillis( getResources().getInteger( R.integer.live_poll_min_seconds ) ),
+                TimeUnit.SECONDS.toMillis( getResources().getInteger( R.integer.live_poll_max_seconds ) ) );
+        
+        // Create the cache the earthquake loader delivers the last loaded earthquakes from.
+        mFeedCache = createFeedCache( this );
+        
+        // And the cache of the list displayed last, displayed before the loader even starts.
+        mLastListCache = new LastListCache( new File( getCacheDir(), "last_list.snapshot" ),
+                LAST_LIST_ROW_COUNT );
         
-        // Set the adapter on the {@link ListView}
+        // Create a new adapter that takes an empty table of earthquakes as input
+        mAdapter = new EarthquakeAdapter( this, EarthquakeTable.EMPTY );
+        
+        // A RecyclerView has no empty view, so show the empty state TextView
+        // whenever the adapter becomes empty, and hide it when it has earthquakes.
+        mAdapter.registerAdapterDataObserver( new RecyclerView.AdapterDataObserver()
+        {
+            @Override
+            public void onChanged()
+            {
+                updateEmptyView();
+            }
+            
+            @Override
+            public void onItemRangeInserted( int positionStart, int itemCount )
+            {
+                updateEmptyView();
+            }
+            
+            @Override
+            public void onItemRangeRemoved( int positionStart, int itemCount )
+            {
+                updateEmptyView();
+            }
+        } );
+        updateEmptyView();
+        
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
-        earthquakeListView.setAdapter( mAdapter );
+        earthquakeRecyclerView.setAdapter( mAdapter );
         
+        // Load the next page of earthquakes when the user scrolls near the end of the list
+        earthquakeRecyclerView.addOnScrollListener( new RecyclerView.OnScrollListener()
+        {
+            @Override
+            public void onScrolled( RecyclerView recyclerView, int dx, int dy )
+            {
+                int totalItemCount = layoutManager.getItemCount();
+                if ( totalItemCount > 0 &&
+                        layoutManager.findLastVisibleItemPosition() >= totalItemCount - 1 - PREFETCH_DISTANCE )
+                    loadNextPage();
+            }
+        } );
+        
+        // The loader kept for us through a configuration change (i.e. a rotation) delivers its
+        // earthquakes right away, and the preferences were loaded by the previous activity.
+        if ( getSupportLoaderManager().getLoader( EARTHQUAKE_LOADER_ID ) != null )
+            initLoader();
+        else
+            coldStart();
+    }
+    
+    /**
+     * Display the list displayed last while the preferences are loaded, then initialize the
+     * loader of the query they set, which replaces the list with the loaded earthquakes.
+     *
+     * Reading the preferences reads their file, and the loader only delivers the cached
+     * earthquakes once they're read from the feed cache and formatted, so on a cold start
+     * nothing but a spinner would be displayed until then. Instead, the last list and the
+     * preferences are read on a background thread, in that order.
+     */
+    private void coldStart()
+    {
+        final Context context = getApplicationContext();
+        sStartupExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // The last list is formatted here, like the loader formats its earthquakes
+                EarthquakeTable lastList = mLastListCache.read();
+                if ( lastList != null && !lastList.isEmpty() )
+                {
+                    final EarthquakeTable earthquakes =
+                            EarthquakeLoader.createFormatter( context ).format( lastList );
+                    mHandler.post( new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            showLastList( earthquakes );
+                        }
+                    } );
+                }
+                
+                // Once read, the preferences are kept in memory and reading them doesn't block
+                buildQueryUrl( context );
+                mHandler.post( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if ( !mDestroyed )
+                            initLoader();
+                    }
+                } );
+            }
+        } );
+    }
+    
+    /**
+     * Display the given list displayed last, unless the loader already delivered earthquakes.
+     */
+    private void showLastList( EarthquakeTable earthquakes )
+    {
+        if ( mDestroyed || !mEarthquakes.isEmpty() )
+            return;
+        
+        // The loaded earthquakes are submitted to the adapter, which only updates the rows
+        // that differ from the last list.
+        loadingSpinner.setVisibility( View.GONE );
+        mEarthquakes = earthquakes;
+        mLastListEarthquakes = earthquakes;
+        mAdapter.setEarthquakes( search( earthquakes ) );
+    }
+    
+    /**
+     * Register for the changes of the query settings, and initialize the loader of the
+     * query they set. The preferences must be loaded, this is on the main thread.
+     */
+    private void initLoader()
+    {
         // Obtain a reference to the SharedPreference file for this app
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences( this );
         // And register to be notified of preference changes
         // So we know when the user has adjusted the query settings
         sharedPreferences.registerOnSharedPreferenceChangeListener( this );
         
-        // If there is a network connection, fetch data
-        if ( isConnected() )
-        {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getSupportLoaderManager();
-            
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            Log.i( LOG_TAG, "TEST: calling initLoader() ..." );
-            loaderManager.initLoader( EARTHQUAKE_LOADER_ID, null, this );
-        }
-        else
+        // Initialize the loader even without a network connection: it delivers the earthquakes
+        // cached by the last load or the background sync first, and onLoadFinished() tells
+        // the user there's no connection if nothing was cached.
+        
+        // Get a reference to the LoaderManager, in order to interact with loaders.
+        LoaderManager loaderManager = getSupportLoaderManager();
+        
+        // Initialize the loader. Pass in the int ID constant defined above and pass in null for
+        // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
+        // because this activity implements the LoaderCallbacks interface).
+        loaderManager.initLoader( EARTHQUAKE_LOADER_ID, null, this );
+        
+        // The settings may have changed while a restart was waiting when the previous activity
+        // was destroyed (i.e. on a rotation), then the loader kept for us has an outdated query.
+        Loader< EarthquakeLoader.Result > loader = loaderManager.getLoader( EARTHQUAKE_LOADER_ID );
+        if ( loader != null && !buildQueryUrl( this ).equals( ( ( EarthquakeLoader ) loader ).getUrl() ) )
+            restartLoader();
+        
+        // Keep the cached earthquakes fresh in the background, so the next start doesn't wait
+        EarthquakeSyncWorker.schedule( this );
+        
+        mLoaderInitialized = true;
+        updateLiveFeedPoller();
+    }
+    
+    /**
+     * Show the empty state TextView if there are no earthquakes to display, hide it otherwise.
+     */
+    private void updateEmptyView()
+    {
+        mEmptyStateTextView.setVisibility( mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE );
+    }
+    
+    /**
+     * Ask the earthquake loader, if it's running, to load the next page of earthquakes.
+     */
+    private void loadNextPage()
+    {
+        // A search only filters the loaded earthquakes, the few matching ones would otherwise
+        // keep the end of the list in view and load every page of the query.
+        if ( !mSearchQuery.trim().isEmpty() )
+            return;
+        
+        Loader< EarthquakeLoader.Result > loader =
+                getSupportLoaderManager().getLoader( EARTHQUAKE_LOADER_ID );
+        
+        if ( loader != null )
+            ( ( EarthquakeLoader ) loader ).loadNextPage();
+    }
+    
+    /**
+     * Returns the given earthquakes whose primary location matches the search query, using the
+     * loader's search index. All the earthquakes are returned when nothing is searched, or when
+     * they aren't indexed.
+     *
+     * @param earthquakes delivered by the loader
+     */
+    private EarthquakeTable search( EarthquakeTable earthquakes )
+    {
+        if ( mSearchQuery.trim().isEmpty() )
+            return earthquakes;
+        
+        if ( mSearchIndex == null || mSearchIndex.getEarthquakes() != earthquakes )
         {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            loadingSpinner.setVisibility( View.GONE );
-            
-            // Update the empty state with no connection error message
-            mEmptyStateTextView.setText( R.string.no_internet_connection );
+            Loader< EarthquakeLoader.Result > loader =
+                    getSupportLoaderManager().getLoader( EARTHQUAKE_LOADER_ID );
+            mSearchIndex = loader == null ? null : ( ( EarthquakeLoader ) loader ).getSearchIndex();
+            if ( mSearchIndex == null || mSearchIndex.getEarthquakes() != earthquakes )
+                return earthquakes;
         }
+        
+        return earthquakes.select( mSearchIndex.search( mSearchQuery ) );
     }
     
     /**
@@ -4,232 +4,289 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.GradientDrawable;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * An {@link EarthquakeAdapter} knows how to create a list item layout for each earthquake
- * in the data source (a list of {@link Earthquake} objects).
+ * in the data source (an {@link EarthquakeTable}).
  *
- * These list item layouts will be provided to an adapter view like ListView
- * to be displayed to the user.
+ * These list item layouts will be provided to a RecyclerView to be displayed to the user.
+ * Each row is read straight from the columns of the table, no {@link Earthquake} object
+ * is created to display it.
+ *
+ * The rows are formatted by the loader on its background thread (see {@link EarthquakeFormatter}),
+ * and the views of every list item are kept in a {@link ViewHolder}, so binding a row
+ * only sets already formatted values on already found views and allocates nothing.
+ *
+ * When a new table is submitted, the difference with the displayed one is computed on a
+ * background thread, and only the inserted, removed, moved and changed rows are dispatched
+ * to the RecyclerView, so it keeps its scroll position and only rebinds what changed.
+ * Item ids are stable, they're derived from the USGS event ids.
  */
-public class EarthquakeAdapter extends ArrayAdapter< Earthquake >
+public class EarthquakeAdapter extends RecyclerView.Adapter< EarthquakeAdapter.ViewHolder >
 {
     /**
-     * The part of the location string from the USGS service that we use to determine
-     * whether or not there is a location offset present ("5km N of Cairo, Egypt").
+     * Background thread the differences between tables are computed on, shared by all adapters
+     */
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+    
+    /**
+     * Context of the app
      */
-    private static final String LOCATION_SEPARATOR = " of ";
+    private Context mContext;
+    
+    /**
+     * Table of earthquakes, which is the data source of the adapter
+     */
+    private EarthquakeTable mEarthquakes;
+    
+    /**
+     * Handler posting the computed differences back to the main thread
+     */
+    private Handler mMainHandler = new Handler( Looper.getMainLooper() );
+    
+    /**
+     * Generation of the last submitted table, a computed difference is only dispatched
+     * if no other table was submitted in the meantime
+     */
+    private int mGeneration;
+    
+    /**
+     * Click listener shared by all the list items, which sends an intent to a web browser
+     * to open a website with more information about the clicked earthquake
+     */
+    private View.OnClickListener mOnItemClickListener = new View.OnClickListener()
+    {
+        @Override
+        public void onClick( View view )
+        {
+            // Find the row the clicked list item is displaying
+            ViewHolder viewHolder = ( ViewHolder ) view.getTag();
+            int position = viewHolder.getAdapterPosition();
+            if ( position == RecyclerView.NO_POSITION )
+                return;
+            
+            // Convert the String URL into a URI object (to pass into the Intent constructor)
+            Uri earthquakeUri = Uri.parse( mEarthquakes.getUrl( position ) );
+            
+            // Create a new intent to view the earthquake URI
+            Intent websiteIntent = new Intent( Intent.ACTION_VIEW, earthquakeUri );
+            
+            // Send the intent to launch a new activity
+            mContext.startActivity( websiteIntent );
+        }
+    };
     
     /**
      * Constructs a new {@link EarthquakeAdapter}.
      *
      * @param context of the app
-     * @param earthquakes is the list of earthquakes, which is the data source of the adapter
+     * @param earthquakes is the table of formatted earthquakes, which is the data source of the adapter
      */
-    public EarthquakeAdapter( Context context, List< Earthquake > earthquakes )
+    public EarthquakeAdapter( Context context, EarthquakeTable earthquakes )
     {
-        super( context, 0, earthquakes );
+        mContext = context;
+        mEarthquakes = earthquakes;
+        setHasStableIds( true );
     }
     
     /**
-     * Returns a list item view that displays information about the earthquake at the given position
-     * in the list of earthquakes.
+     * Replace the table of earthquakes displayed by the adapter right away, redrawing the whole
+     * list, i.e. to clear it when a new query is started. Its rows must be formatted.
      */
-    @Override
-    public View getView( int position, View convertView, ViewGroup parent )
+    public void setEarthquakes( EarthquakeTable earthquakes )
     {
-        // Check if there is an existing list item view (called convertView) that we can reuse,
-        // otherwise, if convertView is null, then inflate a new list item layout.
-        View listItemView = convertView;
-        if ( listItemView == null )
-        {
-            listItemView = LayoutInflater.from( getContext() ).inflate(
-                    R.layout.earthquake_list_item, parent, false );
-        }
-        
-        // Find the earthquake at the given position in the list of earthquakes
-        final Earthquake currentEarthquake = getItem( position );
+        // Drop the difference being computed, it's no longer relevant
+        mGeneration++;
+        mEarthquakes = earthquakes;
+        notifyDataSetChanged();
+    }
+    
+    /**
+     * Replace the table of earthquakes displayed by the adapter once its difference with the
+     * displayed table is computed on a background thread. Only the changed rows are updated.
+     * Its rows must be formatted. This must be called on the main thread.
+     */
+    public void submitEarthquakes( final EarthquakeTable earthquakes )
+    {
+        final EarthquakeTable previousEarthquakes = mEarthquakes;
+        if ( earthquakes == previousEarthquakes )
+            return;
         
-        // Find the TextView with view ID magnitude
-        TextView magnitudeView = listItemView.findViewById( R.id.magnitude );
-        // Format the magnitude to show 1 decimal place
-        String formattedMagnitude = formatMagnitude( currentEarthquake.getMagnitude() );
-        // Display the magnitude of the current earthquake in that TextView
-        magnitudeView.setText( formattedMagnitude );
+        final int generation = ++mGeneration;
         
-        // Set the proper background color on the magnitude circle.
-        // Fetch the background from the TextView, which is a GradientDrawable.
-        GradientDrawable magnitudeCircle = ( GradientDrawable ) magnitudeView.getBackground();
-        // Get the appropriate background color based on the current earthquake magnitude
-        int magnitudeColor = getMagnitudeColor( currentEarthquake.getMagnitude() );
-        // Set the color on the magnitude circle
-        magnitudeCircle.setColor( magnitudeColor );
-        
-        // Get the original location string from the current Earthquake object,
-        // which can be in the format of "5km N of Cairo, Egypt" or "Pacific-Antarctic Ridge".
-        String originalLocation = currentEarthquake.getLocation();
-        
-        // If the original location string (i.e. "5km N of Cairo, Egypt") contains
-        // a primary location (Cairo, Egypt) and a location offset (5km N of that city)
-        // then store the primary location separately from the location offset in 2 Strings,
-        // so they can be displayed in 2 TextViews.
-        String primaryLocation;
-        String locationOffset;
-        
-        // Check whether the originalLocation string contains the " of " text
-        if ( originalLocation.contains( LOCATION_SEPARATOR ) )
-        {
-            // Split the string into different parts (as an array of Strings)
-            // based on the " of " text. We expect an array of 2 Strings, where
-            // the first String will be "5km N" and the second String will be "Cairo, Egypt".
-            String[] parts = originalLocation.split( LOCATION_SEPARATOR );
-            // Location offset should be "5km N " + " of " --> "5km N of"
-            locationOffset = parts[ 0 ] + LOCATION_SEPARATOR;
-            // Primary location should be "Cairo, Egypt"
-            primaryLocation = parts[ 1 ];
-        }
-        else
+        // Nothing to compare with, insert or remove all the rows at once
+        if ( previousEarthquakes.isEmpty() || earthquakes.isEmpty() )
         {
-            // Otherwise, there is no " of " text in the originalLocation string.
-            // Hence, set the default location offset to say "Near the".
-            locationOffset = getContext().getString( R.string.near_the );
-            // The primary location will be the full location string "Pacific-Antarctic Ridge".
-            primaryLocation = originalLocation;
+            mEarthquakes = earthquakes;
+            if ( previousEarthquakes.isEmpty() )
+                notifyItemRangeInserted( 0, earthquakes.size() );
+            else
+                notifyItemRangeRemoved( 0, previousEarthquakes.size() );
+            return;
         }
         
-        // Find the TextView with view ID location_offset
-        TextView locationOffsetView = listItemView.findViewById( R.id.location_offset );
-        // Display the location offset of the current earthquake in that TextView
-        locationOffsetView.setText( locationOffset );
-        
-        // Find the TextView with view ID primary_location
-        TextView primaryLocationView = listItemView.findViewById( R.id.primary_location );
-        // Display the primary_location of the current earthquake in that TextView
-        primaryLocationView.setText( primaryLocation );
-        
-        // Create a new Date object from the time in milliseconds of the earthquake
-        Date dateObject = new Date( currentEarthquake.getTimeInMilliseconds() );
-        
-        // Find the TextView with view ID date
-        TextView dateView = listItemView.findViewById( R.id.date );
-        // Format the date string (i.e. "Mar 3, 1984")
-        String formattedDate = formatDate( dateObject );
-        // Display the date of the current earthquake in that TextView
-        dateView.setText( formattedDate );
-        
-        // Find the TextView with view ID time
-        TextView timeView = listItemView.findViewById( R.id.time );
-        // Format the time string (i.e. "4:30 PM")
-        String formattedTime = formatTime( dateObject );
-        // Display the time of the current earthquake in the TextView
-        timeView.setText( formattedTime );
-        
-        // Set a click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected earthquake
-        listItemView.setOnClickListener( new View.OnClickListener()
+        sDiffExecutor.execute( new Runnable()
         {
             @Override
-            public void onClick( View view )
+            public void run()
             {
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri earthquakeUri = Uri.parse( currentEarthquake.getUrl() );
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                        new TableDiffCallback( previousEarthquakes, earthquakes ), true );
                 
-                // Create a new intent to view the earthquake URI
-                Intent websiteIntent = new Intent( Intent.ACTION_VIEW, earthquakeUri );
-                
-                // Send the intent to launch a new activity
-                getContext().startActivity( websiteIntent );
+                mMainHandler.post( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // Another table was submitted while this difference was computed
+                        if ( generation != mGeneration )
+                            return;
+                        
+                        mEarthquakes = earthquakes;
+                        diffResult.dispatchUpdatesTo( EarthquakeAdapter.this );
+                    }
+                } );
             }
         } );
-        
-        // Return the list item view that is now showing the appropriate data
-        return listItemView;
+    }
+    
+    @Override
+    public int getItemCount()
+    {
+        return mEarthquakes.size();
     }
     
     /**
-     * Return the formatted magnitude string showing 1 decimal place (i.e. "3.2")
-     * from a decimal magnitude value.
+     * Returns the stable id of the earthquake at the given position, from its USGS event id.
      */
-    private String formatMagnitude( double magnitude )
+    @Override
+    public long getItemId( int position )
     {
-        DecimalFormat magnitudeFormat = new DecimalFormat( "0.0" );
-        return magnitudeFormat.format( magnitude );
+        return mEarthquakes.getStableId( position );
     }
     
     /**
-     * Return the color for the magnitude circle based on the intensity of the earthquake.
-     *
-     * @param magnitude of the earthquake
+     * Inflate a new list item layout and find its views once.
      */
-    private int getMagnitudeColor( double magnitude )
+    @Override
+    public ViewHolder onCreateViewHolder( ViewGroup parent, int viewType )
     {
-        int magnitudeColorResourceId;
-        int intMagnitude = ( int ) magnitude;
+        View listItemView = LayoutInflater.from( mContext ).inflate(
+                R.layout.earthquake_list_item, parent, false );
         
-        switch ( intMagnitude )
-        {
-            case 0:
-            case 1:
-                magnitudeColorResourceId = R.color.magnitude1;
-                break;
-            case 2:
-                magnitudeColorResourceId = R.color.magnitude2;
-                break;
-            case 3:
-                magnitudeColorResourceId = R.color.magnitude3;
-                break;
-            case 4:
-                magnitudeColorResourceId = R.color.magnitude4;
-                break;
-            case 5:
-                magnitudeColorResourceId = R.color.magnitude5;
-                break;
-            case 6:
-                magnitudeColorResourceId = R.color.magnitude6;
-                break;
-            case 7:
-                magnitudeColorResourceId = R.color.magnitude7;
-                break;
-            case 8:
-                magnitudeColorResourceId = R.color.magnitude8;
-                break;
-            case 9:
-                magnitudeColorResourceId = R.color.magnitude9;
-                break;
-            default:
-                magnitudeColorResourceId = R.color.magnitude10plus;
-        }
+        ViewHolder viewHolder = new ViewHolder( listItemView );
+        listItemView.setTag( viewHolder );
+        listItemView.setOnClickListener( mOnItemClickListener );
+        return viewHolder;
+    }
+    
+    /**
+     * Display information about the earthquake at the given position in the table of earthquakes
+     * in the list item of the given view holder.
+     */
+    @Override
+    public void onBindViewHolder( ViewHolder viewHolder, int position )
+    {
+        // Display the magnitude of the earthquake at the given position,
+        // already formatted to show 1 decimal place.
+        viewHolder.mMagnitudeView.setText( mEarthquakes.getFormattedMagnitude( position ) );
+        
+        // Set the proper background color on the magnitude circle.
+        viewHolder.mMagnitudeCircle.setColor( mEarthquakes.getMagnitudeColor( position ) );
         
-        return ContextCompat.getColor( getContext(), magnitudeColorResourceId );
+        // Display the location offset ("5km N of") and the primary location ("Cairo, Egypt")
+        // of the earthquake, the location was split when the earthquakes were formatted.
+        viewHolder.mLocationOffsetView.setText( mEarthquakes.getLocationOffset( position ) );
+        viewHolder.mPrimaryLocationView.setText( mEarthquakes.getPrimaryLocation( position ) );
+        
+        // Display the date ("Mar 3, 1984") and the time ("4:30 PM") of the earthquake
+        viewHolder.mDateView.setText( mEarthquakes.getFormattedDate( position ) );
+        viewHolder.mTimeView.setText( mEarthquakes.getFormattedTime( position ) );
     }
     
     /**
-     * Return the formatted date string(i.e. "Mar 3, 1984") from a Date object.
+     * The views of a list item, found once when the list item is inflated.
      */
-    private String formatDate( Date dateObject )
+    static class ViewHolder extends RecyclerView.ViewHolder
     {
-        SimpleDateFormat dateFormat = new SimpleDateFormat( "LLL dd, yyyy" );
-        return dateFormat.format( dateObject );
+        private TextView mMagnitudeView;
+        
+        /**
+         * The background of the magnitude view, which is a GradientDrawable
+         */
+        private GradientDrawable mMagnitudeCircle;
+        
+        private TextView mLocationOffsetView;
+        
+        private TextView mPrimaryLocationView;
+        
+        private TextView mDateView;
+        
+        private TextView mTimeView;
+        
+        ViewHolder( View listItemView )
+        {
+            super( listItemView );
+            mMagnitudeView = listItemView.findViewById( R.id.magnitude );
+            mMagnitudeCircle = ( GradientDrawable ) mMagnitudeView.getBackground();
+            mLocationOffsetView = listItemView.findViewById( R.id.location_offset );
+            mPrimaryLocationView = listItemView.findViewById( R.id.primary_location );
+            mDateView = listItemView.findViewById( R.id.date );
+            mTimeView = listItemView.findViewById( R.id.time );
+        }
     }
     
     /**
-     * Return the formatted date string (i.e. "4:30 PM" from a Date object.
+     * Compares the rows of two tables of earthquakes: rows are the same earthquake when they
+     * have the same event id, and their contents are the same when nothing about it changed.
      */
-    private String formatTime( Date dateObject )
+    static class TableDiffCallback extends DiffUtil.Callback
     {
-        SimpleDateFormat timeFormat = new SimpleDateFormat( "h:mm a" );
-        return timeFormat.format( dateObject );
+        private EarthquakeTable mOldEarthquakes;
+        
+        private EarthquakeTable mNewEarthquakes;
+        
+        TableDiffCallback( EarthquakeTable oldEarthquakes, EarthquakeTable newEarthquakes )
+        {
+            mOldEarthquakes = oldEarthquakes;
+            mNewEarthquakes = newEarthquakes;
+        }
+        
+        @Override
+        public int getOldListSize()
+        {
+            return mOldEarthquakes.size();
+        }
+        
+        @Override
+        public int getNewListSize()
+        {
+            return mNewEarthquakes.size();
+        }
+        
+        @Override
+        public boolean areItemsTheSame( int oldPosition, int newPosition )
+        {
+            String oldId = mOldEarthquakes.getId( oldPosition );
+            return oldId != null && oldId.equals( mNewEarthquakes.getId( newPosition ) );
+        }
+        
+        @Override
+        public boolean areContentsTheSame( int oldPosition, int newPosition )
+        {
+            return mOldEarthquakes.rowEquals( oldPosition, mNewEarthquakes, newPosition );
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,856 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An {@link EarthquakeArchive} keeps every earthquake the app fetched, so they can still be
+ * queried offline, long after they left the window of the query.
+ *
+ * The earthquakes are partitioned by their time, one partition per week, and every partition
+ * is stored in segments: {@link EarthquakeSnapshot} files of rows sorted by time, which are
+ * never modified once written. Appending earthquakes writes a new segment in every partition
+ * they fall in, named "partition_sequence.seg", where the sequence orders all the segments.
+ * Every segment has a small index next to it, "partition_sequence.idx", with its row count,
+ * its time range and its largest magnitude, which is all a query reads to skip the segment.
+ *
+ * An earthquake is only appended if it's newer (by its updated time) than its archived
+ * version, and a newer version doesn't replace the older one in its segment: when it has
+ * another time or magnitude, a tombstone (a deleted row) with the time and magnitude of the
+ * older version is appended along with it. Every row superseded by a newer version is then
+ * shadowed by a newer row of the same time and magnitude, in the same partition, so a query
+ * only reads the rows within its time range and above its magnitude, and keeps the newest row
+ * of every event id, instead of reading every version of the events. The earthquakes USGS
+ * deleted are appended as they are, deleted rows, and are never returned.
+ *
+ * Compaction merges the segments of a partition into a single one, dropping the superseded
+ * versions and the tombstones which don't shadow anything anymore. It runs in the background
+ * after an append once a partition has {@link #COMPACTION_SEGMENT_COUNT} segments, so the
+ * number of segments (and of files opened by a query) stays small.
+ *
+ * Appends and compactions are serialized, and run while queries read the segments: a segment
+ * replaced by a compaction is only deleted once no query reads it.
+ */
+public class EarthquakeArchive
+{
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = EarthquakeArchive.class.getSimpleName();
+    
+    /**
+     * Length in milliseconds of the time range of a partition
+     */
+    static final long PARTITION_LENGTH = TimeUnit.DAYS.toMillis( 7 );
+    
+    /**
+     * Largest revision in milliseconds of the time of an earthquake, the archived version of an
+     * earthquake is only looked up within this margin of the time of its new version
+     */
+    static final long REVISION_MARGIN = TimeUnit.DAYS.toMillis( 1 );
+    
+    /**
+     * Number of segments of a partition which triggers its compaction
+     */
+    static final int COMPACTION_SEGMENT_COUNT = 4;
+    
+    private static final String SEGMENT_SUFFIX = ".seg";
+    
+    private static final String INDEX_SUFFIX = ".idx";
+    
+    /**
+     * First bytes of a segment index file, "QKSI", and version of its format
+     */
+    private static final int INDEX_MAGIC = 0x514b5349;
+    
+    private static final int INDEX_VERSION = 1;
+    
+    /**
+     * Archive of the app, shared by the loaders and the background sync
+     */
+    private static EarthquakeArchive sArchive;
+    
+    /**
+     * Directory of the segments
+     */
+    private File mDirectory;
+    
+    /**
+     * Executor of the appends and compactions in the background, in order
+     */
+    private Executor mExecutor = Executors.newSingleThreadExecutor();
+    
+    /**
+     * Lock of the segments, held by the queries while they read them, and by the appends and
+     * compactions while they add and delete segments
+     */
+    private ReadWriteLock mLock = new ReentrantReadWriteLock();
+    
+    /**
+     * Segments of every partition, by partition, oldest first, or null until the archive is opened
+     */
+    private TreeMap< Long, List< Segment > > mPartitions;
+    
+    /**
+     * Sequence of the next segment written
+     */
+    private long mNextSequence;
+    
+    /**
+     * Constructs a new {@link EarthquakeArchive}, which is only opened when it's first used.
+     *
+     * @param directory of the segments, it's created if it doesn't exist
+     */
+    public EarthquakeArchive( File directory )
+    {
+        mDirectory = directory;
+    }
+    
+    /**
+     * Returns the archive of the app. It isn't opened yet, so this can be called on the main thread.
+     *
+     * @param context of the app
+     */
+    public static synchronized EarthquakeArchive getInstance( Context context )
+    {
+        if ( sArchive == null )
+            sArchive = new EarthquakeArchive( new File( context.getApplicationContext().getFilesDir(), "archive" ) );
+        return sArchive;
+    }
+    
+    /**
+     * Returns the partition of the given time.
+     */
+    static long partitionOf( long time )
+    {
+        // Round down, the times before the Epoch are negative
+        long partition = time / PARTITION_LENGTH;
+        return time % PARTITION_LENGTH < 0 ? partition - 1 : partition;
+    }
+    
+    /**
+     * Append the given earthquakes in the background, then compact the partitions which
+     * have too many segments. This returns right away, so it can be called from any thread.
+     */
+    public void appendInBackground( final EarthquakeTable earthquakes )
+    {
+        mExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                append( earthquakes );
+                compact( COMPACTION_SEGMENT_COUNT );
+            }
+        } );
+    }
+    
+    /**
+     * Append the earthquakes newer than their archived versions, in a new segment of every
+     * partition they fall in. This writes files, so it must not be called on the main thread.
+     *
+     * @return the number of earthquakes appended
+     */
+    public synchronized int append( EarthquakeTable earthquakes )
+    {
+        ensureOpen();
+        
+        // Archived versions of the earthquakes, by event id, loaded one partition at a time
+        Map< String, Version > versions = new HashMap<>();
+        Set< Long > loadedPartitions = new HashSet<>();
+        
+        TreeMap< Long, EarthquakeTable.Builder > rows = new TreeMap<>();
+        int appendedCount = 0;
+        for ( int row = 0; row < earthquakes.size(); row++ )
+        {
+            String id = earthquakes.getId( row );
+            if ( id == null )
+                continue;
+            
+            long time = earthquakes.getTimeInMilliseconds( row );
+            for ( long partition = partitionOf( time - REVISION_MARGIN );
+                  partition <= partitionOf( time + REVISION_MARGIN ); partition++ )
+                if ( loadedPartitions.add( partition ) )
+                    loadVersions( partition, versions );
+            
+            // Skip the versions we already have, and the deletions of earthquakes we don't have
+            Version current = versions.get( id );
+            Version version = new Version( null, -1, mNextSequence, earthquakes.getUpdated( row ),
+                    earthquakes.isDeleted( row ), time, earthquakes.getMagnitude( row ) );
+            if ( current == null ? version.mDeleted : version.mUpdated <= current.mUpdated )
+                continue;
+            
+            // Shadow the archived version, unless the new one already does
+            if ( current != null && !current.mDeleted && !current.hasSameTimeAndMagnitude( version ) )
+                getBuilder( rows, partitionOf( current.mTime ) ).add( id, current.mMagnitude, null,
+                        current.mTime, version.mUpdated, null, true );
+            
+            getBuilder( rows, partitionOf( time ) ).addRow( earthquakes, row );
+            versions.put( id, version );
+            appendedCount++;
+        }
+        
+        for ( Map.Entry< Long, EarthquakeTable.Builder > entry : rows.entrySet() )
+            writeSegment( entry.getKey(), entry.getValue().build() );
+        
+        Metrics.ARCHIVED_EARTHQUAKES.addAndGet( appendedCount );
+        return appendedCount;
+    }
+    
+    /**
+     * Returns the archived earthquakes between the given times (both included) of at least
+     * the given magnitude, in the given order. Only the segments of the partitions of the
+     * time range, whose time range and largest magnitude match the query, are read.
+     * This reads files, so it must not be called on the main thread.
+     *
+     * @param startTime in milliseconds (from the Epoch) of the oldest earthquakes
+     * @param endTime in milliseconds (from the Epoch) of the most recent earthquakes
+     * @param minMagnitude of the earthquakes
+     * @param order of the earthquakes returned
+     */
+    public EarthquakeTable query( long startTime, long endTime, double minMagnitude, EarthquakeOrder order )
+    {
+        if ( startTime > endTime )
+            return EarthquakeTable.EMPTY;
+        
+        ensureOpen();
+        
+        // The newest row of every event id in the range
+        Map< String, Version > versions = new HashMap<>();
+        mLock.readLock().lock();
+        try
+        {
+            for ( List< Segment > segments : mPartitions.subMap(
+                    partitionOf( startTime ), true, partitionOf( endTime ), true ).values() )
+            {
+                for ( Segment segment : segments )
+                {
+                    if ( segment.mMaxTime < startTime || segment.mMinTime > endTime ||
+                            segment.mMaxMagnitude < minMagnitude )
+                        continue;
+                    
+                    EarthquakeSnapshot snapshot = openSegment( segment );
+                    if ( snapshot == null )
+                        continue;
+                    
+                    for ( int row = lowerBound( snapshot, startTime );
+                          row < snapshot.size() && snapshot.getTimeInMilliseconds( row ) <= endTime; row++ )
+                    {
+                        if ( snapshot.getMagnitude( row ) < minMagnitude )
+                            continue;
+                        
+                        String id = snapshot.getId( row );
+                        Version version = new Version( snapshot, row, segment.mSequence );
+                        Version newest = versions.get( id );
+                        if ( newest == null || version.isNewerThan( newest ) )
+                            versions.put( id, version );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            mLock.readLock().unlock();
+        }
+        
+        EarthquakeTable.Builder earthquakes = new EarthquakeTable.Builder( versions.size() );
+        for ( Version version : versions.values() )
+            if ( !version.mDeleted )
+                addRow( earthquakes, version.mSnapshot, version.mRow );
+        return earthquakes.build().sort( order );
+    }
+    
+    /**
+     * Compact every partition which has several segments or tombstones, so every partition
+     * is a single segment of the newest versions of its earthquakes.
+     * This writes files, so it must not be called on the main thread.
+     */
+    public void compact()
+    {
+        compact( 1 );
+    }
+    
+    /**
+     * Returns the number of segments of the archive.
+     */
+    public int getSegmentCount()
+    {
+        ensureOpen();
+        mLock.readLock().lock();
+        try
+        {
+            int segmentCount = 0;
+            for ( List< Segment > segments : mPartitions.values() )
+                segmentCount += segments.size();
+            return segmentCount;
+        }
+        finally
+        {
+            mLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Compact the partitions which have at least the given number of segments, and more than
+     * one segment or tombstones.
+     */
+    private synchronized void compact( int minSegmentCount )
+    {
+        ensureOpen();
+        
+        // Appends and compactions are serialized, so the partitions don't change meanwhile
+        for ( Long partition : new ArrayList<>( mPartitions.keySet() ) )
+        {
+            List< Segment > segments = mPartitions.get( partition );
+            if ( segments.size() >= minSegmentCount &&
+                    ( segments.size() > 1 || segments.get( 0 ).mTombstoneCount > 0 ) )
+                compactPartition( partition, new ArrayList<>( segments ) );
+        }
+    }
+    
+    /**
+     * Merge the given segments of the partition into a single segment, with the newest row of
+     * every version (event id, time and magnitude) of its earthquakes, unless it's deleted.
+     */
+    private void compactPartition( long partition, List< Segment > segments )
+    {
+        // Versions by event id, every event only has a few of them
+        Map< String, List< Version > > versions = new HashMap<>();
+        for ( Segment segment : segments )
+        {
+            EarthquakeSnapshot snapshot = openSegment( segment );
+            if ( snapshot == null )
+                return;
+            
+            for ( int row = 0; row < snapshot.size(); row++ )
+            {
+                String id = snapshot.getId( row );
+                List< Version > idVersions = versions.get( id );
+                if ( idVersions == null )
+                {
+                    idVersions = new ArrayList<>( 1 );
+                    versions.put( id, idVersions );
+                }
+                
+                Version version = new Version( snapshot, row, segment.mSequence );
+                int i = 0;
+                while ( i < idVersions.size() && !idVersions.get( i ).hasSameTimeAndMagnitude( version ) )
+                    i++;
+                if ( i == idVersions.size() )
+                    idVersions.add( version );
+                else if ( version.isNewerThan( idVersions.get( i ) ) )
+                    idVersions.set( i, version );
+            }
+        }
+        
+        // A deleted row left alone doesn't shadow anything in the partition anymore
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( List< Version > idVersions : versions.values() )
+            for ( Version version : idVersions )
+                if ( !version.mDeleted )
+                    addRow( builder, version.mSnapshot, version.mRow );
+        EarthquakeTable earthquakes = builder.build();
+        
+        Segment compacted = null;
+        if ( !earthquakes.isEmpty() )
+        {
+            compacted = createSegment( partition, earthquakes );
+            if ( compacted == null )
+                return;
+        }
+        
+        mLock.writeLock().lock();
+        try
+        {
+            List< Segment > partitionSegments = mPartitions.get( partition );
+            partitionSegments.removeAll( segments );
+            if ( compacted != null )
+                partitionSegments.add( compacted );
+            if ( partitionSegments.isEmpty() )
+                mPartitions.remove( partition );
+            
+            // No query reads the replaced segments, and the next ones won't
+            for ( Segment segment : segments )
+                segment.delete();
+        }
+        finally
+        {
+            mLock.writeLock().unlock();
+        }
+        
+        Metrics.ARCHIVE_COMPACTIONS.incrementAndGet();
+    }
+    
+    /**
+     * Add the archived versions of the earthquakes of the given partition to the given ones,
+     * so the newest one of every event id is kept.
+     */
+    private void loadVersions( long partition, Map< String, Version > versions )
+    {
+        List< Segment > segments = mPartitions.get( partition );
+        if ( segments == null )
+            return;
+        
+        for ( Segment segment : segments )
+        {
+            EarthquakeSnapshot snapshot = openSegment( segment );
+            if ( snapshot == null )
+                continue;
+            
+            for ( int row = 0; row < snapshot.size(); row++ )
+            {
+                String id = snapshot.getId( row );
+                Version version = new Version( snapshot, row, segment.mSequence );
+                Version newest = versions.get( id );
+                if ( newest == null || version.isNewerThan( newest ) )
+                    versions.put( id, version );
+            }
+        }
+    }
+    
+    /**
+     * Write the given earthquakes in a new segment of the given partition, and add it to
+     * the archive.
+     */
+    private void writeSegment( long partition, EarthquakeTable earthquakes )
+    {
+        Segment segment = createSegment( partition, earthquakes );
+        if ( segment == null )
+            return;
+        
+        mLock.writeLock().lock();
+        try
+        {
+            List< Segment > segments = mPartitions.get( partition );
+            if ( segments == null )
+            {
+                segments = new ArrayList<>();
+                mPartitions.put( partition, segments );
+            }
+            segments.add( segment );
+        }
+        finally
+        {
+            mLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Write the given earthquakes sorted by time in the files of a new segment of the given
+     * partition, and returns the segment, or null if it couldn't be written.
+     */
+    private Segment createSegment( long partition, EarthquakeTable earthquakes )
+    {
+        if ( !mDirectory.exists() && !mDirectory.mkdirs() )
+        {
+            Log.e( LOG_TAG, "Problem creating the archive directory " + mDirectory );
+            return null;
+        }
+        
+        Segment segment = new Segment( mDirectory, partition, mNextSequence++ );
+        try
+        {
+            EarthquakeTable rows = earthquakes.sort( EarthquakeOrder.TIME_ASC );
+            EarthquakeSnapshot.write( segment.mFile, rows, null, null );
+            segment.summarize( EarthquakeSnapshot.open( segment.mFile ) );
+            segment.writeIndex();
+            return segment;
+        }
+        catch ( IOException ioException )
+        {
+            Log.e( LOG_TAG, "Problem writing the archive segment " + segment.mFile, ioException );
+            segment.delete();
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the rows of the given segment, or null if they couldn't be read.
+     */
+    private static EarthquakeSnapshot openSegment( Segment segment )
+    {
+        try
+        {
+            Metrics.ARCHIVE_SEGMENT_READS.incrementAndGet();
+            return EarthquakeSnapshot.open( segment.mFile );
+        }
+        catch ( IOException ioException )
+        {
+            Log.e( LOG_TAG, "Problem reading the archive segment " + segment.mFile, ioException );
+            return null;
+        }
+    }
+    
+    /**
+     * Read the indexes of the segments the first time the archive is used.
+     */
+    private void ensureOpen()
+    {
+        mLock.writeLock().lock();
+        try
+        {
+            if ( mPartitions != null )
+                return;
+            
+            mPartitions = new TreeMap<>();
+            File[] files = mDirectory.listFiles();
+            if ( files == null )
+                return;
+            
+            for ( File file : files )
+            {
+                String name = file.getName();
+                if ( name.endsWith( ".tmp" ) )
+                {
+                    // Left over by a write the app was killed during
+                    file.delete();
+                    continue;
+                }
+                
+                Segment segment = Segment.parse( file );
+                if ( segment == null )
+                    continue;
+                
+                if ( !segment.readIndex() )
+                {
+                    Log.e( LOG_TAG, "Dropping the unreadable archive segment " + file );
+                    segment.delete();
+                    continue;
+                }
+                
+                List< Segment > segments = mPartitions.get( segment.mPartition );
+                if ( segments == null )
+                {
+                    segments = new ArrayList<>();
+                    mPartitions.put( segment.mPartition, segments );
+                }
+                segments.add( segment );
+                mNextSequence = Math.max( mNextSequence, segment.mSequence + 1 );
+            }
+            
+            // The segments are listed in no particular order
+            for ( List< Segment > segments : mPartitions.values() )
+                Segment.sort( segments );
+            
+            // An index without its segment was left by a compaction the app was killed during
+            for ( File file : files )
+                if ( file.getName().endsWith( INDEX_SUFFIX ) && !new File( mDirectory,
+                        file.getName().replace( INDEX_SUFFIX, SEGMENT_SUFFIX ) ).exists() )
+                    file.delete();
+        }
+        finally
+        {
+            mLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Returns the builder of the rows appended to the given partition.
+     */
+    private static EarthquakeTable.Builder getBuilder( Map< Long, EarthquakeTable.Builder > rows, long partition )
+    {
+        EarthquakeTable.Builder builder = rows.get( partition );
+        if ( builder == null )
+        {
+            builder = new EarthquakeTable.Builder();
+            rows.put( partition, builder );
+        }
+        return builder;
+    }
+    
+    /**
+     * Add the given row of the given segment to the given builder.
+     */
+    private static void addRow( EarthquakeTable.Builder builder, EarthquakeSnapshot snapshot, int row )
+    {
+        builder.add( snapshot.getId( row ), snapshot.getMagnitude( row ), snapshot.getLocation( row ),
+                snapshot.getTimeInMilliseconds( row ), snapshot.getUpdated( row ), snapshot.getUrl( row ),
+                snapshot.isDeleted( row ), snapshot.getLongitude( row ), snapshot.getLatitude( row ),
+                snapshot.getDepth( row ), snapshot.getFelt( row ), snapshot.getSignificance( row ),
+                snapshot.isTsunami( row ), snapshot.getAlertLevel( row ) );
+    }
+    
+    /**
+     * Returns the first row of the given segment at or after the given time.
+     */
+    private static int lowerBound( EarthquakeSnapshot snapshot, long time )
+    {
+        int low = 0, high = snapshot.size();
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            if ( snapshot.getTimeInMilliseconds( middle ) < time )
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+    
+    /**
+     * A segment file of a partition, and its index.
+     */
+    private static class Segment
+    {
+        private File mFile;
+        
+        private File mIndexFile;
+        
+        private long mPartition;
+        
+        /**
+         * Order of the segment among all the segments, a later segment has a higher one
+         */
+        private long mSequence;
+        
+        private int mRowCount;
+        
+        private int mTombstoneCount;
+        
+        /**
+         * Time range of the rows, and largest magnitude, infinite if a magnitude is unknown
+         */
+        private long mMinTime;
+        
+        private long mMaxTime;
+        
+        private double mMaxMagnitude;
+        
+        Segment( File directory, long partition, long sequence )
+        {
+            mPartition = partition;
+            mSequence = sequence;
+            mFile = new File( directory, partition + "_" + sequence + SEGMENT_SUFFIX );
+            mIndexFile = new File( directory, partition + "_" + sequence + INDEX_SUFFIX );
+        }
+        
+        /**
+         * Returns the segment of the given segment file, or null if it's another file.
+         */
+        static Segment parse( File file )
+        {
+            String name = file.getName();
+            int separator = name.lastIndexOf( '_' );
+            if ( !name.endsWith( SEGMENT_SUFFIX ) || separator < 0 )
+                return null;
+            
+            try
+            {
+                return new Segment( file.getParentFile(),
+                        Long.parseLong( name.substring( 0, separator ) ),
+                        Long.parseLong( name.substring( separator + 1, name.length() - SEGMENT_SUFFIX.length() ) ) );
+            }
+            catch ( NumberFormatException numberFormatException )
+            {
+                return null;
+            }
+        }
+        
+        /**
+         * Sort the given segments of a partition, oldest first.
+         */
+        static void sort( List< Segment > segments )
+        {
+            Collections.sort( segments, new Comparator< Segment >()
+            {
+                @Override
+                public int compare( Segment first, Segment second )
+                {
+                    return first.mSequence < second.mSequence ? -1 : ( first.mSequence == second.mSequence ? 0 : 1 );
+                }
+            } );
+        }
+        
+        /**
+         * Compute the index of the given rows of the segment, sorted by time.
+         */
+        void summarize( EarthquakeSnapshot snapshot )
+        {
+            mRowCount = snapshot.size();
+            mTombstoneCount = 0;
+            mMinTime = mRowCount == 0 ? 0 : snapshot.getTimeInMilliseconds( 0 );
+            mMaxTime = mRowCount == 0 ? -1 : snapshot.getTimeInMilliseconds( mRowCount - 1 );
+            mMaxMagnitude = Double.NEGATIVE_INFINITY;
+            for ( int row = 0; row < mRowCount; row++ )
+            {
+                double magnitude = snapshot.getMagnitude( row );
+                mMaxMagnitude = Double.isNaN( magnitude ) ?
+                        Double.POSITIVE_INFINITY : Math.max( mMaxMagnitude, magnitude );
+                if ( snapshot.isDeleted( row ) )
+                    mTombstoneCount++;
+            }
+        }
+        
+        /**
+         * Write the index file, through a temporary file so it's never half written.
+         */
+        void writeIndex() throws IOException
+        {
+            File temporaryFile = new File( mIndexFile.getPath() + ".tmp" );
+            FileOutputStream fileOutputStream = new FileOutputStream( temporaryFile );
+            try
+            {
+                DataOutputStream output = new DataOutputStream( new BufferedOutputStream( fileOutputStream ) );
+                output.writeInt( INDEX_MAGIC );
+                output.writeInt( INDEX_VERSION );
+                output.writeInt( mRowCount );
+                output.writeInt( mTombstoneCount );
+                output.writeLong( mMinTime );
+                output.writeLong( mMaxTime );
+                output.writeDouble( mMaxMagnitude );
+                output.flush();
+                fileOutputStream.getFD().sync();
+            }
+            finally
+            {
+                fileOutputStream.close();
+            }
+            
+            if ( !temporaryFile.renameTo( mIndexFile ) )
+            {
+                temporaryFile.delete();
+                throw new IOException( "Problem renaming the archive index " + temporaryFile );
+            }
+        }
+        
+        /**
+         * Read the index file, or compute it from the segment again if it's missing or unreadable.
+         *
+         * @return whether the index could be read or computed
+         */
+        boolean readIndex()
+        {
+            try
+            {
+                DataInputStream input = new DataInputStream(
+                        new BufferedInputStream( new FileInputStream( mIndexFile ) ) );
+                try
+                {
+                    if ( input.readInt() == INDEX_MAGIC && input.readInt() == INDEX_VERSION )
+                    {
+                        mRowCount = input.readInt();
+                        mTombstoneCount = input.readInt();
+                        mMinTime = input.readLong();
+                        mMaxTime = input.readLong();
+                        mMaxMagnitude = input.readDouble();
+                        return true;
+                    }
+                }
+                finally
+                {
+                    input.close();
+                }
+            }
+            catch ( IOException ioException )
+            {
+                // The app was killed before writing it, it is computed from the segment again
+            }
+            
+            try
+            {
+                Metrics.ARCHIVE_INDEX_REBUILDS.incrementAndGet();
+                summarize( EarthquakeSnapshot.open( mFile ) );
+                writeIndex();
+                return true;
+            }
+            catch ( IOException ioException )
+            {
+                Log.e( LOG_TAG, "Problem rebuilding the archive index " + mIndexFile, ioException );
+                return false;
+            }
+        }
+        
+        /**
+         * Delete the files of the segment.
+         */
+        void delete()
+        {
+            mFile.delete();
+            mIndexFile.delete();
+        }
+    }
+    
+    /**
+     * A row of an earthquake in a segment, or appended to the archive.
+     */
+    private static class Version
+    {
+        private EarthquakeSnapshot mSnapshot;
+        
+        private int mRow;
+        
+        private long mSequence;
+        
+        private long mUpdated;
+        
+        private boolean mDeleted;
+        
+        private long mTime;
+        
+        private double mMagnitude;
+        
+        Version( EarthquakeSnapshot snapshot, int row, long sequence )
+        {
+            this( snapshot, row, sequence, snapshot.getUpdated( row ), snapshot.isDeleted( row ),
+                    snapshot.getTimeInMilliseconds( row ), snapshot.getMagnitude( row ) );
+        }
+        
+        Version( EarthquakeSnapshot snapshot, int row, long sequence, long updated, boolean deleted,
+                 long time, double magnitude )
+        {
+            mSnapshot = snapshot;
+            mRow = row;
+            mSequence = sequence;
+            mUpdated = updated;
+            mDeleted = deleted;
+            mTime = time;
+            mMagnitude = magnitude;
+        }
+        
+        /**
+         * Returns whether this row is newer than the given row of the same event: it was
+         * updated later, or it isn't a tombstone of the version updated at the same time,
+         * or else it's in a later segment.
+         */
+        boolean isNewerThan( Version other )
+        {
+            if ( mUpdated != other.mUpdated )
+                return mUpdated > other.mUpdated;
+            if ( mDeleted != other.mDeleted )
+                return !mDeleted;
+            return mSequence > other.mSequence;
+        }
+        
+        /**
+         * Returns whether the given row of the same event has the same time and magnitude,
+         * so one of them shadows the other one.
+         */
+        boolean hasSameTimeAndMagnitude( Version other )
+        {
+            return mTime == other.mTime && Double.compare( mMagnitude, other.mMagnitude ) == 0;
+        }
+    }
+}
\ No newline at end of file
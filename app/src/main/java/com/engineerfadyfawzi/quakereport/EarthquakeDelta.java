@@ -0,0 +1,164 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link EarthquakeDelta} is the result of merging the earthquakes changed since the last sync
+ * into the previous table of earthquakes, matching them by event id.
+ *
+ * Besides the merged table, it tells how many earthquakes were inserted, updated and deleted.
+ */
+public class EarthquakeDelta
+{
+    /**
+     * The previous table with the changes applied
+     */
+    private EarthquakeTable mEarthquakes;
+    
+    private int mInsertedCount;
+    
+    private int mUpdatedCount;
+    
+    private int mDeletedCount;
+    
+    private EarthquakeDelta()
+    {
+        
+    }
+    
+    /**
+     * Merge the changed earthquakes into the previous table by event id: new earthquakes are
+     * inserted, newer versions replace the previous ones and deleted earthquakes are removed.
+     *
+     * @param earthquakes is the previous table, all the earthquakes of its query, sorted in the given order
+     * @param changes are the earthquakes added, updated or deleted since the previous table
+     * @param order is the order of the previous table, which the merged table keeps
+     */
+    public static EarthquakeDelta merge( EarthquakeTable earthquakes, EarthquakeTable changes,
+                                         EarthquakeOrder order )
+    {
+        return merge( earthquakes, changes, order, true );
+    }
+    
+    /**
+     * Merge the changed earthquakes into the previous table like
+     * {@link #merge(EarthquakeTable, EarthquakeTable, EarthquakeOrder)}, when the previous table
+     * may only be the first pages of its query.
+     *
+     * The next page of the query starts right after the rows of the table, so the merged table
+     * must still be the first rows of the query: a change sorting after the last row of the
+     * previous table belongs to a page that isn't loaded yet, and is dropped. An earthquake
+     * updated to sort after it leaves the table, and is counted as deleted.
+     *
+     * @param earthquakes is the previous table, the first pages of its query, sorted in the given order
+     * @param changes are the earthquakes added, updated or deleted since the previous table
+     * @param order is the order of the previous table, which the merged table keeps
+     * @param complete is whether the previous table has all the earthquakes of its query,
+     * so no change is dropped
+     */
+    public static EarthquakeDelta merge( EarthquakeTable earthquakes, EarthquakeTable changes,
+                                         EarthquakeOrder order, boolean complete )
+    {
+        EarthquakeDelta delta = new EarthquakeDelta();
+        
+        // Keep the row of the latest version of every changed earthquake
+        Map< String, Integer > changesById = new LinkedHashMap<>();
+        for ( int row = 0; row < changes.size(); row++ )
+        {
+            Integer previousChange = changesById.get( changes.getId( row ) );
+            if ( previousChange == null || changes.getUpdated( previousChange ) <= changes.getUpdated( row ) )
+                changesById.put( changes.getId( row ), row );
+        }
+        
+        // Last row of the loaded pages, the changes sorting after it are in the next pages
+        int lastRow = complete ? -1 : earthquakes.size() - 1;
+        
+        EarthquakeTable.Builder merged =
+                new EarthquakeTable.Builder( earthquakes.size() + changesById.size() );
+        
+        for ( int row = 0; row < earthquakes.size(); row++ )
+        {
+            Integer change = changesById.remove( earthquakes.getId( row ) );
+            
+            if ( change == null || changes.getUpdated( change ) < earthquakes.getUpdated( row ) )
+                merged.addRow( earthquakes, row );
+            else if ( changes.isDeleted( change ) || isAfter( changes, change, earthquakes, lastRow, order ) )
+                delta.mDeletedCount++;
+            else if ( changes.rowEquals( change, earthquakes, row ) )
+                merged.addRow( earthquakes, row );
+            else
+            {
+                merged.addRow( changes, change );
+                delta.mUpdatedCount++;
+            }
+        }
+        
+        // The remaining changes are earthquakes we didn't have yet
+        for ( int change : changesById.values() )
+        {
+            if ( changes.isDeleted( change ) || isAfter( changes, change, earthquakes, lastRow, order ) )
+                continue;
+            
+            merged.addRow( changes, change );
+            delta.mInsertedCount++;
+        }
+        
+        // The sort is stable, so the unchanged earthquakes keep their relative order
+        delta.mEarthquakes = merged.build().sort( order );
+        return delta;
+    }
+    
+    /**
+     * Returns whether the given change sorts after the given last row of the loaded pages,
+     * always false without a last row.
+     */
+    private static boolean isAfter( EarthquakeTable changes, int change, EarthquakeTable earthquakes,
+                                    int lastRow, EarthquakeOrder order )
+    {
+        return lastRow >= 0 && order.compare( changes, change, earthquakes, lastRow ) > 0;
+    }
+    
+    /**
+     * Returns the latest "updated" time of the given earthquakes, which is the watermark
+     * to ask for the next changes from, or the given default if the table is empty.
+     */
+    public static long getWatermark( EarthquakeTable earthquakes, long defaultWatermark )
+    {
+        long watermark = defaultWatermark;
+        for ( int row = 0; row < earthquakes.size(); row++ )
+            watermark = Math.max( watermark, earthquakes.getUpdated( row ) );
+        return watermark;
+    }
+    
+    /**
+     * Returns the merged table of earthquakes.
+     */
+    public EarthquakeTable getEarthquakes()
+    {
+        return mEarthquakes;
+    }
+    
+    public int getInsertedCount()
+    {
+        return mInsertedCount;
+    }
+    
+    public int getUpdatedCount()
+    {
+        return mUpdatedCount;
+    }
+    
+    public int getDeletedCount()
+    {
+        return mDeletedCount;
+    }
+    
+    /**
+     * Returns whether nothing changed.
+     */
+    public boolean isEmpty()
+    {
+        return mInsertedCount == 0 && mUpdatedCount == 0 && mDeletedCount == 0;
+    }
+}
\ No newline at end of file
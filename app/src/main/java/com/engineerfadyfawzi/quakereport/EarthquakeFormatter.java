@@ -0,0 +1,130 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * An {@link EarthquakeFormatter} turns the rows of an {@link EarthquakeTable} into the strings
+ * and colors a list item displays, so the adapter only has to set them on its views.
+ *
+ * It's meant to run on the loader thread. It reuses its formats and its {@link Date} object,
+ * so it isn't thread safe: every loader has its own formatter.
+ *
+ * It doesn't depend on the Android framework, the loader resolves the colors and strings
+ * it needs from the resources, so it can also be measured on a plain JVM.
+ */
+public class EarthquakeFormatter
+{
+    /**
+     * The part of the location string from the USGS service that we use to determine
+     * whether or not there is a location offset present ("5km N of Cairo, Egypt").
+     */
+    private static final String LOCATION_SEPARATOR = " of ";
+    
+    /**
+     * Colors of the magnitude circle, the color at index i is for magnitudes from i to i + 1,
+     * and the last one is for any larger magnitude.
+     */
+    private int[] mMagnitudeColors;
+    
+    /**
+     * Location offset of the locations without one ("Near the")
+     */
+    private String mDefaultLocationOffset;
+    
+    private DecimalFormat mMagnitudeFormat = new DecimalFormat( "0.0" );
+    
+    private SimpleDateFormat mDateFormat = new SimpleDateFormat( "LLL dd, yyyy" );
+    
+    private SimpleDateFormat mTimeFormat = new SimpleDateFormat( "h:mm a" );
+    
+    private Date mDate = new Date();
+    
+    /**
+     * Constructs a new {@link EarthquakeFormatter} with already resolved resources.
+     *
+     * @param magnitudeColors colors of the magnitude circle, from magnitude 0 to 10 and more
+     * @param defaultLocationOffset location offset of the locations without one
+     */
+    public EarthquakeFormatter( int[] magnitudeColors, String defaultLocationOffset )
+    {
+        mMagnitudeColors = magnitudeColors;
+        mDefaultLocationOffset = defaultLocationOffset;
+    }
+    
+    /**
+     * Return the formatted magnitude string showing 1 decimal place (i.e. "3.2")
+     * from a decimal magnitude value.
+     */
+    public String formatMagnitude( double magnitude )
+    {
+        return mMagnitudeFormat.format( magnitude );
+    }
+    
+    /**
+     * Return the color for the magnitude circle based on the intensity of the earthquake.
+     *
+     * @param magnitude of the earthquake
+     */
+    public int getMagnitudeColor( double magnitude )
+    {
+        int intMagnitude = ( int ) magnitude;
+        return mMagnitudeColors[ Math.max( 0, Math.min( intMagnitude, mMagnitudeColors.length - 1 ) ) ];
+    }
+    
+    /**
+     * Return the formatted date string (i.e. "Mar 3, 1984") from a time in milliseconds.
+     */
+    public String formatDate( long timeInMilliseconds )
+    {
+        mDate.setTime( timeInMilliseconds );
+        return mDateFormat.format( mDate );
+    }
+    
+    /**
+     * Return the formatted time string (i.e. "4:30 PM") from a time in milliseconds.
+     */
+    public String formatTime( long timeInMilliseconds )
+    {
+        mDate.setTime( timeInMilliseconds );
+        return mTimeFormat.format( mDate );
+    }
+    
+    /**
+     * Return the location offset ("5km N of") of the original location string from the USGS
+     * service, which can be in the format of "5km N of Cairo, Egypt" or "Pacific-Antarctic Ridge".
+     * It's "Near the" if there is no location offset.
+     */
+    public String getLocationOffset( String originalLocation )
+    {
+        int separator = originalLocation.indexOf( LOCATION_SEPARATOR );
+        if ( separator < 0 )
+            return mDefaultLocationOffset;
+        
+        // Location offset should be "5km N " + " of " --> "5km N of"
+        return originalLocation.substring( 0, separator + LOCATION_SEPARATOR.length() );
+    }
+    
+    /**
+     * Return the primary location ("Cairo, Egypt") of the original location string
+     * from the USGS service, which is the full location string if there is no location offset.
+     */
+    public String getPrimaryLocation( String originalLocation )
+    {
+        int separator = originalLocation.indexOf( LOCATION_SEPARATOR );
+        if ( separator < 0 )
+            return originalLocation;
+        
+        return originalLocation.substring( separator + LOCATION_SEPARATOR.length() );
+    }
+    
+    /**
+     * Returns the given table with all its rows formatted, only formatting the rows
+     * that aren't formatted yet. This is on a background thread.
+     */
+    public EarthquakeTable format( EarthquakeTable earthquakes )
+    {
+        return earthquakes.format( this );
+    }
+}
\ No newline at end of file
@@ -1,25 +1,65 @@
 package com.engineerfadyfawzi.quakereport;
 
 import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import java.util.List;
-
+import androidx.core.content.ContextCompat;
+import androidx.core.os.OperationCanceledException;
 import androidx.loader.content.AsyncTaskLoader;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 // TODO: To Handle the orientation change and avoiding creating duplicate request follow these steps.
 
 /**
- * To define the EarthquakeLoader class, we extend AsyncTaskLoader and specify List as the generic
- * parameter, which explains what type of data is expected to be loaded. In this case, the loader
- * is loading a list of Earthquake objects. Then we take a String URL in the constructor, and in
+ * To define the EarthquakeLoader class, we extend AsyncTaskLoader and specify Result as
+ * the generic parameter, which explains what type of data is expected to be loaded. In this case,
+ * the loader is loading a table of earthquakes, and its Result tells how it was loaded (a page,
+ * a sync...). Then we take a String URL in the constructor, and in
  * loadInBackground(), we'll do the exact same operations as in doInBackground back in
  * EarthquakeAsyncTask.
  *
  * Loads a list of earthquakes by using an AsyncTask to perform the
  * network request to the given URL.
+ *
+ * The earthquakes are requested one page (an "offset"/"limit" window of the query) at a time.
+ * The first load only fetches the first page, and every {@link #loadNextPage()} call fetches
+ * the next one and delivers the previous pages with the new page appended to them.
+ *
+ * The first page is kept in a {@link FeedCache}, so it's delivered right away on a cold start.
+ * When the cached page is stale, it's still delivered first, then reloaded from the network in
+ * the background and delivered again only if something changed (stale-while-revalidate).
+ * The reload is a conditional request, so an unchanged page isn't even downloaded again.
+ *
+ * {@link #syncUpdates()} only asks USGS for the earthquakes changed since the loaded ones were
+ * last updated, and merges them into the loaded pages by event id.
+ *
+ * The loaded earthquakes are indexed by a {@link QueryPlanner}. When the query settings change,
+ * the new loader is given the planner of the previous one, and answers the new query from the
+ * earthquakes loaded for the previous query when it can, instead of requesting its first page.
+ *
+ * A load that isn't needed anymore, i.e. the loader was restarted for a new query, is canceled
+ * with {@link #cancelLoadInBackground()}: its request is aborted, and the parse of its response
+ * stops before the next earthquake, instead of downloading a page nobody will see.
+ *
+ * The first page downloaded from the network is delivered progressively: the earthquakes
+ * parsed so far are formatted and delivered in batches while the response is still streaming in,
+ * so the first screen is filled after its first few KB. At most one batch waits for the main
+ * thread at a time, a batch parsed before the previous one is delivered replaces it, so a fast
+ * parse never floods the main thread. The whole page is still the result of the load.
+ *
+ * Everything loaded from the network is also appended to the {@link EarthquakeArchive} in the
+ * background. When the first page can't be loaded (the device is offline) and isn't cached,
+ * the archived earthquakes of the query are delivered instead of nothing.
  */
-public class EarthquakeLoader extends AsyncTaskLoader< List< Earthquake > >
+public class EarthquakeLoader extends AsyncTaskLoader< EarthquakeLoader.Result >
 {
     /**
      * Tag for log messages
@@ -27,27 +67,275 @@ public class EarthquakeLoader extends AsyncTaskLoader< List< Earthquake > >
     private static final String LOG_TAG = EarthquakeLoader.class.getName();
     
     /**
-     * Query URL
+     * Time range in milliseconds of a query without a start time, USGS returns the earthquakes
+     * of the last 30 days
+     */
+    private static final long DEFAULT_QUERY_RANGE = TimeUnit.DAYS.toMillis( 30 );
+    
+    /**
+     * Modes of a load in background: loading the next page (or the first one), revalidating the
+     * cached first page, syncing the changes since the loaded earthquakes were updated, and
+     * polling the live feed
+     */
+    private static final int MODE_PAGE = 0;
+    
+    private static final int MODE_REVALIDATE = 1;
+    
+    private static final int MODE_SYNC = 2;
+    
+    private static final int MODE_POLL = 3;
+    
+    /**
+     * Query URL, without the "offset" and "limit" parameters of a page
      */
     private String mUrl;
     
+    /**
+     * Number of earthquakes requested per page
+     */
+    private int mPageSize;
+    
+    /**
+     * Persistent cache of the first page of the query
+     */
+    private FeedCache mFeedCache;
+    
+    /**
+     * Archive of all the earthquakes loaded, or null
+     */
+    private EarthquakeArchive mArchive;
+    
+    /**
+     * Formats the loaded earthquakes for display, on the background thread
+     */
+    private EarthquakeFormatter mFormatter;
+    
+    /**
+     * Minimum magnitude of the query
+     */
+    private double mMinMagnitude;
+    
+    /**
+     * USGS "orderby" value of the query
+     */
+    private String mOrderBy;
+    
+    /**
+     * Planner of the previous query, which may answer this query, until the first load
+     */
+    private volatile QueryPlanner mPreviousQuery;
+    
+    /**
+     * Planner indexing the last loaded earthquakes
+     */
+    private volatile QueryPlanner mQueryPlanner;
+    
+    /**
+     * Index searching the primary locations of the last loaded earthquakes
+     */
+    private volatile LocationSearchIndex mSearchIndex;
+    
     // COMPLETED (1): Create a member variable inside AsyncTaskLoader to store the cached result in
     
     /**
-     * List of earthquakes that return from background thread.
+     * Table of earthquakes that return from background thread (all the pages loaded so far).
+     * It's read from the background thread to append the next page to it.
+     */
+    private volatile EarthquakeTable earthquakes;
+    
+    /**
+     * Whether the last page loaded was a full page, so the query may have more earthquakes.
+     */
+    private volatile boolean mHasMorePages = true;
+    
+    /**
+     * Whether a page is being loaded in the background right now.
+     */
+    private boolean mLoadingPage;
+    
+    /**
+     * The first page as it was read from the cache, with the validators of its response.
+     */
+    private volatile FeedCache.Entry mCachedPage;
+    
+    /**
+     * Mode of the next load in background, set on the main thread before it's started.
+     * The load carries it in its {@link Result}, which is delivered according to it.
      */
-    private List< Earthquake > earthquakes;
+    private volatile int mMode = MODE_PAGE;
+    
+    /**
+     * Live feed polled and merged into the loaded earthquakes by the next poll
+     */
+    private volatile LiveFeed mPolledFeed;
+    
+    /**
+     * Listener of the poll of the live feed, notified once it's merged
+     */
+    private OnLiveFeedPolledListener mOnLiveFeedPolledListener;
+    
+    /**
+     * Signal canceling the request of the load in background, or null if no load is running.
+     * It's guarded by the loader.
+     */
+    private CancellationSignal mCancellationSignal;
+    
+    /**
+     * Handler of the main thread, delivering the batches of the first page
+     */
+    private Handler mHandler = new Handler( Looper.getMainLooper() );
+    
+    /**
+     * Latest batch of the first page waiting to be delivered on the main thread, or null if none is
+     */
+    private final AtomicReference< EarthquakeTable > mPendingBatch = new AtomicReference<>();
+    
+    /**
+     * Publishes the batches of the first page parsed while it's downloading
+     */
+    private QueryUtils.OnEarthquakesParsedListener mOnEarthquakesParsedListener =
+            new QueryUtils.OnEarthquakesParsedListener()
+            {
+                @Override
+                public void onEarthquakesParsed( EarthquakeTable earthquakes )
+                {
+                    publishBatch( earthquakes );
+                }
+            };
+    
+    /**
+     * Delivery of the pending batch on the main thread
+     */
+    private Runnable mDeliverBatch = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            deliverBatch();
+        }
+    };
     
     /**
      * Constructors a new {@link EarthquakeLoader}
      *
      * @param context of the activity
      * @param url to load data from
+     * @param pageSize number of earthquakes to request per page
+     * @param feedCache where the first page of the query is cached
+     */
+    public EarthquakeLoader( Context context, String url, int pageSize, FeedCache feedCache )
+    {
+        this( context, url, pageSize, feedCache, null, null );
+    }
+    
+    /**
+     * Constructors a new {@link EarthquakeLoader}, which answers its query from the earthquakes
+     * loaded for the previous query when it can.
+     *
+     * @param context of the activity
+     * @param url to load data from, with its "minmag" and "orderby" parameters
+     * @param pageSize number of earthquakes to request per page
+     * @param feedCache where the first page of the query is cached
+     * @param previousQuery is the planner of the previous query, or null
+     * @param archive where the loaded earthquakes are archived, or null
      */
-    public EarthquakeLoader( Context context, String url )
+    public EarthquakeLoader( Context context, String url, int pageSize, FeedCache feedCache,
+                             QueryPlanner previousQuery, EarthquakeArchive archive )
     {
         super( context );
         mUrl = url;
+        mPageSize = pageSize;
+        mFeedCache = feedCache;
+        mArchive = archive;
+        mFormatter = createFormatter( context );
+        mPreviousQuery = previousQuery;
+        
+        if ( url != null )
+        {
+            Uri uri = Uri.parse( url );
+            mMinMagnitude = parseMagnitude( uri.getQueryParameter( "minmag" ) );
+            mOrderBy = uri.getQueryParameter( "orderby" );
+        }
+    }
+    
+    /**
+     * Returns the URL of the query, without the "offset" and "limit" of a page.
+     */
+    public String getUrl()
+    {
+        return mUrl;
+    }
+    
+    /**
+     * Returns the planner indexing the delivered earthquakes, which can answer the next query
+     * from them, or null if nothing was delivered yet or a page is being loaded.
+     * This must be called on the main thread.
+     */
+    public QueryPlanner getQueryPlanner()
+    {
+        QueryPlanner queryPlanner = mQueryPlanner;
+        if ( mLoadingPage || queryPlanner == null || queryPlanner.getEarthquakes() != earthquakes )
+            return null;
+        
+        return queryPlanner;
+    }
+    
+    /**
+     * Returns the index searching the primary locations of the last loaded earthquakes,
+     * or null if nothing was loaded yet. Its earthquakes may not be delivered yet.
+     */
+    public LocationSearchIndex getSearchIndex()
+    {
+        return mSearchIndex;
+    }
+    
+    /**
+     * Start loading the next page of earthquakes, unless a page is already being loaded
+     * or the last page has been reached. This must be called on the main thread.
+     */
+    public void loadNextPage()
+    {
+        if ( mLoadingPage || !mHasMorePages || earthquakes == null )
+            return;
+        
+        mMode = MODE_PAGE;
+        mLoadingPage = true;
+        forceLoad(); // call loadInBackground()
+    }
+    
+    /**
+     * Start merging the earthquakes added, updated or deleted since the last sync into the loaded
+     * pages, unless a page is being loaded. This must be called on the main thread.
+     */
+    public void syncUpdates()
+    {
+        if ( mLoadingPage || earthquakes == null )
+            return;
+        
+        mMode = MODE_SYNC;
+        mLoadingPage = true;
+        forceLoad(); // call loadInBackground()
+    }
+    
+    /**
+     * Start polling the given live feed and merging its new and updated earthquakes into the
+     * loaded pages, unless a page is being loaded. This must be called on the main thread.
+     *
+     * @param liveFeed to poll
+     * @param listener notified on the main thread once the poll is merged and delivered
+     * @return whether the poll started, the listener is only notified if it did
+     */
+    public boolean pollLiveFeed( LiveFeed liveFeed, OnLiveFeedPolledListener listener )
+    {
+        if ( mLoadingPage || earthquakes == null )
+            return false;
+        
+        mMode = MODE_POLL;
+        mPolledFeed = liveFeed;
+        mOnLiveFeedPolledListener = listener;
+        mLoadingPage = true;
+        forceLoad(); // call loadInBackground()
+        return true;
     }
     
     /**
@@ -64,13 +352,19 @@ public class EarthquakeLoader extends AsyncTaskLoader< List< Earthquake > >
     @Override
     protected void onStartLoading()
     {
-        Log.i( LOG_TAG, "TEST: onStartLoading() called ..." );
-        
         // COMPLETED (2): Modify onStartLoading to just call deliverResult if the cache isn't null
         if ( earthquakes != null )
-            deliverResult( earthquakes ); // skip loadInBackground() call
+        {
+            // Deliver all the cached pages as they are, whatever is loading in the background now,
+            // so they don't go through deliverResult() as the result of the load
+            super.deliverResult( new Result( earthquakes ) ); // skip loadInBackground() call
+        }
         else
+        {
+            mMode = MODE_PAGE;
+            mLoadingPage = true;
             forceLoad(); // call loadInBackground()
+        }
     }
     
     /**
@@ -79,34 +373,585 @@ public class EarthquakeLoader extends AsyncTaskLoader< List< Earthquake > >
      * Think of this as AsyncTask doInBackground() method, here you will actually initiate Network
      * call, or any work that need to be done on background
      *
+     * The loaded earthquakes are also formatted here, so the adapter doesn't have to format
+     * anything on the main thread. Earthquakes that were already delivered are formatted already,
+     * so they're returned as they are. They're indexed here too, for the next query.
+     *
      * @return
      */
     @Override
-    public List< Earthquake > loadInBackground()
+    public Result loadInBackground()
     {
-        Log.i( LOG_TAG, "TEST: loadInBackground() called ..." );
+        synchronized ( this )
+        {
+            if ( isLoadInBackgroundCanceled() )
+                throw new OperationCanceledException();
+            mCancellationSignal = new CancellationSignal();
+        }
+        
+        try
+        {
+            Result result = loadEarthquakes( mMode );
+            result.mLoadedTime = System.nanoTime();
+            result.mEarthquakes = formatEarthquakes( result.mEarthquakes );
+            return result;
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                mCancellationSignal = null;
+            }
+        }
+    }
+    
+    /**
+     * Cancel the request of the load in background, and the parse of its response.
+     * This is on the main thread.
+     */
+    @Override
+    public void cancelLoadInBackground()
+    {
+        super.cancelLoadInBackground();
+        
+        // A batch of the canceled load is never delivered
+        mPendingBatch.set( null );
         
+        CancellationSignal cancellationSignal;
+        synchronized ( this )
+        {
+            cancellationSignal = mCancellationSignal;
+        }
+        
+        // Cancel outside the lock, it closes the connection of the request
+        if ( cancellationSignal != null )
+            cancellationSignal.cancel();
+    }
+    
+    /**
+     * Format and index the loaded earthquakes. This is on a background thread.
+     *
+     * @param earthquakes loaded, or null if they couldn't be loaded
+     */
+    private EarthquakeTable formatEarthquakes( EarthquakeTable earthquakes )
+    {
+        if ( earthquakes == null )
+            return null;
+        
+        earthquakes = mFormatter.format( earthquakes );
+        
+        QueryPlanner queryPlanner = mQueryPlanner;
+        if ( queryPlanner == null || queryPlanner.getEarthquakes() != earthquakes ||
+                queryPlanner.isComplete() == mHasMorePages )
+            mQueryPlanner = new QueryPlanner( earthquakes, mMinMagnitude, mOrderBy, !mHasMorePages );
+        
+        // Index the appended page only, when a page was appended to the indexed earthquakes
+        LocationSearchIndex searchIndex = mSearchIndex;
+        mSearchIndex = searchIndex == null ?
+                new LocationSearchIndex( earthquakes ) : searchIndex.update( earthquakes );
+        
+        return earthquakes;
+    }
+    
+    /**
+     * Load the earthquakes, which are the previous ones with the next page appended to them,
+     * or the previous ones revalidated, synced or merged with the live feed. This is on a
+     * background thread.
+     *
+     * @param mode of the load
+     */
+    private Result loadEarthquakes( int mode )
+    {
         // Don't perform the request if the URL is null and return early.
         if ( mUrl == null )
-            return null;
+            return new Result( null );
+        
+        if ( mode == MODE_REVALIDATE )
+            return new Result( revalidateFirstPage(), MODE_REVALIDATE );
+        
+        if ( mode == MODE_SYNC )
+            return new Result( syncEarthquakes(), MODE_SYNC );
+        
+        if ( mode == MODE_POLL )
+            return pollLiveFeed();
+        
+        return loadPage();
+    }
+    
+    /**
+     * Load the next page and append it to the previous ones, or load the first page.
+     * This is on a background thread.
+     *
+     * @return the earthquakes loaded, which are null if the first page couldn't be loaded
+     */
+    private Result loadPage()
+    {
+        // The pages loaded so far, the next page starts right after them.
+        EarthquakeTable previousPages = earthquakes;
+        int pageStart = previousPages == null ? 0 : previousPages.size();
+        String pageUrl = buildPageUrl( pageStart );
+        
+        // Answer the query from the earthquakes loaded for the previous query, if they have them.
+        QueryPlanner previousQuery = mPreviousQuery;
+        if ( pageStart == 0 && previousQuery != null )
+        {
+            mPreviousQuery = null;
+            QueryPlanner queryPlanner = previousQuery.plan( mMinMagnitude, mOrderBy );
+            if ( queryPlanner != null )
+            {
+                Metrics.PLANNER_HITS.incrementAndGet();
+                
+                mQueryPlanner = queryPlanner;
+                mHasMorePages = !queryPlanner.isComplete();
+                return new Result( queryPlanner.getEarthquakes() );
+            }
+        }
+        
+        // Deliver the cached first page, if there is one, without waiting for the network.
+        if ( pageStart == 0 )
+        {
+            FeedCache.Entry cachedPage = mFeedCache.get( pageUrl );
+            if ( cachedPage != null )
+            {
+                mCachedPage = cachedPage;
+                mHasMorePages = cachedPage.getEarthquakes().size() >= mPageSize;
+                
+                // A stale page is revalidated once it's delivered
+                Result result = new Result( cachedPage.getEarthquakes() );
+                result.mStale = cachedPage.isStale();
+                return result;
+            }
+        }
         
         // Perform the network request, parse the response, and extract a list of earthquakes.
         
-        // Preform the HTTP request for earthquake data and process the response.
-        // Get the list of earthquakes from {@link QueryUtils}
-        List< Earthquake > earthquakes = QueryUtils.fetchEarthquakeData( mUrl );
+        // Preform the HTTP request for the next page of earthquake data and process the response.
+        // Get the table of earthquakes from {@link QueryUtils}
+        // Nothing is displayed before the first page, so it's delivered in batches while it's parsed.
+        FeedResponse feedResponse = QueryUtils.fetchEarthquakeData( pageUrl, null, null,
+                getCancellationSignal(), previousPages == null ? mOnEarthquakesParsedListener : null );
         
-        // Return the list of {@link Earthquake}s object as the result of the {@link EarthquakeLoader}
-        return earthquakes;
+        // If the page couldn't be loaded, keep the previous pages so it can be retried later.
+        if ( feedResponse == null )
+        {
+            throwIfCanceled();
+            return new Result( previousPages == null ? queryArchive() : previousPages );
+        }
+        
+        EarthquakeTable page = feedResponse.getEarthquakes();
+        if ( pageStart == 0 )
+            mFeedCache.put( pageUrl, page, feedResponse.getETag(), feedResponse.getLastModified() );
+        archive( page );
+        
+        mHasMorePages = page.size() >= mPageSize;
+        
+        // Append the new page to the previous ones
+        if ( previousPages == null )
+            return new Result( page );
+        
+        // Return the table of earthquakes as the result of the {@link EarthquakeLoader}
+        return new Result( appendPage( previousPages, page ) );
+    }
+    
+    /**
+     * Returns the given pages with the given next page appended to them. The earthquakes of the
+     * page already in the pages are skipped: the query may have changed since the pages were
+     * loaded, and moved some of their earthquakes down to the next page.
+     */
+    static EarthquakeTable appendPage( EarthquakeTable pages, EarthquakeTable page )
+    {
+        Set< String > ids = new HashSet<>( pages.size() * 2 );
+        for ( int row = 0; row < pages.size(); row++ )
+            ids.add( pages.getId( row ) );
+        
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder( pages.size() + page.size() ).addAll( pages );
+        for ( int row = 0; row < page.size(); row++ )
+            if ( ids.add( page.getId( row ) ) )
+                builder.addRow( page, row );
+        return builder.build();
+    }
+    
+    /**
+     * Format a batch of the first page, and hand it to the main thread to be delivered.
+     * This is on a background thread.
+     *
+     * @param batch is the table of the earthquakes of the first page parsed so far
+     */
+    private void publishBatch( EarthquakeTable batch )
+    {
+        if ( isLoadInBackgroundCanceled() )
+            return;
+        
+        EarthquakeTable formattedBatch = mFormatter.format( batch );
+        
+        // Only post the delivery if no batch is waiting for it already, otherwise the waiting
+        // batch is replaced by this newer one, and the main thread never falls behind the parse.
+        if ( mPendingBatch.getAndSet( formattedBatch ) == null )
+            mHandler.post( mDeliverBatch );
+        else
+            Metrics.COALESCED_BATCHES.incrementAndGet();
+    }
+    
+    /**
+     * Deliver the pending batch of the first page, unless the whole page was delivered or the
+     * load canceled in the meantime. The batch isn't kept as the loaded earthquakes, the next page
+     * can't be appended to it. This is on the main thread.
+     */
+    private void deliverBatch()
+    {
+        EarthquakeTable batch = mPendingBatch.getAndSet( null );
+        if ( batch == null || earthquakes != null || !isStarted() || isAbandoned() ||
+                isLoadInBackgroundCanceled() )
+            return;
+        
+        Metrics.DELIVERED_BATCHES.incrementAndGet();
+        super.deliverResult( new Result( batch ) );
     }
     
     // COMPLETED (3): Override deliverResult to store the data in our cache member variable
+    /**
+     * Deliver the result of a load in background, according to the mode it was loaded in.
+     * This is on the main thread.
+     */
     @Override
-    public void deliverResult( List< Earthquake > data )
+    public void deliverResult( Result result )
     {
-        Log.i( LOG_TAG, "TEST: deliverResult() called ..." );
+        // The whole result replaces any batch of it still waiting to be delivered
+        mPendingBatch.set( null );
+        mLoadingPage = false;
+        
+        EarthquakeTable data = result.mEarthquakes;
+        
+        // Only the result of a poll of the live feed has a listener to notify
+        OnLiveFeedPolledListener onLiveFeedPolledListener = null;
+        if ( result.mMode == MODE_POLL )
+        {
+            mPolledFeed = null;
+            onLiveFeedPolledListener = mOnLiveFeedPolledListener;
+            mOnLiveFeedPolledListener = null;
+        }
+        
+        // Nothing changed since the last sync, the live feed had nothing new, or the revalidated
+        // first page is the same as the cached one, there is nothing to deliver.
+        if ( result.mMode != MODE_PAGE && data == earthquakes )
+        {
+            if ( onLiveFeedPolledListener != null )
+                onLiveFeedPolledListener.onLiveFeedPolled( 0 );
+            return;
+        }
         
         earthquakes = data;
-        super.deliverResult( data );
+        super.deliverResult( result );
+        
+        // The loaded earthquakes are displayed now
+        Metrics.DELIVER.record( Metrics.toMicros( System.nanoTime() - result.mLoadedTime ) );
+        
+        if ( onLiveFeedPolledListener != null )
+            onLiveFeedPolledListener.onLiveFeedPolled( result.mChangeCount );
+        
+        // Now that the stale cached page is displayed, reload it from the network in the background.
+        if ( result.mStale )
+        {
+            mMode = MODE_REVALIDATE;
+            mLoadingPage = true;
+            forceLoad(); // call loadInBackground()
+        }
+    }
+    
+    /**
+     * Reload the first page from the network and cache it. This is on a background thread.
+     *
+     * @return the new first page, or the cached one if it didn't change or couldn't be reloaded
+     */
+    private EarthquakeTable revalidateFirstPage()
+    {
+        EarthquakeTable cachedPage = earthquakes;
+        String pageUrl = buildPageUrl( 0 );
+        
+        // Only download the page if it changed since the response it was cached from
+        FeedResponse feedResponse = QueryUtils.fetchEarthquakeData( pageUrl,
+                mCachedPage.getETag(), mCachedPage.getLastModified(), getCancellationSignal() );
+        if ( feedResponse == null )
+        {
+            throwIfCanceled();
+            return cachedPage;
+        }
+        
+        // The server told us the cached page is still valid,
+        // so it's fresh again for the time to live.
+        if ( feedResponse.isNotModified() )
+        {
+            mFeedCache.touch( pageUrl );
+            return cachedPage;
+        }
+        
+        // Store the page even if it didn't change, so it's fresh again for the time to live.
+        EarthquakeTable page = feedResponse.getEarthquakes();
+        mFeedCache.put( pageUrl, page, feedResponse.getETag(), feedResponse.getLastModified() );
+        
+        if ( page.equals( cachedPage ) )
+            return cachedPage;
+        
+        archive( page );
+        
+        mHasMorePages = page.size() >= mPageSize;
+        return page;
+    }
+    
+    /**
+     * Fetch the earthquakes changed since the loaded ones were last updated and merge them into
+     * the loaded pages. This is on a background thread.
+     *
+     * @return the merged table, or the loaded one if nothing changed or the changes couldn't be loaded
+     */
+    private EarthquakeTable syncEarthquakes()
+    {
+        EarthquakeTable previousPages = earthquakes;
+        
+        // The latest update we already have is the watermark of this sync
+        long watermark = EarthquakeDelta.getWatermark( previousPages, 0 );
+        EarthquakeTable changes =
+                QueryUtils.fetchEarthquakeUpdates( mUrl, watermark, getCancellationSignal() );
+        if ( changes == null )
+        {
+            throwIfCanceled();
+            return previousPages;
+        }
+        
+        archive( changes );
+        
+        // Merge the changes in the order of the query, within the pages loaded so far
+        String orderBy = Uri.parse( mUrl ).getQueryParameter( "orderby" );
+        EarthquakeDelta delta = EarthquakeDelta.merge( previousPages, changes,
+                EarthquakeOrder.forOrderBy( orderBy ), !mHasMorePages );
+        
+        Metrics.SYNCED_EARTHQUAKES.addAndGet(
+                delta.getInsertedCount() + delta.getUpdatedCount() + delta.getDeletedCount() );
+        
+        if ( delta.isEmpty() )
+            return previousPages;
+        
+        return delta.getEarthquakes();
+    }
+    
+    /**
+     * Poll the live feed and merge its new and updated earthquakes into the loaded pages.
+     * This is on a background thread.
+     *
+     * @return the merged table, or the loaded one if nothing changed or the feed couldn't be polled,
+     * with the number of earthquakes the poll inserted or updated
+     */
+    private Result pollLiveFeed()
+    {
+        EarthquakeTable previousPages = earthquakes;
+        long watermark = EarthquakeDelta.getWatermark( previousPages, 0 );
+        
+        EarthquakeDelta delta = mPolledFeed.poll( previousPages, mMinMagnitude,
+                EarthquakeOrder.forOrderBy( mOrderBy ), !mHasMorePages, getCancellationSignal() );
+        if ( delta == null )
+        {
+            throwIfCanceled();
+            return new Result( previousPages, MODE_POLL );
+        }
+        
+        Result result = new Result( previousPages, MODE_POLL );
+        result.mChangeCount = delta.getInsertedCount() + delta.getUpdatedCount();
+        Metrics.LIVE_FEED_EARTHQUAKES.addAndGet( result.mChangeCount );
+        
+        if ( delta.isEmpty() )
+            return result;
+        
+        // Only archive the earthquakes the poll inserted or updated
+        EarthquakeTable merged = delta.getEarthquakes();
+        int[] changedRows = new int[ merged.size() ];
+        int changedCount = 0;
+        for ( int row = 0; row < merged.size(); row++ )
+            if ( merged.getUpdated( row ) > watermark )
+                changedRows[ changedCount++ ] = row;
+        archive( merged.select( Arrays.copyOf( changedRows, changedCount ) ) );
+        
+        result.mEarthquakes = merged;
+        return result;
+    }
+    
+    /**
+     * Append the given earthquakes loaded from the network to the archive, in the background.
+     */
+    private void archive( EarthquakeTable earthquakes )
+    {
+        if ( mArchive != null && !earthquakes.isEmpty() )
+            mArchive.appendInBackground( earthquakes );
+    }
+    
+    /**
+     * Returns the archived earthquakes of the query, when its first page can't be loaded,
+     * or null if there are none. They're all of them, so there's no next page to load.
+     * This is on a background thread.
+     */
+    private EarthquakeTable queryArchive()
+    {
+        if ( mArchive == null )
+            return null;
+        
+        long now = System.currentTimeMillis();
+        EarthquakeTable archived = mArchive.query( now - DEFAULT_QUERY_RANGE, now, mMinMagnitude,
+                EarthquakeOrder.forOrderBy( mOrderBy ) );
+        if ( archived.isEmpty() )
+            return null;
+        
+        mHasMorePages = false;
+        return archived;
+    }
+    
+    /**
+     * Returns the signal canceling the request of the load in background.
+     */
+    private synchronized CancellationSignal getCancellationSignal()
+    {
+        return mCancellationSignal;
+    }
+    
+    /**
+     * Throw an {@link OperationCanceledException} if the load in background was canceled,
+     * so its result isn't delivered.
+     */
+    private void throwIfCanceled()
+    {
+        if ( isLoadInBackgroundCanceled() )
+            throw new OperationCanceledException();
+    }
+    
+    /**
+     * Returns a new {@link EarthquakeFormatter}, with the magnitude colors and the
+     * default location offset resolved from the resources of the given context.
+     */
+    static EarthquakeFormatter createFormatter( Context context )
+    {
+        return new EarthquakeFormatter( new int[] {
+                ContextCompat.getColor( context, R.color.magnitude1 ),
+                ContextCompat.getColor( context, R.color.magnitude1 ),
+                ContextCompat.getColor( context, R.color.magnitude2 ),
+                ContextCompat.getColor( context, R.color.magnitude3 ),
+                ContextCompat.getColor( context, R.color.magnitude4 ),
+                ContextCompat.getColor( context, R.color.magnitude5 ),
+                ContextCompat.getColor( context, R.color.magnitude6 ),
+                ContextCompat.getColor( context, R.color.magnitude7 ),
+                ContextCompat.getColor( context, R.color.magnitude8 ),
+                ContextCompat.getColor( context, R.color.magnitude9 ),
+                ContextCompat.getColor( context, R.color.magnitude10plus ) },
+                context.getString( R.string.near_the ) );
+    }
+    
+    /**
+     * Returns the magnitude of the given "minmag" value, or 0 if there is none.
+     */
+    static double parseMagnitude( String minMagnitude )
+    {
+        if ( minMagnitude == null )
+            return 0;
+        
+        try
+        {
+            return Double.parseDouble( minMagnitude );
+        }
+        catch ( NumberFormatException numberFormatException )
+        {
+            Log.e( LOG_TAG, "Problem parsing the minimum magnitude " + minMagnitude, numberFormatException );
+            return 0;
+        }
+    }
+    
+    /**
+     * Returns the URL of the page of earthquakes that starts at the given position in the query.
+     */
+    private String buildPageUrl( int pageStart )
+    {
+        return buildPageUrl( mUrl, pageStart, mPageSize );
+    }
+    
+    /**
+     * Returns the URL of the page of earthquakes of the given query that starts at the given
+     * position, the background sync loads the first page of the same URL as the loader.
+     *
+     * @param url of the query
+     * @param pageStart is the position of the first earthquake of the page in the query
+     * @param pageSize is the number of earthquakes of the page
+     */
+    static String buildPageUrl( String url, int pageStart, int pageSize )
+    {
+        // The USGS "offset" parameter starts counting the results from 1
+        return Uri.parse( url ).buildUpon()
+                .appendQueryParameter( "offset", String.valueOf( pageStart + 1 ) )
+                .appendQueryParameter( "limit", String.valueOf( pageSize ) )
+                .toString();
+    }
+    
+    /**
+     * Result of the {@link EarthquakeLoader}: the earthquakes it delivers, and how they were
+     * loaded. A load carries its mode in its result instead of leaving it in the loader, so its
+     * delivery doesn't depend on what the loader does in the meantime.
+     */
+    public static class Result
+    {
+        /**
+         * Earthquakes loaded, or null if they couldn't be loaded
+         */
+        private EarthquakeTable mEarthquakes;
+        
+        /**
+         * Mode of the load
+         */
+        private int mMode;
+        
+        /**
+         * Number of earthquakes a poll of the live feed inserted or updated
+         */
+        private int mChangeCount;
+        
+        /**
+         * Whether the earthquakes are a stale cached first page, to revalidate once it's delivered
+         */
+        private boolean mStale;
+        
+        /**
+         * Time in nanoseconds the earthquakes were loaded, before they were formatted and delivered
+         */
+        private long mLoadedTime;
+        
+        /**
+         * Constructs the {@link Result} of a page, or of earthquakes delivered again as they are.
+         */
+        Result( EarthquakeTable earthquakes )
+        {
+            this( earthquakes, MODE_PAGE );
+        }
+        
+        Result( EarthquakeTable earthquakes, int mode )
+        {
+            mEarthquakes = earthquakes;
+            mMode = mode;
+        }
+        
+        /**
+         * Returns the earthquakes loaded, or null if they couldn't be loaded.
+         */
+        public EarthquakeTable getEarthquakes()
+        {
+            return mEarthquakes;
+        }
+    }
+    
+    /**
+     * Interface definition for a callback to be invoked when a poll of the live feed is merged.
+     */
+    public interface OnLiveFeedPolledListener
+    {
+        /**
+         * Called on the main thread once the poll is merged, and delivered if anything changed.
+         *
+         * @param changeCount is the number of earthquakes the poll inserted or updated, 0 if
+         * the feed didn't change or couldn't be polled
+         */
+        void onLiveFeedPolled( int changeCount );
     }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link EarthquakeMatchIndex} finds the earthquake of a table that another catalog reported
+ * too, under its own event id and with slightly different values: the times, epicenters and
+ * magnitudes two catalogs compute for the same event differ by a few seconds, kilometers and
+ * tenths.
+ *
+ * Two earthquakes match when they have the same event id, or when they're within the time,
+ * distance and magnitude tolerances of each other. The rows are sorted by time, so the rows
+ * within the time tolerance are found by a binary search, and only those few are compared,
+ * instead of comparing every pair of earthquakes.
+ *
+ * The index is immutable, and it doesn't copy the table it indexes.
+ */
+public class EarthquakeMatchIndex
+{
+    /**
+     * Default tolerances, the ones USGS associates the events of its contributing networks with
+     */
+    public static final long DEFAULT_TIME_TOLERANCE = 16000;
+    
+    public static final double DEFAULT_DISTANCE_TOLERANCE_KM = 100;
+    
+    public static final double DEFAULT_MAGNITUDE_TOLERANCE = 0.5;
+    
+    /**
+     * Indexed table
+     */
+    private EarthquakeTable mEarthquakes;
+    
+    /**
+     * Rows of the table sorted by time, and their times
+     */
+    private int[] mRows;
+    
+    private long[] mTimes;
+    
+    /**
+     * Rows of the table by event id
+     */
+    private Map< String, Integer > mRowsById;
+    
+    /**
+     * Largest differences in milliseconds, kilometers and magnitude of two matching earthquakes
+     */
+    private long mTimeTolerance;
+    
+    private double mDistanceToleranceKm;
+    
+    private double mMagnitudeTolerance;
+    
+    /**
+     * Constructs a new {@link EarthquakeMatchIndex} of the given earthquakes, with the default
+     * tolerances. This is on a background thread.
+     */
+    public EarthquakeMatchIndex( EarthquakeTable earthquakes )
+    {
+        this( earthquakes, DEFAULT_TIME_TOLERANCE, DEFAULT_DISTANCE_TOLERANCE_KM, DEFAULT_MAGNITUDE_TOLERANCE );
+    }
+    
+    /**
+     * Constructs a new {@link EarthquakeMatchIndex} of the given earthquakes.
+     * This is on a background thread.
+     *
+     * @param earthquakes to index
+     * @param timeTolerance is the largest time difference in milliseconds of matching earthquakes
+     * @param distanceToleranceKm is the largest distance in kilometers between their epicenters
+     * @param magnitudeTolerance is the largest difference of their magnitudes
+     */
+    public EarthquakeMatchIndex( EarthquakeTable earthquakes, long timeTolerance,
+                                 double distanceToleranceKm, double magnitudeTolerance )
+    {
+        mEarthquakes = earthquakes;
+        mTimeTolerance = timeTolerance;
+        mDistanceToleranceKm = distanceToleranceKm;
+        mMagnitudeTolerance = magnitudeTolerance;
+        
+        mRows = earthquakes.sortedRows( EarthquakeOrder.TIME_ASC );
+        mTimes = new long[ mRows.length ];
+        mRowsById = new HashMap<>( mRows.length * 2 );
+        for ( int i = 0; i < mRows.length; i++ )
+        {
+            mTimes[ i ] = earthquakes.getTimeInMilliseconds( mRows[ i ] );
+            String id = earthquakes.getId( mRows[ i ] );
+            if ( id != null )
+                mRowsById.put( id, mRows[ i ] );
+        }
+    }
+    
+    /**
+     * Returns the indexed earthquakes.
+     */
+    public EarthquakeTable getEarthquakes()
+    {
+        return mEarthquakes;
+    }
+    
+    /**
+     * Returns the row of the indexed earthquake matching the earthquake at the given row of the
+     * given table: the one with the same event id, or else the closest in time of the ones
+     * within the tolerances.
+     *
+     * @param table of the earthquake, from another catalog
+     * @param row of the earthquake in its table
+     * @return the row of the matching earthquake in the indexed table, or -1 if none matches
+     */
+    public int find( EarthquakeTable table, int row )
+    {
+        String id = table.getId( row );
+        Integer rowById = id == null ? null : mRowsById.get( id );
+        if ( rowById != null )
+            return rowById;
+        
+        // Without an epicenter, only the event id can tell it's the same earthquake
+        double latitude = table.getLatitude( row );
+        double longitude = table.getLongitude( row );
+        if ( Double.isNaN( latitude ) || Double.isNaN( longitude ) )
+            return -1;
+        
+        long time = table.getTimeInMilliseconds( row );
+        double magnitude = table.getMagnitude( row );
+        
+        long latestTime = time + mTimeTolerance;
+        
+        int match = -1;
+        long matchTimeDifference = Long.MAX_VALUE;
+        for ( int i = lowerBound( time - mTimeTolerance ); i < mTimes.length && mTimes[ i ] <= latestTime; i++ )
+        {
+            int candidate = mRows[ i ];
+            long timeDifference = Math.abs( mTimes[ i ] - time );
+            if ( timeDifference >= matchTimeDifference ||
+                    Math.abs( mEarthquakes.getMagnitude( candidate ) - magnitude ) > mMagnitudeTolerance )
+                continue;
+            
+            // A NaN distance (unknown epicenter) isn't within the tolerance
+            double distanceKm = EarthquakeSpatialIndex.distanceKm( latitude, longitude,
+                    mEarthquakes.getLatitude( candidate ), mEarthquakes.getLongitude( candidate ) );
+            if ( !( distanceKm <= mDistanceToleranceKm ) )
+                continue;
+            
+            match = candidate;
+            matchTimeDifference = timeDifference;
+        }
+        return match;
+    }
+    
+    /**
+     * Returns the index of the first sorted row at or after the given time.
+     */
+    private int lowerBound( long time )
+    {
+        int low = 0, high = mTimes.length;
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            if ( mTimes[ middle ] < time )
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
\ No newline at end of file
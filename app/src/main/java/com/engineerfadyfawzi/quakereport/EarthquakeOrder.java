@@ -0,0 +1,102 @@
+package com.engineerfadyfawzi.quakereport;
+
+/**
+ * Orders of earthquakes matching the USGS "orderby" query parameter, comparing rows
+ * of {@link EarthquakeTable}s, so tables of earthquakes can be sorted and merged locally.
+ */
+public abstract class EarthquakeOrder
+{
+    /**
+     * Most recent earthquakes first, the USGS default order
+     */
+    public static final EarthquakeOrder TIME = new EarthquakeOrder()
+    {
+        @Override
+        public int compare( EarthquakeTable firstTable, int firstRow,
+                            EarthquakeTable secondTable, int secondRow )
+        {
+            return compareLongs( secondTable.getTimeInMilliseconds( secondRow ),
+                    firstTable.getTimeInMilliseconds( firstRow ) );
+        }
+    };
+    
+    /**
+     * Oldest earthquakes first
+     */
+    public static final EarthquakeOrder TIME_ASC = new EarthquakeOrder()
+    {
+        @Override
+        public int compare( EarthquakeTable firstTable, int firstRow,
+                            EarthquakeTable secondTable, int secondRow )
+        {
+            return compareLongs( firstTable.getTimeInMilliseconds( firstRow ),
+                    secondTable.getTimeInMilliseconds( secondRow ) );
+        }
+    };
+    
+    /**
+     * Largest earthquakes first
+     */
+    public static final EarthquakeOrder MAGNITUDE = new EarthquakeOrder()
+    {
+        @Override
+        public int compare( EarthquakeTable firstTable, int firstRow,
+                            EarthquakeTable secondTable, int secondRow )
+        {
+            return Double.compare( secondTable.getMagnitude( secondRow ),
+                    firstTable.getMagnitude( firstRow ) );
+        }
+    };
+    
+    /**
+     * Smallest earthquakes first
+     */
+    public static final EarthquakeOrder MAGNITUDE_ASC = new EarthquakeOrder()
+    {
+        @Override
+        public int compare( EarthquakeTable firstTable, int firstRow,
+                            EarthquakeTable secondTable, int secondRow )
+        {
+            return Double.compare( firstTable.getMagnitude( firstRow ),
+                    secondTable.getMagnitude( secondRow ) );
+        }
+    };
+    
+    private EarthquakeOrder()
+    {
+    
+    }
+    
+    /**
+     * Compare the earthquake at the given row of the first table with the earthquake
+     * at the given row of the second table, which can be the same table.
+     *
+     * @return a negative number, zero or a positive number if the first earthquake comes before,
+     * at the same place or after the second one in this order
+     */
+    public abstract int compare( EarthquakeTable firstTable, int firstRow,
+                                 EarthquakeTable secondTable, int secondRow );
+    
+    /**
+     * Returns the order of the given USGS "orderby" value ("time", "time-asc", "magnitude"
+     * or "magnitude-asc"), or the default "time" order for any other value.
+     */
+    public static EarthquakeOrder forOrderBy( String orderBy )
+    {
+        if ( "time-asc".equals( orderBy ) )
+            return TIME_ASC;
+        if ( "magnitude".equals( orderBy ) )
+            return MAGNITUDE;
+        if ( "magnitude-asc".equals( orderBy ) )
+            return MAGNITUDE_ASC;
+        return TIME;
+    }
+    
+    /**
+     * Same as Long.compare(), which isn't available before API level 19.
+     */
+    private static int compareLongs( long first, long second )
+    {
+        return first < second ? -1 : ( first == second ? 0 : 1 );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.net.Uri;
+
+/**
+ * An {@link EarthquakeProvider} is a catalog of earthquakes with an FDSN event web service,
+ * like USGS, which the same query can be sent to.
+ *
+ * The query parameters of the app ("format", "minmag", "orderby", "starttime", ...) are the
+ * FDSN ones, so a query is sent to another provider by replacing the endpoint of its URL.
+ * Providers must answer "format=geojson" with GeoJSON shaped like the USGS one, which is what
+ * the parser reads.
+ */
+public class EarthquakeProvider
+{
+    /**
+     * The USGS FDSN event web service
+     */
+    public static final EarthquakeProvider USGS =
+            new EarthquakeProvider( "USGS", "https://earthquake.usgs.gov/fdsnws/event/1/query" );
+    
+    /**
+     * Name of the provider, for the log messages
+     */
+    private String mName;
+    
+    /**
+     * URL of the FDSN event "query" endpoint, without query parameters
+     */
+    private String mQueryUrl;
+    
+    /**
+     * Constructs a new {@link EarthquakeProvider}.
+     *
+     * @param name of the provider
+     * @param queryUrl of the FDSN event "query" endpoint of the provider
+     */
+    public EarthquakeProvider( String name, String queryUrl )
+    {
+        mName = name;
+        mQueryUrl = queryUrl;
+    }
+    
+    /**
+     * Returns the name of the provider.
+     */
+    public String getName()
+    {
+        return mName;
+    }
+    
+    /**
+     * Returns the URL of the FDSN event "query" endpoint of the provider.
+     */
+    public String getQueryUrl()
+    {
+        return mQueryUrl;
+    }
+    
+    /**
+     * Returns the given query sent to this provider: the endpoint of this provider with the
+     * query parameters of the given URL, whatever provider its endpoint is.
+     *
+     * @param queryUrl of the query, to any provider
+     */
+    public String buildQueryUrl( String queryUrl )
+    {
+        return Uri.parse( mQueryUrl ).buildUpon()
+                .encodedQuery( Uri.parse( queryUrl ).getEncodedQuery() )
+                .toString();
+    }
+    
+    @Override
+    public String toString()
+    {
+        return mName;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,534 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link EarthquakeSnapshot} is a table of earthquakes stored in a compact binary file,
+ * which is memory mapped instead of parsed when it's read back.
+ *
+ * The file has a header, then the columns of the table one after the other, each one with a
+ * fixed width per row, so a row is read at its offset without reading the rows before it:
+ *
+ * <pre>
+ * header        magic, version, row count, string count, "ETag" and "Last-Modified" strings
+ * long[]        time, updated time
+ * double[]      magnitude, longitude, latitude, depth
+ * int[]         event id string, location string, URL code, felt reports, significance
+ * int[]         offsets of the strings in the string data, one more than the strings
+ * byte[]        flags (deleted, tsunami), alert level code
+ * byte[]        string data, in UTF-8
+ * </pre>
+ *
+ * The strings are stored once in a string table, so every distinct location is only stored
+ * once, and string 0 is null. A URL code c >= 0 means the URL is the string c followed by the
+ * event id, like most USGS URLs are, a code c < 0 means the URL is the string -c - 1 as a whole.
+ *
+ * A snapshot is opened in about the time it takes to map its file: the rows are read lazily
+ * from the mapped file, and a string is only decoded the first time it's read.
+ * {@link #toTable()} copies the whole snapshot into an {@link EarthquakeTable}.
+ */
+public class EarthquakeSnapshot
+{
+    /**
+     * First bytes of a snapshot file, "QKSN"
+     */
+    private static final int MAGIC = 0x514b534e;
+    
+    /**
+     * Version of the format written, a snapshot of another version isn't read.
+     * It must be incremented whenever the format changes.
+     */
+    static final int VERSION = 2;
+    
+    /**
+     * Size in bytes of the header, so the columns after it are aligned on 8 bytes
+     */
+    private static final int HEADER_SIZE = 24;
+    
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    
+    /**
+     * Bits of the flags of a row
+     */
+    private static final int FLAG_DELETED = 1;
+    
+    private static final int FLAG_TSUNAMI = 2;
+    
+    private int mSize;
+    
+    private String mETag;
+    
+    private String mLastModified;
+    
+    private LongBuffer mTimes;
+    
+    private LongBuffer mUpdated;
+    
+    private DoubleBuffer mMagnitudes;
+    
+    private DoubleBuffer mLongitudes;
+    
+    private DoubleBuffer mLatitudes;
+    
+    private DoubleBuffer mDepths;
+    
+    private IntBuffer mIds;
+    
+    private IntBuffer mLocations;
+    
+    private IntBuffer mUrlCodes;
+    
+    private IntBuffer mFelt;
+    
+    private IntBuffer mSignificances;
+    
+    private IntBuffer mStringOffsets;
+    
+    private ByteBuffer mFlags;
+    
+    private ByteBuffer mAlertLevels;
+    
+    private ByteBuffer mStringData;
+    
+    /**
+     * Strings decoded so far, null until a string is read
+     */
+    private String[] mStrings;
+    
+    private EarthquakeSnapshot()
+    {
+        
+    }
+    
+    /**
+     * Open the snapshot stored in the given file, by mapping the file into memory.
+     * This reads the header only, so it must not be called on the main thread, but it's quick.
+     *
+     * @throws IOException if the file can't be read, or isn't a snapshot of this version
+     */
+    public static EarthquakeSnapshot open( File file ) throws IOException
+    {
+        FileInputStream inputStream = new FileInputStream( file );
+        MappedByteBuffer buffer;
+        try
+        {
+            // The mapping stays valid once the channel is closed
+            FileChannel channel = inputStream.getChannel();
+            buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        
+        if ( buffer.capacity() < HEADER_SIZE || buffer.getInt( 0 ) != MAGIC )
+            throw new IOException( "Not an earthquake snapshot: " + file );
+        if ( buffer.getInt( 4 ) != VERSION )
+            throw new IOException( "Unsupported earthquake snapshot version " + buffer.getInt( 4 ) );
+        
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot();
+        int size = buffer.getInt( 8 );
+        int stringCount = buffer.getInt( 12 );
+        
+        // The string data is at the end, after all the fixed width columns
+        long stringDataOffset = HEADER_SIZE + 6 * 8L * size + 5 * 4L * size + 4L * ( stringCount + 1 ) + 2L * size;
+        if ( size < 0 || stringCount < 1 || stringDataOffset > buffer.capacity() )
+            throw new IOException( "Truncated earthquake snapshot: " + file );
+        
+        snapshot.mSize = size;
+        snapshot.mStrings = new String[ stringCount ];
+        int offset = HEADER_SIZE;
+        snapshot.mTimes = slice( buffer, offset, 8 * size ).asLongBuffer();
+        snapshot.mUpdated = slice( buffer, offset += 8 * size, 8 * size ).asLongBuffer();
+        snapshot.mMagnitudes = slice( buffer, offset += 8 * size, 8 * size ).asDoubleBuffer();
+        snapshot.mLongitudes = slice( buffer, offset += 8 * size, 8 * size ).asDoubleBuffer();
+        snapshot.mLatitudes = slice( buffer, offset += 8 * size, 8 * size ).asDoubleBuffer();
+        snapshot.mDepths = slice( buffer, offset += 8 * size, 8 * size ).asDoubleBuffer();
+        snapshot.mIds = slice( buffer, offset += 8 * size, 4 * size ).asIntBuffer();
+        snapshot.mLocations = slice( buffer, offset += 4 * size, 4 * size ).asIntBuffer();
+        snapshot.mUrlCodes = slice( buffer, offset += 4 * size, 4 * size ).asIntBuffer();
+        snapshot.mFelt = slice( buffer, offset += 4 * size, 4 * size ).asIntBuffer();
+        snapshot.mSignificances = slice( buffer, offset += 4 * size, 4 * size ).asIntBuffer();
+        snapshot.mStringOffsets = slice( buffer, offset += 4 * size, 4 * ( stringCount + 1 ) ).asIntBuffer();
+        snapshot.mFlags = slice( buffer, offset += 4 * ( stringCount + 1 ), size );
+        snapshot.mAlertLevels = slice( buffer, offset += size, size );
+        snapshot.mStringData = slice( buffer, offset += size, buffer.capacity() - offset );
+        
+        if ( snapshot.mStringOffsets.get( stringCount ) > snapshot.mStringData.capacity() )
+            throw new IOException( "Truncated earthquake snapshot: " + file );
+        
+        snapshot.mETag = snapshot.getString( buffer.getInt( 16 ) );
+        snapshot.mLastModified = snapshot.getString( buffer.getInt( 20 ) );
+        return snapshot;
+    }
+    
+    /**
+     * Write the given earthquakes to a snapshot file, replacing the previous one.
+     * The snapshot is written to a temporary file first and renamed, so a reader never
+     * sees a half written snapshot, even if the app is killed while writing it.
+     *
+     * @param file of the snapshot
+     * @param earthquakes to store
+     * @param eTag of the response the earthquakes came with, or null
+     * @param lastModified date of the response the earthquakes came with, or null
+     * @throws IOException if the snapshot couldn't be written
+     */
+    public static void write( File file, EarthquakeTable earthquakes, String eTag, String lastModified )
+            throws IOException
+    {
+        int size = earthquakes.size();
+        
+        // Build the string table, string 0 is null
+        List< String > strings = new ArrayList<>();
+        Map< String, Integer > stringCodes = new HashMap<>();
+        strings.add( null );
+        
+        int[] ids = new int[ size ];
+        int[] locations = new int[ size ];
+        int[] urlCodes = new int[ size ];
+        for ( int row = 0; row < size; row++ )
+        {
+            String id = earthquakes.getId( row );
+            String url = earthquakes.getUrl( row );
+            ids[ row ] = encode( id, strings, stringCodes );
+            locations[ row ] = encode( earthquakes.getLocation( row ), strings, stringCodes );
+            if ( url != null && id != null && url.endsWith( id ) )
+                urlCodes[ row ] = encode( url.substring( 0, url.length() - id.length() ), strings, stringCodes );
+            else
+                urlCodes[ row ] = -encode( url, strings, stringCodes ) - 1;
+        }
+        int eTagCode = encode( eTag, strings, stringCodes );
+        int lastModifiedCode = encode( lastModified, strings, stringCodes );
+        
+        File temporaryFile = new File( file.getPath() + ".tmp" );
+        FileOutputStream fileOutputStream = new FileOutputStream( temporaryFile );
+        boolean written = false;
+        try
+        {
+            DataOutputStream output = new DataOutputStream( new BufferedOutputStream( fileOutputStream ) );
+            output.writeInt( MAGIC );
+            output.writeInt( VERSION );
+            output.writeInt( size );
+            output.writeInt( strings.size() );
+            output.writeInt( eTagCode );
+            output.writeInt( lastModifiedCode );
+            
+            for ( int row = 0; row < size; row++ )
+                output.writeLong( earthquakes.getTimeInMilliseconds( row ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeLong( earthquakes.getUpdated( row ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeDouble( earthquakes.getMagnitude( row ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeDouble( earthquakes.getLongitude( row ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeDouble( earthquakes.getLatitude( row ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeDouble( earthquakes.getDepth( row ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeInt( ids[ row ] );
+            for ( int row = 0; row < size; row++ )
+                output.writeInt( locations[ row ] );
+            for ( int row = 0; row < size; row++ )
+                output.writeInt( urlCodes[ row ] );
+            for ( int row = 0; row < size; row++ )
+                output.writeInt( earthquakes.getFelt( row ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeInt( earthquakes.getSignificance( row ) );
+            
+            byte[][] stringData = new byte[ strings.size() ][];
+            int stringOffset = 0;
+            output.writeInt( stringOffset );
+            for ( int i = 0; i < strings.size(); i++ )
+            {
+                stringData[ i ] = strings.get( i ) == null ? new byte[ 0 ] : strings.get( i ).getBytes( UTF_8 );
+                stringOffset += stringData[ i ].length;
+                output.writeInt( stringOffset );
+            }
+            
+            for ( int row = 0; row < size; row++ )
+                output.writeByte( ( earthquakes.isDeleted( row ) ? FLAG_DELETED : 0 ) |
+                        ( earthquakes.isTsunami( row ) ? FLAG_TSUNAMI : 0 ) );
+            for ( int row = 0; row < size; row++ )
+                output.writeByte( EarthquakeTable.encodeAlertLevel( earthquakes.getAlertLevel( row ) ) );
+            for ( byte[] bytes : stringData )
+                output.write( bytes );
+            
+            output.flush();
+            fileOutputStream.getFD().sync();
+            written = true;
+        }
+        finally
+        {
+            fileOutputStream.close();
+            if ( !written )
+                temporaryFile.delete();
+        }
+        
+        if ( !temporaryFile.renameTo( file ) )
+        {
+            temporaryFile.delete();
+            throw new IOException( "Problem renaming the earthquake snapshot " + temporaryFile );
+        }
+    }
+    
+    /**
+     * Returns the number of earthquakes (rows) in the snapshot.
+     */
+    public int size()
+    {
+        return mSize;
+    }
+    
+    /**
+     * Returns the "ETag" of the response the earthquakes came with, or null.
+     */
+    public String getETag()
+    {
+        return mETag;
+    }
+    
+    /**
+     * Returns the "Last-Modified" date of the response the earthquakes came with, or null.
+     */
+    public String getLastModified()
+    {
+        return mLastModified;
+    }
+    
+    /**
+     * Returns the USGS event id of the earthquake at the given row.
+     */
+    public String getId( int row )
+    {
+        return getString( mIds.get( row ) );
+    }
+    
+    /**
+     * Returns the magnitude of the earthquake at the given row.
+     */
+    public double getMagnitude( int row )
+    {
+        return mMagnitudes.get( row );
+    }
+    
+    /**
+     * Returns the location of the earthquake at the given row.
+     */
+    public String getLocation( int row )
+    {
+        return getString( mLocations.get( row ) );
+    }
+    
+    /**
+     * Returns the time of the earthquake at the given row.
+     */
+    public long getTimeInMilliseconds( int row )
+    {
+        return mTimes.get( row );
+    }
+    
+    /**
+     * Returns the time the earthquake at the given row was last updated.
+     */
+    public long getUpdated( int row )
+    {
+        return mUpdated.get( row );
+    }
+    
+    /**
+     * Returns the website URL of the earthquake at the given row.
+     */
+    public String getUrl( int row )
+    {
+        int code = mUrlCodes.get( row );
+        return code >= 0 ? getString( code ) + getId( row ) : getString( -code - 1 );
+    }
+    
+    /**
+     * Returns whether USGS deleted the earthquake at the given row.
+     */
+    public boolean isDeleted( int row )
+    {
+        return ( mFlags.get( row ) & FLAG_DELETED ) != 0;
+    }
+    
+    /**
+     * Returns the longitude of the epicenter of the earthquake at the given row, or NaN.
+     */
+    public double getLongitude( int row )
+    {
+        return mLongitudes.get( row );
+    }
+    
+    /**
+     * Returns the latitude of the epicenter of the earthquake at the given row, or NaN.
+     */
+    public double getLatitude( int row )
+    {
+        return mLatitudes.get( row );
+    }
+    
+    /**
+     * Returns the depth of the hypocenter of the earthquake at the given row, or NaN.
+     */
+    public double getDepth( int row )
+    {
+        return mDepths.get( row );
+    }
+    
+    /**
+     * Returns the number of "Did You Feel It?" reports of the earthquake at the given row,
+     * or -1 if it's unknown.
+     */
+    public int getFelt( int row )
+    {
+        return mFelt.get( row );
+    }
+    
+    /**
+     * Returns the significance of the earthquake at the given row, or -1 if it's unknown.
+     */
+    public int getSignificance( int row )
+    {
+        return mSignificances.get( row );
+    }
+    
+    /**
+     * Returns whether the earthquake at the given row happened in an oceanic region.
+     */
+    public boolean isTsunami( int row )
+    {
+        return ( mFlags.get( row ) & FLAG_TSUNAMI ) != 0;
+    }
+    
+    /**
+     * Returns the PAGER alert level of the earthquake at the given row, or null if it has none.
+     */
+    public String getAlertLevel( int row )
+    {
+        return EarthquakeTable.decodeAlertLevel( mAlertLevels.get( row ) );
+    }
+    
+    /**
+     * Returns a new {@link EarthquakeTable} with all the rows of the snapshot. The numeric
+     * columns are copied in bulk, and the string table becomes the dictionary of the table.
+     */
+    public EarthquakeTable toTable()
+    {
+        int size = mSize;
+        for ( int i = 0; i < mStrings.length; i++ )
+            getString( i );
+        
+        String[] ids = new String[ size ];
+        for ( int row = 0; row < size; row++ )
+            ids[ row ] = mStrings[ mIds.get( row ) ];
+        
+        BitSet deleted = new BitSet();
+        BitSet tsunamis = new BitSet();
+        for ( int row = 0; row < size; row++ )
+        {
+            int flags = mFlags.get( row );
+            if ( ( flags & FLAG_DELETED ) != 0 )
+                deleted.set( row );
+            if ( ( flags & FLAG_TSUNAMI ) != 0 )
+                tsunamis.set( row );
+        }
+        
+        long[] times = new long[ size ];
+        long[] updated = new long[ size ];
+        double[] magnitudes = new double[ size ];
+        double[] longitudes = new double[ size ];
+        double[] latitudes = new double[ size ];
+        double[] depths = new double[ size ];
+        int[] locationCodes = new int[ size ];
+        int[] urlCodes = new int[ size ];
+        int[] felt = new int[ size ];
+        int[] significances = new int[ size ];
+        byte[] alertLevels = new byte[ size ];
+        mTimes.duplicate().get( times );
+        mUpdated.duplicate().get( updated );
+        mMagnitudes.duplicate().get( magnitudes );
+        mLongitudes.duplicate().get( longitudes );
+        mLatitudes.duplicate().get( latitudes );
+        mDepths.duplicate().get( depths );
+        mLocations.duplicate().get( locationCodes );
+        mUrlCodes.duplicate().get( urlCodes );
+        mFelt.duplicate().get( felt );
+        mSignificances.duplicate().get( significances );
+        mAlertLevels.duplicate().get( alertLevels );
+        
+        return EarthquakeTable.fromColumns( size, ids, magnitudes, times, updated, locationCodes,
+                mStrings, urlCodes, mStrings, deleted, longitudes, latitudes, depths,
+                felt, significances, tsunamis, alertLevels );
+    }
+    
+    /**
+     * Returns the string of the given code in the string table, decoding it the first time.
+     * Strings are immutable, so two threads decoding the same string at once is harmless.
+     */
+    private String getString( int code )
+    {
+        if ( code == 0 )
+            return null;
+        
+        String string = mStrings[ code ];
+        if ( string == null )
+        {
+            int start = mStringOffsets.get( code );
+            byte[] bytes = new byte[ mStringOffsets.get( code + 1 ) - start ];
+            ByteBuffer stringData = mStringData.duplicate();
+            stringData.position( start );
+            stringData.get( bytes );
+            string = new String( bytes, UTF_8 );
+            mStrings[ code ] = string;
+        }
+        return string;
+    }
+    
+    /**
+     * Returns the given bytes of the buffer as a buffer of their own.
+     */
+    private static ByteBuffer slice( ByteBuffer buffer, int offset, int length )
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position( offset );
+        slice.limit( offset + length );
+        return slice.slice();
+    }
+    
+    /**
+     * Returns the code of the string in the string table, adding the string if it's a new one.
+     */
+    private static int encode( String string, List< String > strings, Map< String, Integer > stringCodes )
+    {
+        if ( string == null )
+            return 0;
+        
+        Integer code = stringCodes.get( string );
+        if ( code == null )
+        {
+            code = strings.size();
+            strings.add( string );
+            stringCodes.put( string, code );
+        }
+        return code;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,354 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * An {@link EarthquakeSpatialIndex} finds the earthquakes of a table near a place, i.e.
+ * "earthquakes within 300 km of me", without asking USGS and without measuring the distance
+ * to every earthquake of the table.
+ *
+ * The epicenters are bucketed in a grid of one degree latitude/longitude cells. The rows of every
+ * cell are stored next to each other, with their coordinates, so a query only reads the cells
+ * overlapping the searched area, and measures the great-circle distance of their earthquakes.
+ * Earthquakes with unknown coordinates aren't indexed.
+ *
+ * Like tables, an index is immutable, so it can be built on a background thread and
+ * queried from any thread.
+ */
+public class EarthquakeSpatialIndex
+{
+    /**
+     * Mean radius of the Earth, in kilometers
+     */
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+    
+    /**
+     * Length of a degree of latitude, in kilometers
+     */
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+    
+    /**
+     * Number of cells per degree of latitude and longitude
+     */
+    private static final int CELLS_PER_DEGREE = 1;
+    
+    private static final int LATITUDE_CELLS = 180 * CELLS_PER_DEGREE;
+    
+    private static final int LONGITUDE_CELLS = 360 * CELLS_PER_DEGREE;
+    
+    /**
+     * The indexed earthquakes
+     */
+    private EarthquakeTable mEarthquakes;
+    
+    /**
+     * Position of the first earthquake of every cell in the following arrays, cells are numbered
+     * row by row from the south west corner. The earthquakes of cell c are between mCellStarts[c]
+     * (inclusive) and mCellStarts[c + 1] (exclusive).
+     */
+    private int[] mCellStarts;
+    
+    /**
+     * Rows of the indexed earthquakes in the table, cell by cell
+     */
+    private int[] mRows;
+    
+    /**
+     * Latitudes and longitudes of the indexed earthquakes in radians, and cosines of their
+     * latitudes, cell by cell
+     */
+    private double[] mLatitudes;
+    
+    private double[] mLongitudes;
+    
+    private double[] mCosLatitudes;
+    
+    /**
+     * Constructs a new {@link EarthquakeSpatialIndex} of the given earthquakes.
+     */
+    public EarthquakeSpatialIndex( EarthquakeTable earthquakes )
+    {
+        mEarthquakes = earthquakes;
+        
+        // Count the earthquakes of every cell, then place every earthquake after the earthquakes
+        // of the previous cells (counting sort), so the cells are contiguous.
+        int[] cells = new int[ earthquakes.size() ];
+        mCellStarts = new int[ LATITUDE_CELLS * LONGITUDE_CELLS + 1 ];
+        int count = 0;
+        for ( int row = 0; row < earthquakes.size(); row++ )
+        {
+            double latitude = earthquakes.getLatitude( row );
+            double longitude = earthquakes.getLongitude( row );
+            if ( Double.isNaN( latitude ) || Double.isNaN( longitude ) )
+            {
+                cells[ row ] = -1;
+                continue;
+            }
+            
+            cells[ row ] = latitudeCell( latitude ) * LONGITUDE_CELLS + longitudeCell( longitude );
+            mCellStarts[ cells[ row ] + 1 ]++;
+            count++;
+        }
+        
+        for ( int cell = 0; cell < LATITUDE_CELLS * LONGITUDE_CELLS; cell++ )
+            mCellStarts[ cell + 1 ] += mCellStarts[ cell ];
+        
+        mRows = new int[ count ];
+        mLatitudes = new double[ count ];
+        mLongitudes = new double[ count ];
+        mCosLatitudes = new double[ count ];
+        int[] next = Arrays.copyOf( mCellStarts, mCellStarts.length - 1 );
+        for ( int row = 0; row < earthquakes.size(); row++ )
+        {
+            if ( cells[ row ] == -1 )
+                continue;
+            
+            int position = next[ cells[ row ] ]++;
+            mRows[ position ] = row;
+            mLatitudes[ position ] = Math.toRadians( earthquakes.getLatitude( row ) );
+            mLongitudes[ position ] = Math.toRadians( earthquakes.getLongitude( row ) );
+            mCosLatitudes[ position ] = Math.cos( mLatitudes[ position ] );
+        }
+    }
+    
+    /**
+     * Returns the indexed earthquakes.
+     */
+    public EarthquakeTable getEarthquakes()
+    {
+        return mEarthquakes;
+    }
+    
+    /**
+     * Returns the number of indexed earthquakes, which are the ones with known coordinates.
+     */
+    public int size()
+    {
+        return mRows.length;
+    }
+    
+    /**
+     * Returns the rows of the earthquakes within the given distance of the given place,
+     * nearest first.
+     *
+     * @param latitude is the latitude of the place, in degrees
+     * @param longitude is the longitude of the place, in degrees
+     * @param radiusKm is the distance from the place, in kilometers
+     */
+    public int[] withinRadius( double latitude, double longitude, double radiusKm )
+    {
+        // Great-circle distances between two points are increasing with the haversine of their
+        // central angle, so candidates are compared with the haversine of the radius,
+        // and the distance is only computed for the earthquakes within the radius.
+        double maxHaversine = haversine( Math.min( radiusKm / EARTH_RADIUS_KM, Math.PI ) );
+        double latitudeRadians = Math.toRadians( latitude );
+        double longitudeRadians = Math.toRadians( longitude );
+        double cosLatitude = Math.cos( latitudeRadians );
+        
+        // The cells overlapping the bounding box of the circle
+        double radiusDegrees = radiusKm / KM_PER_DEGREE;
+        double south = latitude - radiusDegrees;
+        double north = latitude + radiusDegrees;
+        int firstLatitudeCell = latitudeCell( Math.max( south, -90 ) );
+        int lastLatitudeCell = latitudeCell( Math.min( north, 90 ) );
+        
+        // Unless the circle contains a pole, its widest longitude span is sin(r) / cos(latitude)
+        int firstLongitudeCell = 0;
+        int longitudeCellCount = LONGITUDE_CELLS;
+        if ( south > -90 && north < 90 )
+        {
+            double sinSpan = Math.sin( radiusKm / EARTH_RADIUS_KM ) / cosLatitude;
+            if ( sinSpan < 1 )
+            {
+                double spanDegrees = Math.toDegrees( Math.asin( sinSpan ) );
+                firstLongitudeCell = longitudeCell( longitude - spanDegrees );
+                longitudeCellCount = Math.min( LONGITUDE_CELLS, ( longitudeCell( longitude + spanDegrees )
+                        - firstLongitudeCell + LONGITUDE_CELLS ) % LONGITUDE_CELLS + 1 );
+            }
+        }
+        
+        // Central angle (distance) of every earthquake found in the upper 32 bits, and its row in
+        // the lower ones: the bits of a positive float are ordered like the float, so sorting
+        // the keys sorts the earthquakes by distance.
+        long[] keys = new long[ 64 ];
+        int count = 0;
+        
+        for ( int latitudeCell = firstLatitudeCell; latitudeCell <= lastLatitudeCell; latitudeCell++ )
+        {
+            for ( int i = 0; i < longitudeCellCount; i++ )
+            {
+                int cell = latitudeCell * LONGITUDE_CELLS + ( firstLongitudeCell + i ) % LONGITUDE_CELLS;
+                for ( int position = mCellStarts[ cell ]; position < mCellStarts[ cell + 1 ]; position++ )
+                {
+                    double sinLatitude = Math.sin( ( mLatitudes[ position ] - latitudeRadians ) / 2 );
+                    double sinLongitude = Math.sin( ( mLongitudes[ position ] - longitudeRadians ) / 2 );
+                    double centralHaversine = sinLatitude * sinLatitude +
+                            cosLatitude * mCosLatitudes[ position ] * sinLongitude * sinLongitude;
+                    if ( centralHaversine > maxHaversine )
+                        continue;
+                    
+                    if ( count == keys.length )
+                        keys = Arrays.copyOf( keys, count * 2 );
+                    
+                    float angle = ( float ) centralAngle( centralHaversine );
+                    keys[ count++ ] = ( long ) Float.floatToIntBits( angle ) << 32 | mRows[ position ];
+                }
+            }
+        }
+        
+        Arrays.sort( keys, 0, count );
+        int[] rows = new int[ count ];
+        for ( int i = 0; i < count; i++ )
+            rows[ i ] = ( int ) keys[ i ];
+        return rows;
+    }
+    
+    /**
+     * Returns the rows of the given number of earthquakes nearest to the given place, nearest first.
+     * Fewer rows are returned if fewer earthquakes are indexed.
+     *
+     * @param latitude is the latitude of the place, in degrees
+     * @param longitude is the longitude of the place, in degrees
+     * @param count is the number of earthquakes to return
+     */
+    public int[] nearest( double latitude, double longitude, int count )
+    {
+        count = Math.min( count, size() );
+        
+        // Widen the search until it finds enough earthquakes, all the earthquakes nearer than
+        // the farthest one found are found too. The whole Earth is within half its circumference.
+        double radiusKm = 250;
+        int[] rows = withinRadius( latitude, longitude, radiusKm );
+        while ( rows.length < count )
+        {
+            radiusKm = Math.min( radiusKm * 2, Math.PI * EARTH_RADIUS_KM );
+            rows = withinRadius( latitude, longitude, radiusKm );
+        }
+        
+        return rows.length == count ? rows : Arrays.copyOf( rows, count );
+    }
+    
+    /**
+     * Returns the rows of the earthquakes in the given latitude/longitude box, in the order
+     * of the table. The box crosses the antimeridian when its west side is east of its east side.
+     *
+     * @param south is the latitude of the south side of the box, in degrees
+     * @param west is the longitude of the west side of the box, in degrees
+     * @param north is the latitude of the north side of the box, in degrees
+     * @param east is the longitude of the east side of the box, in degrees
+     */
+    public int[] withinBox( double south, double west, double north, double east )
+    {
+        if ( south > north )
+            return new int[ 0 ];
+        
+        // The west side is normalized between -180 (inclusive) and 180 (exclusive) degrees,
+        // and the east side between -180 (exclusive) and 180 (inclusive) degrees.
+        if ( east - west >= 360 )
+        {
+            west = -180;
+            east = 180;
+        }
+        west = normalizeLongitude( west );
+        east = -normalizeLongitude( -east );
+        boolean crossesAntimeridian = west > east;
+        double southRadians = Math.toRadians( south );
+        double northRadians = Math.toRadians( north );
+        double westRadians = Math.toRadians( west );
+        double eastRadians = Math.toRadians( east );
+        
+        int firstLongitudeCell = longitudeCell( west );
+        int lastLongitudeCell = Math.min( LONGITUDE_CELLS - 1, ( int ) ( ( east + 180 ) * CELLS_PER_DEGREE ) );
+        int longitudeCellCount =
+                ( lastLongitudeCell - firstLongitudeCell + LONGITUDE_CELLS ) % LONGITUDE_CELLS + 1;
+        
+        // A box around the world but a sliver of its first cell takes every cell, the longitude
+        // of each earthquake leaves out the ones in the sliver
+        if ( crossesAntimeridian && firstLongitudeCell == lastLongitudeCell )
+            longitudeCellCount = LONGITUDE_CELLS;
+        
+        int[] rows = new int[ 64 ];
+        int count = 0;
+        for ( int latitudeCell = latitudeCell( Math.max( south, -90 ) );
+              latitudeCell <= latitudeCell( Math.min( north, 90 ) ); latitudeCell++ )
+        {
+            for ( int i = 0; i < longitudeCellCount; i++ )
+            {
+                int cell = latitudeCell * LONGITUDE_CELLS + ( firstLongitudeCell + i ) % LONGITUDE_CELLS;
+                for ( int position = mCellStarts[ cell ]; position < mCellStarts[ cell + 1 ]; position++ )
+                {
+                    double latitude = mLatitudes[ position ];
+                    double longitude = mLongitudes[ position ];
+                    if ( latitude < southRadians || latitude > northRadians )
+                        continue;
+                    
+                    if ( crossesAntimeridian ? longitude < westRadians && longitude > eastRadians
+                            : longitude < westRadians || longitude > eastRadians )
+                        continue;
+                    
+                    if ( count == rows.length )
+                        rows = Arrays.copyOf( rows, count * 2 );
+                    rows[ count++ ] = mRows[ position ];
+                }
+            }
+        }
+        
+        rows = Arrays.copyOf( rows, count );
+        Arrays.sort( rows );
+        return rows;
+    }
+    
+    /**
+     * Returns the great-circle distance between two places, in kilometers,
+     * computed with the haversine formula.
+     */
+    public static double distanceKm( double firstLatitude, double firstLongitude,
+                                     double secondLatitude, double secondLongitude )
+    {
+        double firstLatitudeRadians = Math.toRadians( firstLatitude );
+        double secondLatitudeRadians = Math.toRadians( secondLatitude );
+        double sinLatitude = Math.sin( ( secondLatitudeRadians - firstLatitudeRadians ) / 2 );
+        double sinLongitude = Math.sin( Math.toRadians( secondLongitude - firstLongitude ) / 2 );
+        return EARTH_RADIUS_KM * centralAngle( sinLatitude * sinLatitude +
+                Math.cos( firstLatitudeRadians ) * Math.cos( secondLatitudeRadians ) * sinLongitude * sinLongitude );
+    }
+    
+    /**
+     * Returns the haversine of the given angle, in radians.
+     */
+    private static double haversine( double angle )
+    {
+        double sinHalfAngle = Math.sin( angle / 2 );
+        return sinHalfAngle * sinHalfAngle;
+    }
+    
+    /**
+     * Returns the central angle, in radians, of the given haversine.
+     */
+    private static double centralAngle( double haversine )
+    {
+        return 2 * Math.asin( Math.sqrt( Math.min( 1, haversine ) ) );
+    }
+    
+    private static int latitudeCell( double latitude )
+    {
+        return Math.min( LATITUDE_CELLS - 1, ( int ) ( ( latitude + 90 ) * CELLS_PER_DEGREE ) );
+    }
+    
+    private static int longitudeCell( double longitude )
+    {
+        return ( int ) ( ( normalizeLongitude( longitude ) + 180 ) * CELLS_PER_DEGREE ) % LONGITUDE_CELLS;
+    }
+    
+    /**
+     * Returns the given longitude between -180 (inclusive) and 180 (exclusive) degrees.
+     */
+    private static double normalizeLongitude( double longitude )
+    {
+        if ( longitude >= -180 && longitude < 180 )
+            return longitude;
+        
+        longitude = ( longitude + 180 ) % 360;
+        return ( longitude < 0 ? longitude + 360 : longitude ) - 180;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+package com.engineerfadyfawzi.quakereport;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link EarthquakeSyncWorker} loads the first page of the user's current query in the
+ * background and stores it in the {@link FeedCache}, so the app starts on fresh earthquakes
+ * instead of waiting for the network. A page that changed is appended to the
+ * {@link EarthquakeArchive} too.
+ *
+ * It runs periodically, only while the device is on an unmetered network, charging and idle.
+ * A sync asks USGS whether the cached page changed (with its "ETag" and "Last-Modified"), and
+ * every sync that finds nothing new doubles the time until the next one, up to
+ * {@link #MAX_BACKOFF_FACTOR} times the sync interval.
+ */
+public class EarthquakeSyncWorker extends Worker
+{
+    /**
+     * Unique name of the periodic sync, so it's only scheduled once
+     */
+    private static final String UNIQUE_WORK_NAME = "earthquake_sync";
+    
+    /**
+     * Preferences keeping when the next sync is due
+     */
+    private static final String SYNC_PREFERENCES = "earthquake_sync";
+    
+    /**
+     * Number of syncs in a row that found no new earthquakes
+     */
+    private static final String KEY_UNCHANGED_SYNCS = "unchanged_syncs";
+    
+    /**
+     * Time in milliseconds before which the periodic runs are skipped
+     */
+    private static final String KEY_NEXT_SYNC_TIME = "next_sync_time";
+    
+    /**
+     * Largest factor of the sync interval between two syncs, once nothing changes
+     */
+    static final int MAX_BACKOFF_FACTOR = 8;
+    
+    /**
+     * Constructs a new {@link EarthquakeSyncWorker}, this is called by the {@link WorkManager}.
+     */
+    public EarthquakeSyncWorker( Context context, WorkerParameters workerParams )
+    {
+        super( context, workerParams );
+    }
+    
+    /**
+     * Schedule the periodic sync, unless it's already scheduled, so calling this on every app
+     * start doesn't pile up duplicate syncs. The sync reads the query settings when it runs,
+     * so it doesn't have to be scheduled again when they change.
+     *
+     * @param context of the app
+     */
+    public static void schedule( Context context )
+    {
+        Constraints.Builder constraints = new Constraints.Builder()
+                .setRequiredNetworkType( NetworkType.UNMETERED )
+                .setRequiresCharging( true );
+        if ( Build.VERSION.SDK_INT >= Build.VERSION_CODES.M )
+            constraints.setRequiresDeviceIdle( true );
+        
+        long syncInterval = context.getResources().getInteger( R.integer.sync_interval_minutes );
+        PeriodicWorkRequest syncRequest =
+                new PeriodicWorkRequest.Builder( EarthquakeSyncWorker.class, syncInterval, TimeUnit.MINUTES )
+                        .setConstraints( constraints.build() )
+                        .setBackoffCriteria( BackoffPolicy.EXPONENTIAL,
+                                PeriodicWorkRequest.MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS )
+                        .build();
+        
+        WorkManager.getInstance( context ).enqueueUniquePeriodicWork(
+                UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, syncRequest );
+    }
+    
+    /**
+     * Load the first page of the current query into the cache. This is on a background thread.
+     */
+    @Override
+    public Result doWork()
+    {
+        Context context = getApplicationContext();
+        SharedPreferences syncPreferences =
+                context.getSharedPreferences( SYNC_PREFERENCES, Context.MODE_PRIVATE );
+        long syncInterval = TimeUnit.MINUTES.toMillis(
+                context.getResources().getInteger( R.integer.sync_interval_minutes ) );
+        
+        // Skip the periodic runs while backing off, the run due about when the backoff ends syncs.
+        long now = System.currentTimeMillis();
+        if ( now + syncInterval / 2 < syncPreferences.getLong( KEY_NEXT_SYNC_TIME, 0 ) )
+            return Result.success();
+        
+        FeedCache feedCache = EarthquakeActivity.createFeedCache( context );
+        String pageUrl = EarthquakeLoader.buildPageUrl(
+                EarthquakeActivity.buildQueryUrl( context ), 0, EarthquakeActivity.PAGE_SIZE );
+        
+        // The app loaded the page itself a moment ago, there's nothing to sync.
+        FeedCache.Entry cachedPage = feedCache.get( pageUrl );
+        if ( cachedPage != null && !cachedPage.isStale() )
+            return Result.success();
+        
+        FeedResponse feedResponse = cachedPage == null ?
+                QueryUtils.fetchEarthquakeData( pageUrl, null, null ) :
+                QueryUtils.fetchEarthquakeData( pageUrl, cachedPage.getETag(), cachedPage.getLastModified() );
+        
+        // Retry with the backoff of the work request if USGS couldn't be reached
+        if ( feedResponse == null )
+            return Result.retry();
+        
+        boolean changed;
+        if ( feedResponse.isNotModified() )
+        {
+            feedCache.touch( pageUrl );
+            changed = false;
+        }
+        else
+        {
+            EarthquakeTable page = feedResponse.getEarthquakes();
+            feedCache.put( pageUrl, page, feedResponse.getETag(), feedResponse.getLastModified() );
+            changed = cachedPage == null || !page.equals( cachedPage.getEarthquakes() );
+            if ( changed )
+                EarthquakeArchive.getInstance( context ).append( page );
+        }
+        
+        int unchangedSyncs = changed ? 0 : syncPreferences.getInt( KEY_UNCHANGED_SYNCS, 0 ) + 1;
+        syncPreferences.edit()
+                .putInt( KEY_UNCHANGED_SYNCS, unchangedSyncs )
+                .putLong( KEY_NEXT_SYNC_TIME, now + getSyncDelay( syncInterval, unchangedSyncs ) )
+                .apply();
+        
+        Metrics.BACKGROUND_SYNCS.incrementAndGet();
+        if ( !changed )
+            Metrics.UNCHANGED_BACKGROUND_SYNCS.incrementAndGet();
+        return Result.success();
+    }
+    
+    /**
+     * Returns the time in milliseconds until the next sync, which doubles with every sync
+     * in a row that found no new earthquakes, up to {@link #MAX_BACKOFF_FACTOR} sync intervals.
+     *
+     * @param syncInterval is the time in milliseconds between the periodic runs
+     * @param unchangedSyncs is the number of syncs in a row that found no new earthquakes
+     */
+    static long getSyncDelay( long syncInterval, int unchangedSyncs )
+    {
+        long factor = 1;
+        for ( int i = 0; i < unchangedSyncs && factor < MAX_BACKOFF_FACTOR; i++ )
+            factor *= 2;
+        return syncInterval * Math.min( factor, MAX_BACKOFF_FACTOR );
+    }
+}
\ No newline at end of file
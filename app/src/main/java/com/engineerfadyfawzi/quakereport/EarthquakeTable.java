@@ -0,0 +1,1069 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link EarthquakeTable} holds a list of earthquakes column by column (struct of arrays),
+ * instead of one {@link Earthquake} object per earthquake.
+ *
+ * Numbers are kept in primitive arrays, and the location and URL strings are dictionary encoded:
+ * every distinct location is stored once, and URLs are stored as a shared prefix that the event
+ * id is appended to ("https://earthquake.usgs.gov/earthquakes/eventpage/" + "us7000c2zk").
+ * Rows are read through the getters taking a row index, so reading a row allocates nothing
+ * but the URL string.
+ *
+ * The optional USGS properties ("felt", "sig", "tsunami" and "alert") are kept as primitive
+ * columns too, a few bytes per row, and the alert level as a code of the few levels USGS has,
+ * so they never cost a string per row.
+ *
+ * A table also has display columns (the formatted magnitude, location parts, date and time,
+ * and the magnitude color), filled by an {@link EarthquakeFormatter} on the loader thread,
+ * so a list item only has to set them on its views. Formatted rows stay formatted when they're
+ * copied to another table, so only new rows are formatted when pages are appended or merged.
+ *
+ * Tables are immutable, they are created by a {@link Builder}.
+ */
+public class EarthquakeTable
+{
+    /**
+     * A table without any earthquake
+     */
+    public static final EarthquakeTable EMPTY = new Builder( 0 ).build();
+    
+    /**
+     * USGS PAGER alert levels, from the lowest to the highest
+     */
+    static final String[] ALERT_LEVELS = { "green", "yellow", "orange", "red" };
+    
+    /**
+     * Number of earthquakes (rows) in the table
+     */
+    private int mSize;
+    
+    /**
+     * USGS event id column
+     */
+    private String[] mIds;
+    
+    /**
+     * Magnitude column
+     */
+    private double[] mMagnitudes;
+    
+    /**
+     * Time column, in milliseconds from the Epoch
+     */
+    private long[] mTimes;
+    
+    /**
+     * Updated time column, in milliseconds from the Epoch
+     */
+    private long[] mUpdated;
+    
+    /**
+     * Location column, as codes of the location dictionary
+     */
+    private int[] mLocationCodes;
+    
+    /**
+     * Distinct locations of the table
+     */
+    private String[] mLocations;
+    
+    /**
+     * URL column, as codes of the URL dictionary. A code c >= 0 means the URL is the prefix
+     * mUrls[c] followed by the event id, a code c < 0 means the URL is mUrls[-c - 1] as a whole.
+     */
+    private int[] mUrlCodes;
+    
+    /**
+     * Distinct URL prefixes and whole URLs of the table
+     */
+    private String[] mUrls;
+    
+    /**
+     * Rows of the earthquakes USGS deleted, only found in the results of a sync
+     */
+    private BitSet mDeleted;
+    
+    /**
+     * Geometry columns: longitude and latitude of the epicenter in degrees, and depth of the
+     * hypocenter in kilometers, NaN when they're unknown
+     */
+    private double[] mLongitudes;
+    
+    private double[] mLatitudes;
+    
+    private double[] mDepths;
+    
+    /**
+     * Optional property columns: number of "Did You Feel It?" reports and significance,
+     * -1 when they're unknown, rows with a tsunami flag, and PAGER alert level codes
+     * (index in {@link #ALERT_LEVELS} plus one, 0 when there is no alert)
+     */
+    private int[] mFelt;
+    
+    private int[] mSignificances;
+    
+    private BitSet mTsunamis;
+    
+    private byte[] mAlertLevels;
+    
+    /**
+     * Display columns, null until a row of the table is formatted.
+     * A row isn't formatted while its formatted magnitude is null.
+     */
+    private String[] mFormattedMagnitudes;
+    
+    private String[] mLocationOffsets;
+    
+    private String[] mPrimaryLocations;
+    
+    private String[] mFormattedDates;
+    
+    private String[] mFormattedTimes;
+    
+    private int[] mMagnitudeColors;
+    
+    /**
+     * Number of formatted rows
+     */
+    private int mFormattedCount;
+    
+    private EarthquakeTable()
+    {
+        
+    }
+    
+    /**
+     * Returns a new unformatted table of the given columns, which are taken as they are, so they
+     * must not be changed anymore. The codes of the columns are encoded like the ones of a table.
+     * The optional property columns are encoded like the ones of a table too.
+     */
+    static EarthquakeTable fromColumns( int size, String[] ids, double[] magnitudes, long[] times,
+                                        long[] updated, int[] locationCodes, String[] locations,
+                                        int[] urlCodes, String[] urls, BitSet deleted,
+                                        double[] longitudes, double[] latitudes, double[] depths,
+                                        int[] felt, int[] significances, BitSet tsunamis, byte[] alertLevels )
+    {
+        EarthquakeTable table = new EarthquakeTable();
+        table.mSize = size;
+        table.mIds = ids;
+        table.mMagnitudes = magnitudes;
+        table.mTimes = times;
+        table.mUpdated = updated;
+        table.mLocationCodes = locationCodes;
+        table.mLocations = locations;
+        table.mUrlCodes = urlCodes;
+        table.mUrls = urls;
+        table.mDeleted = deleted;
+        table.mLongitudes = longitudes;
+        table.mLatitudes = latitudes;
+        table.mDepths = depths;
+        table.mFelt = felt;
+        table.mSignificances = significances;
+        table.mTsunamis = tsunamis;
+        table.mAlertLevels = alertLevels;
+        return table;
+    }
+    
+    /**
+     * Returns the number of earthquakes in the table.
+     */
+    public int size()
+    {
+        return mSize;
+    }
+    
+    /**
+     * Returns whether the table has no earthquake.
+     */
+    public boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+    
+    /**
+     * Returns the USGS event id of the earthquake at the given row.
+     */
+    public String getId( int row )
+    {
+        return mIds[ row ];
+    }
+    
+    /**
+     * Returns a 64 bit hash (FNV-1a) of the event id of the earthquake at the given row,
+     * which stays the same for the earthquake wherever it moves in the table,
+     * so the list can use it as a stable item id.
+     */
+    public long getStableId( int row )
+    {
+        String id = mIds[ row ];
+        if ( id == null )
+            return row;
+        
+        long hash = 0xcbf29ce484222325L;
+        for ( int i = 0; i < id.length(); i++ )
+        {
+            hash ^= id.charAt( i );
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    /**
+     * Returns the magnitude of the earthquake at the given row.
+     */
+    public double getMagnitude( int row )
+    {
+        return mMagnitudes[ row ];
+    }
+    
+    /**
+     * Returns the location of the earthquake at the given row.
+     */
+    public String getLocation( int row )
+    {
+        return mLocations[ mLocationCodes[ row ] ];
+    }
+    
+    /**
+     * Returns the time of the earthquake at the given row.
+     */
+    public long getTimeInMilliseconds( int row )
+    {
+        return mTimes[ row ];
+    }
+    
+    /**
+     * Returns the time the earthquake at the given row was last updated.
+     */
+    public long getUpdated( int row )
+    {
+        return mUpdated[ row ];
+    }
+    
+    /**
+     * Returns the website URL of the earthquake at the given row.
+     * It's rebuilt from its prefix on every call, so it's best only called when it's needed.
+     */
+    public String getUrl( int row )
+    {
+        int code = mUrlCodes[ row ];
+        return code >= 0 ? mUrls[ code ] + mIds[ row ] : mUrls[ -code - 1 ];
+    }
+    
+    /**
+     * Returns whether USGS deleted the earthquake at the given row.
+     */
+    public boolean isDeleted( int row )
+    {
+        return mDeleted.get( row );
+    }
+    
+    /**
+     * Returns the longitude of the epicenter of the earthquake at the given row, or NaN.
+     */
+    public double getLongitude( int row )
+    {
+        return mLongitudes[ row ];
+    }
+    
+    /**
+     * Returns the latitude of the epicenter of the earthquake at the given row, or NaN.
+     */
+    public double getLatitude( int row )
+    {
+        return mLatitudes[ row ];
+    }
+    
+    /**
+     * Returns the depth of the hypocenter of the earthquake at the given row, or NaN.
+     */
+    public double getDepth( int row )
+    {
+        return mDepths[ row ];
+    }
+    
+    /**
+     * Returns the number of "Did You Feel It?" reports of the earthquake at the given row,
+     * or -1 if it's unknown.
+     */
+    public int getFelt( int row )
+    {
+        return mFelt[ row ];
+    }
+    
+    /**
+     * Returns the significance (0 to 1000 and more) of the earthquake at the given row,
+     * or -1 if it's unknown.
+     */
+    public int getSignificance( int row )
+    {
+        return mSignificances[ row ];
+    }
+    
+    /**
+     * Returns whether the earthquake at the given row happened in an oceanic region,
+     * so it may have caused a tsunami.
+     */
+    public boolean isTsunami( int row )
+    {
+        return mTsunamis.get( row );
+    }
+    
+    /**
+     * Returns the PAGER alert level ("green", "yellow", "orange" or "red") of the earthquake
+     * at the given row, or null if it has none.
+     */
+    public String getAlertLevel( int row )
+    {
+        return decodeAlertLevel( mAlertLevels[ row ] );
+    }
+    
+    /**
+     * Returns whether all the rows of the table are formatted, so they can be displayed.
+     */
+    public boolean isFormatted()
+    {
+        return mFormattedCount == mSize;
+    }
+    
+    /**
+     * Returns whether the given row is formatted.
+     */
+    public boolean isFormatted( int row )
+    {
+        return mFormattedMagnitudes != null && mFormattedMagnitudes[ row ] != null;
+    }
+    
+    /**
+     * Returns the magnitude of the given formatted row, with 1 decimal place (i.e. "3.2").
+     */
+    public String getFormattedMagnitude( int row )
+    {
+        return mFormattedMagnitudes[ row ];
+    }
+    
+    /**
+     * Returns the location offset of the given formatted row (i.e. "5km N of" or "Near the").
+     */
+    public String getLocationOffset( int row )
+    {
+        return mLocationOffsets[ row ];
+    }
+    
+    /**
+     * Returns the primary location of the given formatted row (i.e. "Cairo, Egypt").
+     */
+    public String getPrimaryLocation( int row )
+    {
+        return mPrimaryLocations[ row ];
+    }
+    
+    /**
+     * Returns the date of the given formatted row (i.e. "Mar 3, 1984").
+     */
+    public String getFormattedDate( int row )
+    {
+        return mFormattedDates[ row ];
+    }
+    
+    /**
+     * Returns the time of the given formatted row (i.e. "4:30 PM").
+     */
+    public String getFormattedTime( int row )
+    {
+        return mFormattedTimes[ row ];
+    }
+    
+    /**
+     * Returns the color of the magnitude circle of the given formatted row.
+     */
+    public int getMagnitudeColor( int row )
+    {
+        return mMagnitudeColors[ row ];
+    }
+    
+    /**
+     * Returns a new {@link Earthquake} object with the information of the given row.
+     */
+    public Earthquake getEarthquake( int row )
+    {
+        return new Earthquake( getId( row ), getMagnitude( row ), getLocation( row ),
+                getTimeInMilliseconds( row ), getUpdated( row ), getUrl( row ), isDeleted( row ),
+                getLongitude( row ), getLatitude( row ), getDepth( row ) );
+    }
+    
+    /**
+     * Returns a new list of {@link Earthquake} objects with all the rows of the table.
+     */
+    public List< Earthquake > toList()
+    {
+        List< Earthquake > earthquakes = new ArrayList<>( mSize );
+        for ( int row = 0; row < mSize; row++ )
+            earthquakes.add( getEarthquake( row ) );
+        return earthquakes;
+    }
+    
+    /**
+     * Returns whether the given row of this table and the given row of the other table
+     * hold the same earthquake information.
+     */
+    public boolean rowEquals( int row, EarthquakeTable other, int otherRow )
+    {
+        return Double.compare( mMagnitudes[ row ], other.mMagnitudes[ otherRow ] ) == 0 &&
+                mTimes[ row ] == other.mTimes[ otherRow ] &&
+                mUpdated[ row ] == other.mUpdated[ otherRow ] &&
+                mDeleted.get( row ) == other.mDeleted.get( otherRow ) &&
+                Double.compare( mLongitudes[ row ], other.mLongitudes[ otherRow ] ) == 0 &&
+                Double.compare( mLatitudes[ row ], other.mLatitudes[ otherRow ] ) == 0 &&
+                Double.compare( mDepths[ row ], other.mDepths[ otherRow ] ) == 0 &&
+                mFelt[ row ] == other.mFelt[ otherRow ] &&
+                mSignificances[ row ] == other.mSignificances[ otherRow ] &&
+                mTsunamis.get( row ) == other.mTsunamis.get( otherRow ) &&
+                mAlertLevels[ row ] == other.mAlertLevels[ otherRow ] &&
+                equal( mIds[ row ], other.mIds[ otherRow ] ) &&
+                equal( getLocation( row ), other.getLocation( otherRow ) ) &&
+                urlEquals( row, other, otherRow );
+    }
+    
+    /**
+     * Returns whether the URLs of the given rows are the same, without building the URLs
+     * when they're both a prefix followed by the event id. The event ids must be equal.
+     */
+    private boolean urlEquals( int row, EarthquakeTable other, int otherRow )
+    {
+        int code = mUrlCodes[ row ];
+        int otherCode = other.mUrlCodes[ otherRow ];
+        if ( code >= 0 && otherCode >= 0 )
+            return mUrls[ code ].equals( other.mUrls[ otherCode ] );
+        
+        return equal( getUrl( row ), other.getUrl( otherRow ) );
+    }
+    
+    /**
+     * Returns a new table with the given rows of this table, in the given order.
+     * The dictionaries are shared with this table, only the columns are copied.
+     */
+    public EarthquakeTable select( int[] rows )
+    {
+        EarthquakeTable table = new EarthquakeTable();
+        table.mSize = rows.length;
+        table.mIds = new String[ rows.length ];
+        table.mMagnitudes = new double[ rows.length ];
+        table.mTimes = new long[ rows.length ];
+        table.mUpdated = new long[ rows.length ];
+        table.mLocationCodes = new int[ rows.length ];
+        table.mUrlCodes = new int[ rows.length ];
+        table.mDeleted = new BitSet();
+        table.mLongitudes = new double[ rows.length ];
+        table.mLatitudes = new double[ rows.length ];
+        table.mDepths = new double[ rows.length ];
+        table.mFelt = new int[ rows.length ];
+        table.mSignificances = new int[ rows.length ];
+        table.mTsunamis = new BitSet();
+        table.mAlertLevels = new byte[ rows.length ];
+        table.mLocations = mLocations;
+        table.mUrls = mUrls;
+        if ( mFormattedMagnitudes != null )
+            table.allocateDisplayColumns( rows.length );
+        
+        for ( int i = 0; i < rows.length; i++ )
+        {
+            int row = rows[ i ];
+            table.mIds[ i ] = mIds[ row ];
+            table.mMagnitudes[ i ] = mMagnitudes[ row ];
+            table.mTimes[ i ] = mTimes[ row ];
+            table.mUpdated[ i ] = mUpdated[ row ];
+            table.mLocationCodes[ i ] = mLocationCodes[ row ];
+            table.mUrlCodes[ i ] = mUrlCodes[ row ];
+            if ( mDeleted.get( row ) )
+                table.mDeleted.set( i );
+            table.mLongitudes[ i ] = mLongitudes[ row ];
+            table.mLatitudes[ i ] = mLatitudes[ row ];
+            table.mDepths[ i ] = mDepths[ row ];
+            table.mFelt[ i ] = mFelt[ row ];
+            table.mSignificances[ i ] = mSignificances[ row ];
+            if ( mTsunamis.get( row ) )
+                table.mTsunamis.set( i );
+            table.mAlertLevels[ i ] = mAlertLevels[ row ];
+            
+            if ( isFormatted( row ) )
+            {
+                table.mFormattedMagnitudes[ i ] = mFormattedMagnitudes[ row ];
+                table.mLocationOffsets[ i ] = mLocationOffsets[ row ];
+                table.mPrimaryLocations[ i ] = mPrimaryLocations[ row ];
+                table.mFormattedDates[ i ] = mFormattedDates[ row ];
+                table.mFormattedTimes[ i ] = mFormattedTimes[ row ];
+                table.mMagnitudeColors[ i ] = mMagnitudeColors[ row ];
+                table.mFormattedCount++;
+            }
+        }
+        
+        return table;
+    }
+    
+    /**
+     * Returns the rows of the table sorted in the given order. The sort is stable,
+     * so rows that are equal in that order keep their relative order.
+     */
+    public int[] sortedRows( EarthquakeOrder order )
+    {
+        int[] rows = new int[ mSize ];
+        for ( int row = 0; row < mSize; row++ )
+            rows[ row ] = row;
+        
+        mergeSort( rows, new int[ mSize ], 0, mSize, order );
+        return rows;
+    }
+    
+    /**
+     * Returns a new table with the rows of this table sorted in the given order.
+     */
+    public EarthquakeTable sort( EarthquakeOrder order )
+    {
+        return select( sortedRows( order ) );
+    }
+    
+    /**
+     * Returns this table if all its rows are formatted, or a new table sharing its columns
+     * with all the rows formatted by the given formatter. Rows that are already formatted
+     * aren't formatted again, and every distinct location is only split once.
+     */
+    EarthquakeTable format( EarthquakeFormatter formatter )
+    {
+        if ( isFormatted() )
+            return this;
+        
+        EarthquakeTable table = new EarthquakeTable();
+        table.mSize = mSize;
+        table.mIds = mIds;
+        table.mMagnitudes = mMagnitudes;
+        table.mTimes = mTimes;
+        table.mUpdated = mUpdated;
+        table.mLocationCodes = mLocationCodes;
+        table.mLocations = mLocations;
+        table.mUrlCodes = mUrlCodes;
+        table.mUrls = mUrls;
+        table.mDeleted = mDeleted;
+        table.mLongitudes = mLongitudes;
+        table.mLatitudes = mLatitudes;
+        table.mDepths = mDepths;
+        table.mFelt = mFelt;
+        table.mSignificances = mSignificances;
+        table.mTsunamis = mTsunamis;
+        table.mAlertLevels = mAlertLevels;
+        table.allocateDisplayColumns( mSize );
+        
+        String[] locationOffsets = new String[ mLocations.length ];
+        String[] primaryLocations = new String[ mLocations.length ];
+        
+        for ( int row = 0; row < mSize; row++ )
+        {
+            if ( isFormatted( row ) )
+            {
+                table.mFormattedMagnitudes[ row ] = mFormattedMagnitudes[ row ];
+                table.mLocationOffsets[ row ] = mLocationOffsets[ row ];
+                table.mPrimaryLocations[ row ] = mPrimaryLocations[ row ];
+                table.mFormattedDates[ row ] = mFormattedDates[ row ];
+                table.mFormattedTimes[ row ] = mFormattedTimes[ row ];
+                table.mMagnitudeColors[ row ] = mMagnitudeColors[ row ];
+                continue;
+            }
+            
+            int locationCode = mLocationCodes[ row ];
+            if ( locationOffsets[ locationCode ] == null )
+            {
+                String location = mLocations[ locationCode ] == null ? "" : mLocations[ locationCode ];
+                locationOffsets[ locationCode ] = formatter.getLocationOffset( location );
+                primaryLocations[ locationCode ] = formatter.getPrimaryLocation( location );
+            }
+            
+            table.mFormattedMagnitudes[ row ] = formatter.formatMagnitude( mMagnitudes[ row ] );
+            table.mLocationOffsets[ row ] = locationOffsets[ locationCode ];
+            table.mPrimaryLocations[ row ] = primaryLocations[ locationCode ];
+            table.mFormattedDates[ row ] = formatter.formatDate( mTimes[ row ] );
+            table.mFormattedTimes[ row ] = formatter.formatTime( mTimes[ row ] );
+            table.mMagnitudeColors[ row ] = formatter.getMagnitudeColor( mMagnitudes[ row ] );
+        }
+        
+        table.mFormattedCount = mSize;
+        return table;
+    }
+    
+    /**
+     * Two tables are equal when they have the same earthquakes in the same order,
+     * which is how a reloaded table of earthquakes is found to be unchanged.
+     */
+    @Override
+    public boolean equals( Object object )
+    {
+        if ( this == object )
+            return true;
+        
+        if ( !( object instanceof EarthquakeTable ) )
+            return false;
+        
+        EarthquakeTable table = ( EarthquakeTable ) object;
+        if ( mSize != table.mSize )
+            return false;
+        
+        for ( int row = 0; row < mSize; row++ )
+            if ( !rowEquals( row, table, row ) )
+                return false;
+        
+        return true;
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        int result = mSize;
+        for ( int row = 0; row < mSize; row++ )
+        {
+            long timeBits = mTimes[ row ] ^ mUpdated[ row ];
+            result = 31 * result + ( mIds[ row ] == null ? 0 : mIds[ row ].hashCode() );
+            result = 31 * result + ( int ) ( timeBits ^ ( timeBits >>> 32 ) );
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the code of the given alert level, 0 if there is none or it's not a USGS one.
+     */
+    static byte encodeAlertLevel( String alertLevel )
+    {
+        for ( int i = 0; alertLevel != null && i < ALERT_LEVELS.length; i++ )
+            if ( ALERT_LEVELS[ i ].equals( alertLevel ) )
+                return ( byte ) ( i + 1 );
+        return 0;
+    }
+    
+    /**
+     * Returns the alert level of the given code, null for 0.
+     */
+    static String decodeAlertLevel( int code )
+    {
+        return code == 0 ? null : ALERT_LEVELS[ code - 1 ];
+    }
+    
+    private void allocateDisplayColumns( int size )
+    {
+        mFormattedMagnitudes = new String[ size ];
+        mLocationOffsets = new String[ size ];
+        mPrimaryLocations = new String[ size ];
+        mFormattedDates = new String[ size ];
+        mFormattedTimes = new String[ size ];
+        mMagnitudeColors = new int[ size ];
+    }
+    
+    /**
+     * Stable sort of the rows between from (inclusive) and to (exclusive).
+     */
+    private void mergeSort( int[] rows, int[] buffer, int from, int to, EarthquakeOrder order )
+    {
+        if ( to - from < 2 )
+            return;
+        
+        int middle = ( from + to ) >>> 1;
+        mergeSort( rows, buffer, from, middle, order );
+        mergeSort( rows, buffer, middle, to, order );
+        
+        // The two halves are already in order
+        if ( order.compare( this, rows[ middle - 1 ], this, rows[ middle ] ) <= 0 )
+            return;
+        
+        System.arraycopy( rows, from, buffer, from, to - from );
+        int left = from, right = middle;
+        for ( int i = from; i < to; i++ )
+        {
+            if ( right >= to ||
+                    ( left < middle && order.compare( this, buffer[ left ], this, buffer[ right ] ) <= 0 ) )
+                rows[ i ] = buffer[ left++ ];
+            else
+                rows[ i ] = buffer[ right++ ];
+        }
+    }
+    
+    private static boolean equal( String first, String second )
+    {
+        return first == null ? second == null : first.equals( second );
+    }
+    
+    /**
+     * Builds an {@link EarthquakeTable} one earthquake at a time, encoding the location
+     * and URL strings in its dictionaries as they are added.
+     */
+    public static class Builder
+    {
+        private int mSize;
+        
+        private String[] mIds;
+        
+        private double[] mMagnitudes;
+        
+        private long[] mTimes;
+        
+        private long[] mUpdated;
+        
+        private int[] mLocationCodes;
+        
+        private int[] mUrlCodes;
+        
+        private BitSet mDeleted = new BitSet();
+        
+        private double[] mLongitudes;
+        
+        private double[] mLatitudes;
+        
+        private double[] mDepths;
+        
+        private int[] mFelt;
+        
+        private int[] mSignificances;
+        
+        private BitSet mTsunamis = new BitSet();
+        
+        private byte[] mAlertLevels;
+        
+        /**
+         * Display columns, only allocated once a formatted row is added
+         */
+        private String[] mFormattedMagnitudes;
+        
+        private String[] mLocationOffsets;
+        
+        private String[] mPrimaryLocations;
+        
+        private String[] mFormattedDates;
+        
+        private String[] mFormattedTimes;
+        
+        private int[] mMagnitudeColors;
+        
+        private int mFormattedCount;
+        
+        private List< String > mLocations = new ArrayList<>();
+        
+        private Map< String, Integer > mLocationDictionary = new HashMap<>();
+        
+        private List< String > mUrls = new ArrayList<>();
+        
+        private Map< String, Integer > mUrlDictionary = new HashMap<>();
+        
+        /**
+         * Prefix of the event pages of the feed being added, followed by the event id, and its code,
+         * each provider has its own
+         */
+        private String mEventPageUrl;
+        
+        private int mEventPageUrlCode;
+        
+        /**
+         * Constructs a new {@link Builder} with room for a few earthquakes.
+         */
+        public Builder()
+        {
+            this( 16 );
+        }
+        
+        /**
+         * Constructs a new {@link Builder} with room for the given number of earthquakes.
+         */
+        public Builder( int capacity )
+        {
+            mIds = new String[ capacity ];
+            mMagnitudes = new double[ capacity ];
+            mTimes = new long[ capacity ];
+            mUpdated = new long[ capacity ];
+            mLocationCodes = new int[ capacity ];
+            mUrlCodes = new int[ capacity ];
+            mLongitudes = new double[ capacity ];
+            mLatitudes = new double[ capacity ];
+            mDepths = new double[ capacity ];
+            mFelt = new int[ capacity ];
+            mSignificances = new int[ capacity ];
+            mAlertLevels = new byte[ capacity ];
+        }
+        
+        /**
+         * Add an earthquake with unknown coordinates at the end of the table.
+         *
+         * @return this builder, so calls can be chained
+         */
+        public Builder add( String id, double magnitude, String location, long timeInMilliseconds,
+                            long updated, String url, boolean deleted )
+        {
+            return add( id, magnitude, location, timeInMilliseconds, updated, url, deleted,
+                    Double.NaN, Double.NaN, Double.NaN );
+        }
+        
+        /**
+         * Add an earthquake without the optional properties at the end of the table.
+         *
+         * @return this builder, so calls can be chained
+         */
+        public Builder add( String id, double magnitude, String location, long timeInMilliseconds,
+                            long updated, String url, boolean deleted,
+                            double longitude, double latitude, double depth )
+        {
+            return add( id, magnitude, location, timeInMilliseconds, updated, url, deleted,
+                    longitude, latitude, depth, -1, -1, false, null );
+        }
+        
+        /**
+         * Add an earthquake at the end of the table.
+         *
+         * @param felt is the number of "Did You Feel It?" reports, or -1 if it's unknown
+         * @param significance is the significance of the earthquake, or -1 if it's unknown
+         * @param tsunami is whether the earthquake happened in an oceanic region
+         * @param alertLevel is the PAGER alert level, or null if there is none
+         * @return this builder, so calls can be chained
+         */
+        public Builder add( String id, double magnitude, String location, long timeInMilliseconds,
+                            long updated, String url, boolean deleted,
+                            double longitude, double latitude, double depth,
+                            int felt, int significance, boolean tsunami, String alertLevel )
+        {
+            // Most URLs are a common prefix followed by the event id, only that prefix is stored
+            int urlCode;
+            if ( url != null && id != null && url.endsWith( id ) )
+                urlCode = encode( url.substring( 0, url.length() - id.length() ), mUrls, mUrlDictionary );
+            else
+                urlCode = -encode( url, mUrls, mUrlDictionary ) - 1;
+            
+            return addEncoded( id, magnitude, location, timeInMilliseconds, updated, urlCode, deleted,
+                    longitude, latitude, depth, felt, significance, tsunami, encodeAlertLevel( alertLevel ) );
+        }
+        
+        /**
+         * Add an earthquake of a feed at the end of the table. The URLs of a feed are mostly the
+         * event page prefix of its provider followed by the event id, once that prefix is known
+         * it's checked in place, so it isn't copied for every row. Any other URL is stored like
+         * {@code add} does.
+         *
+         * @return this builder, so calls can be chained
+         */
+        Builder addEvent( String id, double magnitude, String location, long timeInMilliseconds,
+                          long updated, String url, boolean deleted,
+                          double longitude, double latitude, double depth,
+                          int felt, int significance, boolean tsunami, String alertLevel )
+        {
+            if ( url == null || id == null || !url.endsWith( id ) )
+                return add( id, magnitude, location, timeInMilliseconds, updated, url, deleted,
+                        longitude, latitude, depth, felt, significance, tsunami, alertLevel );
+            
+            int prefixLength = url.length() - id.length();
+            if ( mEventPageUrl == null || prefixLength != mEventPageUrl.length() ||
+                    !url.startsWith( mEventPageUrl ) )
+            {
+                mEventPageUrl = url.substring( 0, prefixLength );
+                mEventPageUrlCode = encode( mEventPageUrl, mUrls, mUrlDictionary );
+            }
+            
+            return addEncoded( id, magnitude, location, timeInMilliseconds, updated, mEventPageUrlCode, deleted,
+                    longitude, latitude, depth, felt, significance, tsunami, encodeAlertLevel( alertLevel ) );
+        }
+        
+        /**
+         * Add an earthquake with an already encoded URL and alert level at the end of the table.
+         */
+        private Builder addEncoded( String id, double magnitude, String location, long timeInMilliseconds,
+                                    long updated, int urlCode, boolean deleted,
+                                    double longitude, double latitude, double depth,
+                                    int felt, int significance, boolean tsunami, byte alertLevel )
+        {
+            ensureCapacity( mSize + 1 );
+            
+            mIds[ mSize ] = id;
+            mMagnitudes[ mSize ] = magnitude;
+            mTimes[ mSize ] = timeInMilliseconds;
+            mUpdated[ mSize ] = updated;
+            mLocationCodes[ mSize ] = encode( location, mLocations, mLocationDictionary );
+            mUrlCodes[ mSize ] = urlCode;
+            
+            if ( deleted )
+                mDeleted.set( mSize );
+            
+            mLongitudes[ mSize ] = longitude;
+            mLatitudes[ mSize ] = latitude;
+            mDepths[ mSize ] = depth;
+            
+            mFelt[ mSize ] = felt;
+            mSignificances[ mSize ] = significance;
+            if ( tsunami )
+                mTsunamis.set( mSize );
+            mAlertLevels[ mSize ] = alertLevel;
+            
+            mSize++;
+            return this;
+        }
+        
+        /**
+         * Add the given earthquake at the end of the table.
+         *
+         * @return this builder, so calls can be chained
+         */
+        public Builder add( Earthquake earthquake )
+        {
+            return add( earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                    earthquake.getTimeInMilliseconds(), earthquake.getUpdated(), earthquake.getUrl(),
+                    earthquake.isDeleted(), earthquake.getLongitude(), earthquake.getLatitude(),
+                    earthquake.getDepth() );
+        }
+        
+        /**
+         * Add the earthquake at the given row of the table at the end of the table being built.
+         * The row stays formatted if it's formatted in the given table.
+         *
+         * @return this builder, so calls can be chained
+         */
+        public Builder addRow( EarthquakeTable table, int row )
+        {
+            // Copy the URL encoded, so it isn't built and split again
+            int urlCode = table.mUrlCodes[ row ];
+            urlCode = urlCode >= 0 ? encode( table.mUrls[ urlCode ], mUrls, mUrlDictionary ) :
+                    -encode( table.mUrls[ -urlCode - 1 ], mUrls, mUrlDictionary ) - 1;
+            
+            addEncoded( table.getId( row ), table.getMagnitude( row ), table.getLocation( row ),
+                    table.getTimeInMilliseconds( row ), table.getUpdated( row ), urlCode,
+                    table.isDeleted( row ), table.getLongitude( row ), table.getLatitude( row ),
+                    table.getDepth( row ), table.mFelt[ row ], table.mSignificances[ row ],
+                    table.mTsunamis.get( row ), table.mAlertLevels[ row ] );
+            
+            if ( table.isFormatted( row ) )
+            {
+                if ( mFormattedMagnitudes == null )
+                {
+                    mFormattedMagnitudes = new String[ mIds.length ];
+                    mLocationOffsets = new String[ mIds.length ];
+                    mPrimaryLocations = new String[ mIds.length ];
+                    mFormattedDates = new String[ mIds.length ];
+                    mFormattedTimes = new String[ mIds.length ];
+                    mMagnitudeColors = new int[ mIds.length ];
+                }
+                
+                int last = mSize - 1;
+                mFormattedMagnitudes[ last ] = table.mFormattedMagnitudes[ row ];
+                mLocationOffsets[ last ] = table.mLocationOffsets[ row ];
+                mPrimaryLocations[ last ] = table.mPrimaryLocations[ row ];
+                mFormattedDates[ last ] = table.mFormattedDates[ row ];
+                mFormattedTimes[ last ] = table.mFormattedTimes[ row ];
+                mMagnitudeColors[ last ] = table.mMagnitudeColors[ row ];
+                mFormattedCount++;
+            }
+            
+            return this;
+        }
+        
+        /**
+         * Add all the earthquakes of the given table at the end of the table being built.
+         *
+         * @return this builder, so calls can be chained
+         */
+        public Builder addAll( EarthquakeTable table )
+        {
+            ensureCapacity( mSize + table.size() );
+            for ( int row = 0; row < table.size(); row++ )
+                addRow( table, row );
+            return this;
+        }
+        
+        /**
+         * Returns the number of earthquakes added so far.
+         */
+        public int size()
+        {
+            return mSize;
+        }
+        
+        /**
+         * Returns a new table with the earthquakes added so far.
+         */
+        public EarthquakeTable build()
+        {
+            EarthquakeTable table = new EarthquakeTable();
+            table.mSize = mSize;
+            table.mIds = Arrays.copyOf( mIds, mSize );
+            table.mMagnitudes = Arrays.copyOf( mMagnitudes, mSize );
+            table.mTimes = Arrays.copyOf( mTimes, mSize );
+            table.mUpdated = Arrays.copyOf( mUpdated, mSize );
+            table.mLocationCodes = Arrays.copyOf( mLocationCodes, mSize );
+            table.mUrlCodes = Arrays.copyOf( mUrlCodes, mSize );
+            table.mDeleted = ( BitSet ) mDeleted.clone();
+            table.mLongitudes = Arrays.copyOf( mLongitudes, mSize );
+            table.mLatitudes = Arrays.copyOf( mLatitudes, mSize );
+            table.mDepths = Arrays.copyOf( mDepths, mSize );
+            table.mFelt = Arrays.copyOf( mFelt, mSize );
+            table.mSignificances = Arrays.copyOf( mSignificances, mSize );
+            table.mTsunamis = ( BitSet ) mTsunamis.clone();
+            table.mAlertLevels = Arrays.copyOf( mAlertLevels, mSize );
+            table.mLocations = mLocations.toArray( new String[ mLocations.size() ] );
+            table.mUrls = mUrls.toArray( new String[ mUrls.size() ] );
+            
+            if ( mFormattedMagnitudes != null )
+            {
+                table.mFormattedMagnitudes = Arrays.copyOf( mFormattedMagnitudes, mSize );
+                table.mLocationOffsets = Arrays.copyOf( mLocationOffsets, mSize );
+                table.mPrimaryLocations = Arrays.copyOf( mPrimaryLocations, mSize );
+                table.mFormattedDates = Arrays.copyOf( mFormattedDates, mSize );
+                table.mFormattedTimes = Arrays.copyOf( mFormattedTimes, mSize );
+                table.mMagnitudeColors = Arrays.copyOf( mMagnitudeColors, mSize );
+                table.mFormattedCount = mFormattedCount;
+            }
+            
+            return table;
+        }
+        
+        private void ensureCapacity( int capacity )
+        {
+            if ( capacity <= mIds.length )
+                return;
+            
+            int newCapacity = Math.max( capacity, mIds.length * 2 );
+            mIds = Arrays.copyOf( mIds, newCapacity );
+            mMagnitudes = Arrays.copyOf( mMagnitudes, newCapacity );
+            mTimes = Arrays.copyOf( mTimes, newCapacity );
+            mUpdated = Arrays.copyOf( mUpdated, newCapacity );
+            mLocationCodes = Arrays.copyOf( mLocationCodes, newCapacity );
+            mUrlCodes = Arrays.copyOf( mUrlCodes, newCapacity );
+            mLongitudes = Arrays.copyOf( mLongitudes, newCapacity );
+            mLatitudes = Arrays.copyOf( mLatitudes, newCapacity );
+            mDepths = Arrays.copyOf( mDepths, newCapacity );
+            mFelt = Arrays.copyOf( mFelt, newCapacity );
+            mSignificances = Arrays.copyOf( mSignificances, newCapacity );
+            mAlertLevels = Arrays.copyOf( mAlertLevels, newCapacity );
+            
+            if ( mFormattedMagnitudes != null )
+            {
+                mFormattedMagnitudes = Arrays.copyOf( mFormattedMagnitudes, newCapacity );
+                mLocationOffsets = Arrays.copyOf( mLocationOffsets, newCapacity );
+                mPrimaryLocations = Arrays.copyOf( mPrimaryLocations, newCapacity );
+                mFormattedDates = Arrays.copyOf( mFormattedDates, newCapacity );
+                mFormattedTimes = Arrays.copyOf( mFormattedTimes, newCapacity );
+                mMagnitudeColors = Arrays.copyOf( mMagnitudeColors, newCapacity );
+            }
+        }
+        
+        /**
+         * Returns the code of the value in the dictionary, adding the value if it's a new one.
+         */
+        private static int encode( String value, List< String > values, Map< String, Integer > dictionary )
+        {
+            Integer code = dictionary.get( value );
+            if ( code == null )
+            {
+                code = values.size();
+                values.add( value );
+                dictionary.put( value, code );
+            }
+            return code;
+        }
+    }
+}
\ No newline at end of file
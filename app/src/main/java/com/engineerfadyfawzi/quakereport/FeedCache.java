@@ -0,0 +1,228 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A {@link FeedCache} keeps the tables of earthquakes returned by USGS queries in files,
+ * so they survive process death and can be displayed before the network is asked again.
+ *
+ * Every table is stored under its normalized query URL, and is considered stale once it's older
+ * than the time to live of the cache. Stale tables are still returned, it's up to the caller
+ * to revalidate them, using the validators ("ETag" and "Last-Modified") stored with the table.
+ *
+ * The tables are stored as {@link EarthquakeSnapshot} files, which are memory mapped instead of
+ * parsed, so reading a cached table on a cold start doesn't repeat the cost of parsing its JSON.
+ */
+public class FeedCache
+{
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = FeedCache.class.getSimpleName();
+    
+    /**
+     * Directory where the cached feeds are stored
+     */
+    private File mDirectory;
+    
+    /**
+     * Time in milliseconds after which a cached feed is stale
+     */
+    private long mTimeToLive;
+    
+    /**
+     * Constructs a new {@link FeedCache}.
+     *
+     * @param directory where the cached feeds are stored, it's created if it doesn't exist
+     * @param timeToLive time in milliseconds after which a cached feed is stale
+     */
+    public FeedCache( File directory, long timeToLive )
+    {
+        mDirectory = directory;
+        mTimeToLive = timeToLive;
+    }
+    
+    /**
+     * Returns the cached feed of the given query URL, or null if there is none.
+     * This reads a file, so it must not be called on the main thread.
+     */
+    public Entry get( String url )
+    {
+        File file = getFile( url );
+        if ( !file.exists() )
+        {
+            Metrics.CACHE_MISSES.incrementAndGet();
+            return null;
+        }
+        
+        try
+        {
+            Entry entry = new Entry( EarthquakeSnapshot.open( file ) );
+            
+            long age = System.currentTimeMillis() - file.lastModified();
+            entry.mStale = age > mTimeToLive;
+            ( entry.mStale ? Metrics.CACHE_STALE_HITS : Metrics.CACHE_HITS ).incrementAndGet();
+            return entry;
+        }
+        catch ( IOException ioException )
+        {
+            // A snapshot of an older version is replaced by the next response stored
+            Metrics.CACHE_MISSES.incrementAndGet();
+            Log.e( LOG_TAG, "Problem reading the cached feed of " + url, ioException );
+            return null;
+        }
+    }
+    
+    /**
+     * Stores the feed of the given query URL, replacing the previous one.
+     * This writes a file, so it must not be called on the main thread.
+     *
+     * @param url of the query
+     * @param earthquakes returned by the query
+     * @param eTag of the response the earthquakes came with, or null
+     * @param lastModified date of the response the earthquakes came with, or null
+     */
+    public void put( String url, EarthquakeTable earthquakes, String eTag, String lastModified )
+    {
+        if ( !mDirectory.exists() && !mDirectory.mkdirs() )
+        {
+            Log.e( LOG_TAG, "Problem creating the feed cache directory " + mDirectory );
+            return;
+        }
+        
+        try
+        {
+            EarthquakeSnapshot.write( getFile( url ), earthquakes, eTag, lastModified );
+        }
+        catch ( IOException ioException )
+        {
+            Log.e( LOG_TAG, "Problem writing the cached feed of " + url, ioException );
+        }
+    }
+    
+    /**
+     * Marks the cached feed of the given query URL as fresh again, when the server
+     * told us it didn't change.
+     */
+    public void touch( String url )
+    {
+        if ( !getFile( url ).setLastModified( System.currentTimeMillis() ) )
+            Log.e( LOG_TAG, "Problem refreshing the cached feed of " + url );
+    }
+    
+    /**
+     * Returns the query URL with its scheme and host in lower case and its query parameters
+     * sorted by name, so the same query always has the same key.
+     */
+    static String normalizeUrl( String url )
+    {
+        Uri uri = Uri.parse( url );
+        Uri.Builder uriBuilder = new Uri.Builder()
+                .scheme( uri.getScheme() == null ? null : uri.getScheme().toLowerCase( Locale.US ) )
+                .encodedAuthority( uri.getEncodedAuthority() == null ? null :
+                        uri.getEncodedAuthority().toLowerCase( Locale.US ) )
+                .encodedPath( uri.getEncodedPath() );
+        
+        List< String > names = new ArrayList<>( uri.getQueryParameterNames() );
+        Collections.sort( names );
+        for ( String name : names )
+            for ( String value : uri.getQueryParameters( name ) )
+                uriBuilder.appendQueryParameter( name, value );
+        
+        return uriBuilder.toString();
+    }
+    
+    /**
+     * Returns the file of the given query URL, named after the SHA-1 hash of its normalized form.
+     */
+    private File getFile( String url )
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance( "SHA-1" )
+                    .digest( normalizeUrl( url ).getBytes( Charset.forName( "UTF-8" ) ) );
+            
+            StringBuilder name = new StringBuilder( hash.length * 2 + 5 );
+            for ( byte hashByte : hash )
+                name.append( String.format( Locale.US, "%02x", hashByte ) );
+            
+            return new File( mDirectory, name.append( ".snapshot" ).toString() );
+        }
+        catch ( NoSuchAlgorithmException noSuchAlgorithmException )
+        {
+            // Every Android device supports SHA-1
+            throw new AssertionError( noSuchAlgorithmException );
+        }
+    }
+    
+    /**
+     * A feed read from the cache.
+     */
+    public static class Entry
+    {
+        private EarthquakeSnapshot mSnapshot;
+        
+        private EarthquakeTable mEarthquakes;
+        
+        private boolean mStale;
+        
+        Entry( EarthquakeSnapshot snapshot )
+        {
+            mSnapshot = snapshot;
+        }
+        
+        /**
+         * Returns the cached snapshot, whose rows are only read when they're asked for.
+         */
+        public EarthquakeSnapshot getSnapshot()
+        {
+            return mSnapshot;
+        }
+        
+        /**
+         * Returns the cached table of earthquakes, it's copied from the snapshot the first time.
+         */
+        public synchronized EarthquakeTable getEarthquakes()
+        {
+            if ( mEarthquakes == null )
+                mEarthquakes = mSnapshot.toTable();
+            return mEarthquakes;
+        }
+        
+        /**
+         * Returns the "ETag" of the response the earthquakes came with, or null.
+         */
+        public String getETag()
+        {
+            return mSnapshot.getETag();
+        }
+        
+        /**
+         * Returns the "Last-Modified" date of the response the earthquakes came with, or null.
+         */
+        public String getLastModified()
+        {
+            return mSnapshot.getLastModified();
+        }
+        
+        /**
+         * Returns whether the feed is older than the time to live of the cache,
+         * so it should be revalidated with the server.
+         */
+        public boolean isStale()
+        {
+            return mStale;
+        }
+    }
+}
\ No newline at end of file
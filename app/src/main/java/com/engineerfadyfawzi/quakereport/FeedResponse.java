@@ -0,0 +1,89 @@
+package com.engineerfadyfawzi.quakereport;
+
+/**
+ * A {@link FeedResponse} object contains the result of a single USGS query: either the table of
+ * earthquakes, or the fact that they didn't change since the previous response (HTTP 304).
+ * It also carries the validators to make the next request of the same query conditional.
+ */
+public class FeedResponse
+{
+    /**
+     * Earthquakes of the response, null if they weren't modified
+     */
+    private EarthquakeTable mEarthquakes;
+    
+    /**
+     * Value of the "ETag" header of the response
+     */
+    private String mETag;
+    
+    /**
+     * Value of the "Last-Modified" header of the response
+     */
+    private String mLastModified;
+    
+    /**
+     * Whether the earthquakes didn't change since the previous response
+     */
+    private boolean mNotModified;
+    
+    /**
+     * Constructs a new {@link FeedResponse} with the earthquakes of a successful response.
+     *
+     * @param earthquakes parsed from the response
+     * @param eTag of the response, or null
+     * @param lastModified date of the response, or null
+     */
+    public FeedResponse( EarthquakeTable earthquakes, String eTag, String lastModified )
+    {
+        mEarthquakes = earthquakes;
+        mETag = eTag;
+        mLastModified = lastModified;
+    }
+    
+    /**
+     * Constructs a new {@link FeedResponse} telling the earthquakes weren't modified.
+     *
+     * @param eTag of the response, or null
+     * @param lastModified date of the response, or null
+     */
+    public FeedResponse( String eTag, String lastModified )
+    {
+        mETag = eTag;
+        mLastModified = lastModified;
+        mNotModified = true;
+    }
+    
+    /**
+     * Returns the earthquakes of the response, or null if they weren't modified.
+     */
+    public EarthquakeTable getEarthquakes()
+    {
+        return mEarthquakes;
+    }
+    
+    /**
+     * Returns the "ETag" to send back as "If-None-Match" on the next request, or null.
+     */
+    public String getETag()
+    {
+        return mETag;
+    }
+    
+    /**
+     * Returns the "Last-Modified" date to send back as "If-Modified-Since" on the next request,
+     * or null.
+     */
+    public String getLastModified()
+    {
+        return mLastModified;
+    }
+    
+    /**
+     * Returns whether the earthquakes didn't change, so the previous ones should be reused.
+     */
+    public boolean isNotModified()
+    {
+        return mNotModified;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Histogram} counts recorded values (durations, sizes...) in buckets, so their
+ * percentiles can be read later without keeping the values themselves.
+ *
+ * Values below 8 have a bucket each, and every power of two above is split into 8 buckets,
+ * so a percentile is at most 12.5% above the real value, whatever the magnitude of the values.
+ * Recording a value only increments a few atomic counters: it never allocates and never
+ * blocks, so it can be called from any thread, on every request, in production builds.
+ */
+public class Histogram
+{
+    /**
+     * Number of bits of a value kept below its highest bit, so 2^3 buckets per power of two
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    
+    /**
+     * Number of buckets, enough for any positive long, whose highest bit is at most bit 62
+     */
+    private static final int BUCKET_COUNT = ( 63 - SUB_BUCKET_BITS + 1 ) * SUB_BUCKET_COUNT;
+    
+    /**
+     * Number of values recorded in every bucket
+     */
+    private final AtomicLongArray mBuckets = new AtomicLongArray( BUCKET_COUNT );
+    
+    private final AtomicLong mCount = new AtomicLong();
+    
+    private final AtomicLong mSum = new AtomicLong();
+    
+    private final AtomicLong mMax = new AtomicLong();
+    
+    /**
+     * Record the given value, a negative value is recorded as 0.
+     */
+    public void record( long value )
+    {
+        if ( value < 0 )
+            value = 0;
+        
+        mBuckets.incrementAndGet( getBucket( value ) );
+        mCount.incrementAndGet();
+        mSum.addAndGet( value );
+        
+        long max = mMax.get();
+        while ( value > max && !mMax.compareAndSet( max, value ) )
+            max = mMax.get();
+    }
+    
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getCount()
+    {
+        return mCount.get();
+    }
+    
+    /**
+     * Returns the sum of the values recorded.
+     */
+    public long getSum()
+    {
+        return mSum.get();
+    }
+    
+    /**
+     * Returns the largest value recorded, or 0 if none was recorded.
+     */
+    public long getMax()
+    {
+        return mMax.get();
+    }
+    
+    /**
+     * Returns the mean of the values recorded, or 0 if none was recorded.
+     */
+    public long getMean()
+    {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+    
+    /**
+     * Returns the value below which the given percentage of the recorded values are, as the
+     * highest value of its bucket, but never more than the largest value recorded.
+     *
+     * @param percentile between 0 and 100, i.e. 50 for the median
+     * @return the value, or 0 if no value was recorded
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+        long count = 0;
+        for ( int bucket = 0; bucket < BUCKET_COUNT; bucket++ )
+            count += mBuckets.get( bucket );
+        if ( count == 0 )
+            return 0;
+        
+        // The rank of the value, from 1 to the number of values
+        long rank = Math.max( 1, ( long ) Math.ceil( percentile / 100 * count ) );
+        long seen = 0;
+        for ( int bucket = 0; bucket < BUCKET_COUNT; bucket++ )
+        {
+            seen += mBuckets.get( bucket );
+            if ( seen >= rank )
+                return Math.min( getBucketMax( bucket ), getMax() );
+        }
+        return getMax();
+    }
+    
+    /**
+     * Forget all the values recorded so far. Values recorded while resetting may be lost.
+     */
+    public void reset()
+    {
+        for ( int bucket = 0; bucket < BUCKET_COUNT; bucket++ )
+            mBuckets.set( bucket, 0 );
+        mCount.set( 0 );
+        mSum.set( 0 );
+        mMax.set( 0 );
+    }
+    
+    /**
+     * Returns the bucket of the given value, which isn't negative.
+     */
+    static int getBucket( long value )
+    {
+        if ( value < SUB_BUCKET_COUNT )
+            return ( int ) value;
+        
+        // The highest bit of the value picks the power of two, the bits below it the sub-bucket
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKET_COUNT - 1 );
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKET_COUNT + subBucket;
+    }
+    
+    /**
+     * Returns the highest value counted in the given bucket.
+     */
+    static long getBucketMax( int bucket )
+    {
+        if ( bucket < SUB_BUCKET_COUNT )
+            return bucket;
+        
+        int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long bucketMin = ( long ) ( SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT ) << ( exponent - SUB_BUCKET_BITS );
+        long bucketWidth = 1L << ( exponent - SUB_BUCKET_BITS );
+        return bucketMin + ( bucketWidth - 1 );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link HttpRequest} object contains what's needed to execute a single GET request
+ * through an {@link HttpTransport}: the URL, the request headers, the timeouts and the signal
+ * canceling it.
+ */
+public class HttpRequest
+{
+    /**
+     * Default time in milliseconds to wait for the connection to be established
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+    
+    /**
+     * Default time in milliseconds to wait for data to be read from the connection
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+    
+    /**
+     * URL of the request
+     */
+    private URL mUrl;
+    
+    /**
+     * Headers of the request, in the order they were set
+     */
+    private Map< String, String > mHeaders = new LinkedHashMap<>();
+    
+    /**
+     * Connect timeout in milliseconds
+     */
+    private int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    
+    /**
+     * Read timeout in milliseconds
+     */
+    private int mReadTimeout = DEFAULT_READ_TIMEOUT;
+    
+    /**
+     * Signal aborting the request when it's canceled, or null
+     */
+    private CancellationSignal mCancellationSignal;
+    
+    /**
+     * Constructs a new {@link HttpRequest} with the default timeouts.
+     *
+     * @param url of the request
+     */
+    public HttpRequest( URL url )
+    {
+        mUrl = url;
+    }
+    
+    /**
+     * Set a header of the request, replacing its previous value.
+     *
+     * @return this request, so calls can be chained
+     */
+    public HttpRequest setHeader( String name, String value )
+    {
+        mHeaders.put( name, value );
+        return this;
+    }
+    
+    /**
+     * Set the time in milliseconds to wait for the connection to be established.
+     *
+     * @return this request, so calls can be chained
+     */
+    public HttpRequest setConnectTimeout( int connectTimeout )
+    {
+        mConnectTimeout = connectTimeout;
+        return this;
+    }
+    
+    /**
+     * Set the time in milliseconds to wait for data to be read from the connection.
+     *
+     * @return this request, so calls can be chained
+     */
+    public HttpRequest setReadTimeout( int readTimeout )
+    {
+        mReadTimeout = readTimeout;
+        return this;
+    }
+    
+    /**
+     * Set the signal aborting the request, and the read of its response body, when it's canceled.
+     *
+     * @return this request, so calls can be chained
+     */
+    public HttpRequest setCancellationSignal( CancellationSignal cancellationSignal )
+    {
+        mCancellationSignal = cancellationSignal;
+        return this;
+    }
+    
+    /**
+     * Returns the URL of the request.
+     */
+    public URL getUrl()
+    {
+        return mUrl;
+    }
+    
+    /**
+     * Returns the value of the given header, or null if it's not set.
+     */
+    public String getHeader( String name )
+    {
+        return mHeaders.get( name );
+    }
+    
+    /**
+     * Returns all the headers of the request.
+     */
+    public Map< String, String > getHeaders()
+    {
+        return Collections.unmodifiableMap( mHeaders );
+    }
+    
+    /**
+     * Returns the connect timeout in milliseconds.
+     */
+    public int getConnectTimeout()
+    {
+        return mConnectTimeout;
+    }
+    
+    /**
+     * Returns the read timeout in milliseconds.
+     */
+    public int getReadTimeout()
+    {
+        return mReadTimeout;
+    }
+    
+    /**
+     * Returns the signal aborting the request, or null if it can't be canceled.
+     */
+    public CancellationSignal getCancellationSignal()
+    {
+        return mCancellationSignal;
+    }
+}
\ No newline at end of file
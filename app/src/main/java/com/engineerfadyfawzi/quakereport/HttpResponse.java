@@ -0,0 +1,28 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link HttpResponse} is the response of an {@link HttpRequest} executed by an
+ * {@link HttpTransport}. Its body is read as a stream, and closing the response hands the
+ * connection back to the transport instead of disconnecting it.
+ */
+public interface HttpResponse extends Closeable
+{
+    /**
+     * Returns the HTTP status code of the response (i.e. 200).
+     */
+    int getResponseCode();
+    
+    /**
+     * Returns the value of the given response header, or null if the response doesn't have it.
+     */
+    String getHeader( String name );
+    
+    /**
+     * Returns the stream of the response body.
+     */
+    InputStream getBody() throws IOException;
+}
\ No newline at end of file
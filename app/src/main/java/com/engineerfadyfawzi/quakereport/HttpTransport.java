@@ -0,0 +1,25 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.IOException;
+
+/**
+ * An {@link HttpTransport} knows how to execute an {@link HttpRequest} and return its
+ * {@link HttpResponse}. {@link QueryUtils} sends all of its requests through one, so the way
+ * connections are opened, pooled and reused can be changed without touching the parsing code.
+ */
+public interface HttpTransport
+{
+    /**
+     * Execute the request and return its response as soon as the response headers are received.
+     * The caller must close the response once it's done reading its body, so the connection
+     * can be reused by the next request.
+     *
+     * Canceling the cancellation signal of the request aborts its connection, whether it's
+     * waiting for the response or its body is being read, which then throws an IOException.
+     *
+     * @param request to execute
+     * @return the response of the request
+     * @throws IOException if the request couldn't be executed
+     */
+    HttpResponse execute( HttpRequest request ) throws IOException;
+}
\ No newline at end of file
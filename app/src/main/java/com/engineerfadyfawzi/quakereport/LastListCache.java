@@ -0,0 +1,93 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link LastListCache} keeps the first rows of the list of earthquakes displayed last,
+ * so a cold start can display them right away, before the query settings are read and
+ * before the loader delivers anything.
+ *
+ * Unlike the {@link FeedCache}, it doesn't depend on the query: it's whatever the user saw
+ * last, and it's replaced by the loaded earthquakes as soon as they're delivered.
+ * The rows are stored as an {@link EarthquakeSnapshot}, which is mapped instead of parsed.
+ */
+public class LastListCache
+{
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = LastListCache.class.getSimpleName();
+    
+    /**
+     * File where the rows are stored
+     */
+    private File mFile;
+    
+    /**
+     * Number of rows kept, about a screen of them
+     */
+    private int mRowCount;
+    
+    /**
+     * Constructs a new {@link LastListCache}.
+     *
+     * @param file where the rows are stored, its directory must exist
+     * @param rowCount the number of first rows kept
+     */
+    public LastListCache( File file, int rowCount )
+    {
+        mFile = file;
+        mRowCount = rowCount;
+    }
+    
+    /**
+     * Returns the rows of the list displayed last, not formatted yet, or null if there are none.
+     * This reads a file, so it must not be called on the main thread.
+     */
+    public EarthquakeTable read()
+    {
+        if ( !mFile.isFile() )
+            return null;
+        
+        try
+        {
+            return EarthquakeSnapshot.open( mFile ).toTable();
+        }
+        catch ( IOException ioException )
+        {
+            Log.e( LOG_TAG, "Problem reading the last list " + mFile, ioException );
+            return null;
+        }
+    }
+    
+    /**
+     * Store the first rows of the given displayed list, replacing the previous ones.
+     * This writes a file, so it must not be called on the main thread.
+     */
+    public void write( EarthquakeTable earthquakes )
+    {
+        int[] rows = new int[ Math.min( earthquakes.size(), mRowCount ) ];
+        for ( int row = 0; row < rows.length; row++ )
+            rows[ row ] = row;
+        
+        try
+        {
+            EarthquakeSnapshot.write( mFile, earthquakes.select( rows ), null, null );
+        }
+        catch ( IOException ioException )
+        {
+            Log.e( LOG_TAG, "Problem writing the last list " + mFile, ioException );
+        }
+    }
+    
+    /**
+     * Forget the list displayed last.
+     */
+    public void clear()
+    {
+        mFile.delete();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * A {@link LiveFeed} polls a USGS summary feed (i.e. the earthquakes of the past hour), and
+ * merges the earthquakes it added or updated since the previous poll into the loaded ones,
+ * matching them by event id.
+ *
+ * Summary feeds are regenerated about every minute, so every poll is a conditional request
+ * with the validators ("ETag" and "Last-Modified") of the previous one, and a feed that didn't
+ * change since costs a "304 Not Modified" response without a body.
+ */
+public class LiveFeed
+{
+    /**
+     * URL of the USGS summary feed of all the earthquakes of the past hour
+     */
+    public static final String ALL_HOUR_URL =
+            "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/all_hour.geojson";
+    
+    /**
+     * URL of the summary feed
+     */
+    private String mUrl;
+    
+    /**
+     * Validators of the previous response of the feed, the polls are on background threads
+     */
+    private volatile String mETag;
+    
+    private volatile String mLastModified;
+    
+    /**
+     * Constructs a new {@link LiveFeed}.
+     *
+     * @param url of the summary feed
+     */
+    public LiveFeed( String url )
+    {
+        mUrl = url;
+    }
+    
+    /**
+     * Returns the URL of the summary feed.
+     */
+    public String getUrl()
+    {
+        return mUrl;
+    }
+    
+    /**
+     * Poll the feed, and merge the earthquakes of at least the given magnitude it has into the
+     * given ones. A summary feed only has the latest earthquakes, so the given earthquakes missing
+     * from it are kept. This is on a background thread, and polls must not run concurrently.
+     *
+     * Unless the given earthquakes are all the ones of their query, the earthquakes of the feed
+     * sorting after the last given one are dropped like
+     * {@link EarthquakeDelta#merge(EarthquakeTable, EarthquakeTable, EarthquakeOrder, boolean)} does,
+     * they belong to the pages loaded next.
+     *
+     * @param earthquakes is the table the feed is merged into, sorted in the given order
+     * @param minMagnitude of the merged earthquakes, the one of the query of the given table
+     * @param order of the given table, which the merged table keeps
+     * @param complete is whether the given table has all the earthquakes of its query
+     * @param cancellationSignal canceling the request, or null
+     * @return the merged table with what changed, an empty delta if the feed didn't change,
+     * or null if the request failed or was canceled
+     */
+    public EarthquakeDelta poll( EarthquakeTable earthquakes, double minMagnitude, EarthquakeOrder order,
+                                 boolean complete, CancellationSignal cancellationSignal )
+    {
+        FeedResponse feedResponse =
+                QueryUtils.fetchEarthquakeData( mUrl, mETag, mLastModified, cancellationSignal );
+        if ( feedResponse == null )
+            return null;
+        
+        // A "304 Not Modified" response keeps the validators it was asked with
+        mETag = feedResponse.getETag();
+        mLastModified = feedResponse.getLastModified();
+        
+        EarthquakeTable changes = feedResponse.isNotModified() ?
+                EarthquakeTable.EMPTY : filterMagnitude( feedResponse.getEarthquakes(), minMagnitude );
+        return EarthquakeDelta.merge( earthquakes, changes, order, complete );
+    }
+    
+    /**
+     * Returns the given earthquakes of at least the given magnitude, the summary feeds have them
+     * all while the query only has the ones above its minimum magnitude.
+     */
+    private static EarthquakeTable filterMagnitude( EarthquakeTable earthquakes, double minMagnitude )
+    {
+        int[] rows = new int[ earthquakes.size() ];
+        int rowCount = 0;
+        for ( int row = 0; row < earthquakes.size(); row++ )
+            if ( earthquakes.getMagnitude( row ) >= minMagnitude )
+                rows[ rowCount++ ] = row;
+        
+        if ( rowCount == earthquakes.size() )
+            return earthquakes;
+        
+        return earthquakes.select( Arrays.copyOf( rows, rowCount ) );
+    }
+}
\ No newline at end of file
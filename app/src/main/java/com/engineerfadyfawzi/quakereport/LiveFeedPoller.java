@@ -0,0 +1,156 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.Loader;
+
+/**
+ * A {@link LiveFeedPoller} periodically asks the {@link EarthquakeLoader} to poll a
+ * {@link LiveFeed}, so new earthquakes appear in the list without reloading it.
+ *
+ * The interval between two polls adapts to the activity of the feed: it drops to the minimum
+ * interval as soon as a poll finds new or updated earthquakes (they tend to come in bursts,
+ * i.e. aftershocks and their revisions), and doubles after every quiet poll, up to the maximum
+ * interval. It's only started while the activity is visible, and runs on the main thread.
+ */
+public class LiveFeedPoller implements EarthquakeLoader.OnLiveFeedPolledListener
+{
+    /**
+     * Handler of the main thread, running the next poll
+     */
+    private Handler mHandler = new Handler( Looper.getMainLooper() );
+    
+    /**
+     * Loader manager and id of the loader the feed is polled into
+     */
+    private LoaderManager mLoaderManager;
+    
+    private int mLoaderId;
+    
+    private LiveFeed mLiveFeed;
+    
+    /**
+     * Shortest and longest intervals in milliseconds between two polls
+     */
+    private long mMinInterval;
+    
+    private long mMaxInterval;
+    
+    /**
+     * Interval in milliseconds until the next poll
+     */
+    private long mInterval;
+    
+    /**
+     * Whether the polls are started
+     */
+    private boolean mStarted;
+    
+    /**
+     * Next poll, waiting for the interval
+     */
+    private Runnable mPoll = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            poll();
+        }
+    };
+    
+    /**
+     * Constructs a new {@link LiveFeedPoller}, which doesn't poll until it's started.
+     *
+     * @param loaderManager managing the earthquake loader
+     * @param loaderId of the earthquake loader, which may be restarted between polls
+     * @param liveFeed to poll
+     * @param minInterval in milliseconds between two polls, while new earthquakes arrive
+     * @param maxInterval in milliseconds between two polls, once nothing new arrives
+     */
+    public LiveFeedPoller( LoaderManager loaderManager, int loaderId, LiveFeed liveFeed,
+                           long minInterval, long maxInterval )
+    {
+        mLoaderManager = loaderManager;
+        mLoaderId = loaderId;
+        mLiveFeed = liveFeed;
+        mMinInterval = minInterval;
+        mMaxInterval = maxInterval;
+        mInterval = minInterval;
+    }
+    
+    /**
+     * Start polling, right away: the polls were paused (or never started), so the feed
+     * probably changed in the meantime.
+     */
+    public void start()
+    {
+        if ( mStarted )
+            return;
+        
+        mStarted = true;
+        mInterval = mMinInterval;
+        mHandler.removeCallbacks( mPoll );
+        mHandler.post( mPoll );
+    }
+    
+    /**
+     * Stop polling. A poll already running is still merged, but doesn't schedule the next one.
+     */
+    public void stop()
+    {
+        mStarted = false;
+        mHandler.removeCallbacks( mPoll );
+    }
+    
+    /**
+     * Returns whether the polls are started.
+     */
+    public boolean isStarted()
+    {
+        return mStarted;
+    }
+    
+    /**
+     * Ask the loader to poll the feed. If it can't now (it's loading a page, or it didn't
+     * deliver anything yet), the poll is retried after the interval.
+     */
+    private void poll()
+    {
+        Loader< EarthquakeLoader.Result > loader = mLoaderManager.getLoader( mLoaderId );
+        boolean polling = loader != null && ( ( EarthquakeLoader ) loader ).pollLiveFeed( mLiveFeed, this );
+        
+        // The next poll is scheduled once this one is merged, but a poll dropped with its
+        // loader (restarted for new query settings) would never be merged.
+        mHandler.postDelayed( mPoll, polling ? mMaxInterval : mInterval );
+    }
+    
+    @Override
+    public void onLiveFeedPolled( int changeCount )
+    {
+        if ( !mStarted )
+            return;
+        
+        mInterval = getNextInterval( mInterval, changeCount, mMinInterval, mMaxInterval );
+        mHandler.removeCallbacks( mPoll );
+        mHandler.postDelayed( mPoll, mInterval );
+    }
+    
+    /**
+     * Returns the interval until the next poll, after a poll that found the given number of
+     * new or updated earthquakes.
+     *
+     * @param interval in milliseconds until the poll
+     * @param changeCount is the number of earthquakes the poll inserted or updated
+     * @param minInterval in milliseconds between two polls
+     * @param maxInterval in milliseconds between two polls
+     */
+    static long getNextInterval( long interval, int changeCount, long minInterval, long maxInterval )
+    {
+        if ( changeCount > 0 )
+            return minInterval;
+        
+        return Math.max( minInterval, Math.min( interval * 2, maxInterval ) );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,332 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A {@link LocationSearchIndex} finds the earthquakes of a table whose primary location
+ * ("Alaska", "Chile", "Tonga", after the " of " split of the {@link EarthquakeFormatter})
+ * matches what the user is typing, without comparing the query with every location.
+ *
+ * The primary locations are split into lower case words (tokens), and the index keeps the sorted
+ * distinct tokens with the rows of every token (an inverted index). Every word of a query is
+ * a prefix: the tokens starting with it are next to each other in the sorted tokens, so they're
+ * found with a binary search, and a row matches when it has a token for every word of the query.
+ *
+ * Indexes are immutable and built on the loader's background thread. When new earthquakes are
+ * loaded, {@link #update(EarthquakeTable)} only indexes the rows appended after the indexed ones,
+ * and never splits a location it already split.
+ */
+public class LocationSearchIndex
+{
+    private static final int[] NO_ROWS = new int[ 0 ];
+    
+    /**
+     * The indexed earthquakes, their rows must be formatted
+     */
+    private EarthquakeTable mEarthquakes;
+    
+    /**
+     * Distinct tokens of the primary locations, sorted
+     */
+    private String[] mTokens;
+    
+    /**
+     * Rows of every token, in the order of the table
+     */
+    private int[][] mPostings;
+    
+    /**
+     * Tokens of every primary location split so far
+     */
+    private Map< String, String[] > mTokensByLocation;
+    
+    /**
+     * Constructs a new {@link LocationSearchIndex} of the given earthquakes.
+     *
+     * @param earthquakes is the table of earthquakes, its rows must be formatted
+     */
+    public LocationSearchIndex( EarthquakeTable earthquakes )
+    {
+        this( earthquakes, new HashMap< String, String[] >() );
+    }
+    
+    private LocationSearchIndex( EarthquakeTable earthquakes, Map< String, String[] > tokensByLocation )
+    {
+        mEarthquakes = earthquakes;
+        mTokensByLocation = tokensByLocation;
+        
+        // Number the distinct tokens, and count the rows of every token.
+        // The rows of the same location share the numbers of its tokens.
+        Map< String, Integer > tokenIds = new HashMap<>();
+        Map< String, int[] > tokenIdsByLocation = new HashMap<>();
+        List< String > tokens = new ArrayList<>();
+        int[][] rowTokenIds = new int[ earthquakes.size() ][];
+        int[] postingSizes = new int[ 16 ];
+        for ( int row = 0; row < earthquakes.size(); row++ )
+        {
+            String primaryLocation = earthquakes.getPrimaryLocation( row );
+            int[] locationTokenIds = primaryLocation == null ? NO_ROWS : tokenIdsByLocation.get( primaryLocation );
+            if ( locationTokenIds == null )
+            {
+                String[] locationTokens = tokensOf( primaryLocation, tokensByLocation );
+                locationTokenIds = new int[ locationTokens.length ];
+                for ( int i = 0; i < locationTokens.length; i++ )
+                {
+                    Integer tokenId = tokenIds.get( locationTokens[ i ] );
+                    if ( tokenId == null )
+                    {
+                        tokenId = tokens.size();
+                        tokens.add( locationTokens[ i ] );
+                        tokenIds.put( locationTokens[ i ], tokenId );
+                    }
+                    locationTokenIds[ i ] = tokenId;
+                }
+                tokenIdsByLocation.put( primaryLocation, locationTokenIds );
+            }
+            
+            rowTokenIds[ row ] = locationTokenIds;
+            for ( int tokenId : locationTokenIds )
+            {
+                if ( tokenId >= postingSizes.length )
+                    postingSizes = Arrays.copyOf( postingSizes, Math.max( tokenId + 1, postingSizes.length * 2 ) );
+                postingSizes[ tokenId ]++;
+            }
+        }
+        
+        // Fill the rows of every token, in the order of the table
+        int[][] postings = new int[ tokens.size() ][];
+        for ( int tokenId = 0; tokenId < postings.length; tokenId++ )
+            postings[ tokenId ] = new int[ postingSizes[ tokenId ] ];
+        int[] postingCounts = new int[ tokens.size() ];
+        for ( int row = 0; row < rowTokenIds.length; row++ )
+            for ( int tokenId : rowTokenIds[ row ] )
+                postings[ tokenId ][ postingCounts[ tokenId ]++ ] = row;
+        
+        // Sort the tokens, with their rows
+        mTokens = tokens.toArray( new String[ tokens.size() ] );
+        Arrays.sort( mTokens );
+        mPostings = new int[ mTokens.length ][];
+        for ( int i = 0; i < mTokens.length; i++ )
+            mPostings[ i ] = postings[ tokenIds.get( mTokens[ i ] ) ];
+    }
+    
+    private LocationSearchIndex( EarthquakeTable earthquakes, String[] tokens, int[][] postings,
+                                 Map< String, String[] > tokensByLocation )
+    {
+        mEarthquakes = earthquakes;
+        mTokens = tokens;
+        mPostings = postings;
+        mTokensByLocation = tokensByLocation;
+    }
+    
+    /**
+     * Returns the indexed earthquakes.
+     */
+    public EarthquakeTable getEarthquakes()
+    {
+        return mEarthquakes;
+    }
+    
+    /**
+     * Returns the rows of the earthquakes whose primary location has a word starting with every
+     * word of the query, in the order of the table, i.e. "new z" matches "New Zealand".
+     * All the rows match a query without words.
+     */
+    public int[] search( String query )
+    {
+        String[] queryTokens = tokenize( query == null ? "" : query );
+        if ( queryTokens.length == 0 )
+        {
+            int[] rows = new int[ mEarthquakes.size() ];
+            for ( int row = 0; row < rows.length; row++ )
+                rows[ row ] = row;
+            return rows;
+        }
+        
+        BitSet matches = null;
+        for ( String queryToken : queryTokens )
+        {
+            // The tokens starting with the query token follow the first token not before it
+            BitSet tokenMatches = new BitSet( mEarthquakes.size() );
+            for ( int i = lowerBound( queryToken ); i < mTokens.length && mTokens[ i ].startsWith( queryToken ); i++ )
+                for ( int row : mPostings[ i ] )
+                    tokenMatches.set( row );
+            
+            if ( matches == null )
+                matches = tokenMatches;
+            else
+                matches.and( tokenMatches );
+            
+            if ( matches.isEmpty() )
+                return NO_ROWS;
+        }
+        
+        int[] rows = new int[ matches.cardinality() ];
+        int i = 0;
+        for ( int row = matches.nextSetBit( 0 ); row >= 0; row = matches.nextSetBit( row + 1 ) )
+            rows[ i++ ] = row;
+        return rows;
+    }
+    
+    /**
+     * Returns an index of the given earthquakes, reusing this index. If they start with the
+     * earthquakes of this index (i.e. a page was appended to them), only the new rows are indexed,
+     * otherwise (i.e. a sync merged earthquakes in between) the rows are indexed again, but the
+     * locations split by this index aren't split again. This index stays as it is.
+     *
+     * @param earthquakes is the new table of earthquakes, its rows must be formatted
+     */
+    public LocationSearchIndex update( EarthquakeTable earthquakes )
+    {
+        if ( earthquakes == mEarthquakes )
+            return this;
+        
+        Map< String, String[] > tokensByLocation = new HashMap<>( mTokensByLocation );
+        if ( !startsWithIndexedRows( earthquakes ) )
+            return new LocationSearchIndex( earthquakes, tokensByLocation );
+        
+        // Rows of the appended rows' tokens, the rows of a token are appended to its current rows
+        Map< String, int[] > appendedPostings = new HashMap<>();
+        Map< String, Integer > appendedSizes = new HashMap<>();
+        for ( int row = mEarthquakes.size(); row < earthquakes.size(); row++ )
+        {
+            for ( String token : tokensOf( earthquakes.getPrimaryLocation( row ), tokensByLocation ) )
+            {
+                int[] rows = appendedPostings.get( token );
+                int size = rows == null ? 0 : appendedSizes.get( token );
+                if ( rows == null || size == rows.length )
+                {
+                    rows = rows == null ? new int[ 4 ] : Arrays.copyOf( rows, size * 2 );
+                    appendedPostings.put( token, rows );
+                }
+                rows[ size ] = row;
+                appendedSizes.put( token, size + 1 );
+            }
+        }
+        
+        String[] newTokens = new String[ appendedPostings.size() ];
+        int newTokenCount = 0;
+        for ( String token : appendedPostings.keySet() )
+            if ( Arrays.binarySearch( mTokens, token ) < 0 )
+                newTokens[ newTokenCount++ ] = token;
+        Arrays.sort( newTokens, 0, newTokenCount );
+        
+        // Merge the new tokens into the sorted tokens, the postings of the tokens without
+        // appended rows are shared with this index.
+        String[] tokens = new String[ mTokens.length + newTokenCount ];
+        int[][] postings = new int[ tokens.length ][];
+        int current = 0;
+        int added = 0;
+        for ( int i = 0; i < tokens.length; i++ )
+        {
+            int[] currentRows = NO_ROWS;
+            if ( added == newTokenCount ||
+                    ( current < mTokens.length && mTokens[ current ].compareTo( newTokens[ added ] ) < 0 ) )
+            {
+                currentRows = mPostings[ current ];
+                tokens[ i ] = mTokens[ current++ ];
+            }
+            else
+                tokens[ i ] = newTokens[ added++ ];
+            
+            int[] appendedRows = appendedPostings.get( tokens[ i ] );
+            if ( appendedRows == null )
+            {
+                postings[ i ] = currentRows;
+                continue;
+            }
+            
+            int appendedSize = appendedSizes.get( tokens[ i ] );
+            postings[ i ] = Arrays.copyOf( currentRows, currentRows.length + appendedSize );
+            System.arraycopy( appendedRows, 0, postings[ i ], currentRows.length, appendedSize );
+        }
+        
+        return new LocationSearchIndex( earthquakes, tokens, postings, tokensByLocation );
+    }
+    
+    /**
+     * Returns whether the given table starts with the indexed rows, with the same primary locations.
+     */
+    private boolean startsWithIndexedRows( EarthquakeTable earthquakes )
+    {
+        if ( earthquakes.size() < mEarthquakes.size() )
+            return false;
+        
+        for ( int row = 0; row < mEarthquakes.size(); row++ )
+        {
+            if ( !equal( mEarthquakes.getId( row ), earthquakes.getId( row ) ) ||
+                    !equal( mEarthquakes.getPrimaryLocation( row ), earthquakes.getPrimaryLocation( row ) ) )
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the tokens of the given primary location, splitting it only the first time.
+     */
+    private static String[] tokensOf( String primaryLocation, Map< String, String[] > tokensByLocation )
+    {
+        if ( primaryLocation == null )
+            return new String[ 0 ];
+        
+        String[] tokens = tokensByLocation.get( primaryLocation );
+        if ( tokens == null )
+        {
+            tokens = tokenize( primaryLocation );
+            tokensByLocation.put( primaryLocation, tokens );
+        }
+        return tokens;
+    }
+    
+    /**
+     * Returns the distinct lower case words of the given text, words are runs of letters and digits.
+     */
+    static String[] tokenize( String text )
+    {
+        List< String > tokens = new ArrayList<>();
+        int start = -1;
+        for ( int i = 0; i <= text.length(); i++ )
+        {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit( text.charAt( i ) );
+            if ( wordCharacter && start == -1 )
+                start = i;
+            else if ( !wordCharacter && start != -1 )
+            {
+                String token = text.substring( start, i ).toLowerCase( Locale.ROOT );
+                if ( !tokens.contains( token ) )
+                    tokens.add( token );
+                start = -1;
+            }
+        }
+        return tokens.toArray( new String[ tokens.size() ] );
+    }
+    
+    /**
+     * Returns the position of the first token that isn't before the given one.
+     */
+    private int lowerBound( String token )
+    {
+        int low = 0;
+        int high = mTokens.length;
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            if ( mTokens[ middle ].compareTo( token ) < 0 )
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+    
+    private static boolean equal( String first, String second )
+    {
+        return first == null ? second == null : first.equals( second );
+    }
+}
\ No newline at end of file
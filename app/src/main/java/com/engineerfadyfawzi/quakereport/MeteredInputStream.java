@@ -0,0 +1,73 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link MeteredInputStream} counts the bytes read from the stream it wraps, and the time
+ * spent waiting for them.
+ *
+ * The response body is parsed while it's downloaded, so the time spent in the reads of the
+ * body is the download time of the response, and the rest of the time spent parsing it is
+ * the parse time itself.
+ */
+public class MeteredInputStream extends FilterInputStream
+{
+    private long mByteCount;
+    
+    private long mReadNanos;
+    
+    public MeteredInputStream( InputStream inputStream )
+    {
+        super( inputStream );
+    }
+    
+    /**
+     * Returns the number of bytes read so far.
+     */
+    public long getByteCount()
+    {
+        return mByteCount;
+    }
+    
+    /**
+     * Returns the time in nanoseconds spent in the reads so far.
+     */
+    public long getReadNanos()
+    {
+        return mReadNanos;
+    }
+    
+    @Override
+    public int read() throws IOException
+    {
+        long start = System.nanoTime();
+        int value = super.read();
+        mReadNanos += System.nanoTime() - start;
+        if ( value != -1 )
+            mByteCount++;
+        return value;
+    }
+    
+    @Override
+    public int read( byte[] buffer, int offset, int length ) throws IOException
+    {
+        long start = System.nanoTime();
+        int count = super.read( buffer, offset, length );
+        mReadNanos += System.nanoTime() - start;
+        if ( count > 0 )
+            mByteCount += count;
+        return count;
+    }
+    
+    @Override
+    public long skip( long count ) throws IOException
+    {
+        long start = System.nanoTime();
+        long skipped = super.skip( count );
+        mReadNanos += System.nanoTime() - start;
+        mByteCount += skipped;
+        return skipped;
+    }
+}
\ No newline at end of file
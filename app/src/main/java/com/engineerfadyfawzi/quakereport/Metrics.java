@@ -0,0 +1,210 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Metrics} holds the timings and counts of the requests, parses, deliveries and cache
+ * lookups of the app, which can be read on the metrics screen or dumped with
+ * "adb shell dumpsys activity com.engineerfadyfawzi.quakereport/.EarthquakeActivity".
+ *
+ * Every request to USGS records its phases:
+ * connect: TCP and TLS handshakes of a new connection, a reused connection has none,
+ * time to first byte: from sending the request to receiving the response headers,
+ * download: time spent waiting for the bytes of the response body,
+ * parse: time spent decompressing and parsing the body, apart from the download,
+ * deliver: from the earthquakes parsed to displayed, after formatting and indexing them.
+ *
+ * Recording is a few atomic increments without any allocation, so it's always enabled.
+ */
+public final class Metrics
+{
+    /**
+     * Durations in microseconds
+     */
+    public static final Histogram CONNECT = new Histogram();
+    
+    public static final Histogram TIME_TO_FIRST_BYTE = new Histogram();
+    
+    public static final Histogram DOWNLOAD = new Histogram();
+    
+    public static final Histogram PARSE = new Histogram();
+    
+    public static final Histogram DELIVER = new Histogram();
+    
+    /**
+     * Bytes of every response body, as they're transferred (compressed or not)
+     */
+    public static final Histogram RESPONSE_BYTES = new Histogram();
+    
+    /**
+     * Earthquakes of every response body
+     */
+    public static final Histogram RESPONSE_EARTHQUAKES = new Histogram();
+    
+    public static final AtomicLong REQUESTS = new AtomicLong();
+    
+    public static final AtomicLong FAILED_REQUESTS = new AtomicLong();
+    
+    public static final AtomicLong CANCELED_REQUESTS = new AtomicLong();
+    
+    /**
+     * Conditional requests answered with "304 Not Modified"
+     */
+    public static final AtomicLong NOT_MODIFIED_RESPONSES = new AtomicLong();
+    
+    public static final AtomicLong REUSED_CONNECTIONS = new AtomicLong();
+    
+    /**
+     * Lookups of the feed cache that found a fresh feed, a stale feed, or no feed
+     */
+    public static final AtomicLong CACHE_HITS = new AtomicLong();
+    
+    public static final AtomicLong CACHE_STALE_HITS = new AtomicLong();
+    
+    public static final AtomicLong CACHE_MISSES = new AtomicLong();
+    
+    /**
+     * Queries answered from the earthquakes loaded for the previous query
+     */
+    public static final AtomicLong PLANNER_HITS = new AtomicLong();
+    
+    /**
+     * Earthquakes inserted, updated or deleted by the syncs of the loaded pages
+     */
+    public static final AtomicLong SYNCED_EARTHQUAKES = new AtomicLong();
+    
+    /**
+     * Background syncs of the first page, and the ones that found it unchanged
+     */
+    public static final AtomicLong BACKGROUND_SYNCS = new AtomicLong();
+    
+    public static final AtomicLong UNCHANGED_BACKGROUND_SYNCS = new AtomicLong();
+    
+    /**
+     * Earthquakes inserted or updated by the polls of the live feed
+     */
+    public static final AtomicLong LIVE_FEED_EARTHQUAKES = new AtomicLong();
+    
+    /**
+     * Batches of the first page delivered while it was downloading, and the ones replaced by
+     * the next batch before the main thread could deliver them
+     */
+    public static final AtomicLong DELIVERED_BATCHES = new AtomicLong();
+    
+    public static final AtomicLong COALESCED_BATCHES = new AtomicLong();
+    
+    /**
+     * Earthquakes of a provider dropped as already reported by another one, and providers
+     * which missed the deadline of a multi-provider fetch or failed before it
+     */
+    public static final AtomicLong DUPLICATE_EARTHQUAKES = new AtomicLong();
+    
+    public static final AtomicLong LATE_PROVIDERS = new AtomicLong();
+    
+    public static final AtomicLong FAILED_PROVIDERS = new AtomicLong();
+    
+    /**
+     * Earthquakes appended to the archive, segments of the archive read, partitions of
+     * the archive compacted, and segment indexes rebuilt
+     */
+    public static final AtomicLong ARCHIVED_EARTHQUAKES = new AtomicLong();
+    
+    public static final AtomicLong ARCHIVE_SEGMENT_READS = new AtomicLong();
+    
+    public static final AtomicLong ARCHIVE_COMPACTIONS = new AtomicLong();
+    
+    public static final AtomicLong ARCHIVE_INDEX_REBUILDS = new AtomicLong();
+    
+    /**
+     * Create a private constructor because no one should ever create a {@link Metrics} object.
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name Metrics (and an object instance of Metrics is not needed).
+     */
+    private Metrics()
+    {
+        
+    }
+    
+    /**
+     * Returns the given nanoseconds in microseconds, the unit of the duration histograms.
+     */
+    public static long toMicros( long nanos )
+    {
+        return TimeUnit.NANOSECONDS.toMicros( nanos );
+    }
+    
+    /**
+     * Write all the metrics to the given writer, as text. This allocates, so it's only
+     * called to display the metrics, never while recording them.
+     */
+    public static void dump( PrintWriter writer )
+    {
+        writer.println( "Histograms (count, mean, p50, p90, p99, max):" );
+        dump( writer, "connect (us)", CONNECT );
+        dump( writer, "time to first byte (us)", TIME_TO_FIRST_BYTE );
+        dump( writer, "download (us)", DOWNLOAD );
+        dump( writer, "parse (us)", PARSE );
+        dump( writer, "deliver (us)", DELIVER );
+        dump( writer, "response bytes", RESPONSE_BYTES );
+        dump( writer, "response earthquakes", RESPONSE_EARTHQUAKES );
+        
+        writer.println( "Counters:" );
+        dump( writer, "requests", REQUESTS );
+        dump( writer, "failed requests", FAILED_REQUESTS );
+        dump( writer, "canceled requests", CANCELED_REQUESTS );
+        dump( writer, "not modified responses", NOT_MODIFIED_RESPONSES );
+        dump( writer, "reused connections", REUSED_CONNECTIONS );
+        dump( writer, "cache hits", CACHE_HITS );
+        dump( writer, "cache stale hits", CACHE_STALE_HITS );
+        dump( writer, "cache misses", CACHE_MISSES );
+        dump( writer, "planner hits", PLANNER_HITS );
+        dump( writer, "synced earthquakes", SYNCED_EARTHQUAKES );
+        dump( writer, "background syncs", BACKGROUND_SYNCS );
+        dump( writer, "unchanged background syncs", UNCHANGED_BACKGROUND_SYNCS );
+        dump( writer, "live feed earthquakes", LIVE_FEED_EARTHQUAKES );
+        dump( writer, "delivered batches", DELIVERED_BATCHES );
+        dump( writer, "coalesced batches", COALESCED_BATCHES );
+        dump( writer, "duplicate earthquakes", DUPLICATE_EARTHQUAKES );
+        dump( writer, "late providers", LATE_PROVIDERS );
+        dump( writer, "failed providers", FAILED_PROVIDERS );
+        dump( writer, "archived earthquakes", ARCHIVED_EARTHQUAKES );
+        dump( writer, "archive segment reads", ARCHIVE_SEGMENT_READS );
+        dump( writer, "archive compactions", ARCHIVE_COMPACTIONS );
+        dump( writer, "archive index rebuilds", ARCHIVE_INDEX_REBUILDS );
+        writer.flush();
+    }
+    
+    /**
+     * Forget all the metrics recorded so far.
+     */
+    public static void reset()
+    {
+        for ( Histogram histogram : new Histogram[] {
+                CONNECT, TIME_TO_FIRST_BYTE, DOWNLOAD, PARSE, DELIVER, RESPONSE_BYTES, RESPONSE_EARTHQUAKES } )
+            histogram.reset();
+        
+        for ( AtomicLong counter : new AtomicLong[] {
+                REQUESTS, FAILED_REQUESTS, CANCELED_REQUESTS, NOT_MODIFIED_RESPONSES, REUSED_CONNECTIONS,
+                CACHE_HITS, CACHE_STALE_HITS, CACHE_MISSES, PLANNER_HITS, SYNCED_EARTHQUAKES,
+                BACKGROUND_SYNCS, UNCHANGED_BACKGROUND_SYNCS, LIVE_FEED_EARTHQUAKES,
+                DELIVERED_BATCHES, COALESCED_BATCHES, DUPLICATE_EARTHQUAKES, LATE_PROVIDERS, FAILED_PROVIDERS,
+                ARCHIVED_EARTHQUAKES, ARCHIVE_SEGMENT_READS, ARCHIVE_COMPACTIONS, ARCHIVE_INDEX_REBUILDS } )
+            counter.set( 0 );
+    }
+    
+    private static void dump( PrintWriter writer, String name, Histogram histogram )
+    {
+        writer.println( String.format( Locale.US, "  %-26s %8d %10d %10d %10d %10d %10d", name,
+                histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile( 50 ),
+                histogram.getValueAtPercentile( 90 ), histogram.getValueAtPercentile( 99 ),
+                histogram.getMax() ) );
+    }
+    
+    private static void dump( PrintWriter writer, String name, AtomicLong counter )
+    {
+        writer.println( String.format( Locale.US, "  %-26s %8d", name, counter.get() ) );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * {@link MetricsActivity} displays the {@link Metrics} recorded since the app started, or since
+ * they were last reset. It's only reachable from the menu of debug builds.
+ */
+public class MetricsActivity extends AppCompatActivity
+{
+    /**
+     * TextView that displays the dump of the metrics
+     */
+    private TextView mMetricsTextView;
+    
+    @Override
+    protected void onCreate( Bundle savedInstanceState )
+    {
+        super.onCreate( savedInstanceState );
+        setContentView( R.layout.metrics_activity );
+        
+        mMetricsTextView = findViewById( R.id.metrics_text );
+    }
+    
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        
+        // Metrics keep being recorded in the background, so display the latest ones
+        showMetrics();
+    }
+    
+    @Override
+    public boolean onCreateOptionsMenu( Menu menu )
+    {
+        getMenuInflater().inflate( R.menu.metrics, menu );
+        return true;
+    }
+    
+    @Override
+    public boolean onOptionsItemSelected( MenuItem item )
+    {
+        if ( item.getItemId() == R.id.action_reset )
+        {
+            Metrics.reset();
+            showMetrics();
+            return true;
+        }
+        
+        return super.onOptionsItemSelected( item );
+    }
+    
+    /**
+     * Display the current metrics.
+     */
+    private void showMetrics()
+    {
+        StringWriter stringWriter = new StringWriter();
+        Metrics.dump( new PrintWriter( stringWriter ) );
+        mMetricsTextView.setText( stringWriter.toString() );
+    }
+}
\ No newline at end of file
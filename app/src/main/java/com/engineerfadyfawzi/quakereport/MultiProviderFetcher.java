@@ -0,0 +1,210 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MultiProviderFetcher} sends the same query to several {@link EarthquakeProvider}s
+ * at once, and merges the earthquakes they return, so an earthquake a catalog reports later
+ * than another one still shows up.
+ *
+ * All the providers are queried in parallel, and the fetch waits for them until a global
+ * deadline: it returns whatever arrived by then, and cancels the providers still loading.
+ * A provider failing doesn't fail the fetch, the others are still merged.
+ *
+ * Catalogs report the same events under their own ids, with slightly different times,
+ * epicenters and magnitudes. An earthquake matching one of a provider listed before (see
+ * {@link EarthquakeMatchIndex}) is dropped, so the earthquakes of the first provider that has
+ * them are kept. The earthquakes of a single provider are never matched with each other.
+ */
+public class MultiProviderFetcher
+{
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = MultiProviderFetcher.class.getSimpleName();
+    
+    /**
+     * Providers to query, the earthquakes of the first ones are preferred
+     */
+    private List< EarthquakeProvider > mProviders;
+    
+    /**
+     * Time in milliseconds the fetch waits for the providers
+     */
+    private long mDeadline;
+    
+    /**
+     * Constructs a new {@link MultiProviderFetcher}.
+     *
+     * @param providers to query, in the order their earthquakes are preferred
+     * @param deadline is the time in milliseconds the fetch waits for the providers
+     */
+    public MultiProviderFetcher( List< EarthquakeProvider > providers, long deadline )
+    {
+        if ( providers.isEmpty() || deadline < 0 )
+            throw new IllegalArgumentException( "providers must not be empty and deadline must not be negative" );
+        
+        mProviders = new ArrayList<>( providers );
+        mDeadline = deadline;
+    }
+    
+    /**
+     * Returns the providers queried, in the order their earthquakes are preferred.
+     */
+    public List< EarthquakeProvider > getProviders()
+    {
+        return mProviders;
+    }
+    
+    /**
+     * Load the earthquakes of the given query from all the providers, sorted in the "orderby"
+     * order of the query. This is on a background thread, and blocks until all the providers
+     * answered or the deadline passed.
+     *
+     * @param stringUrl of the query, to any of the providers
+     * @return the earthquakes of the providers that answered in time, or null if none did
+     */
+    public EarthquakeTable fetch( String stringUrl )
+    {
+        EarthquakeOrder order =
+                EarthquakeOrder.forOrderBy( Uri.parse( stringUrl ).getQueryParameter( "orderby" ) );
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( mDeadline );
+        
+        ExecutorService executor = Executors.newFixedThreadPool( mProviders.size() );
+        CompletionService< Source > completionService = new ExecutorCompletionService<>( executor );
+        List< Source > sources = new ArrayList<>();
+        try
+        {
+            for ( int i = 0; i < mProviders.size(); i++ )
+            {
+                Source source = new Source( i, mProviders.get( i ).buildQueryUrl( stringUrl ) );
+                sources.add( source );
+                completionService.submit( source );
+            }
+            
+            // Keep the earthquakes of every provider answering before the deadline, by provider
+            EarthquakeTable[] results = new EarthquakeTable[ mProviders.size() ];
+            for ( int pending = mProviders.size(); pending > 0; pending-- )
+            {
+                Future< Source > future =
+                        completionService.poll( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+                if ( future == null )
+                {
+                    Metrics.LATE_PROVIDERS.addAndGet( pending );
+                    Log.w( LOG_TAG, "Providers which missed the deadline: " + pending );
+                    break;
+                }
+                
+                try
+                {
+                    Source source = future.get();
+                    results[ source.mIndex ] = source.mEarthquakes;
+                }
+                catch ( ExecutionException executionException )
+                {
+                    Metrics.FAILED_PROVIDERS.incrementAndGet();
+                    Log.e( LOG_TAG, "Problem loading a provider.", executionException );
+                }
+            }
+            
+            List< EarthquakeTable > tables = new ArrayList<>();
+            for ( EarthquakeTable result : results )
+                if ( result != null )
+                    tables.add( result );
+            
+            return tables.isEmpty() ? null : merge( tables, order );
+        }
+        catch ( InterruptedException interruptedException )
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally
+        {
+            // Abort the requests of the providers that missed the deadline
+            for ( Source source : sources )
+                source.mCancellationSignal.cancel();
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Returns the earthquakes of the given tables, one per provider, merged and sorted in the
+     * given order. An earthquake matching one of a table before its own is dropped.
+     */
+    static EarthquakeTable merge( List< EarthquakeTable > tables, EarthquakeOrder order )
+    {
+        EarthquakeTable merged = tables.get( 0 );
+        for ( int i = 1; i < tables.size(); i++ )
+        {
+            EarthquakeTable table = tables.get( i );
+            EarthquakeMatchIndex matchIndex = new EarthquakeMatchIndex( merged );
+            
+            EarthquakeTable.Builder builder =
+                    new EarthquakeTable.Builder( merged.size() + table.size() ).addAll( merged );
+            int duplicateCount = 0;
+            for ( int row = 0; row < table.size(); row++ )
+            {
+                if ( matchIndex.find( table, row ) < 0 )
+                    builder.addRow( table, row );
+                else
+                    duplicateCount++;
+            }
+            
+            Metrics.DUPLICATE_EARTHQUAKES.addAndGet( duplicateCount );
+            merged = builder.build();
+        }
+        
+        return merged.sort( order );
+    }
+    
+    /**
+     * Loading of the earthquakes of a provider, on a thread of the executor.
+     */
+    private static class Source implements Callable< Source >
+    {
+        /**
+         * Index of the provider
+         */
+        private int mIndex;
+        
+        private String mStringUrl;
+        
+        /**
+         * Signal aborting the request once the deadline passed
+         */
+        private CancellationSignal mCancellationSignal = new CancellationSignal();
+        
+        /**
+         * Earthquakes of the provider, or null if they couldn't be loaded
+         */
+        private EarthquakeTable mEarthquakes;
+        
+        Source( int index, String stringUrl )
+        {
+            mIndex = index;
+            mStringUrl = stringUrl;
+        }
+        
+        @Override
+        public Source call()
+        {
+            FeedResponse feedResponse =
+                    QueryUtils.fetchEarthquakeData( mStringUrl, null, null, mCancellationSignal );
+            mEarthquakes = feedResponse == null ? null : feedResponse.getEarthquakes();
+            return this;
+        }
+    }
+}
\ No newline at end of file
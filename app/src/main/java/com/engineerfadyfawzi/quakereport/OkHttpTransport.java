@@ -0,0 +1,161 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The default {@link HttpTransport}, backed by a single {@link OkHttpClient}.
+ *
+ * All the requests share the connection pool of the client, so DNS, TCP and TLS are only paid
+ * for the first request to a host, and following requests reuse the kept alive connection.
+ * When the server supports HTTP/2, concurrent requests are multiplexed on the same connection.
+ *
+ * The time taken to open every new connection, and the number of reused connections,
+ * are recorded in {@link Metrics}.
+ */
+public class OkHttpTransport implements HttpTransport
+{
+    /**
+     * Client whose connection pool is shared by all the requests
+     */
+    private OkHttpClient mClient;
+    
+    /**
+     * Constructs a new {@link OkHttpTransport} with its own connection pool,
+     * using the default timeouts of {@link HttpRequest}.
+     */
+    public OkHttpTransport()
+    {
+        this( new OkHttpClient.Builder()
+                .connectTimeout( HttpRequest.DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS )
+                .readTimeout( HttpRequest.DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS )
+                .eventListenerFactory( new EventListener.Factory()
+                {
+                    @Override
+                    public EventListener create( Call call )
+                    {
+                        return new MetricsEventListener();
+                    }
+                } )
+                .build() );
+    }
+    
+    /**
+     * Constructs a new {@link OkHttpTransport} sending its requests through the given client.
+     *
+     * @param client whose connection pool, protocols and TLS settings are used
+     */
+    public OkHttpTransport( OkHttpClient client )
+    {
+        mClient = client;
+    }
+    
+    @Override
+    public HttpResponse execute( HttpRequest request ) throws IOException
+    {
+        // A client with other timeouts still shares the connection pool of our client
+        OkHttpClient client = mClient;
+        if ( client.connectTimeoutMillis() != request.getConnectTimeout() ||
+                client.readTimeoutMillis() != request.getReadTimeout() )
+        {
+            client = mClient.newBuilder()
+                    .connectTimeout( request.getConnectTimeout(), TimeUnit.MILLISECONDS )
+                    .readTimeout( request.getReadTimeout(), TimeUnit.MILLISECONDS )
+                    .build();
+        }
+        
+        Request.Builder requestBuilder = new Request.Builder().url( request.getUrl() );
+        for ( Map.Entry< String, String > header : request.getHeaders().entrySet() )
+            requestBuilder.header( header.getKey(), header.getValue() );
+        
+        // Canceling the call closes its socket, even while the body is being read
+        final Call call = client.newCall( requestBuilder.build() );
+        CancellationSignal cancellationSignal = request.getCancellationSignal();
+        if ( cancellationSignal != null )
+        {
+            cancellationSignal.setOnCancelListener( new CancellationSignal.OnCancelListener()
+            {
+                @Override
+                public void onCancel()
+                {
+                    call.cancel();
+                }
+            } );
+        }
+        
+        final Response response = call.execute();
+        
+        return new HttpResponse()
+        {
+            @Override
+            public int getResponseCode()
+            {
+                return response.code();
+            }
+            
+            @Override
+            public String getHeader( String name )
+            {
+                return response.header( name );
+            }
+            
+            @Override
+            public InputStream getBody()
+            {
+                return response.body().byteStream();
+            }
+            
+            @Override
+            public void close()
+            {
+                // Closing the body releases the connection back to the pool
+                response.close();
+            }
+        };
+    }
+    
+    /**
+     * Records the connection phase of a call in {@link Metrics}. There's one per call,
+     * and the events of a call are never concurrent.
+     */
+    private static class MetricsEventListener extends EventListener
+    {
+        /**
+         * Time in nanoseconds the call started connecting, or 0 if it didn't connect
+         */
+        private long mConnectStart;
+        
+        @Override
+        public void connectStart( Call call, InetSocketAddress inetSocketAddress, Proxy proxy )
+        {
+            mConnectStart = System.nanoTime();
+        }
+        
+        @Override
+        public void connectEnd( Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                Protocol protocol )
+        {
+            Metrics.CONNECT.record( Metrics.toMicros( System.nanoTime() - mConnectStart ) );
+        }
+        
+        @Override
+        public void connectionAcquired( Call call, Connection connection )
+        {
+            // A call acquiring a connection it didn't open reuses a pooled connection
+            if ( mConnectStart == 0 )
+                Metrics.REUSED_CONNECTIONS.incrementAndGet();
+        }
+    }
+}
\ No newline at end of file
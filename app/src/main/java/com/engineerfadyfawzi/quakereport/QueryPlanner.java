@@ -0,0 +1,183 @@
+package com.engineerfadyfawzi.quakereport;
+
+/**
+ * A {@link QueryPlanner} holds the earthquakes loaded for a query (a minimum magnitude and an
+ * order) and decides whether another query can be answered from them, without asking USGS again.
+ *
+ * A query with a higher minimum magnitude in the same order is answered by filtering the loaded
+ * earthquakes: they're the first ones of the query, so the filtered ones are the first ones of
+ * the new query, and its next pages can still be requested from USGS. A query in another order
+ * is answered by sorting them, but only when all the earthquakes of the query are loaded,
+ * otherwise the first ones in the other order may not be loaded yet.
+ *
+ * The rows are indexed by magnitude and by time when the planner is created, on the loader's
+ * background thread, so answering a query is a binary search and a walk of an index.
+ */
+public class QueryPlanner
+{
+    /**
+     * The loaded earthquakes, in the order of the query
+     */
+    private EarthquakeTable mEarthquakes;
+    
+    /**
+     * Minimum magnitude of the query
+     */
+    private double mMinMagnitude;
+    
+    /**
+     * Order of the query
+     */
+    private EarthquakeOrder mOrder;
+    
+    /**
+     * Whether all the earthquakes of the query are loaded, there is no page left to request
+     */
+    private boolean mComplete;
+    
+    /**
+     * Rows of the table sorted by magnitude, largest first
+     */
+    private int[] mRowsByMagnitude;
+    
+    /**
+     * Rows of the table sorted by time, most recent first
+     */
+    private int[] mRowsByTime;
+    
+    /**
+     * Constructs a new {@link QueryPlanner} and indexes the given earthquakes.
+     *
+     * @param earthquakes are the earthquakes loaded for the query, in its order
+     * @param minMagnitude is the minimum magnitude of the query
+     * @param orderBy is the USGS "orderby" value of the query
+     * @param complete is whether all the earthquakes of the query are loaded
+     */
+    public QueryPlanner( EarthquakeTable earthquakes, double minMagnitude, String orderBy, boolean complete )
+    {
+        this( earthquakes, minMagnitude, EarthquakeOrder.forOrderBy( orderBy ), complete,
+                earthquakes.sortedRows( EarthquakeOrder.MAGNITUDE ),
+                earthquakes.sortedRows( EarthquakeOrder.TIME ) );
+    }
+    
+    private QueryPlanner( EarthquakeTable earthquakes, double minMagnitude, EarthquakeOrder order,
+                          boolean complete, int[] rowsByMagnitude, int[] rowsByTime )
+    {
+        mEarthquakes = earthquakes;
+        mMinMagnitude = minMagnitude;
+        mOrder = order;
+        mComplete = complete;
+        mRowsByMagnitude = rowsByMagnitude;
+        mRowsByTime = rowsByTime;
+    }
+    
+    /**
+     * Returns the loaded earthquakes.
+     */
+    public EarthquakeTable getEarthquakes()
+    {
+        return mEarthquakes;
+    }
+    
+    /**
+     * Returns whether all the earthquakes of the query are loaded.
+     */
+    public boolean isComplete()
+    {
+        return mComplete;
+    }
+    
+    /**
+     * Returns whether the given query can be answered from the loaded earthquakes, which is only
+     * false if they certainly can't. This is cheap enough to be called on the main thread.
+     */
+    public boolean canAnswer( double minMagnitude, String orderBy )
+    {
+        return minMagnitude >= mMinMagnitude &&
+                ( mComplete || EarthquakeOrder.forOrderBy( orderBy ) == mOrder );
+    }
+    
+    /**
+     * Answer the given query from the loaded earthquakes.
+     *
+     * @param minMagnitude is the minimum magnitude of the query
+     * @param orderBy is the USGS "orderby" value of the query
+     * @return a planner holding the earthquakes of the query, or null if the query has to be
+     * pushed down to USGS because its earthquakes aren't loaded
+     */
+    public QueryPlanner plan( double minMagnitude, String orderBy )
+    {
+        if ( !canAnswer( minMagnitude, orderBy ) )
+            return null;
+        
+        EarthquakeOrder order = EarthquakeOrder.forOrderBy( orderBy );
+        if ( minMagnitude == mMinMagnitude && order == mOrder )
+            return this;
+        
+        // The earthquakes of the query are the first ones of the magnitude index
+        int count = countAtLeast( minMagnitude );
+        
+        // None of the earthquakes of the query is loaded, ask USGS for its first page
+        if ( count == 0 && !mComplete )
+            return null;
+        
+        // Position of every row of the table in the answer, or -1 if it isn't in the answer
+        int[] answerRows = new int[ mEarthquakes.size() ];
+        for ( int row = 0; row < answerRows.length; row++ )
+            answerRows[ row ] = -1;
+        
+        int[] rows = new int[ count ];
+        if ( order == EarthquakeOrder.MAGNITUDE || order == EarthquakeOrder.MAGNITUDE_ASC )
+        {
+            for ( int i = 0; i < count; i++ )
+                rows[ order == EarthquakeOrder.MAGNITUDE ? i : count - 1 - i ] = mRowsByMagnitude[ i ];
+        }
+        else
+        {
+            int position = 0;
+            for ( int row : mRowsByTime )
+            {
+                if ( mEarthquakes.getMagnitude( row ) >= minMagnitude )
+                    rows[ order == EarthquakeOrder.TIME ? position++ : count - 1 - position++ ] = row;
+            }
+        }
+        
+        for ( int i = 0; i < count; i++ )
+            answerRows[ rows[ i ] ] = i;
+        
+        // The indexes of the answer are the indexes of this table restricted to its rows
+        int[] rowsByMagnitude = new int[ count ];
+        for ( int i = 0; i < count; i++ )
+            rowsByMagnitude[ i ] = answerRows[ mRowsByMagnitude[ i ] ];
+        
+        int[] rowsByTime = new int[ count ];
+        int position = 0;
+        for ( int row : mRowsByTime )
+        {
+            if ( answerRows[ row ] != -1 )
+                rowsByTime[ position++ ] = answerRows[ row ];
+        }
+        
+        return new QueryPlanner( mEarthquakes.select( rows ), minMagnitude, order, mComplete,
+                rowsByMagnitude, rowsByTime );
+    }
+    
+    /**
+     * Returns the number of loaded earthquakes of at least the given magnitude,
+     * found by a binary search of the magnitude index.
+     */
+    private int countAtLeast( double minMagnitude )
+    {
+        int low = 0;
+        int high = mRowsByMagnitude.length;
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            if ( mEarthquakes.getMagnitude( mRowsByMagnitude[ middle ] ) >= minMagnitude )
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
\ No newline at end of file
@@ -1,7 +1,11 @@
 package com.engineerfadyfawzi.quakereport;
 
+import android.net.Uri;
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -15,8 +19,13 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Helper methods related to requesting and receiving earthquake data from USGS.
@@ -28,6 +37,32 @@ public class QueryUtils
      */
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
     
+    /**
+     * Value of the "status" property of the events USGS deleted
+     */
+    private static final String STATUS_DELETED = "deleted";
+    
+    /**
+     * Format of the times in the USGS query parameters (ISO 8601, in UTC)
+     */
+    private static final String QUERY_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+    
+    /**
+     * Number of earthquakes parsed before the first batch is published, about a screen of them
+     * (a few KB of the response). Every next batch is twice as large as the previous one.
+     */
+    static final int FIRST_BATCH_SIZE = 8;
+    
+    /**
+     * Transport all the requests are executed with, it keeps the connections alive between them
+     */
+    private static volatile HttpTransport sHttpTransport = new OkHttpTransport();
+    
+    /**
+     * Requests in flight, so concurrent requests of the same query share one response
+     */
+    private static final SingleFlight< FeedResponse > sRequestsInFlight = new SingleFlight<>();
+    
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -39,26 +74,170 @@ public class QueryUtils
     }
     
     /**
-     * Query the USGS data set and return a list of {@link Earthquake} objcets.
+     * Query the USGS data set and return an {@link EarthquakeTable} of the earthquakes.
      *
      * @param stringUrl
      * @return
      */
-    public static List< Earthquake > fetchEarthquakeData( String stringUrl )
+    public static EarthquakeTable fetchEarthquakeData( String stringUrl )
     {
-        Log.i( LOG_TAG, "TEST: fetchEarthquakeData() called ..." );
+        FeedResponse feedResponse = fetchEarthquakeData( stringUrl, null, null );
         
+        // Return the table of earthquakes
+        return feedResponse == null ? null : feedResponse.getEarthquakes();
+    }
+    
+    /**
+     * Query the USGS data set with a conditional request, so the earthquakes are only downloaded
+     * again if they changed since the response the given validators were received with.
+     *
+     * @param stringUrl
+     * @param eTag "ETag" of the previous response of this query, or null
+     * @param lastModified "Last-Modified" of the previous response of this query, or null
+     * @return the response, or null if the request failed
+     */
+    public static FeedResponse fetchEarthquakeData( String stringUrl, String eTag, String lastModified )
+    {
+        return fetchEarthquakeData( stringUrl, eTag, lastModified, null );
+    }
+    
+    /**
+     * Query the USGS data set with a conditional request, which stops as soon as the given
+     * signal is canceled, whether it's waiting for the response or parsing it.
+     *
+     * @param stringUrl
+     * @param eTag "ETag" of the previous response of this query, or null
+     * @param lastModified "Last-Modified" of the previous response of this query, or null
+     * @param cancellationSignal canceling the request, or null
+     * @return the response, or null if the request failed or was canceled
+     */
+    public static FeedResponse fetchEarthquakeData( String stringUrl, String eTag, String lastModified,
+                                                    CancellationSignal cancellationSignal )
+    {
+        return fetchEarthquakeData( stringUrl, eTag, lastModified, cancellationSignal, null );
+    }
+    
+    /**
+     * Query the USGS data set like {@link #fetchEarthquakeData(String, String, String, CancellationSignal)},
+     * and publish the earthquakes parsed so far to the given listener in batches while the
+     * response is still downloading.
+     *
+     * @param stringUrl
+     * @param eTag "ETag" of the previous response of this query, or null
+     * @param lastModified "Last-Modified" of the previous response of this query, or null
+     * @param cancellationSignal canceling the request, or null
+     * @param listener of the batches of earthquakes parsed, or null
+     * @return the response, or null if the request failed or was canceled
+     */
+    public static FeedResponse fetchEarthquakeData( String stringUrl, String eTag, String lastModified,
+                                                    CancellationSignal cancellationSignal,
+                                                    OnEarthquakesParsedListener listener )
+    {
         // Create URL object
         URL url = createUrl( stringUrl );
         
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = makeHttpRequest( url );
+        // If the URL is null, then return early
+        if ( url == null )
+            return null;
         
-        // Extract relevant fields from the JSON response and create a list of {@link List<Earthquake}s
-        List< Earthquake > earthquakes = extractFeatureFromJson( jsonResponse );
+        HttpRequest request = new HttpRequest( url );
+        if ( eTag != null )
+            request.setHeader( "If-None-Match", eTag );
+        if ( lastModified != null )
+            request.setHeader( "If-Modified-Since", lastModified );
+        request.setCancellationSignal( cancellationSignal );
         
-        // Return the list of {@link Earthquake}s
-        return earthquakes;
+        return fetchEarthquakeData( request, listener );
+    }
+    
+    /**
+     * Query the USGS data set with the given request, which carries the timeouts of this call
+     * and the validators of a previous response if it's a conditional request.
+     * If the same request is already in flight, its response is returned instead.
+     * The request is only aborted once all the callers sharing it are canceled.
+     *
+     * @param request
+     * @return the response, or null if the request failed or was canceled
+     */
+    public static FeedResponse fetchEarthquakeData( HttpRequest request )
+    {
+        return fetchEarthquakeData( request, null );
+    }
+    
+    /**
+     * Query the USGS data set with the given request like {@link #fetchEarthquakeData(HttpRequest)},
+     * and publish the earthquakes parsed so far to the given listener in batches while the
+     * response is still downloading. Only the caller actually making the request gets the
+     * batches, the callers sharing its response only get the whole response.
+     *
+     * @param request
+     * @param listener of the batches of earthquakes parsed, or null
+     * @return the response, or null if the request failed or was canceled
+     */
+    public static FeedResponse fetchEarthquakeData( final HttpRequest request,
+                                                    final OnEarthquakesParsedListener listener )
+    {
+        // Callers asking for the same query while it's loading (a restarted loader, a rotation,
+        // the background sync) wait for its response instead of requesting it again.
+        // Conditional requests only share the responses of requests with the same validators.
+        String key = FeedCache.normalizeUrl( request.getUrl().toString() ) +
+                "\n" + request.getHeader( "If-None-Match" ) +
+                "\n" + request.getHeader( "If-Modified-Since" );
+        
+        return sRequestsInFlight.execute( key, new SingleFlight.Call< FeedResponse >()
+        {
+            @Override
+            public FeedResponse call( CancellationSignal cancellationSignal )
+            {
+                // Perform HTTP request to the URL and parse the JSON response while it streams in,
+                // so the raw response body is never held in memory as a whole.
+                return makeHttpRequest( request, cancellationSignal, listener );
+            }
+        }, request.getCancellationSignal() );
+    }
+    
+    /**
+     * Query the USGS data set only for the earthquakes matching the query that were added,
+     * updated or deleted after the given time (the watermark of the previous sync).
+     *
+     * Deleted earthquakes are included, so they can be removed from the previous result.
+     *
+     * @param stringUrl of the query, without the "offset" and "limit" of a page
+     * @param updatedAfter time in milliseconds (from the Epoch) of the previous sync
+     * @param cancellationSignal canceling the request, or null
+     * @return the changed earthquakes, or null if the request failed or was canceled
+     */
+    public static EarthquakeTable fetchEarthquakeUpdates( String stringUrl, long updatedAfter,
+                                                          CancellationSignal cancellationSignal )
+    {
+        String updatesUrl = Uri.parse( stringUrl ).buildUpon()
+                .appendQueryParameter( "updatedafter", formatQueryTime( updatedAfter ) )
+                .appendQueryParameter( "includedeleted", "true" )
+                .toString();
+        
+        FeedResponse feedResponse = fetchEarthquakeData( updatesUrl, null, null, cancellationSignal );
+        return feedResponse == null ? null : feedResponse.getEarthquakes();
+    }
+    
+    /**
+     * Returns the given time as a USGS query parameter value ("starttime", "updatedafter"...),
+     * in UTC with milliseconds.
+     *
+     * @param timeInMilliseconds from the Epoch
+     */
+    static String formatQueryTime( long timeInMilliseconds )
+    {
+        SimpleDateFormat timeFormat = new SimpleDateFormat( QUERY_TIME_FORMAT, Locale.US );
+        timeFormat.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        return timeFormat.format( new Date( timeInMilliseconds ) );
+    }
+    
+    /**
+     * Replace the {@link HttpTransport} all the requests are executed with.
+     */
+    public static void setHttpTransport( HttpTransport httpTransport )
+    {
+        sHttpTransport = httpTransport;
     }
     
     /**
@@ -84,58 +263,107 @@ public class QueryUtils
     }
     
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Execute the HTTP request and return the response with the table of earthquakes
+     * parsed from its stream, or null if the request failed.
+     *
+     * The response is requested gzip compressed, and only if it's modified when the request
+     * carries the validators of a previous response.
+     *
+     * The time to first byte, download and parse times of the request are recorded in
+     * {@link Metrics}, with the size of the response.
      *
-     * @param url
+     * @param request
+     * @param cancellationSignal aborting the request and its parse, instead of the one of the request
+     * @param listener of the batches of earthquakes parsed, or null
      * @return
      */
-    private static String makeHttpRequest( URL url )
+    private static FeedResponse makeHttpRequest( HttpRequest request, CancellationSignal cancellationSignal,
+                                                 OnEarthquakesParsedListener listener )
     {
-        String jsonResponse = "";
+        FeedResponse feedResponse = null;
         
-        // If the URL is null, then return early
-        if ( url == null )
-            return jsonResponse;
-        
-        HttpURLConnection urlConnection = null;
+        HttpResponse httpResponse = null;
         InputStream inputStream = null;
         
         try
         {
-            urlConnection = ( HttpURLConnection ) url.openConnection();
-            urlConnection.setRequestMethod( "GET" );
-            urlConnection.setReadTimeout( 10000 /* milliseconds */ );
-            urlConnection.setConnectTimeout( 15000 /* milliseconds */ );
-            urlConnection.connect();
+            // Setting "Accept-Encoding" ourselves turns off the transparent decompression of
+            // the transport, so a gzip response is decompressed below.
+            request.setHeader( "Accept-Encoding", "gzip" );
+            request.setCancellationSignal( cancellationSignal );
+            
+            Metrics.REQUESTS.incrementAndGet();
+            long startTime = System.nanoTime();
+            httpResponse = sHttpTransport.execute( request );
+            long headersTime = System.nanoTime();
+            Metrics.TIME_TO_FIRST_BYTE.record( Metrics.toMicros( headersTime - startTime ) );
             
             // If the request was successful (response code 200),
-            // then read the input sream and parse the response.
-            int responseCode = urlConnection.getResponseCode();
-            if ( responseCode == 200 )
+            // then parse the response directly from the input stream.
+            int responseCode = httpResponse.getResponseCode();
+            if ( responseCode == HttpURLConnection.HTTP_OK )
+            {
+                // Count the bytes as they're transferred, before they're decompressed
+                MeteredInputStream body = new MeteredInputStream( httpResponse.getBody() );
+                inputStream = body;
+                if ( "gzip".equalsIgnoreCase( httpResponse.getHeader( "Content-Encoding" ) ) )
+                    inputStream = new GZIPInputStream( inputStream );
+                
+                EarthquakeTable earthquakes = readEarthquakesFromStream( inputStream, cancellationSignal, listener );
+                
+                // The body is parsed while it's downloaded, the parse time is the rest of the time
+                long parseNanos = System.nanoTime() - headersTime - body.getReadNanos();
+                Metrics.DOWNLOAD.record( Metrics.toMicros( body.getReadNanos() ) );
+                Metrics.PARSE.record( Metrics.toMicros( parseNanos ) );
+                Metrics.RESPONSE_BYTES.record( body.getByteCount() );
+                Metrics.RESPONSE_EARTHQUAKES.record( earthquakes.size() );
+                
+                feedResponse = new FeedResponse( earthquakes,
+                        httpResponse.getHeader( "ETag" ),
+                        httpResponse.getHeader( "Last-Modified" ) );
+            }
+            // If the earthquakes didn't change (response code 304), the previous ones are reused.
+            else if ( responseCode == HttpURLConnection.HTTP_NOT_MODIFIED )
             {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream( inputStream );
+                Metrics.NOT_MODIFIED_RESPONSES.incrementAndGet();
+                
+                // A 304 response may update the validators, otherwise the previous ones still apply.
+                String eTag = httpResponse.getHeader( "ETag" );
+                String lastModified = httpResponse.getHeader( "Last-Modified" );
+                feedResponse = new FeedResponse(
+                        eTag != null ? eTag : request.getHeader( "If-None-Match" ),
+                        lastModified != null ? lastModified : request.getHeader( "If-Modified-Since" ) );
             }
             else
             {
+                Metrics.FAILED_REQUESTS.incrementAndGet();
                 Log.e( LOG_TAG, "Error response code: " + responseCode );
             }
             
         }
         catch ( IOException ioException )
         {
-            Log.e( LOG_TAG, "Problem retrieving the earthquake JSON results.", ioException );
+            // A canceled request fails when its connection is closed, or at the next earthquake parsed
+            if ( cancellationSignal != null && cancellationSignal.isCanceled() )
+                Metrics.CANCELED_REQUESTS.incrementAndGet();
+            else
+            {
+                Metrics.FAILED_REQUESTS.incrementAndGet();
+                Log.e( LOG_TAG, "Problem retrieving the earthquake JSON results.", ioException );
+            }
         }
         finally
         {
-            if ( urlConnection != null )
-                urlConnection.disconnect();
-            
+            // Close the response instead of disconnecting,
+            // so its connection is kept alive for the next request.
             try
             {
                 if ( inputStream != null )
                     // Closing the input stream could throw an IOException.
                     inputStream.close();
+                
+                if ( httpResponse != null )
+                    httpResponse.close();
             }
             catch ( IOException ioException )
             {
@@ -143,18 +371,257 @@ public class QueryUtils
             }
         }
         
-        return jsonResponse;
+        return feedResponse;
+    }
+    
+    /**
+     * Parse the GeoJSON response token by token straight from the {@link InputStream},
+     * adding a row to the {@link EarthquakeTable} as soon as each "features[].properties" object is read.
+     *
+     * Unlike {@link #readFromStream(InputStream)} followed by {@link #extractFeatureFromJson(String)},
+     * neither the whole response body nor a JSONObject tree of it is ever held in memory,
+     * and no {@link Earthquake} object is created for the rows. The properties that aren't
+     * displayed are skipped without being decoded, and the "url" of an event page is only stored
+     * as the event id, since the table rebuilds it from the page prefix of the provider and the id.
+     *
+     * @param inputStream the response body of the USGS query
+     * @return the table of earthquakes
+     * @throws IOException if reading from the stream fails, or the body isn't a whole GeoJSON feed
+     */
+    static EarthquakeTable readEarthquakesFromStream( InputStream inputStream ) throws IOException
+    {
+        return readEarthquakesFromStream( inputStream, null );
+    }
+    
+    /**
+     * Parse the GeoJSON response like {@link #readEarthquakesFromStream(InputStream)}, and stop
+     * at the next earthquake once the given signal is canceled.
+     *
+     * @param inputStream the response body of the USGS query
+     * @param cancellationSignal stopping the parse, or null
+     * @return the table of earthquakes
+     * @throws IOException if reading from the stream fails or the body isn't a whole GeoJSON feed,
+     * or an InterruptedIOException if the parse was canceled
+     */
+    static EarthquakeTable readEarthquakesFromStream( InputStream inputStream,
+                                                      CancellationSignal cancellationSignal ) throws IOException
+    {
+        return readEarthquakesFromStream( inputStream, cancellationSignal, null );
+    }
+    
+    /**
+     * Parse the GeoJSON response like {@link #readEarthquakesFromStream(InputStream, CancellationSignal)},
+     * and publish the earthquakes parsed so far to the given listener every time the number of
+     * earthquakes parsed doubles, starting at {@link #FIRST_BATCH_SIZE}. Doubling the batches
+     * keeps the copies of the table published to a constant factor of the earthquakes parsed.
+     *
+     * @param inputStream the response body of the USGS query
+     * @param cancellationSignal stopping the parse, or null
+     * @param listener of the batches of earthquakes parsed, or null
+     * @return the table of earthquakes
+     * @throws IOException if reading from the stream fails or the body isn't a whole GeoJSON feed,
+     * or an InterruptedIOException if the parse was canceled
+     */
+    static EarthquakeTable readEarthquakesFromStream( InputStream inputStream,
+                                                      CancellationSignal cancellationSignal,
+                                                      OnEarthquakesParsedListener listener ) throws IOException
+    {
+        // Create an empty table builder that we can start adding earthquakes to
+        EarthquakeTable.Builder earthquakes = new EarthquakeTable.Builder();
+        
+        if ( inputStream == null )
+            return earthquakes.build();
+        
+        JsonReader jsonReader = new JsonReader( new InputStreamReader( inputStream, Charset.forName( "UTF-8" ) ) );
+        
+        // JsonReader throws a MalformedJsonException when the body isn't JSON (e.g. the login page
+        // of a captive portal), and an EOFException when it's cut short. A body missing any part
+        // of the feed fails the whole request, so it's neither cached nor taken as the last page.
+        boolean hasFeatures = false;
+        try
+        {
+            jsonReader.beginObject();
+            while ( jsonReader.hasNext() )
+            {
+                // The "features" array represents a list of features (or earthquakes),
+                // any other top level member ("metadata", "bbox", ...) is skipped unread.
+                if ( jsonReader.nextName().equals( "features" ) )
+                {
+                    readFeatures( jsonReader, earthquakes, cancellationSignal, listener );
+                    hasFeatures = true;
+                }
+                else
+                    jsonReader.skipValue();
+            }
+            jsonReader.endObject();
+        }
+        catch ( IllegalStateException illegalStateException )
+        {
+            // JsonReader throws an IllegalStateException when the next token isn't the expected one
+            throw new IOException( "Problem parsing the earthquake JSON results", illegalStateException );
+        }
+        
+        if ( !hasFeatures )
+            throw new MalformedJsonException( "No features in the earthquake JSON results" );
+        
+        return earthquakes.build();
+    }
+    
+    /**
+     * Read the "features" array the reader is positioned at, and add a row to the table being
+     * built for each of its features. Stop before the next feature once the given signal is
+     * canceled, so a canceled parse never leaves a row half read.
+     * Publish the earthquakes parsed so far to the listener, if any, once a batch is complete.
+     */
+    private static void readFeatures( JsonReader jsonReader, EarthquakeTable.Builder earthquakes,
+                                      CancellationSignal cancellationSignal,
+                                      OnEarthquakesParsedListener listener ) throws IOException
+    {
+        int batchEnd = FIRST_BATCH_SIZE;
+        
+        jsonReader.beginArray();
+        while ( jsonReader.hasNext() )
+        {
+            if ( cancellationSignal != null )
+                cancellationSignal.throwIfCanceled();
+            readFeature( jsonReader, earthquakes );
+            
+            // A malformed feature isn't added, so the batch may end a feature later
+            if ( listener != null && earthquakes.size() >= batchEnd )
+            {
+                listener.onEarthquakesParsed( earthquakes.build() );
+                batchEnd = earthquakes.size() * 2;
+            }
+        }
+        jsonReader.endArray();
+    }
+    
+    /**
+     * Read a single feature object and add a row with its "properties" and the coordinates
+     * of its "geometry" to the table being built.
+     */
+    private static void readFeature( JsonReader jsonReader, EarthquakeTable.Builder earthquakes )
+            throws IOException
+    {
+        String id = null;
+        double magnitude = 0;
+        String location = "";
+        long time = 0;
+        long updated = 0;
+        String url = "";
+        boolean deleted = false;
+        double longitude = Double.NaN;
+        double latitude = Double.NaN;
+        double depth = Double.NaN;
+        int felt = -1;
+        int significance = -1;
+        boolean tsunami = false;
+        String alertLevel = null;
+        
+        jsonReader.beginObject();
+        while ( jsonReader.hasNext() )
+        {
+            String featureName = jsonReader.nextName();
+            if ( featureName.equals( "id" ) )
+            {
+                id = jsonReader.nextString();
+                continue;
+            }
+            
+            if ( featureName.equals( "geometry" ) && jsonReader.peek() == JsonToken.BEGIN_OBJECT )
+            {
+                // The geometry of an earthquake is a "Point",
+                // with the coordinates [longitude, latitude, depth]
+                jsonReader.beginObject();
+                while ( jsonReader.hasNext() )
+                {
+                    if ( !jsonReader.nextName().equals( "coordinates" ) ||
+                            jsonReader.peek() != JsonToken.BEGIN_ARRAY )
+                    {
+                        jsonReader.skipValue();
+                        continue;
+                    }
+                    
+                    jsonReader.beginArray();
+                    for ( int i = 0; jsonReader.hasNext(); i++ )
+                    {
+                        if ( jsonReader.peek() != JsonToken.NUMBER )
+                            jsonReader.skipValue();
+                        else if ( i == 0 )
+                            longitude = jsonReader.nextDouble();
+                        else if ( i == 1 )
+                            latitude = jsonReader.nextDouble();
+                        else if ( i == 2 )
+                            depth = jsonReader.nextDouble();
+                        else
+                            jsonReader.skipValue();
+                    }
+                    jsonReader.endArray();
+                }
+                jsonReader.endObject();
+                continue;
+            }
+            
+            if ( !featureName.equals( "properties" ) )
+            {
+                // Skip "type", we only need the id, the geometry and the properties of the feature.
+                jsonReader.skipValue();
+                continue;
+            }
+            
+            jsonReader.beginObject();
+            while ( jsonReader.hasNext() )
+            {
+                String name = jsonReader.nextName();
+                
+                // Some USGS properties can be null (i.e. "mag" of a not yet reviewed event)
+                if ( jsonReader.peek() == JsonToken.NULL )
+                    jsonReader.skipValue();
+                else if ( name.equals( "mag" ) )
+                    magnitude = jsonReader.nextDouble();
+                else if ( name.equals( "place" ) )
+                    location = jsonReader.nextString();
+                else if ( name.equals( "time" ) )
+                    time = jsonReader.nextLong();
+                else if ( name.equals( "updated" ) )
+                    updated = jsonReader.nextLong();
+                else if ( name.equals( "url" ) )
+                    url = jsonReader.nextString();
+                else if ( name.equals( "status" ) )
+                    deleted = jsonReader.nextString().equals( STATUS_DELETED );
+                else if ( name.equals( "felt" ) )
+                    felt = jsonReader.nextInt();
+                else if ( name.equals( "sig" ) )
+                    significance = jsonReader.nextInt();
+                else if ( name.equals( "tsunami" ) )
+                    tsunami = jsonReader.nextInt() != 0;
+                else if ( name.equals( "alert" ) )
+                    alertLevel = jsonReader.nextString();
+                else
+                    jsonReader.skipValue();
+            }
+            jsonReader.endObject();
+        }
+        jsonReader.endObject();
+        
+        // Add a row with the id, magnitude, location, time, updated time, url, coordinates
+        // and optional properties from the JSON response.
+        earthquakes.addEvent( id, magnitude, location, time, updated, url, deleted,
+                longitude, latitude, depth, felt, significance, tsunami, alertLevel );
     }
     
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
      *
+     * This is no longer used when fetching earthquakes, it is kept as the baseline
+     * that {@link #readEarthquakesFromStream(InputStream)} is measured against.
+     *
      * @param inputStream
      * @return
      * @throws IOException
      */
-    private static String readFromStream( InputStream inputStream ) throws IOException
+    static String readFromStream( InputStream inputStream ) throws IOException
     {
         StringBuilder output = new StringBuilder();
         
@@ -177,8 +644,11 @@ public class QueryUtils
     /**
      * Return a list of {@link Earthquake} objects that has been built up from
      * parsing the given JSON response.
+     *
+     * Like {@link #readFromStream(InputStream)}, this is only kept as the baseline
+     * that {@link #readEarthquakesFromStream(InputStream)} is measured against.
      */
-    private static List< Earthquake > extractFeatureFromJson( String earthquakeJSON )
+    static List< Earthquake > extractFeatureFromJson( String earthquakeJSON )
     {
         // If the JSON string is empty or null, then return early
         if ( TextUtils.isEmpty( earthquakeJSON ) )
@@ -222,9 +692,27 @@ public class QueryUtils
                 // Extract the value for the key called "url"
                 String url = properties.getString( "url" );
                 
-                // Create a new {@link Earthquake} object with the magnitude, location, time and url
-                // from the JSON response.
-                Earthquake earthquake = new Earthquake( magnitude, location, time, url );
+                // Extract the id of the feature and the value for the key called "updated"
+                String id = currentEarthquake.getString( "id" );
+                long updated = properties.getLong( "updated" );
+                
+                // Extract the longitude, latitude and depth from the "coordinates" of the "geometry"
+                double longitude = Double.NaN;
+                double latitude = Double.NaN;
+                double depth = Double.NaN;
+                JSONObject geometry = currentEarthquake.optJSONObject( "geometry" );
+                JSONArray coordinates = geometry == null ? null : geometry.optJSONArray( "coordinates" );
+                if ( coordinates != null )
+                {
+                    longitude = coordinates.optDouble( 0 );
+                    latitude = coordinates.optDouble( 1 );
+                    depth = coordinates.optDouble( 2 );
+                }
+                
+                // Create a new {@link Earthquake} object with the id, magnitude, location, time,
+                // updated time, url and coordinates from the JSON response.
+                Earthquake earthquake = new Earthquake( id, magnitude, location, time, updated, url,
+                        false, longitude, latitude, depth );
                 
                 // Add the new {@link Earthquake} to the list of earthquakes.
                 earthquakes.add( earthquake );
@@ -241,4 +729,19 @@ public class QueryUtils
         // Return the list of earthquakes
         return earthquakes;
     }
+    
+    /**
+     * Interface definition for a callback to be invoked when a batch of earthquakes is parsed
+     * from a response still being downloaded.
+     */
+    public interface OnEarthquakesParsedListener
+    {
+        /**
+         * Called on the thread parsing the response once a batch of earthquakes is parsed.
+         *
+         * @param earthquakes is the table of all the earthquakes parsed so far, in the order
+         * of the response
+         */
+        void onEarthquakesParsed( EarthquakeTable earthquakes );
+    }
 }
\ No newline at end of file
@@ -0,0 +1,256 @@
+package com.engineerfadyfawzi.quakereport;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@link ShardedFetcher} loads the earthquakes of a long time range, i.e. a year of
+ * magnitude 2.5+ earthquakes, which USGS would truncate at its result cap or send very slowly
+ * over a single connection.
+ *
+ * The range is split into time windows (shards) fetched concurrently, with at most
+ * {@link #getConcurrency()} requests at a time. A shard that returns as many earthquakes as the
+ * result cap was truncated, so its window is split in two halves which are fetched instead.
+ * The shards are then merged in the "orderby" order of the query, and an earthquake returned
+ * by two shards (its time was revised between their requests) is only kept once.
+ */
+public class ShardedFetcher
+{
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ShardedFetcher.class.getSimpleName();
+    
+    /**
+     * Largest number of earthquakes USGS returns for a query
+     */
+    public static final int USGS_RESULT_CAP = 20000;
+    
+    /**
+     * Shortest window in milliseconds, a truncated window this short isn't split anymore
+     */
+    private static final long MIN_WINDOW = 1000;
+    
+    /**
+     * Largest number of shards fetched at the same time
+     */
+    private int mConcurrency;
+    
+    /**
+     * Number of earthquakes a shard is limited to, a shard returning as many is split
+     */
+    private int mResultCap;
+    
+    /**
+     * Constructs a new {@link ShardedFetcher} limited to the USGS result cap.
+     *
+     * @param concurrency is the largest number of shards fetched at the same time
+     */
+    public ShardedFetcher( int concurrency )
+    {
+        this( concurrency, USGS_RESULT_CAP );
+    }
+    
+    /**
+     * Constructs a new {@link ShardedFetcher}.
+     *
+     * @param concurrency is the largest number of shards fetched at the same time
+     * @param resultCap is the number of earthquakes a shard is limited to
+     */
+    public ShardedFetcher( int concurrency, int resultCap )
+    {
+        if ( concurrency < 1 || resultCap < 1 )
+            throw new IllegalArgumentException( "concurrency and result cap must be positive" );
+        
+        mConcurrency = concurrency;
+        mResultCap = resultCap;
+    }
+    
+    /**
+     * Returns the largest number of shards fetched at the same time.
+     */
+    public int getConcurrency()
+    {
+        return mConcurrency;
+    }
+    
+    /**
+     * Load the earthquakes of the given query between the given times, sorted in the "orderby"
+     * order of the query. This is on a background thread, and blocks until all the shards
+     * are loaded.
+     *
+     * @param stringUrl of the query, without its "starttime", "endtime", "offset" and "limit"
+     * @param startTime in milliseconds (from the Epoch) of the oldest earthquakes
+     * @param endTime in milliseconds (from the Epoch) of the most recent earthquakes
+     * @return the earthquakes, or null if a shard couldn't be loaded
+     */
+    public EarthquakeTable fetch( String stringUrl, long startTime, long endTime )
+    {
+        EarthquakeOrder order =
+                EarthquakeOrder.forOrderBy( Uri.parse( stringUrl ).getQueryParameter( "orderby" ) );
+        
+        ExecutorService executor = Executors.newFixedThreadPool( mConcurrency );
+        CompletionService< Shard > completionService = new ExecutorCompletionService<>( executor );
+        try
+        {
+            // Start with one window per thread, so all of them are busy from the start
+            int pendingShards = 0;
+            long windowLength = Math.max( MIN_WINDOW, ( endTime - startTime ) / mConcurrency + 1 );
+            for ( long windowStart = startTime; windowStart <= endTime; windowStart += windowLength )
+            {
+                long windowEnd = Math.min( endTime, windowStart + windowLength - 1 );
+                completionService.submit( new Shard( stringUrl, windowStart, windowEnd ) );
+                pendingShards++;
+            }
+            
+            List< Shard > shards = new ArrayList<>();
+            while ( pendingShards > 0 )
+            {
+                Shard shard = completionService.take().get();
+                pendingShards--;
+                
+                if ( shard.mEarthquakes == null )
+                    return null;
+                
+                // Fetch the two halves of a truncated window instead
+                if ( shard.mEarthquakes.size() >= mResultCap && shard.mEndTime - shard.mStartTime >= MIN_WINDOW )
+                {
+                    long middle = shard.mStartTime + ( shard.mEndTime - shard.mStartTime ) / 2;
+                    completionService.submit( new Shard( stringUrl, shard.mStartTime, middle ) );
+                    completionService.submit( new Shard( stringUrl, middle + 1, shard.mEndTime ) );
+                    pendingShards += 2;
+                    continue;
+                }
+                
+                if ( shard.mEarthquakes.size() >= mResultCap )
+                    Log.e( LOG_TAG, "Shard truncated at the result cap: " + shard.mStartTime );
+                
+                shards.add( shard );
+            }
+            
+            // Merge the shards from the oldest window, whatever order they were loaded in,
+            // so equal earthquakes are always merged in the same order.
+            Collections.sort( shards, new Comparator< Shard >()
+            {
+                @Override
+                public int compare( Shard first, Shard second )
+                {
+                    return first.mStartTime < second.mStartTime ? -1 : ( first.mStartTime == second.mStartTime ? 0 : 1 );
+                }
+            } );
+            List< EarthquakeTable > tables = new ArrayList<>();
+            for ( Shard shard : shards )
+                tables.add( shard.mEarthquakes );
+            return merge( tables, order );
+        }
+        catch ( InterruptedException interruptedException )
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch ( ExecutionException executionException )
+        {
+            Log.e( LOG_TAG, "Problem loading a shard.", executionException );
+            return null;
+        }
+        finally
+        {
+            // Stop the shards still loading when one of them failed
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Returns the earthquakes of the given tables, each sorted in the given order, merged in
+     * that order. An earthquake in several tables is only kept once, from the first one.
+     */
+    static EarthquakeTable merge( final List< EarthquakeTable > tables, final EarthquakeOrder order )
+    {
+        int size = 0;
+        for ( EarthquakeTable table : tables )
+            size += table.size();
+        
+        // Cursors of the next row of every table, as { table, row }, the first one in the order
+        // on top. Equal rows are taken from the tables in their order, so the merge is stable.
+        Comparator< int[] > cursorOrder = new Comparator< int[] >()
+        {
+            @Override
+            public int compare( int[] first, int[] second )
+            {
+                int comparison = order.compare( tables.get( first[ 0 ] ), first[ 1 ],
+                        tables.get( second[ 0 ] ), second[ 1 ] );
+                return comparison != 0 ? comparison : first[ 0 ] - second[ 0 ];
+            }
+        };
+        PriorityQueue< int[] > cursors = new PriorityQueue<>( Math.max( 1, tables.size() ), cursorOrder );
+        for ( int table = 0; table < tables.size(); table++ )
+            if ( !tables.get( table ).isEmpty() )
+                cursors.add( new int[] { table, 0 } );
+        
+        EarthquakeTable.Builder earthquakes = new EarthquakeTable.Builder( size );
+        Set< String > ids = new HashSet<>();
+        while ( !cursors.isEmpty() )
+        {
+            int[] cursor = cursors.poll();
+            EarthquakeTable table = tables.get( cursor[ 0 ] );
+            if ( ids.add( table.getId( cursor[ 1 ] ) ) )
+                earthquakes.addRow( table, cursor[ 1 ] );
+            
+            if ( ++cursor[ 1 ] < table.size() )
+                cursors.add( cursor );
+        }
+        return earthquakes.build();
+    }
+    
+    /**
+     * Loading of the earthquakes of a time window, on a thread of the executor.
+     */
+    private class Shard implements Callable< Shard >
+    {
+        private String mStringUrl;
+        
+        private long mStartTime;
+        
+        private long mEndTime;
+        
+        /**
+         * Earthquakes of the window sorted in the order of the query,
+         * or null if they couldn't be loaded
+         */
+        private EarthquakeTable mEarthquakes;
+        
+        Shard( String stringUrl, long startTime, long endTime )
+        {
+            mStringUrl = stringUrl;
+            mStartTime = startTime;
+            mEndTime = endTime;
+        }
+        
+        @Override
+        public Shard call()
+        {
+            String shardUrl = Uri.parse( mStringUrl ).buildUpon()
+                    .appendQueryParameter( "starttime", QueryUtils.formatQueryTime( mStartTime ) )
+                    .appendQueryParameter( "endtime", QueryUtils.formatQueryTime( mEndTime ) )
+                    .appendQueryParameter( "limit", String.valueOf( mResultCap ) )
+                    .toString();
+            
+            mEarthquakes = QueryUtils.fetchEarthquakeData( shardUrl );
+            return this;
+        }
+    }
+}
\ No newline at end of file
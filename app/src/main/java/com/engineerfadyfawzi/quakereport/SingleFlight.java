@@ -0,0 +1,307 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link SingleFlight} runs at most one call per key at a time: callers asking for a key
+ * while its call is in flight wait for that call and share its result, instead of starting
+ * the same work again. Once the call returns, the next caller starts a new one, so results
+ * are never kept.
+ *
+ * The calls run on an executor, and all their callers (the first one too) just wait for them.
+ * Every caller may be canceled on its own. A canceled caller stops waiting right away, and
+ * the call itself is only canceled once all its callers are, so a caller never loses the
+ * result of a call because another caller gave up on it.
+ *
+ * @param <T> is the type of the results, they're shared by the callers so they must be immutable
+ */
+public class SingleFlight< T >
+{
+    /**
+     * Work that stops when its cancellation signal is canceled.
+     */
+    public interface Call< T >
+    {
+        /**
+         * Returns the result of the work, this is on a thread of the executor.
+         *
+         * @param cancellationSignal is canceled once all the callers are canceled
+         */
+        T call( CancellationSignal cancellationSignal ) throws Exception;
+    }
+    
+    /**
+     * Calls in flight by their key
+     */
+    private final ConcurrentMap< String, Flight > mFlights = new ConcurrentHashMap<>();
+    
+    /**
+     * Executor running the calls
+     */
+    private final Executor mExecutor;
+    
+    /**
+     * Constructs a new {@link SingleFlight}, running its calls on threads of its own.
+     */
+    public SingleFlight()
+    {
+        this( Executors.newCachedThreadPool() );
+    }
+    
+    /**
+     * Constructs a new {@link SingleFlight}.
+     *
+     * @param executor running the calls, it must run every call it's given right away
+     */
+    public SingleFlight( Executor executor )
+    {
+        mExecutor = executor;
+    }
+    
+    /**
+     * Returns the result of the given call, or of the call of the same key already in flight.
+     *
+     * @param key identifies the work of the call, i.e. the normalized URL of a request
+     * @param call is the work to run if no call of the key is in flight
+     * @return the result of the call, or null if the thread was interrupted while waiting
+     */
+    public T execute( String key, Call< T > call )
+    {
+        return execute( key, call, null );
+    }
+    
+    /**
+     * Returns the result of the given call, or of the call of the same key already in flight.
+     * The call runs on the executor, the callers block until it returns or they're canceled.
+     *
+     * @param key identifies the work of the call, i.e. the normalized URL of a request
+     * @param call is the work to run if no call of the key is in flight
+     * @param cancellationSignal of this caller, or null if it can't be canceled
+     * @return the result of the call, or null if this caller was canceled, or the thread was
+     * interrupted while waiting
+     */
+    public T execute( String key, Call< T > call, CancellationSignal cancellationSignal )
+    {
+        if ( cancellationSignal != null && cancellationSignal.isCanceled() )
+            return null;
+        
+        // Join the call in flight, unless all its callers were canceled, then it's replaced
+        Flight flight = new Flight( key, call );
+        Flight flightInFlight;
+        while ( true )
+        {
+            flightInFlight = mFlights.putIfAbsent( key, flight );
+            if ( flightInFlight == null )
+            {
+                flightInFlight = flight;
+                flightInFlight.join();
+                break;
+            }
+            
+            if ( flightInFlight.join() )
+                break;
+            mFlights.remove( key, flightInFlight );
+        }
+        
+        Caller caller = new Caller( flightInFlight );
+        if ( cancellationSignal != null )
+            cancellationSignal.setOnCancelListener( caller );
+        
+        if ( flightInFlight == flight )
+            mExecutor.execute( flight );
+        
+        try
+        {
+            flightInFlight.addWaiter( caller.mWaiting );
+            caller.mWaiting.await();
+            
+            if ( cancellationSignal != null && cancellationSignal.isCanceled() )
+                return null;
+            
+            return flightInFlight.get();
+        }
+        catch ( InterruptedException interruptedException )
+        {
+            Thread.currentThread().interrupt();
+            caller.leave();
+            return null;
+        }
+        catch ( ExecutionException executionException )
+        {
+            // Throw the failure of the call to all its callers
+            Throwable cause = executionException.getCause();
+            if ( cause instanceof RuntimeException )
+                throw ( RuntimeException ) cause;
+            if ( cause instanceof Error )
+                throw ( Error ) cause;
+            throw new RuntimeException( cause );
+        }
+        finally
+        {
+            // This caller is done with the call, canceling it later doesn't concern the call
+            if ( cancellationSignal != null )
+                cancellationSignal.setOnCancelListener( null );
+        }
+    }
+    
+    /**
+     * Returns the number of calls in flight.
+     */
+    public int size()
+    {
+        return mFlights.size();
+    }
+    
+    /**
+     * A caller waiting for a call, which stops waiting and leaves the call once it's canceled.
+     */
+    private class Caller implements CancellationSignal.OnCancelListener
+    {
+        private final Flight mFlight;
+        
+        /**
+         * Latch counted down when the call is done, or the caller canceled
+         */
+        private final CountDownLatch mWaiting = new CountDownLatch( 1 );
+        
+        /**
+         * Whether the caller left the call, a caller both canceled and interrupted leaves it once
+         */
+        private boolean mLeft;
+        
+        Caller( Flight flight )
+        {
+            mFlight = flight;
+        }
+        
+        @Override
+        public void onCancel()
+        {
+            mWaiting.countDown();
+            leave();
+        }
+        
+        /**
+         * Leave the call, unless this caller already left it.
+         */
+        void leave()
+        {
+            synchronized ( this )
+            {
+                if ( mLeft )
+                    return;
+                mLeft = true;
+            }
+            mFlight.leave();
+        }
+    }
+    
+    /**
+     * A call in flight, with the number of its callers still waiting for it.
+     */
+    private class Flight extends FutureTask< T >
+    {
+        /**
+         * Key of the call, which is in flight until it's done
+         */
+        private final String mKey;
+        
+        /**
+         * Signal of the call, canceled once all its callers are canceled
+         */
+        private final CancellationSignal mCancellationSignal;
+        
+        /**
+         * Number of callers not canceled
+         */
+        private int mCallers;
+        
+        /**
+         * Whether all the callers were canceled, so no caller can join anymore
+         */
+        private boolean mAbandoned;
+        
+        /**
+         * Latches of the callers waiting for the call, counted down when it's done
+         */
+        private List< CountDownLatch > mWaiters = new ArrayList<>();
+        
+        Flight( String key, Call< T > call )
+        {
+            this( key, call, new CancellationSignal() );
+        }
+        
+        private Flight( String key, final Call< T > call, final CancellationSignal cancellationSignal )
+        {
+            super( new Callable< T >()
+            {
+                @Override
+                public T call() throws Exception
+                {
+                    return call.call( cancellationSignal );
+                }
+            } );
+            mKey = key;
+            mCancellationSignal = cancellationSignal;
+        }
+        
+        /**
+         * Add a caller to the call, unless all its callers were canceled.
+         *
+         * @return whether the caller was added
+         */
+        synchronized boolean join()
+        {
+            if ( mAbandoned )
+                return false;
+            
+            mCallers++;
+            return true;
+        }
+        
+        /**
+         * Remove a canceled caller from the call, and cancel the call if it was the last one.
+         */
+        void leave()
+        {
+            synchronized ( this )
+            {
+                if ( --mCallers > 0 )
+                    return;
+                mAbandoned = true;
+            }
+            mCancellationSignal.cancel();
+        }
+        
+        /**
+         * Count down the given latch once the call is done.
+         */
+        synchronized void addWaiter( CountDownLatch waiter )
+        {
+            if ( isDone() )
+                waiter.countDown();
+            else
+                mWaiters.add( waiter );
+        }
+        
+        @Override
+        protected synchronized void done()
+        {
+            // The next caller starts a new call, even before the callers of this one return
+            mFlights.remove( mKey, this );
+            
+            for ( CountDownLatch waiter : mWaiters )
+                waiter.countDown();
+            mWaiters.clear();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,268 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the {@link EarthquakeArchive}, compared with keeping the newest version
+ * of every earthquake in memory.
+ */
+public class EarthquakeArchiveTest
+{
+    /**
+     * 2020-01-02T00:00:00Z, the start of a partition
+     */
+    private static final long TIME = 1577923200000L;
+    
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+    
+    private File mDirectory;
+    
+    private EarthquakeArchive mArchive;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        mDirectory = mTemporaryFolder.newFolder();
+        mArchive = new EarthquakeArchive( mDirectory );
+    }
+    
+    private static EarthquakeTable.Builder add( EarthquakeTable.Builder builder, String id, double magnitude,
+                                                long time, long updated, boolean deleted )
+    {
+        return builder.add( id, magnitude, "Tonga", time, updated,
+                "https://earthquake.usgs.gov/earthquakes/eventpage/" + id, deleted, -175.0, -21.0, 10 );
+    }
+    
+    private static EarthquakeTable earthquake( String id, double magnitude, long time, long updated, boolean deleted )
+    {
+        return add( new EarthquakeTable.Builder(), id, magnitude, time, updated, deleted ).build();
+    }
+    
+    /**
+     * Returns the event ids of the given earthquakes, in their order.
+     */
+    private static String idsOf( EarthquakeTable earthquakes )
+    {
+        StringBuilder ids = new StringBuilder();
+        for ( int row = 0; row < earthquakes.size(); row++ )
+            ids.append( row == 0 ? "" : " " ).append( earthquakes.getId( row ) );
+        return ids.toString();
+    }
+    
+    @Test
+    public void query_returnsTheEarthquakesOfTheRangeAboveTheMagnitude()
+    {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( int i = 0; i < 6; i++ )
+            add( builder, "us" + i, 4 + i * 0.5, TIME + i * 5 * DAY, TIME + i * 5 * DAY, false );
+        assertEquals( 6, mArchive.append( builder.build() ) );
+        
+        EarthquakeTable earthquakes = mArchive.query( TIME + 5 * DAY, TIME + 20 * DAY, 5, EarthquakeOrder.TIME );
+        assertEquals( "us4 us3 us2", idsOf( earthquakes ) );
+        assertEquals( "us1 us2 us3 us4 us5",
+                idsOf( mArchive.query( TIME, TIME + 30 * DAY, 4.5, EarthquakeOrder.TIME_ASC ) ) );
+        
+        // The rows are kept as they were appended
+        EarthquakeTable first = mArchive.query( TIME, TIME, 0, EarthquakeOrder.TIME );
+        assertTrue( first.rowEquals( 0, builder.build(), 0 ) );
+    }
+    
+    @Test
+    public void append_skipsTheVersionsAlreadyArchived()
+    {
+        EarthquakeTable earthquakes = new EarthquakeTable.Builder()
+                .add( "us1", 5.0, "Tonga", TIME, TIME, null, false )
+                .add( "us2", 6.0, "Tonga", TIME + DAY, TIME + DAY, null, false )
+                .build();
+        assertEquals( 2, mArchive.append( earthquakes ) );
+        int segmentCount = mArchive.getSegmentCount();
+        
+        assertEquals( 0, mArchive.append( earthquakes ) );
+        assertEquals( segmentCount, mArchive.getSegmentCount() );
+        
+        // Nor the deletions of earthquakes which aren't archived
+        assertEquals( 0, mArchive.append( earthquake( "us3", 5.0, TIME, TIME + DAY, true ) ) );
+    }
+    
+    @Test
+    public void query_returnsTheNewestVersionOnly()
+    {
+        mArchive.append( earthquake( "us1", 5.2, TIME + 6 * DAY + 23 * 3600000L, TIME, false ) );
+        
+        // The revised time falls in the next partition, and the revised magnitude is lower
+        mArchive.append( earthquake( "us1", 4.8, TIME + 7 * DAY + 3600000L, TIME + 1, false ) );
+        
+        assertEquals( "", idsOf( mArchive.query( TIME, TIME + 7 * DAY - 1, 0, EarthquakeOrder.TIME ) ) );
+        assertEquals( "", idsOf( mArchive.query( TIME, TIME + 14 * DAY, 5, EarthquakeOrder.TIME ) ) );
+        EarthquakeTable earthquakes = mArchive.query( TIME, TIME + 14 * DAY, 0, EarthquakeOrder.TIME );
+        assertEquals( 1, earthquakes.size() );
+        assertEquals( 4.8, earthquakes.getMagnitude( 0 ), 0 );
+        
+        // A version older than the archived one is skipped
+        assertEquals( 0, mArchive.append( earthquake( "us1", 5.2, TIME + 6 * DAY, TIME - 1, false ) ) );
+    }
+    
+    @Test
+    public void query_hidesTheDeletedEarthquakes()
+    {
+        mArchive.append( new EarthquakeTable.Builder()
+                .add( "us1", 5.0, "Tonga", TIME, TIME, null, false )
+                .add( "us2", 6.0, "Tonga", TIME + DAY, TIME + DAY, null, false )
+                .build() );
+        mArchive.append( earthquake( "us1", 5.0, TIME, TIME + 2 * DAY, true ) );
+        
+        assertEquals( "us2", idsOf( mArchive.query( TIME, TIME + 7 * DAY, 0, EarthquakeOrder.TIME ) ) );
+    }
+    
+    @Test
+    public void query_onlyReadsTheSegmentsOfTheRangeAndMagnitude()
+    {
+        // One segment per week, with earthquakes of magnitude 3 or 6
+        for ( int week = 0; week < 10; week++ )
+            mArchive.append( earthquake( "us" + week, week % 2 == 0 ? 3 : 6, TIME + week * 7 * DAY + DAY,
+                    TIME, false ) );
+        
+        long segmentReads = Metrics.ARCHIVE_SEGMENT_READS.get();
+        assertEquals( "us5 us3", idsOf( mArchive.query( TIME + 14 * DAY, TIME + 42 * DAY - 1, 5,
+                EarthquakeOrder.TIME ) ) );
+        assertEquals( 2, Metrics.ARCHIVE_SEGMENT_READS.get() - segmentReads );
+    }
+    
+    @Test
+    public void compact_mergesTheSegmentsOfEveryPartition()
+    {
+        mArchive.append( new EarthquakeTable.Builder()
+                .add( "us1", 5.0, "Tonga", TIME, TIME, null, false )
+                .add( "us2", 6.0, "Tonga", TIME + DAY, TIME, null, false )
+                .add( "us3", 4.0, "Tonga", TIME + 2 * DAY, TIME, null, false )
+                .build() );
+        mArchive.append( earthquake( "us1", 5.1, TIME + 1000, TIME + 1, false ) );
+        mArchive.append( earthquake( "us2", 6.0, TIME + DAY, TIME + 1, true ) );
+        mArchive.append( earthquake( "us4", 3.0, TIME + 8 * DAY, TIME, false ) );
+        mArchive.append( earthquake( "us4", 3.5, TIME + 8 * DAY, TIME + 1, false ) );
+        assertEquals( 5, mArchive.getSegmentCount() );
+        
+        EarthquakeTable earthquakes = mArchive.query( TIME, TIME + 14 * DAY, 0, EarthquakeOrder.TIME );
+        mArchive.compact();
+        
+        assertEquals( 2, mArchive.getSegmentCount() );
+        assertEquals( earthquakes, mArchive.query( TIME, TIME + 14 * DAY, 0, EarthquakeOrder.TIME ) );
+        assertEquals( "us4 us3 us1", idsOf( earthquakes ) );
+        assertEquals( 2 * 2, mDirectory.list().length );
+        
+        // Only the newest versions are left, so the partitions stay as they are
+        long compactions = Metrics.ARCHIVE_COMPACTIONS.get();
+        mArchive.compact();
+        assertEquals( compactions, Metrics.ARCHIVE_COMPACTIONS.get() );
+    }
+    
+    @Test
+    public void open_readsTheSegmentsBackAndRebuildsMissingIndexes()
+    {
+        for ( int week = 0; week < 3; week++ )
+            mArchive.append( earthquake( "us" + week, 5, TIME + week * 7 * DAY, TIME, false ) );
+        EarthquakeTable earthquakes = mArchive.query( TIME, TIME + 21 * DAY, 0, EarthquakeOrder.TIME );
+        
+        for ( File file : mDirectory.listFiles() )
+            if ( file.getName().startsWith( EarthquakeArchive.partitionOf( TIME ) + "_" ) &&
+                    file.getName().endsWith( ".idx" ) )
+                assertTrue( file.delete() );
+        
+        long indexRebuilds = Metrics.ARCHIVE_INDEX_REBUILDS.get();
+        EarthquakeArchive archive = new EarthquakeArchive( mDirectory );
+        assertEquals( 3, archive.getSegmentCount() );
+        assertEquals( 1, Metrics.ARCHIVE_INDEX_REBUILDS.get() - indexRebuilds );
+        assertEquals( earthquakes, archive.query( TIME, TIME + 21 * DAY, 0, EarthquakeOrder.TIME ) );
+        
+        // The new segments come after the ones read back
+        archive.append( earthquake( "us0", 5, TIME + 1000, TIME + 1, false ) );
+        assertEquals( TIME + 1000, archive.query( TIME, TIME + DAY, 0, EarthquakeOrder.TIME )
+                .getTimeInMilliseconds( 0 ) );
+    }
+    
+    @Test
+    public void partitionOf_roundsDown()
+    {
+        assertEquals( 0, EarthquakeArchive.partitionOf( 0 ) );
+        assertEquals( 0, EarthquakeArchive.partitionOf( EarthquakeArchive.PARTITION_LENGTH - 1 ) );
+        assertEquals( 1, EarthquakeArchive.partitionOf( EarthquakeArchive.PARTITION_LENGTH ) );
+        assertEquals( -1, EarthquakeArchive.partitionOf( -1 ) );
+        assertEquals( -1, EarthquakeArchive.partitionOf( -EarthquakeArchive.PARTITION_LENGTH ) );
+    }
+    
+    @Test
+    public void query_agreesWithTheNewestVersionsAcrossAppendsAndCompactions()
+    {
+        // Versions of 200 earthquakes over 8 weeks, revised by up to 2 hours and 1 magnitude
+        Random random = new Random( 42 );
+        Map< String, long[] > newest = new HashMap<>();
+        Map< String, Double > newestMagnitudes = new HashMap<>();
+        long updated = TIME;
+        for ( int append = 0; append < 60; append++ )
+        {
+            EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+            for ( int i = 0; i < 20; i++ )
+            {
+                String id = "us" + random.nextInt( 200 );
+                long[] version = newest.get( id );
+                if ( version != null && random.nextInt( 4 ) == 0 )
+                {
+                    // The same version again, as a page fetched twice
+                    add( builder, id, newestMagnitudes.get( id ), version[ 0 ], version[ 1 ], version[ 2 ] != 0 );
+                    continue;
+                }
+                
+                long time = version == null ? TIME + ( long ) ( random.nextDouble() * 56 * DAY ) :
+                        version[ 0 ] + random.nextInt( 4 * 3600000 ) - 2 * 3600000;
+                double magnitude = version == null || random.nextBoolean() ?
+                        2 + random.nextInt( 50 ) / 10.0 : newestMagnitudes.get( id );
+                boolean deleted = version != null && random.nextInt( 10 ) == 0;
+                add( builder, id, magnitude, time, ++updated, deleted );
+                newest.put( id, new long[] { time, updated, deleted ? 1 : 0 } );
+                newestMagnitudes.put( id, magnitude );
+            }
+            mArchive.append( builder.build() );
+            
+            if ( append % 7 == 6 )
+                mArchive.compact();
+            
+            // Compare random queries with the newest versions
+            for ( int query = 0; query < 5; query++ )
+            {
+                long startTime = TIME + ( long ) ( random.nextDouble() * 56 * DAY ) - DAY;
+                long endTime = startTime + ( long ) ( random.nextDouble() * 14 * DAY );
+                double minMagnitude = random.nextInt( 60 ) / 10.0;
+                
+                Map< String, Long > expected = new HashMap<>();
+                for ( Map.Entry< String, long[] > entry : newest.entrySet() )
+                {
+                    long[] version = entry.getValue();
+                    if ( version[ 2 ] == 0 && version[ 0 ] >= startTime && version[ 0 ] <= endTime &&
+                            newestMagnitudes.get( entry.getKey() ) >= minMagnitude )
+                        expected.put( entry.getKey(), version[ 1 ] );
+                }
+                
+                EarthquakeTable earthquakes = mArchive.query( startTime, endTime, minMagnitude, EarthquakeOrder.TIME );
+                Map< String, Long > actual = new HashMap<>();
+                for ( int row = 0; row < earthquakes.size(); row++ )
+                    actual.put( earthquakes.getId( row ), earthquakes.getUpdated( row ) );
+                assertEquals( "append " + append, expected, actual );
+                assertEquals( expected.size(), earthquakes.size() );
+            }
+        }
+    }
+}
\ No newline at end of file
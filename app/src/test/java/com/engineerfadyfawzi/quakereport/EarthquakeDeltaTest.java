@@ -0,0 +1,162 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of merging the earthquakes changed since the last sync by event id.
+ */
+public class EarthquakeDeltaTest
+{
+    private static Earthquake earthquake( String id, long time, long updated )
+    {
+        return new Earthquake( id, 5.0, "Tonga", time, updated, "https://earthquake.usgs.gov/earthquakes/eventpage/" + id );
+    }
+    
+    private static Earthquake deleted( String id, long time, long updated )
+    {
+        return new Earthquake( id, 5.0, "Tonga", time, updated, null, true );
+    }
+    
+    private static EarthquakeTable table( Earthquake... earthquakes )
+    {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( Earthquake earthquake : earthquakes )
+            builder.add( earthquake );
+        return builder.build();
+    }
+    
+    private static final Earthquake C = earthquake( "c", 300, 300 );
+    
+    private static final Earthquake B = earthquake( "b", 200, 200 );
+    
+    private static final Earthquake A = earthquake( "a", 100, 100 );
+    
+    private static final EarthquakeTable PREVIOUS = table( C, B, A );
+    
+    @Test
+    public void merge_insertsNewEarthquakesInOrder()
+    {
+        Earthquake inserted = earthquake( "d", 250, 400 );
+        
+        EarthquakeDelta delta = EarthquakeDelta.merge( PREVIOUS, table( inserted ), EarthquakeOrder.TIME );
+        
+        assertEquals( table( C, inserted, B, A ), delta.getEarthquakes() );
+        assertEquals( 1, delta.getInsertedCount() );
+        assertEquals( 0, delta.getUpdatedCount() );
+        assertFalse( delta.isEmpty() );
+    }
+    
+    @Test
+    public void merge_replacesUpdatedEarthquakes()
+    {
+        Earthquake updated = new Earthquake( "b", 6.1, "Tonga", 200, 500, "url" );
+        
+        EarthquakeDelta delta = EarthquakeDelta.merge( PREVIOUS, table( updated ), EarthquakeOrder.TIME );
+        
+        assertEquals( table( C, updated, A ), delta.getEarthquakes() );
+        assertEquals( "url", delta.getEarthquakes().getUrl( 1 ) );
+        assertEquals( 1, delta.getUpdatedCount() );
+    }
+    
+    @Test
+    public void merge_removesDeletedEarthquakes()
+    {
+        EarthquakeDelta delta = EarthquakeDelta.merge( PREVIOUS,
+                table( deleted( "a", 100, 600 ), deleted( "unknown", 50, 600 ) ), EarthquakeOrder.TIME );
+        
+        assertEquals( table( C, B ), delta.getEarthquakes() );
+        assertEquals( 1, delta.getDeletedCount() );
+        assertEquals( 0, delta.getInsertedCount() );
+    }
+    
+    @Test
+    public void merge_ignoresUnchangedAndOlderVersions()
+    {
+        EarthquakeDelta delta = EarthquakeDelta.merge( PREVIOUS,
+                table( earthquake( "c", 300, 300 ), earthquake( "b", 200, 150 ) ), EarthquakeOrder.TIME );
+        
+        assertTrue( delta.isEmpty() );
+        assertEquals( PREVIOUS, delta.getEarthquakes() );
+    }
+    
+    @Test
+    public void merge_appliesAllChangesInTheOrderOfTheQuery()
+    {
+        Earthquake inserted = earthquake( "e", 400, 700 );
+        Earthquake updated = new Earthquake( "a", 4.0, "Chile", 350, 700, "url" );
+        EarthquakeTable changes = table( inserted, updated, deleted( "c", 300, 700 ) );
+        
+        EarthquakeDelta delta = EarthquakeDelta.merge( PREVIOUS, changes, EarthquakeOrder.MAGNITUDE_ASC );
+        
+        assertEquals( table( updated, B, inserted ), delta.getEarthquakes() );
+        assertEquals( 700, EarthquakeDelta.getWatermark( delta.getEarthquakes(), 0 ) );
+    }
+    
+    @Test
+    public void merge_dropsTheChangesSortingAfterTheLoadedPages()
+    {
+        Earthquake updated = new Earthquake( "b", 4.0, "Tonga", 200, 500, "url" );
+        Earthquake inserted = new Earthquake( "d", 4.5, "Tonga", 400, 500, "url" );
+        Earthquake first = new Earthquake( "e", 7.0, "Tonga", 450, 500, "url" );
+        EarthquakeTable previous = table( new Earthquake( "c", 6.0, "Tonga", 300, 300, "url" ),
+                new Earthquake( "b", 5.5, "Tonga", 200, 200, "url" ) );
+        
+        EarthquakeDelta delta = EarthquakeDelta.merge( previous, table( updated, inserted, first ),
+                EarthquakeOrder.MAGNITUDE, false );
+        
+        assertEquals( 2, delta.getEarthquakes().size() );
+        assertEquals( "e", delta.getEarthquakes().getId( 0 ) );
+        assertEquals( "c", delta.getEarthquakes().getId( 1 ) );
+        assertEquals( 1, delta.getInsertedCount() );
+        assertEquals( 1, delta.getDeletedCount() );
+        
+        // The whole query keeps them all
+        assertEquals( 4, EarthquakeDelta.merge( previous, table( updated, inserted, first ),
+                EarthquakeOrder.MAGNITUDE, true ).getEarthquakes().size() );
+    }
+    
+    @Test
+    public void merge_thenNextPage_loadsEveryEarthquakeOnce()
+    {
+        // The query by magnitude, on the server, and its first page
+        EarthquakeTable.Builder query = new EarthquakeTable.Builder();
+        for ( int i = 0; i < 8; i++ )
+            query.add( new Earthquake( "us" + i, 7.0 - i * 0.5, "Tonga", 100 + i, 100, "url" ) );
+        EarthquakeTable server = query.build();
+        EarthquakeTable pages = page( server, 0, 3 );
+        
+        // An old small earthquake is revised, it's still in the last page of the query
+        Earthquake revised = new Earthquake( "us7", 3.6, "Tonga", 107, 200, "url" );
+        server = EarthquakeDelta.merge( server, table( revised ), EarthquakeOrder.MAGNITUDE ).getEarthquakes();
+        pages = EarthquakeDelta.merge( pages, table( revised ), EarthquakeOrder.MAGNITUDE, false ).getEarthquakes();
+        
+        // The next pages start right after the loaded rows
+        while ( pages.size() < server.size() )
+            pages = EarthquakeLoader.appendPage( pages, page( server, pages.size(), 3 ) );
+        
+        assertEquals( server.size(), pages.size() );
+        for ( int row = 0; row < server.size(); row++ )
+            assertEquals( server.getId( row ), pages.getId( row ) );
+    }
+    
+    @Test
+    public void appendPage_skipsTheEarthquakesAlreadyLoaded()
+    {
+        EarthquakeTable pages = EarthquakeLoader.appendPage( PREVIOUS, table( A, earthquake( "d", 50, 50 ) ) );
+        
+        assertEquals( table( C, B, A, earthquake( "d", 50, 50 ) ), pages );
+    }
+    
+    /**
+     * Returns the page of the given query starting at the given row.
+     */
+    private static EarthquakeTable page( EarthquakeTable query, int start, int size )
+    {
+        int[] rows = new int[ Math.max( 0, Math.min( size, query.size() - start ) ) ];
+        for ( int i = 0; i < rows.length; i++ )
+            rows[ i ] = start + i;
+        return query.select( rows );
+    }
+}
\ No newline at end of file
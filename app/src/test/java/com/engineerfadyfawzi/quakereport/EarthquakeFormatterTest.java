@@ -0,0 +1,62 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of formatting the rows of an {@link EarthquakeTable} for display.
+ */
+public class EarthquakeFormatterTest
+{
+    private static final int[] MAGNITUDE_COLORS = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+    
+    private final EarthquakeFormatter mFormatter = new EarthquakeFormatter( MAGNITUDE_COLORS, "Near the" );
+    
+    @Test
+    public void location_isSplitAtTheOffset()
+    {
+        assertEquals( "5km N of ", mFormatter.getLocationOffset( "5km N of Cairo, Egypt" ) );
+        assertEquals( "Cairo, Egypt", mFormatter.getPrimaryLocation( "5km N of Cairo, Egypt" ) );
+        assertEquals( "Near the", mFormatter.getLocationOffset( "Pacific-Antarctic Ridge" ) );
+        assertEquals( "Pacific-Antarctic Ridge", mFormatter.getPrimaryLocation( "Pacific-Antarctic Ridge" ) );
+    }
+    
+    @Test
+    public void magnitude_isFormattedWithItsColor()
+    {
+        assertEquals( "7.2", mFormatter.formatMagnitude( 7.23 ) );
+        assertEquals( 7, mFormatter.getMagnitudeColor( 7.23 ) );
+        assertEquals( 0, mFormatter.getMagnitudeColor( -0.5 ) );
+        assertEquals( 10, mFormatter.getMagnitudeColor( 12.0 ) );
+    }
+    
+    @Test
+    public void format_onlyFormatsNewRows()
+    {
+        EarthquakeTable page = new EarthquakeTable.Builder()
+                .add( "a", 4.5, "5km N of Cairo, Egypt", 100, 100, null, false )
+                .build();
+        EarthquakeTable formattedPage = mFormatter.format( page );
+        
+        assertFalse( page.isFormatted() );
+        assertTrue( formattedPage.isFormatted() );
+        assertSame( formattedPage, mFormatter.format( formattedPage ) );
+        
+        // Appending a page keeps the formatted rows of the previous pages
+        EarthquakeTable appended = new EarthquakeTable.Builder()
+                .addAll( formattedPage )
+                .add( "b", 6.1, "Pacific-Antarctic Ridge", 200, 200, null, false )
+                .build();
+        assertTrue( appended.isFormatted( 0 ) );
+        assertFalse( appended.isFormatted( 1 ) );
+        
+        EarthquakeTable formatted = mFormatter.format( appended );
+        assertSame( formattedPage.getFormattedDate( 0 ), formatted.getFormattedDate( 0 ) );
+        assertEquals( "Cairo, Egypt", formatted.getPrimaryLocation( 0 ) );
+        assertEquals( "6.1", formatted.getFormattedMagnitude( 1 ) );
+        assertEquals( "Near the", formatted.getLocationOffset( 1 ) );
+        assertEquals( 6, formatted.getMagnitudeColor( 1 ) );
+        assertEquals( appended, formatted );
+    }
+}
\ No newline at end of file
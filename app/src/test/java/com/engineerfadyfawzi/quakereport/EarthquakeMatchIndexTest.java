@@ -0,0 +1,131 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the match index, compared with comparing every pair of earthquakes.
+ */
+public class EarthquakeMatchIndexTest
+{
+    /**
+     * 2020-01-01T00:00:00Z
+     */
+    private static final long TIME = 1577836800000L;
+    
+    private static EarthquakeTable catalog()
+    {
+        return new EarthquakeTable.Builder()
+                .add( "us1", 5.0, "Tonga", TIME, TIME, null, false, -175.0, -21.0, 10 )
+                .add( "us2", 6.1, "Southern Alaska", TIME + 60000, TIME + 60000, null, false, -150.0, 61.0, 10 )
+                .add( "us3", 4.5, "Tonga", TIME + 70000, TIME + 70000, null, false, -175.0, -21.0, 10 )
+                .build();
+    }
+    
+    private static EarthquakeTable other( String id, double magnitude, long time, double longitude, double latitude )
+    {
+        return new EarthquakeTable.Builder()
+                .add( id, magnitude, "Tonga", time, time, null, false, longitude, latitude, 10 )
+                .build();
+    }
+    
+    @Test
+    public void find_matchesAnEarthquakeWithinTheTolerances()
+    {
+        EarthquakeMatchIndex index = new EarthquakeMatchIndex( catalog() );
+        
+        assertEquals( 0, index.find( other( "at1", 5.3, TIME + 5000, -174.7, -21.2 ), 0 ) );
+        assertEquals( 1, index.find( other( "at2", 5.8, TIME + 55000, -150.5, 61.3 ), 0 ) );
+    }
+    
+    @Test
+    public void find_doesNotMatchAnEarthquakeOutsideATolerance()
+    {
+        EarthquakeMatchIndex index = new EarthquakeMatchIndex( catalog() );
+        
+        // Too early, too far, and too strong
+        assertEquals( -1, index.find( other( "at1", 5.0, TIME - 20000, -175.0, -21.0 ), 0 ) );
+        assertEquals( -1, index.find( other( "at1", 5.0, TIME, -173.0, -21.0 ), 0 ) );
+        assertEquals( -1, index.find( other( "at1", 5.7, TIME, -175.0, -21.0 ), 0 ) );
+    }
+    
+    @Test
+    public void find_matchesTheSameEventIdWhateverItsValues()
+    {
+        EarthquakeMatchIndex index = new EarthquakeMatchIndex( catalog() );
+        
+        assertEquals( 2, index.find( other( "us3", 3.0, TIME + 3600000, Double.NaN, Double.NaN ), 0 ) );
+    }
+    
+    @Test
+    public void find_doesNotMatchAnUnknownEpicenter()
+    {
+        EarthquakeMatchIndex index = new EarthquakeMatchIndex( catalog() );
+        
+        assertEquals( -1, index.find( other( "at1", 5.0, TIME, Double.NaN, Double.NaN ), 0 ) );
+    }
+    
+    @Test
+    public void find_returnsTheClosestMatchInTime()
+    {
+        EarthquakeMatchIndex index = new EarthquakeMatchIndex( catalog() );
+        
+        // us1 and us3 are at the same place, 70 seconds apart
+        assertEquals( 2, index.find( other( "at3", 4.8, TIME + 60000, -175.0, -21.0 ), 0 ) );
+        assertEquals( 2, index.find( other( "at3", 4.8, TIME + 80000, -175.0, -21.0 ), 0 ) );
+        assertEquals( 0, index.find( other( "at1", 4.8, TIME + 10000, -175.0, -21.0 ), 0 ) );
+    }
+    
+    @Test
+    public void find_agreesWithComparingEveryPair()
+    {
+        // Earthquakes a few minutes apart in a small region, so many are close to each other
+        Random random = new Random( 42 );
+        EarthquakeTable.Builder catalog = new EarthquakeTable.Builder();
+        EarthquakeTable.Builder others = new EarthquakeTable.Builder();
+        for ( int i = 0; i < 2000; i++ )
+        {
+            catalog.add( "us" + i, 4 + random.nextInt( 20 ) / 10.0, "Tonga", TIME + random.nextInt( 3600000 ), 0,
+                    null, false, -175 + random.nextDouble() * 3, -21 + random.nextDouble() * 3, 10 );
+            others.add( "at" + i, 4 + random.nextInt( 20 ) / 10.0, "Tonga", TIME + random.nextInt( 3600000 ), 0,
+                    null, false, -175 + random.nextDouble() * 3, -21 + random.nextDouble() * 3, 10 );
+        }
+        EarthquakeTable earthquakes = catalog.build();
+        EarthquakeTable otherEarthquakes = others.build();
+        EarthquakeMatchIndex index = new EarthquakeMatchIndex( earthquakes );
+        
+        int matchCount = 0;
+        for ( int row = 0; row < otherEarthquakes.size(); row++ )
+        {
+            long time = otherEarthquakes.getTimeInMilliseconds( row );
+            
+            // Smallest time difference of the matching earthquakes, comparing all of them
+            long closest = -1;
+            for ( int candidate = 0; candidate < earthquakes.size(); candidate++ )
+            {
+                long timeDifference = Math.abs( earthquakes.getTimeInMilliseconds( candidate ) - time );
+                if ( timeDifference <= EarthquakeMatchIndex.DEFAULT_TIME_TOLERANCE &&
+                        Math.abs( earthquakes.getMagnitude( candidate ) - otherEarthquakes.getMagnitude( row ) ) <=
+                                EarthquakeMatchIndex.DEFAULT_MAGNITUDE_TOLERANCE &&
+                        EarthquakeSpatialIndex.distanceKm( otherEarthquakes.getLatitude( row ),
+                                otherEarthquakes.getLongitude( row ), earthquakes.getLatitude( candidate ),
+                                earthquakes.getLongitude( candidate ) ) <= EarthquakeMatchIndex.DEFAULT_DISTANCE_TOLERANCE_KM &&
+                        ( closest < 0 || timeDifference < closest ) )
+                    closest = timeDifference;
+            }
+            
+            int match = index.find( otherEarthquakes, row );
+            if ( closest < 0 )
+                assertEquals( -1, match );
+            else
+            {
+                assertEquals( closest, Math.abs( earthquakes.getTimeInMilliseconds( match ) - time ) );
+                matchCount++;
+            }
+        }
+        assertTrue( matchCount > 10 );
+    }
+}
\ No newline at end of file
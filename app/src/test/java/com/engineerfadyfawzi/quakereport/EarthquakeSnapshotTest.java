@@ -0,0 +1,154 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of writing an {@link EarthquakeSnapshot} and mapping it back.
+ */
+public class EarthquakeSnapshotTest
+{
+    private static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+    
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+    
+    private static EarthquakeTable earthquakes()
+    {
+        return new EarthquakeTable.Builder()
+                .add( "us1", 4.5, "5km N of Cairo, Egypt", 100, 110, EVENT_PAGE_URL + "us1", false,
+                        31.2, 30.1, 10 )
+                .add( "us2", 6.1, "Pacific-Antarctic Ridge", 200, 210, "https://example.com/other", true,
+                        -120.5, -55.3, Double.NaN, 87, 572, true, "yellow" )
+                .add( "us3", 2.7, "5km N of Cairo, Egypt", 300, 310, EVENT_PAGE_URL + "us3", false )
+                .add( null, 3.0, null, 400, 410, null, false )
+                .add( "ak4", 5.2, "Ōkawa, Japan", 500, 510, EVENT_PAGE_URL + "ak4", false )
+                .build();
+    }
+    
+    @Test
+    public void open_readsBackWhatWasWritten() throws IOException
+    {
+        File file = mTemporaryFolder.newFile();
+        EarthquakeTable earthquakes = earthquakes();
+        EarthquakeSnapshot.write( file, earthquakes, "\"v1\"", "Wed, 14 Oct 2020 13:00:00 GMT" );
+        
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open( file );
+        assertEquals( "\"v1\"", snapshot.getETag() );
+        assertEquals( "Wed, 14 Oct 2020 13:00:00 GMT", snapshot.getLastModified() );
+        assertEquals( earthquakes.size(), snapshot.size() );
+        
+        // Rows are read lazily, in any order
+        for ( int row = snapshot.size() - 1; row >= 0; row-- )
+        {
+            assertEquals( earthquakes.getId( row ), snapshot.getId( row ) );
+            assertEquals( earthquakes.getMagnitude( row ), snapshot.getMagnitude( row ), 0 );
+            assertEquals( earthquakes.getLocation( row ), snapshot.getLocation( row ) );
+            assertEquals( earthquakes.getTimeInMilliseconds( row ), snapshot.getTimeInMilliseconds( row ) );
+            assertEquals( earthquakes.getUpdated( row ), snapshot.getUpdated( row ) );
+            assertEquals( earthquakes.getUrl( row ), snapshot.getUrl( row ) );
+            assertEquals( earthquakes.isDeleted( row ), snapshot.isDeleted( row ) );
+            assertEquals( earthquakes.getLongitude( row ), snapshot.getLongitude( row ), 0 );
+            assertEquals( earthquakes.getLatitude( row ), snapshot.getLatitude( row ), 0 );
+            assertEquals( earthquakes.getDepth( row ), snapshot.getDepth( row ), 0 );
+            assertEquals( earthquakes.getFelt( row ), snapshot.getFelt( row ) );
+            assertEquals( earthquakes.getSignificance( row ), snapshot.getSignificance( row ) );
+            assertEquals( earthquakes.isTsunami( row ), snapshot.isTsunami( row ) );
+            assertEquals( earthquakes.getAlertLevel( row ), snapshot.getAlertLevel( row ) );
+        }
+        
+        assertEquals( earthquakes, snapshot.toTable() );
+    }
+    
+    @Test
+    public void toTable_isSortedAndFormattedLikeAnyTable() throws IOException
+    {
+        File file = mTemporaryFolder.newFile();
+        EarthquakeSnapshot.write( file, earthquakes(), null, null );
+        
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open( file );
+        assertNull( snapshot.getETag() );
+        assertNull( snapshot.getLastModified() );
+        
+        EarthquakeTable table = snapshot.toTable();
+        assertEquals( earthquakes().sort( EarthquakeOrder.MAGNITUDE ), table.sort( EarthquakeOrder.MAGNITUDE ) );
+        assertTrue( table.format( new EarthquakeFormatter( new int[ 11 ], "Near the" ) ).isFormatted() );
+    }
+    
+    @Test
+    public void write_replacesThePreviousSnapshot() throws IOException
+    {
+        File file = mTemporaryFolder.newFile();
+        EarthquakeSnapshot.write( file, earthquakes(), "\"v1\"", null );
+        EarthquakeSnapshot.write( file, EarthquakeTable.EMPTY, "\"v2\"", null );
+        
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open( file );
+        assertEquals( 0, snapshot.size() );
+        assertEquals( "\"v2\"", snapshot.getETag() );
+        assertEquals( EarthquakeTable.EMPTY, snapshot.toTable() );
+        assertEquals( 1, mTemporaryFolder.getRoot().list().length );
+    }
+    
+    @Test( expected = IOException.class )
+    public void open_rejectsAnotherVersion() throws IOException
+    {
+        File file = mTemporaryFolder.newFile();
+        EarthquakeSnapshot.write( file, earthquakes(), null, null );
+        
+        RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+        try
+        {
+            randomAccessFile.seek( 4 );
+            randomAccessFile.writeInt( EarthquakeSnapshot.VERSION + 1 );
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+        
+        EarthquakeSnapshot.open( file );
+    }
+    
+    @Test( expected = IOException.class )
+    public void open_rejectsATruncatedSnapshot() throws IOException
+    {
+        File file = mTemporaryFolder.newFile();
+        EarthquakeSnapshot.write( file, earthquakes(), null, null );
+        
+        RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+        try
+        {
+            randomAccessFile.setLength( randomAccessFile.length() / 2 );
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+        
+        EarthquakeSnapshot.open( file );
+    }
+    
+    @Test( expected = IOException.class )
+    public void open_rejectsAJsonFeed() throws IOException
+    {
+        File file = mTemporaryFolder.newFile();
+        RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+        try
+        {
+            randomAccessFile.writeBytes( "{\"type\":\"FeatureCollection\",\"features\":[]}" );
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+        
+        EarthquakeSnapshot.open( file );
+    }
+}
\ No newline at end of file
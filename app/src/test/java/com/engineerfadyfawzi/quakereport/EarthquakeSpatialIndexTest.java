@@ -0,0 +1,153 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the spatial index, compared with measuring the distance to every earthquake.
+ */
+public class EarthquakeSpatialIndexTest
+{
+    /**
+     * Earthquakes all over the world, with a few of unknown coordinates
+     */
+    private static final EarthquakeTable EARTHQUAKES = randomEarthquakes( 5000 );
+    
+    private static final EarthquakeSpatialIndex INDEX = new EarthquakeSpatialIndex( EARTHQUAKES );
+    
+    /**
+     * Places to search around, including near the poles and the antimeridian
+     */
+    private static final double[][] PLACES = {
+            { 30.04, 31.24 }, { -33.45, -70.67 }, { 0, 0 }, { 51.9, 179.6 }, { -17.8, -179.9 },
+            { 89.5, 10 }, { -88.9, -120 }, { 64.1, -21.9 }
+    };
+    
+    private static EarthquakeTable randomEarthquakes( int count )
+    {
+        Random random = new Random( 42 );
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            boolean unknown = i % 100 == 0;
+            builder.add( "us" + i, 5.0, "Tonga", i, i, null, false,
+                    unknown ? Double.NaN : random.nextDouble() * 360 - 180,
+                    unknown ? Double.NaN : Math.toDegrees( Math.asin( random.nextDouble() * 2 - 1 ) ),
+                    10 );
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Returns the rows within the radius, nearest first, by measuring the distance to every earthquake.
+     */
+    private static List< Integer > scanRadius( double latitude, double longitude, double radiusKm )
+    {
+        List< Integer > rows = new ArrayList<>();
+        for ( int row = 0; row < EARTHQUAKES.size(); row++ )
+        {
+            if ( !Double.isNaN( EARTHQUAKES.getLatitude( row ) ) &&
+                    distanceTo( row, latitude, longitude ) <= radiusKm )
+                rows.add( row );
+        }
+        return rows;
+    }
+    
+    private static double distanceTo( int row, double latitude, double longitude )
+    {
+        return EarthquakeSpatialIndex.distanceKm( latitude, longitude,
+                EARTHQUAKES.getLatitude( row ), EARTHQUAKES.getLongitude( row ) );
+    }
+    
+    private static List< Integer > toList( int[] rows )
+    {
+        List< Integer > list = new ArrayList<>();
+        for ( int row : rows )
+            list.add( row );
+        return list;
+    }
+    
+    @Test
+    public void withinRadius_findsTheSameEarthquakesAsAScanNearestFirst()
+    {
+        for ( double[] place : PLACES )
+        {
+            for ( double radiusKm : new double[] { 50, 300, 1500, 8000 } )
+            {
+                int[] rows = INDEX.withinRadius( place[ 0 ], place[ 1 ], radiusKm );
+                
+                List< Integer > sortedRows = toList( rows );
+                Collections.sort( sortedRows );
+                assertEquals( Arrays.toString( place ) + " " + radiusKm,
+                        scanRadius( place[ 0 ], place[ 1 ], radiusKm ), sortedRows );
+                
+                for ( int i = 1; i < rows.length; i++ )
+                    assertTrue( distanceTo( rows[ i - 1 ], place[ 0 ], place[ 1 ] ) <=
+                            distanceTo( rows[ i ], place[ 0 ], place[ 1 ] ) + 1e-3 );
+            }
+        }
+    }
+    
+    @Test
+    public void nearest_returnsTheNearestEarthquakes()
+    {
+        int[] rows = INDEX.nearest( 35.68, 139.69, 25 );
+        
+        List< Integer > scannedRows = scanRadius( 35.68, 139.69, 20000 );
+        assertEquals( 25, rows.length );
+        assertEquals( 4950, INDEX.size() );
+        double farthest = distanceTo( rows[ 24 ], 35.68, 139.69 );
+        int nearerCount = 0;
+        for ( int row : scannedRows )
+            if ( distanceTo( row, 35.68, 139.69 ) < farthest )
+                nearerCount++;
+        assertEquals( 24, nearerCount );
+    }
+    
+    @Test
+    public void withinBox_handlesTheAntimeridian()
+    {
+        int[] rows = INDEX.withinBox( -30, 170, 10, -170 );
+        
+        List< Integer > scannedRows = new ArrayList<>();
+        for ( int row = 0; row < EARTHQUAKES.size(); row++ )
+        {
+            double latitude = EARTHQUAKES.getLatitude( row );
+            double longitude = EARTHQUAKES.getLongitude( row );
+            if ( latitude >= -30 && latitude <= 10 && ( longitude >= 170 || longitude <= -170 ) )
+                scannedRows.add( row );
+        }
+        assertFalse( scannedRows.isEmpty() );
+        assertEquals( scannedRows, toList( rows ) );
+        
+        assertEquals( INDEX.size(), INDEX.withinBox( -90, -180, 90, 180 ).length );
+    }
+    
+    @Test
+    public void withinBox_aroundTheWorldButASliverOfACell_takesEveryOtherLongitude()
+    {
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex( new EarthquakeTable.Builder()
+                .add( "us1", 5.0, "Gulf of Guinea", 1, 1, null, false, 0, 0, 10 )
+                .add( "us2", 5.0, "Fiji", 2, 2, null, false, 179.3, 0, 10 )
+                .build() );
+        
+        // West and east sides in the same cell, the box crossing the antimeridian
+        assertEquals( Collections.singletonList( 0 ), toList( index.withinBox( -90, 179.5, 90, 179.2 ) ) );
+        assertEquals( Arrays.asList( 0, 1 ), toList( index.withinBox( -90, 179.5, 90, 179.4 ) ) );
+    }
+    
+    @Test
+    public void distanceKm_isTheGreatCircleDistance()
+    {
+        // Cairo to Tokyo is about 9,560 km
+        assertEquals( 9560, EarthquakeSpatialIndex.distanceKm( 30.04, 31.24, 35.68, 139.69 ), 20 );
+        assertEquals( 0, EarthquakeSpatialIndex.distanceKm( 10, 20, 10, 20 ), 0 );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the backoff of the background sync.
+ */
+public class EarthquakeSyncWorkerTest
+{
+    private static final long HOUR = 3600000;
+    
+    @Test
+    public void getSyncDelay_doublesWithEveryUnchangedSync()
+    {
+        assertEquals( HOUR, EarthquakeSyncWorker.getSyncDelay( HOUR, 0 ) );
+        assertEquals( 2 * HOUR, EarthquakeSyncWorker.getSyncDelay( HOUR, 1 ) );
+        assertEquals( 4 * HOUR, EarthquakeSyncWorker.getSyncDelay( HOUR, 2 ) );
+    }
+    
+    @Test
+    public void getSyncDelay_isAtMostTheMaximumBackoff()
+    {
+        long maxDelay = EarthquakeSyncWorker.MAX_BACKOFF_FACTOR * HOUR;
+        assertEquals( maxDelay, EarthquakeSyncWorker.getSyncDelay( HOUR, 3 ) );
+        assertEquals( maxDelay, EarthquakeSyncWorker.getSyncDelay( HOUR, 40 ) );
+        assertEquals( maxDelay, EarthquakeSyncWorker.getSyncDelay( HOUR, Integer.MAX_VALUE ) );
+    }
+}
\ No newline at end of file
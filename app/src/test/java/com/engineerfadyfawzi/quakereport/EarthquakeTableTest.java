@@ -0,0 +1,202 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the columnar {@link EarthquakeTable}, and of how much heap it takes
+ * compared to a list of {@link Earthquake} objects.
+ */
+public class EarthquakeTableTest
+{
+    private static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+    
+    /**
+     * Number of distinct places of the synthetic earthquakes, many earthquakes share a place
+     * like they do in real USGS feeds
+     */
+    private static final int PLACE_COUNT = 500;
+    
+    @Test
+    public void rows_readBackWhatWasAdded()
+    {
+        EarthquakeTable table = new EarthquakeTable.Builder()
+                .add( "us1", 4.5, "5km N of Cairo, Egypt", 100, 110, EVENT_PAGE_URL + "us1", false )
+                .add( "us2", 6.1, "Pacific-Antarctic Ridge", 200, 210, "https://example.com/other", true )
+                .build();
+        
+        assertEquals( 2, table.size() );
+        assertEquals( "us1", table.getId( 0 ) );
+        assertEquals( 4.5, table.getMagnitude( 0 ), 0 );
+        assertEquals( "5km N of Cairo, Egypt", table.getLocation( 0 ) );
+        assertEquals( 100, table.getTimeInMilliseconds( 0 ) );
+        assertEquals( 110, table.getUpdated( 0 ) );
+        assertEquals( EVENT_PAGE_URL + "us1", table.getUrl( 0 ) );
+        assertFalse( table.isDeleted( 0 ) );
+        
+        // URLs that don't end with the event id are kept whole
+        assertEquals( "https://example.com/other", table.getUrl( 1 ) );
+        assertTrue( table.isDeleted( 1 ) );
+        assertEquals( new Earthquake( "us2", 6.1, "Pacific-Antarctic Ridge", 200, 210,
+                "https://example.com/other", true ), table.getEarthquake( 1 ) );
+    }
+    
+    @Test
+    public void addEvent_keepsTheEventPageOfEachProvider()
+    {
+        String otherEventPageUrl = "https://www.seismicportal.eu/eventdetails.html?unid=";
+        EarthquakeTable table = new EarthquakeTable.Builder()
+                .addEvent( "us1", 4.5, "Tonga", 100, 110, EVENT_PAGE_URL + "us1", false,
+                        Double.NaN, Double.NaN, Double.NaN, -1, -1, false, null )
+                .addEvent( "eu2", 4.6, "Tonga", 200, 210, otherEventPageUrl + "eu2", false,
+                        Double.NaN, Double.NaN, Double.NaN, -1, -1, false, null )
+                .addEvent( "us3", 4.7, "Tonga", 300, 310, EVENT_PAGE_URL + "us3", false,
+                        Double.NaN, Double.NaN, Double.NaN, -1, -1, false, null )
+                .addEvent( "us4", 4.8, "Tonga", 400, 410, EVENT_PAGE_URL + "us4#executive", false,
+                        Double.NaN, Double.NaN, Double.NaN, -1, -1, false, null )
+                .addEvent( "us5", 4.9, "Tonga", 500, 510, "", false,
+                        Double.NaN, Double.NaN, Double.NaN, -1, -1, false, null )
+                .build();
+        
+        assertEquals( EVENT_PAGE_URL + "us1", table.getUrl( 0 ) );
+        assertEquals( otherEventPageUrl + "eu2", table.getUrl( 1 ) );
+        assertEquals( EVENT_PAGE_URL + "us3", table.getUrl( 2 ) );
+        assertEquals( EVENT_PAGE_URL + "us4#executive", table.getUrl( 3 ) );
+        assertEquals( "", table.getUrl( 4 ) );
+    }
+    
+    @Test
+    public void optionalProperties_areKeptWhenRowsAreCopied()
+    {
+        EarthquakeTable table = new EarthquakeTable.Builder()
+                .add( "us1", 7.1, "Tonga", 100, 110, EVENT_PAGE_URL + "us1", false,
+                        -175.2, -21.1, 10, 1523, 776, true, "orange" )
+                .add( "us2", 4.5, "5km N of Cairo, Egypt", 200, 210, EVENT_PAGE_URL + "us2", false )
+                .add( "us3", 5.0, "Tonga", 300, 310, EVENT_PAGE_URL + "us3", false,
+                        -175.2, -21.1, 10, -1, 385, false, "unknown" )
+                .build();
+        
+        assertEquals( 1523, table.getFelt( 0 ) );
+        assertEquals( 776, table.getSignificance( 0 ) );
+        assertTrue( table.isTsunami( 0 ) );
+        assertEquals( "orange", table.getAlertLevel( 0 ) );
+        
+        // Unknown properties, and alert levels USGS doesn't have
+        assertEquals( -1, table.getFelt( 1 ) );
+        assertEquals( -1, table.getSignificance( 1 ) );
+        assertFalse( table.isTsunami( 1 ) );
+        assertNull( table.getAlertLevel( 1 ) );
+        assertNull( table.getAlertLevel( 2 ) );
+        
+        EarthquakeTable copied = new EarthquakeTable.Builder().addAll( table ).build();
+        EarthquakeTable sorted = table.sort( EarthquakeOrder.TIME_ASC );
+        EarthquakeTable formatted = table.format( new EarthquakeFormatter( new int[ 11 ], "Near the" ) );
+        for ( EarthquakeTable other : new EarthquakeTable[] { copied, sorted, formatted } )
+        {
+            assertEquals( table, other );
+            assertEquals( 776, other.getSignificance( 0 ) );
+            assertTrue( other.isTsunami( 0 ) );
+            assertEquals( "orange", other.getAlertLevel( 0 ) );
+            assertEquals( EVENT_PAGE_URL + "us2", other.getUrl( 1 ) );
+        }
+        
+        // A revised property makes the row different
+        EarthquakeTable revised = new EarthquakeTable.Builder()
+                .add( "us1", 7.1, "Tonga", 100, 110, EVENT_PAGE_URL + "us1", false,
+                        -175.2, -21.1, 10, 1524, 776, true, "orange" )
+                .build();
+        assertFalse( table.rowEquals( 0, revised, 0 ) );
+    }
+    
+    @Test
+    public void sort_isStable()
+    {
+        EarthquakeTable table = new EarthquakeTable.Builder()
+                .add( "a", 5.0, "A", 100, 100, null, false )
+                .add( "b", 6.0, "B", 200, 200, null, false )
+                .add( "c", 5.0, "C", 300, 300, null, false )
+                .add( "d", 4.0, "D", 400, 400, null, false )
+                .build();
+        
+        EarthquakeTable sorted = table.sort( EarthquakeOrder.MAGNITUDE );
+        
+        assertEquals( "b", sorted.getId( 0 ) );
+        assertEquals( "a", sorted.getId( 1 ) );
+        assertEquals( "c", sorted.getId( 2 ) );
+        assertEquals( "d", sorted.getId( 3 ) );
+        assertEquals( "C", sorted.getLocation( 2 ) );
+        assertEquals( table, table.sort( EarthquakeOrder.TIME_ASC ) );
+    }
+    
+    /**
+     * Checks that an {@link EarthquakeTable} retains less heap than a list of {@link Earthquake}
+     * objects holding the same 1k, 20k and 100k earthquakes.
+     */
+    @Test
+    public void table_takesLessHeapThanList()
+    {
+        for ( int count : new int[] { 1000, 20000, 100000 } )
+        {
+            long before = usedHeap();
+            List< Earthquake > list = buildList( count );
+            long listBytes = usedHeap() - before;
+            
+            before = usedHeap();
+            EarthquakeTable table = buildTable( count );
+            long tableBytes = usedHeap() - before;
+            
+            assertEquals( list.size(), table.size() );
+            assertTrue( count + " earthquakes: table took " + tableBytes + " bytes, list " + listBytes,
+                    tableBytes < listBytes );
+        }
+    }
+    
+    /**
+     * Returns earthquakes like the parser used to create them, with their own location and URL
+     * strings, even for earthquakes at the same place.
+     */
+    private static List< Earthquake > buildList( int count )
+    {
+        List< Earthquake > earthquakes = new ArrayList<>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            String id = "us" + ( 7000000 + i );
+            earthquakes.add( new Earthquake( id, ( i % 80 ) / 10.0, place( i ), 1600000000000L - i * 60000L,
+                    1600000000000L, EVENT_PAGE_URL + id ) );
+        }
+        return earthquakes;
+    }
+    
+    private static EarthquakeTable buildTable( int count )
+    {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( int i = 0; i < count; i++ )
+        {
+            String id = "us" + ( 7000000 + i );
+            builder.add( id, ( i % 80 ) / 10.0, place( i ), 1600000000000L - i * 60000L,
+                    1600000000000L, EVENT_PAGE_URL + id, false );
+        }
+        return builder.build();
+    }
+    
+    private static String place( int i )
+    {
+        int place = i % PLACE_COUNT;
+        return ( place % 97 ) + "km NNE of Place " + place + ", Country";
+    }
+    
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 4; i++ )
+        {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
\ No newline at end of file
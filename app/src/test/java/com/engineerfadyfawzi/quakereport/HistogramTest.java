@@ -0,0 +1,114 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Local unit tests of recording values in a {@link Histogram} and reading their percentiles.
+ */
+public class HistogramTest
+{
+    @Test
+    public void getBucket_coversEveryValueWithContiguousBuckets()
+    {
+        // Every bucket starts right after the previous one ends
+        long previousMax = -1;
+        for ( int bucket = 0; bucket < Histogram.getBucket( Long.MAX_VALUE ); bucket++ )
+        {
+            assertEquals( bucket, Histogram.getBucket( previousMax + 1 ) );
+            long bucketMax = Histogram.getBucketMax( bucket );
+            assertEquals( bucket, Histogram.getBucket( bucketMax ) );
+            previousMax = bucketMax;
+        }
+        assertEquals( Long.MAX_VALUE, Histogram.getBucketMax( Histogram.getBucket( Long.MAX_VALUE ) ) );
+    }
+    
+    @Test
+    public void getValueAtPercentile_isWithinABucketOfTheExactPercentile()
+    {
+        Histogram histogram = new Histogram();
+        long[] values = new long[ 10000 ];
+        Random random = new Random( 42 );
+        for ( int i = 0; i < values.length; i++ )
+        {
+            // Log-normal like latencies, from a few microseconds to a few seconds
+            values[ i ] = ( long ) Math.exp( random.nextGaussian() * 2 + 9 );
+            histogram.record( values[ i ] );
+        }
+        Arrays.sort( values );
+        
+        for ( double percentile : new double[] { 1, 50, 90, 99, 99.9 } )
+        {
+            long exact = values[ ( int ) Math.ceil( percentile / 100 * values.length ) - 1 ];
+            long estimate = histogram.getValueAtPercentile( percentile );
+            assertTrue( percentile + ": " + estimate + " < " + exact, estimate >= exact );
+            assertTrue( percentile + ": " + estimate + " > " + exact, estimate <= exact + exact / 8 );
+        }
+        assertEquals( values[ values.length - 1 ], histogram.getValueAtPercentile( 100 ) );
+        assertEquals( values[ values.length - 1 ], histogram.getMax() );
+        assertEquals( values.length, histogram.getCount() );
+    }
+    
+    @Test
+    public void reset_forgetsTheRecordedValues()
+    {
+        Histogram histogram = new Histogram();
+        histogram.record( 5 );
+        histogram.record( 1000 );
+        histogram.record( -3 );
+        assertEquals( 3, histogram.getCount() );
+        assertEquals( 1005, histogram.getSum() );
+        assertEquals( 0, histogram.getValueAtPercentile( 1 ) );
+        
+        histogram.reset();
+        assertEquals( 0, histogram.getCount() );
+        assertEquals( 0, histogram.getMean() );
+        assertEquals( 0, histogram.getMax() );
+        assertEquals( 0, histogram.getValueAtPercentile( 50 ) );
+    }
+    
+    @Test
+    public void record_doesNotAllocate()
+    {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue( threadMXBean instanceof com.sun.management.ThreadMXBean );
+        com.sun.management.ThreadMXBean allocations = ( com.sun.management.ThreadMXBean ) threadMXBean;
+        assumeTrue( allocations.isThreadAllocatedMemorySupported() );
+        allocations.setThreadAllocatedMemoryEnabled( true );
+        
+        Histogram histogram = new Histogram();
+        long threadId = Thread.currentThread().getId();
+        // Warm up, so the measured loop is compiled and doesn't allocate while loading classes
+        for ( int i = 0; i < 100000; i++ )
+            histogram.record( i );
+        
+        long before = allocations.getThreadAllocatedBytes( threadId );
+        for ( int i = 0; i < 100000; i++ )
+            histogram.record( i * 31L );
+        long allocated = allocations.getThreadAllocatedBytes( threadId ) - before;
+        
+        // Reading the allocated bytes may allocate a little itself, but never per record
+        assertTrue( allocated + " bytes", allocated < 1000 );
+    }
+    
+    @Test
+    public void meteredInputStream_countsTheBytesRead() throws IOException
+    {
+        MeteredInputStream inputStream = new MeteredInputStream( new ByteArrayInputStream( new byte[ 100 ] ) );
+        assertEquals( 0, inputStream.read() );
+        assertEquals( 50, inputStream.read( new byte[ 50 ], 0, 50 ) );
+        assertEquals( 10, inputStream.skip( 10 ) );
+        assertEquals( 39, inputStream.read( new byte[ 64 ] ) );
+        assertEquals( -1, inputStream.read() );
+        assertEquals( 100, inputStream.getByteCount() );
+    }
+}
\ No newline at end of file
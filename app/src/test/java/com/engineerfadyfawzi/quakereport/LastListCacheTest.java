@@ -0,0 +1,54 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of keeping the first rows of the list displayed last.
+ */
+public class LastListCacheTest
+{
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+    
+    private static EarthquakeTable earthquakes( int count )
+    {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( int i = 0; i < count; i++ )
+            builder.add( "us" + i, 4 + i % 5, i + "km N of Cairo, Egypt", 1000 - i, 2000 - i,
+                    "https://earthquake.usgs.gov/earthquakes/eventpage/us" + i, false );
+        return builder.build();
+    }
+    
+    @Test
+    public void read_returnsTheFirstRowsWritten()
+    {
+        LastListCache lastListCache = new LastListCache( new File( mTemporaryFolder.getRoot(), "last" ), 3 );
+        lastListCache.write( earthquakes( 10 ) );
+        
+        EarthquakeTable lastList = lastListCache.read();
+        assertEquals( 3, lastList.size() );
+        for ( int row = 0; row < lastList.size(); row++ )
+            assertTrue( lastList.rowEquals( row, earthquakes( 10 ), row ) );
+        
+        // A shorter list is kept whole
+        lastListCache.write( earthquakes( 2 ) );
+        assertEquals( earthquakes( 2 ), lastListCache.read() );
+    }
+    
+    @Test
+    public void read_returnsNullWithoutALastList()
+    {
+        LastListCache lastListCache = new LastListCache( new File( mTemporaryFolder.getRoot(), "last" ), 3 );
+        assertNull( lastListCache.read() );
+        
+        lastListCache.write( earthquakes( 5 ) );
+        lastListCache.clear();
+        assertNull( lastListCache.read() );
+    }
+}
\ No newline at end of file
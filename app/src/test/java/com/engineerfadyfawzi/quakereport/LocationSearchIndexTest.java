@@ -0,0 +1,78 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of searching the earthquakes by the words of their primary location.
+ */
+public class LocationSearchIndexTest
+{
+    private static final EarthquakeFormatter FORMATTER =
+            new EarthquakeFormatter( new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, "Near the" );
+    
+    private static EarthquakeTable table( String... locations )
+    {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( int i = 0; i < locations.length; i++ )
+            builder.add( "us" + i, 5.0, locations[ i ], i, i, null, false );
+        return FORMATTER.format( builder.build() );
+    }
+    
+    private static final EarthquakeTable EARTHQUAKES = table(
+            "88 km N of Yelizovo, Russia",
+            "5 km NNE of Pahala, Hawaii",
+            "Tonga",
+            "28 km SSE of Ovalle, Chile",
+            "South of the Fiji Islands",
+            "113 km SSW of Kokopo, Papua New Guinea",
+            "Southern Alaska",
+            "12 km W of Anchor Point, Alaska",
+            "North Island of New Zealand" );
+    
+    @Test
+    public void search_matchesWordPrefixesOfThePrimaryLocation()
+    {
+        LocationSearchIndex index = new LocationSearchIndex( EARTHQUAKES );
+        
+        assertArrayEquals( new int[] { 6, 7 }, index.search( "alaska" ) );
+        assertArrayEquals( new int[] { 6, 7 }, index.search( "Ala" ) );
+        assertArrayEquals( new int[] { 3 }, index.search( "chile" ) );
+        assertArrayEquals( new int[] { 2 }, index.search( "TONGA" ) );
+        
+        // The location offset ("88 km N of") isn't searched
+        assertArrayEquals( new int[ 0 ], index.search( "km" ) );
+    }
+    
+    @Test
+    public void search_matchesEveryWordOfTheQuery()
+    {
+        LocationSearchIndex index = new LocationSearchIndex( EARTHQUAKES );
+        
+        assertArrayEquals( new int[] { 5, 8 }, index.search( "new" ) );
+        assertArrayEquals( new int[] { 8 }, index.search( "new z" ) );
+        assertArrayEquals( new int[] { 8 }, index.search( "zeal, new" ) );
+        assertArrayEquals( new int[ 0 ], index.search( "new chile" ) );
+        assertEquals( EARTHQUAKES.size(), index.search( "  " ).length );
+    }
+    
+    @Test
+    public void update_indexesAppendedRowsLikeAFullIndex()
+    {
+        EarthquakeTable firstPage = EARTHQUAKES.select( new int[] { 0, 1, 2, 3 } );
+        LocationSearchIndex index = new LocationSearchIndex( firstPage );
+        
+        LocationSearchIndex updated = index.update( EARTHQUAKES );
+        LocationSearchIndex full = new LocationSearchIndex( EARTHQUAKES );
+        for ( String query : new String[] { "a", "alaska", "new", "tonga", "s", "c", "pa", "zz" } )
+            assertArrayEquals( query, full.search( query ), updated.search( query ) );
+        
+        // The first index still searches its own rows
+        assertArrayEquals( new int[ 0 ], index.search( "alaska" ) );
+        
+        // Rows merged in between are indexed again
+        EarthquakeTable merged = EARTHQUAKES.select( new int[] { 6, 0, 1, 2, 3 } );
+        assertArrayEquals( new int[] { 0 }, index.update( merged ).search( "alaska" ) );
+    }
+}
\ No newline at end of file
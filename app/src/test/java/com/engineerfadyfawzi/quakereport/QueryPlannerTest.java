@@ -0,0 +1,88 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of answering a query from the earthquakes loaded for another query.
+ */
+public class QueryPlannerTest
+{
+    private static Earthquake earthquake( String id, double magnitude, long time )
+    {
+        return new Earthquake( id, magnitude, "Tonga", time, time, "https://earthquake.usgs.gov/earthquakes/eventpage/" + id );
+    }
+    
+    private static EarthquakeTable table( Earthquake... earthquakes )
+    {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( Earthquake earthquake : earthquakes )
+            builder.add( earthquake );
+        return builder.build();
+    }
+    
+    private static final Earthquake A = earthquake( "a", 7.2, 100 );
+    
+    private static final Earthquake B = earthquake( "b", 6.5, 400 );
+    
+    private static final Earthquake C = earthquake( "c", 6.1, 200 );
+    
+    private static final Earthquake D = earthquake( "d", 5.3, 300 );
+    
+    /**
+     * The earthquakes of "minmag=5&orderby=magnitude"
+     */
+    private static final EarthquakeTable BY_MAGNITUDE = table( A, B, C, D );
+    
+    @Test
+    public void plan_filtersHigherMinMagnitudeInTheSameOrder()
+    {
+        QueryPlanner loaded = new QueryPlanner( BY_MAGNITUDE, 5, "magnitude", false );
+        
+        QueryPlanner answer = loaded.plan( 6.1, "magnitude" );
+        
+        assertEquals( table( A, B, C ), answer.getEarthquakes() );
+        assertFalse( answer.isComplete() );
+    }
+    
+    @Test
+    public void plan_sortsAnotherOrderOnlyWhenComplete()
+    {
+        assertNull( new QueryPlanner( BY_MAGNITUDE, 5, "magnitude", false ).plan( 5, "time" ) );
+        
+        QueryPlanner loaded = new QueryPlanner( BY_MAGNITUDE, 5, "magnitude", true );
+        
+        assertEquals( table( B, D, C, A ), loaded.plan( 5, "time" ).getEarthquakes() );
+        assertEquals( table( A, C, D, B ), loaded.plan( 5, "time-asc" ).getEarthquakes() );
+        assertEquals( table( D, C, B, A ), loaded.plan( 5, "magnitude-asc" ).getEarthquakes() );
+    }
+    
+    @Test
+    public void plan_pushesDownWhatIsNotLoaded()
+    {
+        QueryPlanner loaded = new QueryPlanner( BY_MAGNITUDE, 5, "magnitude", false );
+        
+        // Smaller earthquakes were never loaded
+        assertNull( loaded.plan( 4.5, "magnitude" ) );
+        assertFalse( loaded.canAnswer( 4.5, "magnitude" ) );
+        
+        // None of the loaded earthquakes matches, but the next pages may
+        assertNull( loaded.plan( 7.5, "magnitude" ) );
+        
+        // Nothing matches and nothing else is left to load
+        QueryPlanner complete = new QueryPlanner( BY_MAGNITUDE, 5, "magnitude", true );
+        assertEquals( EarthquakeTable.EMPTY, complete.plan( 7.5, "magnitude" ).getEarthquakes() );
+    }
+    
+    @Test
+    public void plan_keepsTheIndexesOfTheAnswer()
+    {
+        QueryPlanner loaded = new QueryPlanner( BY_MAGNITUDE, 5, "magnitude", true );
+        
+        QueryPlanner answer = loaded.plan( 6, "time" ).plan( 6.2, "time-asc" ).plan( 6.2, "magnitude" );
+        
+        assertEquals( table( A, B ), answer.getEarthquakes() );
+        assertSame( answer, answer.plan( 6.2, "magnitude" ) );
+    }
+}
\ No newline at end of file
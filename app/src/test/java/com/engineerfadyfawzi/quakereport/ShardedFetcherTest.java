@@ -0,0 +1,65 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of merging the shards of a sharded fetch.
+ */
+public class ShardedFetcherTest
+{
+    private static EarthquakeTable shard( Object... rows )
+    {
+        // Rows as id, magnitude and time
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder();
+        for ( int i = 0; i < rows.length; i += 3 )
+            builder.add( ( String ) rows[ i ], ( Double ) rows[ i + 1 ], "Tonga",
+                    ( Long ) rows[ i + 2 ], ( Long ) rows[ i + 2 ], null, false );
+        return builder.build();
+    }
+    
+    private static String ids( EarthquakeTable earthquakes )
+    {
+        StringBuilder ids = new StringBuilder();
+        for ( int row = 0; row < earthquakes.size(); row++ )
+            ids.append( row == 0 ? "" : " " ).append( earthquakes.getId( row ) );
+        return ids.toString();
+    }
+    
+    @Test
+    public void merge_interleavesTheShardsInTheOrder()
+    {
+        EarthquakeTable older = shard( "c", 4.0, 30L, "a", 6.0, 10L );
+        EarthquakeTable newer = shard( "e", 5.0, 50L, "d", 4.5, 40L, "b", 3.0, 20L );
+        
+        assertEquals( "e d c b a",
+                ids( ShardedFetcher.merge( Arrays.asList( older, newer ), EarthquakeOrder.TIME ) ) );
+        assertEquals( "e d c b a",
+                ids( ShardedFetcher.merge( Arrays.asList( newer, older ), EarthquakeOrder.TIME ) ) );
+    }
+    
+    @Test
+    public void merge_keepsEqualEarthquakesInTheOrderOfTheShards()
+    {
+        EarthquakeTable first = shard( "a", 5.0, 10L, "b", 4.0, 20L );
+        EarthquakeTable second = shard( "c", 5.0, 30L, "d", 4.0, 40L );
+        
+        assertEquals( "a c b d",
+                ids( ShardedFetcher.merge( Arrays.asList( first, second ), EarthquakeOrder.MAGNITUDE ) ) );
+    }
+    
+    @Test
+    public void merge_keepsAnEarthquakeOfSeveralShardsOnce()
+    {
+        EarthquakeTable first = shard( "b", 4.0, 20L, "a", 4.0, 10L );
+        EarthquakeTable second = shard( "c", 4.0, 30L, "b", 4.0, 20L );
+        
+        EarthquakeTable merged =
+                ShardedFetcher.merge( Arrays.asList( first, second ), EarthquakeOrder.TIME );
+        assertEquals( "c b a", ids( merged ) );
+        assertEquals( 0, ShardedFetcher.merge( Arrays.< EarthquakeTable >asList(), EarthquakeOrder.TIME ).size() );
+    }
+}
\ No newline at end of file
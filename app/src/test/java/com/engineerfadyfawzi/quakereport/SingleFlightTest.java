@@ -0,0 +1,237 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of sharing the calls in flight between their callers.
+ */
+public class SingleFlightTest
+{
+    @Test
+    public void execute_sharesTheCallInFlightOfTheSameKey() throws Exception
+    {
+        final SingleFlight< String > singleFlight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch callStarted = new CountDownLatch( 1 );
+        final CountDownLatch releaseCall = new CountDownLatch( 1 );
+        final SingleFlight.Call< String > call = new SingleFlight.Call< String >()
+        {
+            @Override
+            public String call( CancellationSignal cancellationSignal ) throws Exception
+            {
+                calls.incrementAndGet();
+                callStarted.countDown();
+                releaseCall.await();
+                return "response";
+            }
+        };
+        
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        Future< String > first = executor.submit( new Callable< String >()
+        {
+            @Override
+            public String call()
+            {
+                return singleFlight.execute( "url", call );
+            }
+        } );
+        assertTrue( callStarted.await( 5, TimeUnit.SECONDS ) );
+        
+        Future< String > second = executor.submit( new Callable< String >()
+        {
+            @Override
+            public String call()
+            {
+                return singleFlight.execute( "url", call );
+            }
+        } );
+        Future< String > otherKey = executor.submit( new Callable< String >()
+        {
+            @Override
+            public String call()
+            {
+                return singleFlight.execute( "other url", new SingleFlight.Call< String >()
+                {
+                    @Override
+                    public String call( CancellationSignal cancellationSignal )
+                    {
+                        return "other response";
+                    }
+                } );
+            }
+        } );
+        assertEquals( "other response", otherKey.get( 5, TimeUnit.SECONDS ) );
+        
+        // Give the second caller time to join the call in flight before it returns
+        Thread.sleep( 100 );
+        releaseCall.countDown();
+        assertEquals( "response", first.get( 5, TimeUnit.SECONDS ) );
+        assertEquals( "response", second.get( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, calls.get() );
+        assertEquals( 0, singleFlight.size() );
+        
+        // Once the call returned, the next caller starts a new one
+        assertEquals( "response", singleFlight.execute( "url", call ) );
+        assertEquals( 2, calls.get() );
+        executor.shutdown();
+    }
+    
+    @Test
+    public void execute_throwsTheFailureOfTheCall()
+    {
+        SingleFlight< String > singleFlight = new SingleFlight<>();
+        try
+        {
+            singleFlight.execute( "url", new SingleFlight.Call< String >()
+            {
+                @Override
+                public String call( CancellationSignal cancellationSignal )
+                {
+                    throw new IllegalStateException( "failed" );
+                }
+            } );
+            fail();
+        }
+        catch ( IllegalStateException illegalStateException )
+        {
+            assertEquals( "failed", illegalStateException.getMessage() );
+        }
+        assertEquals( 0, singleFlight.size() );
+    }
+    
+    @Test
+    public void execute_cancelsTheCallOnceAllItsCallersAreCanceled() throws Exception
+    {
+        final SingleFlight< String > singleFlight = new SingleFlight<>();
+        final CountDownLatch callStarted = new CountDownLatch( 1 );
+        final CountDownLatch callCanceled = new CountDownLatch( 1 );
+        final SingleFlight.Call< String > call = new SingleFlight.Call< String >()
+        {
+            @Override
+            public String call( CancellationSignal cancellationSignal )
+            {
+                cancellationSignal.setOnCancelListener( new CancellationSignal.OnCancelListener()
+                {
+                    @Override
+                    public void onCancel()
+                    {
+                        callCanceled.countDown();
+                    }
+                } );
+                callStarted.countDown();
+                try
+                {
+                    callCanceled.await();
+                }
+                catch ( InterruptedException interruptedException )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return "response";
+            }
+        };
+        
+        final CancellationSignal firstSignal = new CancellationSignal();
+        final CancellationSignal secondSignal = new CancellationSignal();
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        Future< String > first = executor.submit( new Callable< String >()
+        {
+            @Override
+            public String call()
+            {
+                return singleFlight.execute( "url", call, firstSignal );
+            }
+        } );
+        assertTrue( callStarted.await( 5, TimeUnit.SECONDS ) );
+        Future< String > second = executor.submit( new Callable< String >()
+        {
+            @Override
+            public String call()
+            {
+                return singleFlight.execute( "url", call, secondSignal );
+            }
+        } );
+        
+        // Give the second caller time to join the call in flight
+        Thread.sleep( 100 );
+        
+        // A canceled caller stops waiting, but the call goes on for the other one
+        firstSignal.cancel();
+        assertNull( first.get( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, callCanceled.getCount() );
+        
+        // The last caller canceled cancels the call itself
+        secondSignal.cancel();
+        assertTrue( callCanceled.await( 5, TimeUnit.SECONDS ) );
+        assertNull( second.get( 5, TimeUnit.SECONDS ) );
+        
+        // A caller after them doesn't join the canceled call
+        assertEquals( "new response", singleFlight.execute( "url", new SingleFlight.Call< String >()
+        {
+            @Override
+            public String call( CancellationSignal cancellationSignal )
+            {
+                return "new response";
+            }
+        } ) );
+        executor.shutdown();
+    }
+    
+    @Test
+    public void execute_canceledFirstCaller_returnsBeforeTheCall() throws Exception
+    {
+        final SingleFlight< String > singleFlight = new SingleFlight<>();
+        final CountDownLatch callStarted = new CountDownLatch( 1 );
+        final CountDownLatch releaseCall = new CountDownLatch( 1 );
+        final SingleFlight.Call< String > call = new SingleFlight.Call< String >()
+        {
+            @Override
+            public String call( CancellationSignal cancellationSignal ) throws Exception
+            {
+                callStarted.countDown();
+                releaseCall.await();
+                return "response";
+            }
+        };
+        
+        final CancellationSignal firstSignal = new CancellationSignal();
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        Future< String > first = executor.submit( new Callable< String >()
+        {
+            @Override
+            public String call()
+            {
+                return singleFlight.execute( "url", call, firstSignal );
+            }
+        } );
+        assertTrue( callStarted.await( 5, TimeUnit.SECONDS ) );
+        Future< String > second = executor.submit( new Callable< String >()
+        {
+            @Override
+            public String call()
+            {
+                return singleFlight.execute( "url", call, new CancellationSignal() );
+            }
+        } );
+        Thread.sleep( 100 );
+        
+        // The first caller doesn't run the call, so it returns while the call goes on
+        firstSignal.cancel();
+        assertNull( first.get( 5, TimeUnit.SECONDS ) );
+        assertFalse( second.isDone() );
+        
+        releaseCall.countDown();
+        assertEquals( "response", second.get( 5, TimeUnit.SECONDS ) );
+        executor.shutdown();
+    }
+}
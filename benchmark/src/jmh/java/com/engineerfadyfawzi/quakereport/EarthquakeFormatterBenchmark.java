@@ -0,0 +1,93 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocations of formatting the rows of a 1k earthquakes response for display
+ * with the {@link EarthquakeFormatter} the loader uses, one value at a time and a whole table.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+public class EarthquakeFormatterBenchmark
+{
+    private static final int FEATURE_COUNT = 1000;
+    
+    private EarthquakeFormatter mFormatter;
+    
+    private EarthquakeTable mEarthquakes;
+    
+    /**
+     * Row formatted by the next call, so every call formats a different earthquake
+     */
+    private int mRow;
+    
+    @Setup( Level.Trial )
+    public void loadEarthquakes() throws IOException
+    {
+        mFormatter = new EarthquakeFormatter(
+                new int[] { 1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, "Near the" );
+        mEarthquakes = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream( GeoJsonFixtures.load( FEATURE_COUNT ) ) );
+    }
+    
+    @Benchmark
+    public String formatMagnitude()
+    {
+        return mFormatter.formatMagnitude( mEarthquakes.getMagnitude( nextRow() ) );
+    }
+    
+    @Benchmark
+    public int getMagnitudeColor()
+    {
+        return mFormatter.getMagnitudeColor( mEarthquakes.getMagnitude( nextRow() ) );
+    }
+    
+    @Benchmark
+    public String formatDate()
+    {
+        return mFormatter.formatDate( mEarthquakes.getTimeInMilliseconds( nextRow() ) );
+    }
+    
+    @Benchmark
+    public String formatTime()
+    {
+        return mFormatter.formatTime( mEarthquakes.getTimeInMilliseconds( nextRow() ) );
+    }
+    
+    @Benchmark
+    public void splitLocation( Blackhole blackhole )
+    {
+        String location = mEarthquakes.getLocation( nextRow() );
+        blackhole.consume( mFormatter.getLocationOffset( location ) );
+        blackhole.consume( mFormatter.getPrimaryLocation( location ) );
+    }
+    
+    /**
+     * Formatting all the rows of the table, like the loader does with a new response.
+     */
+    @Benchmark
+    @OutputTimeUnit( TimeUnit.MICROSECONDS )
+    public EarthquakeTable formatTable()
+    {
+        return mFormatter.format( mEarthquakes );
+    }
+    
+    private int nextRow()
+    {
+        mRow = mRow + 1 == FEATURE_COUNT ? 0 : mRow + 1;
+        return mRow;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of reading a cached feed of 20k and 100k earthquakes back from a file, as a cold start
+ * does: parsing it as GeoJSON like the feed cache used to, opening it as a memory mapped
+ * {@link EarthquakeSnapshot} and reading the first screen of rows, and copying the whole
+ * snapshot into an {@link EarthquakeTable}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class EarthquakeSnapshotBenchmark
+{
+    /**
+     * Rows displayed on the first screen
+     */
+    private static final int SCREEN_ROWS = 20;
+    
+    @Param( { "20000", "100000" } )
+    public int featureCount;
+    
+    private File mJsonFile;
+    
+    private File mSnapshotFile;
+    
+    @Setup( Level.Trial )
+    public void writeFeeds() throws IOException
+    {
+        byte[] feed = GeoJsonFixtures.load( featureCount );
+        mJsonFile = File.createTempFile( "feed", ".json" );
+        FileOutputStream outputStream = new FileOutputStream( mJsonFile );
+        try
+        {
+            outputStream.write( feed );
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        
+        mSnapshotFile = File.createTempFile( "feed", ".snapshot" );
+        EarthquakeSnapshot.write( mSnapshotFile, readJson(), "\"v1\"", null );
+    }
+    
+    @TearDown( Level.Trial )
+    public void deleteFeeds()
+    {
+        mJsonFile.delete();
+        mSnapshotFile.delete();
+    }
+    
+    @Benchmark
+    public EarthquakeTable readJson() throws IOException
+    {
+        InputStream inputStream = new BufferedInputStream( new FileInputStream( mJsonFile ) );
+        try
+        {
+            return QueryUtils.readEarthquakesFromStream( inputStream );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+    
+    @Benchmark
+    public int openSnapshotAndReadFirstScreen() throws IOException
+    {
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open( mSnapshotFile );
+        int hash = 0;
+        for ( int row = 0; row < Math.min( SCREEN_ROWS, snapshot.size() ); row++ )
+            hash += snapshot.getLocation( row ).hashCode() + ( int ) snapshot.getTimeInMilliseconds( row );
+        return hash;
+    }
+    
+    @Benchmark
+    public EarthquakeTable snapshotToTable() throws IOException
+    {
+        return EarthquakeSnapshot.open( mSnapshotFile ).toTable();
+    }
+}
\ No newline at end of file
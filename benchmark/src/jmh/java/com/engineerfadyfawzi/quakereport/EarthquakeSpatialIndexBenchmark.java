@@ -0,0 +1,142 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the "earthquakes near me" queries of an {@link EarthquakeSpatialIndex} of 20k and 100k
+ * earthquakes, compared with a linear scan measuring the haversine distance to every earthquake,
+ * which returns the same rows in the same order.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class EarthquakeSpatialIndexBenchmark
+{
+    /**
+     * Searched distance, in kilometers
+     */
+    private static final double RADIUS_KM = 300;
+    
+    /**
+     * Places searched around (latitude, longitude), one after the other
+     */
+    private static final double[][] PLACES = {
+            { 30.04, 31.24 }, { 35.68, 139.69 }, { -33.45, -70.67 }, { 37.77, -122.42 },
+            { 64.14, -21.94 }, { -41.29, 174.78 }, { -6.21, 106.85 }, { 19.43, -99.13 }
+    };
+    
+    @Param( { "20000", "100000" } )
+    public int featureCount;
+    
+    private EarthquakeTable mEarthquakes;
+    
+    private EarthquakeSpatialIndex mIndex;
+    
+    /**
+     * Place searched by the next call
+     */
+    private int mPlace;
+    
+    @Setup( Level.Trial )
+    public void loadEarthquakes() throws IOException
+    {
+        mEarthquakes = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream( GeoJsonFixtures.load( featureCount ) ) );
+        mIndex = new EarthquakeSpatialIndex( mEarthquakes );
+    }
+    
+    @Benchmark
+    public EarthquakeSpatialIndex buildIndex()
+    {
+        return new EarthquakeSpatialIndex( mEarthquakes );
+    }
+    
+    @Benchmark
+    public int[] withinRadius()
+    {
+        double[] place = nextPlace();
+        return mIndex.withinRadius( place[ 0 ], place[ 1 ], RADIUS_KM );
+    }
+    
+    @Benchmark
+    public int[] withinRadiusLinearScan()
+    {
+        double[] place = nextPlace();
+        
+        // Same output as the index: distance in the upper bits, row in the lower ones
+        long[] keys = new long[ 64 ];
+        int count = 0;
+        for ( int row = 0; row < mEarthquakes.size(); row++ )
+        {
+            double distance = EarthquakeSpatialIndex.distanceKm( place[ 0 ], place[ 1 ],
+                    mEarthquakes.getLatitude( row ), mEarthquakes.getLongitude( row ) );
+            if ( !( distance <= RADIUS_KM ) )
+                continue;
+            
+            if ( count == keys.length )
+                keys = Arrays.copyOf( keys, count * 2 );
+            keys[ count++ ] = ( long ) Float.floatToIntBits( ( float ) distance ) << 32 | row;
+        }
+        
+        Arrays.sort( keys, 0, count );
+        int[] rows = new int[ count ];
+        for ( int i = 0; i < count; i++ )
+            rows[ i ] = ( int ) keys[ i ];
+        return rows;
+    }
+    
+    @Benchmark
+    public int[] nearest()
+    {
+        double[] place = nextPlace();
+        return mIndex.nearest( place[ 0 ], place[ 1 ], 10 );
+    }
+    
+    @Benchmark
+    public int[] withinBox()
+    {
+        double[] place = nextPlace();
+        return mIndex.withinBox( place[ 0 ] - 5, place[ 1 ] - 5, place[ 0 ] + 5, place[ 1 ] + 5 );
+    }
+    
+    @Benchmark
+    public int[] withinBoxLinearScan()
+    {
+        double[] place = nextPlace();
+        
+        int[] rows = new int[ 64 ];
+        int count = 0;
+        for ( int row = 0; row < mEarthquakes.size(); row++ )
+        {
+            double latitude = mEarthquakes.getLatitude( row );
+            double longitude = mEarthquakes.getLongitude( row );
+            if ( latitude < place[ 0 ] - 5 || latitude > place[ 0 ] + 5 ||
+                    longitude < place[ 1 ] - 5 || longitude > place[ 1 ] + 5 )
+                continue;
+            
+            if ( count == rows.length )
+                rows = Arrays.copyOf( rows, count * 2 );
+            rows[ count++ ] = row;
+        }
+        return Arrays.copyOf( rows, count );
+    }
+    
+    private double[] nextPlace()
+    {
+        mPlace = mPlace + 1 == PLACES.length ? 0 : mPlace + 1;
+        return PLACES[ mPlace ];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.engineerfadyfawzi.quakereport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * USGS "FDSN event" GeoJSON feeds the benchmarks parse.
+ *
+ * A recorded response is read from the directory of the "quakereport.fixtures" system property
+ * when it has a "usgs_<feature count>.geojson" file, otherwise a feed is generated by the
+ * {@link FeedFixtures} of the instrumented tests, always the same for the same feature count.
+ */
+final class GeoJsonFixtures
+{
+    private GeoJsonFixtures()
+    {
+        
+    }
+    
+    /**
+     * Returns the UTF-8 bytes of a feed with the given number of features.
+     */
+    static byte[] load( int featureCount ) throws IOException
+    {
+        String directory = System.getProperty( "quakereport.fixtures" );
+        if ( directory != null )
+        {
+            File recording = new File( directory, "usgs_" + featureCount + ".geojson" );
+            if ( recording.exists() )
+                return read( recording );
+        }
+        
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream( featureCount * 1024 + 512 );
+        Writer writer = new OutputStreamWriter( outputStream, Charset.forName( "UTF-8" ) );
+        FeedFixtures.writeFeed( writer, featureCount, featureCount );
+        writer.close();
+        return outputStream.toByteArray();
+    }
+    
+    private static byte[] read( File file ) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream( ( int ) file.length() );
+        InputStream inputStream = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[ 64 * 1024 ];
+            int count;
+            while ( ( count = inputStream.read( buffer ) ) != -1 )
+                outputStream.write( buffer, 0, count );
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+}
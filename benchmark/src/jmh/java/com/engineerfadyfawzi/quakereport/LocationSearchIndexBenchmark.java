@@ -0,0 +1,114 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of searching the primary locations of 20k and 100k earthquakes with a
+ * {@link LocationSearchIndex}, as the user types, compared with a linear scan comparing
+ * the query with every primary location. Building the index, and updating it with an appended
+ * page, happen on the loader's thread.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class LocationSearchIndexBenchmark
+{
+    /**
+     * Earthquakes of the page appended to the indexed ones
+     */
+    private static final int PAGE_SIZE = 20;
+    
+    /**
+     * Queries searched one after the other, as they're typed
+     */
+    private static final String[] QUERIES = { "t", "to", "ton", "tonga", "p", "pa", "papua new", "chile" };
+    
+    @Param( { "20000", "100000" } )
+    public int featureCount;
+    
+    private EarthquakeTable mEarthquakes;
+    
+    private LocationSearchIndex mIndex;
+    
+    /**
+     * Index of the earthquakes before the last page was appended
+     */
+    private LocationSearchIndex mPreviousPagesIndex;
+    
+    /**
+     * Query searched by the next call
+     */
+    private int mQuery;
+    
+    @Setup( Level.Trial )
+    public void loadEarthquakes() throws IOException
+    {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(
+                new int[] { 1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, "Near the" );
+        mEarthquakes = formatter.format( QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream( GeoJsonFixtures.load( featureCount ) ) ) );
+        mIndex = new LocationSearchIndex( mEarthquakes );
+        
+        int[] previousPages = new int[ mEarthquakes.size() - PAGE_SIZE ];
+        for ( int row = 0; row < previousPages.length; row++ )
+            previousPages[ row ] = row;
+        mPreviousPagesIndex = new LocationSearchIndex( mEarthquakes.select( previousPages ) );
+    }
+    
+    @Benchmark
+    public LocationSearchIndex buildIndex()
+    {
+        return new LocationSearchIndex( mEarthquakes );
+    }
+    
+    @Benchmark
+    public LocationSearchIndex updateWithAppendedPage()
+    {
+        return mPreviousPagesIndex.update( mEarthquakes );
+    }
+    
+    @Benchmark
+    public int[] search()
+    {
+        return mIndex.search( nextQuery() );
+    }
+    
+    @Benchmark
+    public int[] searchLinearScan()
+    {
+        String query = nextQuery().toLowerCase( Locale.ROOT );
+        
+        int[] rows = new int[ 64 ];
+        int count = 0;
+        for ( int row = 0; row < mEarthquakes.size(); row++ )
+        {
+            if ( !mEarthquakes.getPrimaryLocation( row ).toLowerCase( Locale.ROOT ).contains( query ) )
+                continue;
+            
+            if ( count == rows.length )
+                rows = Arrays.copyOf( rows, count * 2 );
+            rows[ count++ ] = row;
+        }
+        return Arrays.copyOf( rows, count );
+    }
+    
+    private String nextQuery()
+    {
+        mQuery = mQuery + 1 == QUERIES.length ? 0 : mQuery + 1;
+        return QUERIES[ mQuery ];
+    }
+}
\ No newline at end of file
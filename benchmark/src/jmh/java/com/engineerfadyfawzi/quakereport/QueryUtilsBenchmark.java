@@ -0,0 +1,68 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of parsing USGS responses of 10, 1k, 20k and 100k features with {@link QueryUtils}:
+ * reading the response into a String, building the earthquakes from the JSONObject tree of that
+ * String, and parsing the earthquakes straight from the stream into an {@link EarthquakeTable}.
+ *
+ * The allocation rate of every benchmark is measured by the "gc" profiler.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+public class QueryUtilsBenchmark
+{
+    @Param( { "10", "1000", "20000", "100000" } )
+    public int featureCount;
+    
+    /**
+     * The response body, as it's received from the network
+     */
+    private byte[] mFeed;
+    
+    /**
+     * The response body, as {@link QueryUtils#readFromStream} returns it
+     */
+    private String mFeedJson;
+    
+    @Setup( Level.Trial )
+    public void loadFeed() throws IOException
+    {
+        mFeed = GeoJsonFixtures.load( featureCount );
+        mFeedJson = new String( mFeed, Charset.forName( "UTF-8" ) );
+    }
+    
+    @Benchmark
+    public String readFromStream() throws IOException
+    {
+        return QueryUtils.readFromStream( new ByteArrayInputStream( mFeed ) );
+    }
+    
+    @Benchmark
+    public List< Earthquake > extractFeatureFromJson()
+    {
+        return QueryUtils.extractFeatureFromJson( mFeedJson );
+    }
+    
+    @Benchmark
+    public EarthquakeTable readEarthquakesFromStream() throws IOException
+    {
+        return QueryUtils.readEarthquakesFromStream( new ByteArrayInputStream( mFeed ) );
+    }
+}
\ No newline at end of file
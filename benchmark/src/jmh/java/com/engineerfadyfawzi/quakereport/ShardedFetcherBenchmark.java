@@ -0,0 +1,80 @@
+package com.engineerfadyfawzi.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Time of loading a year of 20k earthquakes from a local fake FDSN server with a
+ * {@link ShardedFetcher}, with 1, 4 and 8 shards loaded at the same time. Every response waits
+ * like a distant server and is sent at the rate of a single slow connection, so the shards are
+ * limited by the connections, like USGS responses, instead of by the loopback interface.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class ShardedFetcherBenchmark
+{
+    /**
+     * 2020-01-01T00:00:00Z to 2021-01-01T00:00:00Z
+     */
+    private static final long START_TIME = 1577836800000L;
+    
+    private static final long END_TIME = 1609459200000L;
+    
+    private static final int EARTHQUAKE_COUNT = 20000;
+    
+    /**
+     * Time in milliseconds every response waits before its body
+     */
+    private static final long LATENCY = 150;
+    
+    /**
+     * Rate every response body is sent at
+     */
+    private static final long BYTES_PER_SECOND = 2 * 1024 * 1024;
+    
+    @Param( { "1", "4", "8" } )
+    public int concurrency;
+    
+    private MockWebServer mServer;
+    
+    private String mQueryUrl;
+    
+    @Setup( Level.Trial )
+    public void startServer() throws IOException
+    {
+        FakeFdsnDispatcher dispatcher =
+                new FakeFdsnDispatcher( EARTHQUAKE_COUNT, START_TIME, END_TIME, ShardedFetcher.USGS_RESULT_CAP );
+        dispatcher.setThrottle( LATENCY, BYTES_PER_SECOND );
+        
+        mServer = new MockWebServer();
+        mServer.setDispatcher( dispatcher );
+        mServer.start();
+        mQueryUrl = mServer.url( "/fdsnws/event/1/query?format=geojson&orderby=time" ).toString();
+    }
+    
+    @TearDown( Level.Trial )
+    public void stopServer() throws IOException
+    {
+        mServer.shutdown();
+    }
+    
+    @Benchmark
+    public EarthquakeTable fetch()
+    {
+        return new ShardedFetcher( concurrency ).fetch( mQueryUrl, START_TIME, END_TIME );
+    }
+}
\ No newline at end of file